@@ -0,0 +1,123 @@
+package frc.robot.util.kinematics;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Inverse kinematics, desaturation and forward kinematics over a batch of random chassis speeds, the work of the
+ * offline tools: {@link SwerveDriveKinematics} and {@link FourModuleKinematics} called per sample against
+ * {@link BatchKinematics} over the whole batch, with module angles and with module velocity vectors. Scores are per
+ * sample.
+ *
+ * <p>Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BatchKinematicsBenchmark
+{
+
+  private static final int    SAMPLES   = 100_000;
+  private static final int    MODULES   = FourModuleKinematics.MODULES;
+  private static final double MAX_SPEED = 4.0;
+
+  private final Translation2d[]       locations = {new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3),
+                                                   new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3)};
+  private final double[]              vx        = new double[SAMPLES];
+  private final double[]              vy        = new double[SAMPLES];
+  private final double[]              omega     = new double[SAMPLES];
+  private final double[]              outVx     = new double[SAMPLES];
+  private final double[]              outVy     = new double[SAMPLES];
+  private final double[]              outOmega  = new double[SAMPLES];
+  private final double[][]            moduleA   = new double[MODULES][SAMPLES];
+  private final double[][]            moduleB   = new double[MODULES][SAMPLES];
+  private final double[]              speeds    = new double[MODULES];
+  private final double[]              angles    = new double[MODULES];
+  private final double[]              chassis   = new double[3];
+  private       SwerveDriveKinematics wpilib;
+  private       FourModuleKinematics  fourModule;
+  private       BatchKinematics       batch;
+
+  @Setup
+  public void setup()
+  {
+    wpilib = new SwerveDriveKinematics(locations);
+    fourModule = new FourModuleKinematics(locations);
+    batch = new BatchKinematics(locations);
+    Random random = new Random(1);
+    for (int i = 0; i < SAMPLES; i++)
+    {
+      // Some commands ask for more than the modules can do so desaturation has work to do.
+      vx[i] = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      vy[i] = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      omega[i] = (random.nextDouble() * 2 - 1) * 2 * Math.PI;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public void swerveDriveKinematics(Blackhole blackhole)
+  {
+    for (int i = 0; i < SAMPLES; i++)
+    {
+      SwerveModuleState[] states = wpilib.toSwerveModuleStates(new ChassisSpeeds(vx[i], vy[i], omega[i]));
+      SwerveDriveKinematics.desaturateWheelSpeeds(states, MAX_SPEED);
+      blackhole.consume(wpilib.toChassisSpeeds(states));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public void fourModuleKinematics(Blackhole blackhole)
+  {
+    for (int i = 0; i < SAMPLES; i++)
+    {
+      fourModule.toModuleStates(vx[i], vy[i], omega[i], speeds, angles);
+      FourModuleKinematics.desaturate(speeds, MAX_SPEED);
+      fourModule.toChassisSpeeds(speeds, angles, chassis);
+      outVx[i] = chassis[0];
+      outVy[i] = chassis[1];
+      outOmega[i] = chassis[2];
+    }
+    blackhole.consume(outVx);
+    blackhole.consume(outVy);
+    blackhole.consume(outOmega);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public void batchKinematics(Blackhole blackhole)
+  {
+    batch.toModuleStates(vx, vy, omega, SAMPLES, moduleA, moduleB);
+    BatchKinematics.desaturate(moduleA, SAMPLES, MAX_SPEED);
+    batch.toChassisSpeeds(moduleA, moduleB, SAMPLES, outVx, outVy, outOmega);
+    blackhole.consume(outVx);
+    blackhole.consume(outVy);
+    blackhole.consume(outOmega);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public void batchKinematicsVectors(Blackhole blackhole)
+  {
+    batch.toModuleVelocities(vx, vy, omega, SAMPLES, moduleA, moduleB);
+    BatchKinematics.desaturateVelocities(moduleA, moduleB, SAMPLES, MAX_SPEED);
+    batch.fromModuleVelocities(moduleA, moduleB, SAMPLES, outVx, outVy, outOmega);
+    blackhole.consume(outVx);
+    blackhole.consume(outVy);
+    blackhole.consume(outOmega);
+  }
+}
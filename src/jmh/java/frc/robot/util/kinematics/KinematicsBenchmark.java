@@ -0,0 +1,101 @@
+package frc.robot.util.kinematics;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One drive loop's kinematics, inverse kinematics, desaturation, angle optimisation and forward kinematics, through
+ * {@link SwerveDriveKinematics} and through {@link FourModuleKinematics}. Inputs cycle through a table of random chassis
+ * speeds so the branches are not predicted from a single input.
+ *
+ * <p>Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KinematicsBenchmark
+{
+
+  private static final int    INPUTS    = 1024;
+  private static final int    MODULES   = FourModuleKinematics.MODULES;
+  private static final double MAX_SPEED = 4.0;
+
+  private final Translation2d[]       locations        = {new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3),
+                                                          new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3)};
+  private final double[]              vx               = new double[INPUTS];
+  private final double[]              vy               = new double[INPUTS];
+  private final double[]              omega            = new double[INPUTS];
+  private final double[]              current          = new double[MODULES];
+  private final Rotation2d[]          currentRotations = new Rotation2d[MODULES];
+  private final double[]              speeds           = new double[MODULES];
+  private final double[]              angles           = new double[MODULES];
+  private final double[]              chassis          = new double[3];
+  private       SwerveDriveKinematics wpilib;
+  private       FourModuleKinematics  fourModule;
+  private       int                   next;
+
+  @Setup
+  public void setup()
+  {
+    wpilib = new SwerveDriveKinematics(locations);
+    fourModule = new FourModuleKinematics(locations);
+    Random random = new Random(1);
+    for (int i = 0; i < INPUTS; i++)
+    {
+      vx[i] = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      vy[i] = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      omega[i] = (random.nextDouble() * 2 - 1) * 2 * Math.PI;
+    }
+    for (int m = 0; m < MODULES; m++)
+    {
+      current[m] = (random.nextDouble() * 2 - 1) * Math.PI;
+      currentRotations[m] = new Rotation2d(current[m]);
+    }
+  }
+
+  private int nextInput()
+  {
+    next = (next + 1) & (INPUTS - 1);
+    return next;
+  }
+
+  @Benchmark
+  public void swerveDriveKinematics(Blackhole blackhole)
+  {
+    int i = nextInput();
+    SwerveModuleState[] states = wpilib.toSwerveModuleStates(new ChassisSpeeds(vx[i], vy[i], omega[i]));
+    SwerveDriveKinematics.desaturateWheelSpeeds(states, MAX_SPEED);
+    for (int m = 0; m < MODULES; m++)
+    {
+      states[m] = SwerveModuleState.optimize(states[m], currentRotations[m]);
+    }
+    blackhole.consume(states);
+    blackhole.consume(wpilib.toChassisSpeeds(states));
+  }
+
+  @Benchmark
+  public void fourModuleKinematics(Blackhole blackhole)
+  {
+    int i = nextInput();
+    fourModule.toModuleStates(vx[i], vy[i], omega[i], speeds, angles);
+    FourModuleKinematics.desaturate(speeds, MAX_SPEED);
+    FourModuleKinematics.optimize(speeds, angles, current);
+    fourModule.toChassisSpeeds(speeds, angles, chassis);
+    blackhole.consume(speeds);
+    blackhole.consume(angles);
+    blackhole.consume(chassis);
+  }
+}
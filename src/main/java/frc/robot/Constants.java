@@ -6,6 +6,9 @@ package frc.robot;
 
 import com.pathplanner.lib.util.PIDConstants;
 
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.util.Units;
 import swervelib.math.Matter;
@@ -26,12 +29,24 @@ public final class Constants
   public static final double ROBOT_MASS = (148 - 20.3) * 0.453592; // 32lbs * kg per pound
   public static final Matter CHASSIS    = new Matter(new Translation3d(0, 0, Units.inchesToMeters(8)), ROBOT_MASS);
   public static final double LOOP_TIME  = 0.13; //s, 20ms + 110ms sprk max velocity lag
+  public static final double HIGH_RATE_LOOP_TIME = DrivebaseConstants.HIGH_RATE_DRIVE_PERIOD + 0.11; //s, fast loop + sprk max velocity lag
 
   public static final class AutonConstants
   {
 
     public static final PIDConstants TRANSLATION_PID = new PIDConstants(0.7, 0, 0);
     public static final PIDConstants ANGLE_PID   = new PIDConstants(0.4, 0, 0.01);
+    // Sample step of pre-sampled trajectory tables, one robot loop
+    public static final double       TRAJECTORY_TABLE_DT = 0.02; // seconds
+    // Module speed limit of the path follower, also the limit ./gradlew verifyPaths checks paths against
+    public static final double       MAX_MODULE_SPEED         = 4.5; // m/s
+    // Pathfinding constraints for driveToPose, speeds come from the drivetrain
+    public static final double       MAX_ACCELERATION         = 4.0; // m/s^2
+    public static final double       MAX_ANGULAR_ACCELERATION = Units.degreesToRadians(720); // rad/s^2
+    // Paths raced from the current state by the What If dashboard button, and how long each may run. Paths missing
+    // from deploy/pathplanner/paths are left out, and the button is not published when none are deployed
+    public static final String[]     WHAT_IF_PATHS            = {"Amp Side", "Center", "Source Side"};
+    public static final double       WHAT_IF_TIMEOUT          = 15; // seconds
   }
 
   public static final class DrivebaseConstants
@@ -39,6 +54,123 @@ public final class Constants
 
     // Hold time on motor brakes when disabled
     public static final double WHEEL_LOCK_TIME = 10; // seconds
+    // Maximum speed of the robot, used to limit acceleration
+    public static final double MAX_SPEED       = Units.feetToMeters(4.5); // m/s
+    // Use the measured stick to module latency instead of LOOP_TIME for the velocity limiter, see LatencyTracer
+    public static final boolean MEASURED_LOOP_TIME = false;
+
+    // Run the drive path in its own addPeriodic callback instead of the 50 Hz scheduler pass. Only turn it on once the
+    // Latency/ dashboard shows a lower HID Sample and Total with it than without, see LatencyTracer
+    public static final boolean HIGH_RATE_DRIVE        = false;
+    public static final double  HIGH_RATE_DRIVE_PERIOD = 0.005; // seconds
+
+    // Wheel speed lag and steering rate of the headless drivetrain model used for tuning and what-if evaluation
+    public static final double SIM_DRIVE_TIME_CONSTANT = 0.05; // seconds
+    public static final double SIM_STEER_RATE          = 20; // rad/s
+  }
+
+  public static final class VisionConstants
+  {
+
+    // PhotonVision camera names and the transform from the robot center to each camera, same order
+    public static final String[]      CAMERA_NAMES     = {"front", "back"};
+    public static final Transform3d[] ROBOT_TO_CAMERAS = {
+        new Transform3d(new Translation3d(0.3, 0, 0.25), new Rotation3d(0, Units.degreesToRadians(-20), 0)),
+        new Transform3d(new Translation3d(-0.3, 0, 0.25), new Rotation3d(0, Units.degreesToRadians(-20), Math.PI))};
+    // Object detection camera that sees other robots, pitched down, their bumpers become pathfinding obstacles
+    public static final String      ROBOT_CAMERA_NAME     = "robots";
+    public static final Transform3d ROBOT_TO_ROBOT_CAMERA =
+        new Transform3d(new Translation3d(0.3, 0, 0.5), new Rotation3d(0, Units.degreesToRadians(15), 0));
+    public static final double      BUMPER_HEIGHT         = 0.1; // meters, center of a detected bumper
+    public static final double      OBSTACLE_SIZE         = 1.0; // meters, square kept clear around a detected robot
+    // Detected robots are dropped from the pathfinder when the camera has not seen them for this long
+    public static final double      OBSTACLE_TIMEOUT      = 0.5; // seconds
+    // Pose solving threads shared by all cameras
+    public static final int    MAX_THREADS               = 2;
+    // Outlier rejection
+    public static final double MAX_AMBIGUITY             = 0.2;
+    public static final double MAX_SINGLE_TAG_DISTANCE   = 4.0; // meters
+    public static final double MAX_TAG_DISTANCE          = 6.0; // meters
+    public static final double MAX_ODOMETRY_DISAGREEMENT = 1.0; // meters
+    // Frames this close to each other but all past MAX_ODOMETRY_DISAGREEMENT mean odometry is lost, accept them
+    public static final int    RECOVERY_FRAMES           = 5;
+    public static final double MAX_FRAME_DISAGREEMENT    = 0.5; // meters
+    // Standard deviations at zero distance, scaled up with the square of the tag distance
+    public static final double SINGLE_TAG_XY_STD_DEV     = 0.5; // meters
+    public static final double SINGLE_TAG_THETA_STD_DEV  = 1.0; // radians
+    public static final double MULTI_TAG_XY_STD_DEV      = 0.2; // meters
+    public static final double MULTI_TAG_THETA_STD_DEV   = 0.4; // radians
+    public static final double STD_DEV_DISTANCE_SCALE    = 8.0; // meters squared
+  }
+
+  public static final class AimingConstants
+  {
+
+    // 2024 field dimensions and speaker openings
+    public static final double        FIELD_LENGTH     = 16.541; // meters
+    public static final double        FIELD_WIDTH      = 8.211; // meters
+    public static final Translation2d BLUE_SPEAKER     = new Translation2d(0.0, 5.548);
+    public static final Translation2d RED_SPEAKER      = new Translation2d(16.541, 5.548);
+    // Grid spacing of the aiming table
+    public static final double        GRID_RESOLUTION  = 0.1; // meters
+    // Average note speed used for the velocity lead, 0 disables the lead
+    public static final double        PROJECTILE_SPEED = 0; // m/s
+  }
+
+  public static final class PathfindingConstants
+  {
+
+    // Cell size of the pathfinding grid, also used when no PathPlanner navgrid.json is deployed
+    public static final double NODE_SIZE    = 0.2; // meters
+    // Planning time before the pathfinder thread checks for newer requests
+    public static final double REPLAN_SLICE = 0.004; // seconds
+    // Distance from the module centers to the outside of the bumpers, for the collision footprint
+    public static final double FOOTPRINT_MARGIN = 0.15; // meters
+  }
+
+  public static final class LoggingConstants
+  {
+
+    // Write module states, pose and velocities to the compact log as well as the DataLogManager log
+    public static final boolean COMPACT_LOG           = true;
+    // Total size of compact log files kept on the roboRIO or USB drive
+    public static final long    COMPACT_LOG_MAX_BYTES = 256L * 1024 * 1024; // bytes
+    // Frames the robot loop can queue ahead of the writer thread
+    public static final int     COMPACT_LOG_CAPACITY  = 1024;
+    // Record the driver controller every loop for replay in simulation, see InputRecorder
+    public static final boolean INPUT_LOG             = true;
+    // Total size of input log files kept, a match of inputs is well under a megabyte
+    public static final long    INPUT_LOG_MAX_BYTES   = 64L * 1024 * 1024; // bytes
+  }
+
+  public static final class LoadSheddingConstants
+  {
+
+    // Robot loop work time above which dashboard and logging work is shed, see LoadShedder
+    public static final double BUDGET           = 0.016; // seconds
+    // Shed work comes back once the loop time stays under this fraction of the budget for RESTORE_TIME
+    public static final double RESTORE_FRACTION = 0.6;
+    public static final double RESTORE_TIME     = 1.0; // seconds
+    // Decimated work runs once every this many loops
+    public static final int    DECIMATION       = 5;
+  }
+
+  public static final class JitWarmupConstants
+  {
+
+    // Run the drive code on synthetic inputs while disabled so it is compiled before enable, see JitWarmup. Never in
+    // simulation, where it would disturb lockstep control and input replay
+    public static final boolean ENABLED        = true;
+    // Warm-up time taken from each disabled loop
+    public static final double  SLICE          = 0.005; // seconds
+    // Warm-up iterations before the compilation counter is trusted, past the C2 compile thresholds
+    public static final int     MIN_ITERATIONS = 20000;
+    // Warm-up is done once no method has been compiled for this long
+    public static final double  PLATEAU_TIME   = 1.0; // seconds
+    // Give up after this much warm-up time, the counter is JVM wide and other code may keep it moving
+    public static final double  TIMEOUT        = 30.0; // seconds
+    // Enabled loops timed after each enable for the first loop latency report
+    public static final int     REPORT_LOOPS   = 50;
   }
 
   public static class OperatorConstants
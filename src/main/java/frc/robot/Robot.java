@@ -4,14 +4,24 @@
 
 package frc.robot;
 
-import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.LoadShedder;
+import frc.robot.util.LoadShedder.Priority;
+import frc.robot.util.log.InputReplay;
 import java.io.File;
 import java.io.IOException;
-import swervelib.parser.SwerveParser;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to each mode, as
@@ -21,6 +31,34 @@ import swervelib.parser.SwerveParser;
 public class Robot extends TimedRobot
 {
 
+  /**
+   * Set with {@code -Dfrc.cds.train=true} for a class data sharing training run. The robot exits once startup and some
+   * disabled loops have loaded their classes, and the JVM writes the archive named by {@code -XX:ArchiveClassesAtExit}.
+   */
+  private static final boolean CDS_TRAINING        = Boolean.getBoolean("frc.cds.train");
+  /**
+   * JVM uptime in milliseconds after which a training run exits.
+   */
+  private static final long    CDS_TRAINING_UPTIME = 15000;
+  /**
+   * Unified JVM log of the cds tag, set with {@code -Dfrc.cds.log=<file>} next to {@code -Xlog:cds=info:file=<file>}.
+   */
+  private static final String  CDS_LOG             = System.getProperty("frc.cds.log");
+  /**
+   * Port for lockstep simulation control, set by {@code ./gradlew simulateJava -PsimControl=<port>}.
+   */
+  private static final String  SIM_CONTROL_PORT    = System.getenv("FRC_SIM_CONTROL_PORT");
+  /**
+   * Input log to replay in simulation instead of the controller, set by
+   * {@code ./gradlew simulateJava -PinputReplay=<file>}.
+   */
+  private static final String  INPUT_REPLAY        = System.getenv("FRC_INPUT_REPLAY");
+
+  /**
+   * Name of the per loop work time entry in the .wpilog, read by {@link frc.robot.tools.LogAnalyzer}.
+   */
+  public static final String   LOOP_TIME_ENTRY     = "Robot/Loop Time";
+
   private static Robot   instance;
   private        Command m_autonomousCommand;
 
@@ -28,6 +66,9 @@ public class Robot extends TimedRobot
 
   private Timer disabledTimer;
 
+  // Appended every loop, unlike NetworkTables values which are only logged when they change
+  private DoubleLogEntry loopTimeLog;
+
   public Robot()
   {
     instance = this;
@@ -46,11 +87,85 @@ public class Robot extends TimedRobot
   {
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
-    m_robotContainer = new RobotContainer();
+    m_robotContainer = new RobotContainer(loadInputReplay());
+    loopTimeLog = new DoubleLogEntry(DataLogManager.getLog(), LOOP_TIME_ENTRY, "ms");
+
+    // Run the drive path faster than the scheduler when enabled. Offset so it does not line up with robotPeriodic.
+    if (Constants.DrivebaseConstants.HIGH_RATE_DRIVE)
+    {
+      addPeriodic(m_robotContainer.getHighRateDriveLoop(), Constants.DrivebaseConstants.HIGH_RATE_DRIVE_PERIOD, 0.002);
+    }
 
     // Create a timer to disable motor brake a few seconds after disable.  This will let the robot stop
     // immediately when disabled, but then also let it be pushed more 
     disabledTimer = new Timer();
+
+    reportStartupTime();
+  }
+
+  /**
+   * Read the input log to replay, if one was given and this is a simulation.
+   *
+   * @return The replay, or null to drive from the controller.
+   */
+  private static InputReplay loadInputReplay()
+  {
+    if (INPUT_REPLAY == null || !RobotBase.isSimulation())
+    {
+      return null;
+    }
+    try
+    {
+      InputReplay replay = InputReplay.load(new File(INPUT_REPLAY));
+      System.out.println("Replaying " + replay.size() + " loops of driver inputs from " + INPUT_REPLAY);
+      return replay;
+    } catch (IOException e)
+    {
+      DriverStation.reportError("Could not read input replay " + INPUT_REPLAY + ": " + e.getMessage(), false);
+      return null;
+    }
+  }
+
+  /**
+   * Print and publish the time from JVM start to the end of robotInit, and whether the robot's class data sharing
+   * archive was used, so startup with and without the archive can be compared.
+   */
+  private void reportStartupTime()
+  {
+    long startupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    boolean sharing = robotArchiveMapped();
+    System.out.println("robotInit complete " + startupMillis + " ms after JVM start, robot.jsa "
+                       + (sharing ? "mapped" : "not mapped") + (CDS_TRAINING ? ", training run" : ""));
+    SmartDashboard.putNumber("Startup/robotInit ms", startupMillis);
+    SmartDashboard.putBoolean("Startup/Class Data Sharing", sharing);
+  }
+
+  /**
+   * Whether the JVM mapped the robot's dynamic archive. The "sharing" in java.vm.info only says the JDK's base archive
+   * was mapped, which happens with or without robot.jsa, so this reads the cds log the JVM wrote at startup instead.
+   *
+   * @return True if the cds log shows a dynamic archive region was mapped.
+   */
+  private static boolean robotArchiveMapped()
+  {
+    if (CDS_LOG == null)
+    {
+      return false;
+    }
+    try
+    {
+      for (String line : Files.readAllLines(Path.of(CDS_LOG)))
+      {
+        if (line.contains("Mapped dynamic region"))
+        {
+          return true;
+        }
+      }
+    } catch (IOException e)
+    {
+      DriverStation.reportWarning("Could not read class data sharing log " + CDS_LOG + ": " + e.getMessage(), false);
+    }
+    return false;
   }
 
   /**
@@ -67,7 +182,30 @@ public class Robot extends TimedRobot
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    long loopStart = RobotController.getFPGATime();
+    LoadShedder loadShedder = m_robotContainer.getLoadShedder();
+    m_robotContainer.sampleLatencyInput();
+    m_robotContainer.recordInputs();
     CommandScheduler.getInstance().run();
+
+    // Logged through NetworkTables for the post match reports, see frc.robot.tools.LogAnalyzer.
+    if (loadShedder.shouldRun(Priority.IMPORTANT))
+    {
+      SmartDashboard.putNumber("Power/Battery Voltage", RobotController.getBatteryVoltage());
+      SmartDashboard.putBoolean("Power/Brownout", RobotController.isBrownedOut());
+    }
+    long loopMicros = RobotController.getFPGATime() - loopStart;
+    loopTimeLog.append(loopMicros / 1000.0);
+    loadShedder.endLoop(loopMicros);
+    m_robotContainer.endJitWarmupLoop(loopMicros);
+
+    // Only while disabled, a training run left deployed must never kill an enabled robot.
+    if (CDS_TRAINING && DriverStation.isDisabled()
+        && ManagementFactory.getRuntimeMXBean().getUptime() > CDS_TRAINING_UPTIME)
+    {
+      System.out.println("Class data sharing training run finished, exiting to write the archive");
+      System.exit(0);
+    }
   }
 
   /**
@@ -89,6 +227,8 @@ public class Robot extends TimedRobot
       m_robotContainer.setMotorBrake(false);
       disabledTimer.stop();
     }
+    // Outside the work robotPeriodic times, so the warm-up slice does not count against the load shedding budget.
+    m_robotContainer.runJitWarmup();
   }
 
   /**
@@ -98,6 +238,7 @@ public class Robot extends TimedRobot
   public void autonomousInit()
   {
     m_robotContainer.setMotorBrake(true);
+    m_robotContainer.rotateLogs();
     m_autonomousCommand = m_robotContainer.getAutonomousCommand();
 
     // schedule the autonomous command (example)
@@ -126,6 +267,11 @@ public class Robot extends TimedRobot
     {
       m_autonomousCommand.cancel();
     }
+    // A match continues the file started in autonomous, practice runs get a file per enable.
+    if (!DriverStation.isFMSAttached())
+    {
+      m_robotContainer.rotateLogs();
+    }
     m_robotContainer.setDriveMode();
     m_robotContainer.setMotorBrake(true);
   }
@@ -143,13 +289,7 @@ public class Robot extends TimedRobot
   {
     // Cancels all running commands at the start of test mode.
     CommandScheduler.getInstance().cancelAll();
-    try
-    {
-      new SwerveParser(new File(Filesystem.getDeployDirectory(), "swerve"));
-    } catch (IOException e)
-    {
-      throw new RuntimeException(e);
-    }
+    m_robotContainer.reloadSwerveConfiguration();
   }
 
   /**
@@ -166,6 +306,13 @@ public class Robot extends TimedRobot
   @Override
   public void simulationInit()
   {
+    if (m_robotContainer.isReplayingInputs())
+    {
+      m_robotContainer.startInputReplay(getPeriod());
+    } else if (SIM_CONTROL_PORT != null)
+    {
+      m_robotContainer.startSimControl(Integer.parseInt(SIM_CONTROL_PORT), getPeriod());
+    }
   }
 
   /**
@@ -174,5 +321,7 @@ public class Robot extends TimedRobot
   @Override
   public void simulationPeriodic()
   {
+    // Last thing in the loop, so a lockstep step includes the whole loop.
+    m_robotContainer.simulationLoopDone();
   }
 }
\ No newline at end of file
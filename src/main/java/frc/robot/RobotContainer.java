@@ -4,6 +4,8 @@
 
 package frc.robot;
 
+import org.photonvision.PhotonCamera;
+
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -13,21 +15,42 @@ import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardComponent;
 import edu.wpi.first.wpilibj.shuffleboard.WidgetType;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.Constants.AutonConstants;
+import frc.robot.Constants.DrivebaseConstants;
+import frc.robot.Constants.JitWarmupConstants;
+import frc.robot.Constants.LoadSheddingConstants;
+import frc.robot.Constants.LoggingConstants;
 import frc.robot.Constants.OperatorConstants;
+import frc.robot.Constants.VisionConstants;
 import frc.robot.commands.AbsoluteDriveAdv;
 import frc.robot.commands.DriveRobotOriented;
+import frc.robot.commands.HighRateDrive;
 import frc.robot.commands.VelocitiesDrive;
 import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.subsystems.Vision;
+import frc.robot.util.JitWarmup;
+import frc.robot.util.LoadShedder;
+import frc.robot.util.log.InputRecorder;
+import frc.robot.util.log.InputReplay;
+import frc.robot.util.sim.InputReplayDriver;
+import frc.robot.util.sim.LockstepClock;
+import frc.robot.util.sim.SimControlServer;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
 
 /**
  * This class is where the bulk of the robot should be declared. Since Command-based is a "declarative" paradigm, very
@@ -40,10 +63,45 @@ public class RobotContainer
   // The robot's subsystems and commands are defined here...
   private final SwerveDrivetrain drivebase = new SwerveDrivetrain(new File(Filesystem.getDeployDirectory(),
                                                                          "swerve"));
+  // Fuses AprilTag poses from the cameras into the drivetrain pose estimator
+  private final Vision           vision    = new Vision(drivebase, cameras(), VisionConstants.ROBOT_TO_CAMERAS,
+                                                            new PhotonCamera(VisionConstants.ROBOT_CAMERA_NAME),
+                                                            VisionConstants.ROBOT_TO_ROBOT_CAMERA);
+  // Sampled into trajectory tables at startup so autonomousInit only schedules it
+  private final Command          autonomousCommand = drivebase.getAutonomousCommand("New Auto");
+
+  // Sheds dashboard and logging work when the robot loop runs over its budget
+  private final LoadShedder loadShedder = new LoadShedder(TimedRobot.kDefaultPeriod, LoadSheddingConstants.BUDGET,
+                                                          LoadSheddingConstants.RESTORE_FRACTION,
+                                                          LoadSheddingConstants.RESTORE_TIME,
+                                                          LoadSheddingConstants.DECIMATION);
+
+  // Runs the drive code on synthetic inputs while disabled so it is compiled before enable. Null when turned off and in
+  // simulation, where it would run drive commands between the steps of lockstep control and input replay.
+  private final JitWarmup jitWarmup = JitWarmupConstants.ENABLED && RobotBase.isReal()
+                                      ? new JitWarmup(drivebase, JitWarmupConstants.SLICE,
+                                                      JitWarmupConstants.MIN_ITERATIONS,
+                                                      JitWarmupConstants.PLATEAU_TIME, JitWarmupConstants.TIMEOUT,
+                                                      JitWarmupConstants.REPORT_LOOPS)
+                                      : null;
+
+  // Steps the simulation for sim control or input replay, null while simulated time follows the wall clock
+  private LockstepClock lockstepClock;
 
   // Replace with CommandPS4Controller or CommandJoystick if needed
   final CommandXboxController driverXbox = new CommandXboxController(0);
 
+  // Recorded driver inputs played back instead of the controller, see Robot#INPUT_REPLAY
+  private final InputReplay   inputReplay;
+  // Records the driver controller every loop, null when replaying or turned off
+  private       InputRecorder inputRecorder;
+
+  // Driver axes, from the controller or the replay
+  private final DoubleSupplier leftX, leftY, rightX, rightY, leftTrigger, rightTrigger;
+
+  // Drive path run from its own fast periodic callback, only used when DrivebaseConstants.HIGH_RATE_DRIVE is set
+  private final HighRateDrive highRateDrive;
+
     // public static Field2d field = new Field2d();
 
   /**
@@ -51,8 +109,43 @@ public class RobotContainer
    */
   public RobotContainer()
   {
+    this(null);
+  }
+
+  /**
+   * The container for the robot, driven by recorded inputs instead of the controller.
+   *
+   * @param inputReplay Recorded driver inputs, or null to use the controller.
+   */
+  public RobotContainer(InputReplay inputReplay)
+  {
+    this.inputReplay = inputReplay;
+    leftX = driverAxis(XboxController.Axis.kLeftX);
+    leftY = driverAxis(XboxController.Axis.kLeftY);
+    rightX = driverAxis(XboxController.Axis.kRightX);
+    rightY = driverAxis(XboxController.Axis.kRightY);
+    leftTrigger = driverAxis(XboxController.Axis.kLeftTrigger);
+    rightTrigger = driverAxis(XboxController.Axis.kRightTrigger);
+    highRateDrive = new HighRateDrive(drivebase,
+        leftX,
+        () -> -leftY.getAsDouble(),
+        () -> Math.atan2(MathUtil.applyDeadband(-rightTrigger.getAsDouble(), 0.5) , MathUtil.applyDeadband(leftTrigger.getAsDouble(), 0.5)));
+
     DataLogManager.start();
     DriverStation.startDataLog(DataLogManager.getLog());
+    if (LoggingConstants.COMPACT_LOG)
+    {
+      drivebase.startCompactLog(new File(DataLogManager.getLogDir(), "compact"));
+    }
+    if (LoggingConstants.INPUT_LOG && inputReplay == null)
+    {
+      inputRecorder = new InputRecorder(driverXbox.getHID(), new File(DataLogManager.getLogDir(), "inputs"),
+                                        LoggingConstants.INPUT_LOG_MAX_BYTES, LoggingConstants.COMPACT_LOG_CAPACITY);
+    }
+    drivebase.setLoadShedder(loadShedder);
+    vision.setLoadShedder(loadShedder);
+    // Trace stick to module latency on the translation stick, see LatencyTracer
+    drivebase.getLatencyTracer().setInput(() -> Math.hypot(leftX.getAsDouble(), leftY.getAsDouble()));
     // Configure the trigger bindings
     configureBindings();
 
@@ -62,27 +155,29 @@ public class RobotContainer
     // left stick controls translation
     // right stick controls the desired angle NOT angular rotation
     Command driveFieldOrientedDirectAngle = drivebase.driveCommand(
-        () -> MathUtil.applyDeadband(driverXbox.getLeftY(), OperatorConstants.LEFT_Y_DEADBAND),
-        () -> MathUtil.applyDeadband(driverXbox.getLeftX(), OperatorConstants.LEFT_X_DEADBAND),
-        () -> driverXbox.getRightX(),
-        () -> driverXbox.getRightY());
+        () -> MathUtil.applyDeadband(leftY.getAsDouble(), OperatorConstants.LEFT_Y_DEADBAND),
+        () -> MathUtil.applyDeadband(leftX.getAsDouble(), OperatorConstants.LEFT_X_DEADBAND),
+        rightX,
+        rightY);
 
     Command driveFieldOrientedDirectAngleSim = drivebase.simDriveCommand(
-        () -> MathUtil.applyDeadband(driverXbox.getLeftY(), OperatorConstants.LEFT_Y_DEADBAND),
-        () -> MathUtil.applyDeadband(driverXbox.getLeftX(), OperatorConstants.LEFT_X_DEADBAND),
-        () -> driverXbox.getRawAxis(2));
+        () -> MathUtil.applyDeadband(leftY.getAsDouble(), OperatorConstants.LEFT_Y_DEADBAND),
+        () -> MathUtil.applyDeadband(leftX.getAsDouble(), OperatorConstants.LEFT_X_DEADBAND),
+        leftTrigger);
 
     Command velocityDriveSim = new VelocitiesDrive(drivebase,
-        () -> driverXbox.getLeftX(),
-        () -> driverXbox.getLeftY(),
-        () -> driverXbox.getRawAxis(2));
+        leftX,
+        leftY,
+        leftTrigger,
+        loadShedder);
 
     Command robotOrientedDriveSim = new DriveRobotOriented(drivebase,
-        () -> driverXbox.getLeftX(),
-        () -> -driverXbox.getLeftY(),
-        () -> Math.atan2(MathUtil.applyDeadband(-driverXbox.getRawAxis(3), 0.5) , MathUtil.applyDeadband(driverXbox.getRawAxis(2), 0.5)));
+        leftX,
+        () -> -leftY.getAsDouble(),
+        () -> Math.atan2(MathUtil.applyDeadband(-rightTrigger.getAsDouble(), 0.5) , MathUtil.applyDeadband(leftTrigger.getAsDouble(), 0.5)));
     
     drivebase.setDefaultCommand(
+        DrivebaseConstants.HIGH_RATE_DRIVE ? highRateDrive :
         !RobotBase.isSimulation() ? robotOrientedDriveSim : robotOrientedDriveSim);
     }
 
@@ -97,13 +192,75 @@ public class RobotContainer
   {
     // Schedule `ExampleCommand` when `exampleCondition` changes to `true`
 
-    driverXbox.a().onTrue((Commands.runOnce(drivebase::zeroGyro)));
-    driverXbox.x().onTrue(Commands.runOnce(drivebase::addFakeVisionReading));
-    driverXbox.button(1).whileTrue(
+    driverButton(XboxController.Button.kA.value).onTrue((Commands.runOnce(drivebase::zeroGyro)));
+    driverButton(XboxController.Button.kX.value).onTrue(Commands.runOnce(drivebase::addFakeVisionReading));
+    // Hold to turn toward the alliance speaker
+    driverButton(XboxController.Button.kRightBumper.value).whileTrue(drivebase.aimAtSpeaker());
+    driverButton(1).whileTrue(
         Commands.deferredProxy(() -> drivebase.driveToPose(
                                    new Pose2d(new Translation2d(4, 4), Rotation2d.fromDegrees(90)))
                               ));
     // driverXbox.x().whileTrue(Commands.runOnce(drivebase::lock, drivebase).repeatedly());
+    // Which of the candidate paths is quickest from where the robot is now, raced in headless forks
+    String[] whatIfPaths = deployedPaths(AutonConstants.WHAT_IF_PATHS);
+    if (whatIfPaths.length > 0)
+    {
+      SmartDashboard.putData("What If/Race Paths", drivebase.racePathsCommand(whatIfPaths,
+                                                                               AutonConstants.WHAT_IF_TIMEOUT));
+    }
+    // Characterize the modules while enabled with room to drive, then save the drive fit so it is used from now on
+    SmartDashboard.putData("SysId/Drive Routine", drivebase.sysIdDriveMotorCommand());
+    SmartDashboard.putData("SysId/Angle Routine", drivebase.sysIdAngleMotorCommand());
+    SmartDashboard.putData("SysId/Save Drive Feedforward", drivebase.saveFeedforwardCommand());
+  }
+
+  /**
+   * The named PathPlanner paths that are deployed, warning about the others.
+   */
+  private static String[] deployedPaths(String[] names)
+  {
+    File directory = new File(Filesystem.getDeployDirectory(), "pathplanner/paths");
+    List<String> deployed = new ArrayList<>();
+    for (String name : names)
+    {
+      if (new File(directory, name + ".path").isFile())
+      {
+        deployed.add(name);
+      } else
+      {
+        DriverStation.reportWarning("What If path " + name + " is not deployed, it is left out of the race", false);
+      }
+    }
+    return deployed.toArray(new String[0]);
+  }
+
+  /**
+   * Cameras named in {@link VisionConstants#CAMERA_NAMES}.
+   */
+  private static PhotonCamera[] cameras()
+  {
+    PhotonCamera[] cameras = new PhotonCamera[VisionConstants.CAMERA_NAMES.length];
+    for (int i = 0; i < cameras.length; i++)
+    {
+      cameras[i] = new PhotonCamera(VisionConstants.CAMERA_NAMES[i]);
+    }
+    return cameras;
+  }
+
+  /**
+   * Driver axis from the replay when there is one, otherwise from the controller.
+   */
+  private DoubleSupplier driverAxis(XboxController.Axis axis)
+  {
+    return inputReplay != null ? inputReplay.axis(axis.value) : () -> driverXbox.getRawAxis(axis.value);
+  }
+
+  /**
+   * Driver button from the replay when there is one, otherwise from the controller.
+   */
+  private Trigger driverButton(int button)
+  {
+    return inputReplay != null ? new Trigger(inputReplay.button(button)) : driverXbox.button(button);
   }
 
   /**
@@ -114,7 +271,17 @@ public class RobotContainer
   public Command getAutonomousCommand()
   {
     // An example command will be run in autonomous
-    return drivebase.getAutonomousCommand("New Auto");
+    return autonomousCommand;
+  }
+
+  /**
+   * Fast drive loop to register with {@link edu.wpi.first.wpilibj.TimedRobot#addPeriodic}.
+   *
+   * @return The loop body.
+   */
+  public Runnable getHighRateDriveLoop()
+  {
+    return highRateDrive::loop;
   }
 
   public void setDriveMode()
@@ -122,8 +289,128 @@ public class RobotContainer
     //drivebase.setDefaultCommand();
   }
 
+  /**
+   * Start a new compact log file named after the match, or "practice" without the FMS.
+   */
+  public void rotateLogs()
+  {
+    String label = DriverStation.isFMSAttached()
+                   ? DriverStation.getEventName() + "_" + DriverStation.getMatchType() + "_"
+                     + DriverStation.getMatchNumber()
+                   : "practice";
+    drivebase.rotateCompactLog(label);
+    if (inputRecorder != null)
+    {
+      inputRecorder.rotate(label);
+    }
+  }
+
+  /**
+   * Sample the traced stick for the latency measurement, call before the command scheduler runs.
+   */
+  public void sampleLatencyInput()
+  {
+    drivebase.getLatencyTracer().sample();
+  }
+
+  /**
+   * Record this loop's driver inputs, call before the command scheduler runs.
+   */
+  public void recordInputs()
+  {
+    if (inputRecorder != null)
+    {
+      inputRecorder.record();
+    }
+  }
+
+  /**
+   * Load shedder the robot loop reports its time to.
+   *
+   * @return The load shedder.
+   */
+  public LoadShedder getLoadShedder()
+  {
+    return loadShedder;
+  }
+
+  /**
+   * Run a slice of JIT warm-up of the drive code, call from disabledPeriodic.
+   */
+  public void runJitWarmup()
+  {
+    if (jitWarmup != null)
+    {
+      jitWarmup.run();
+    }
+  }
+
+  /**
+   * Time the first enabled loops for the JIT warm-up report, call at the end of every loop.
+   *
+   * @param workMicros Time from the start to the end of the loop's work in microseconds.
+   */
+  public void endJitWarmupLoop(long workMicros)
+  {
+    if (jitWarmup != null)
+    {
+      jitWarmup.endLoop(workMicros);
+    }
+  }
+
+  /**
+   * Pause simulated time and let a client on a local socket step the robot loop, see {@link SimControlServer}.
+   *
+   * @param port   TCP port to listen on.
+   * @param period Robot loop period in seconds.
+   */
+  public void startSimControl(int port, double period)
+  {
+    lockstepClock = new LockstepClock(period);
+    new SimControlServer(drivebase, lockstepClock).start(port);
+  }
+
+  /**
+   * @return Whether the driver inputs come from a recording.
+   */
+  public boolean isReplayingInputs()
+  {
+    return inputReplay != null;
+  }
+
+  /**
+   * Play the recorded inputs back as fast as the robot code runs, see {@link InputReplayDriver}. Only valid when this
+   * container was created with a replay.
+   *
+   * @param period Robot loop period in seconds.
+   */
+  public void startInputReplay(double period)
+  {
+    lockstepClock = new LockstepClock(period);
+    new InputReplayDriver(inputReplay, lockstepClock).start();
+  }
+
+  /**
+   * Tell the lockstep clock the robot loop finished, call at the end of every simulated loop.
+   */
+  public void simulationLoopDone()
+  {
+    if (lockstepClock != null)
+    {
+      lockstepClock.loopDone();
+    }
+  }
+
   public void setMotorBrake(boolean brake)
   {
     drivebase.setMotorBrake(brake);
   }
+
+  /**
+   * Re-read the tunable swerve configuration files, changes are applied the next time the robot is disabled.
+   */
+  public void reloadSwerveConfiguration()
+  {
+    drivebase.reloadConfiguration();
+  }
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
 import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.LatencyTracer.Stage;
 import java.util.List;
 import java.util.function.DoubleSupplier;
 import swervelib.SwerveController;
@@ -69,6 +70,7 @@ public class AbsoluteDrive extends Command
   @Override
   public void execute()
   {
+    swerve.getLatencyTracer().mark(Stage.EXECUTE);
 
     // Get the desired chassis speeds based on a 2 joystick module.
     ChassisSpeeds desiredSpeeds = swerve.getTargetSpeeds(vX.getAsDouble(), vY.getAsDouble(),
@@ -93,10 +95,14 @@ public class AbsoluteDrive extends Command
     // Limit velocity to prevent tippy
     Translation2d translation = SwerveController.getTranslation2d(desiredSpeeds);
     translation = SwerveMath.limitVelocity(translation, swerve.getFieldVelocity(), swerve.getPose(),
-                                           Constants.LOOP_TIME, Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
+                                           swerve.getLoopTime(), Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
                                            swerve.getSwerveDriveConfiguration());
-    SmartDashboard.putNumber("LimitedTranslation", translation.getX());
-    SmartDashboard.putString("Translation", translation.toString());
+    // JIT warm-up runs this in shadow mode, its synthetic inputs must not show on the dashboard.
+    if (!swerve.isShadowMode())
+    {
+      SmartDashboard.putNumber("LimitedTranslation", translation.getX());
+      SmartDashboard.putString("Translation", translation.toString());
+    }
 
     // Make the robot move
     swerve.drive(translation, desiredSpeeds.omegaRadiansPerSecond, true);
@@ -11,6 +11,9 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
 import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.LatencyTracer.Stage;
+import frc.robot.util.LoadShedder;
+import frc.robot.util.LoadShedder.Priority;
 import java.util.List;
 import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
@@ -27,6 +30,7 @@ public class AbsoluteDriveAdv extends Command
   private final DoubleSupplier  vX, vY;
   private final DoubleSupplier  headingAdjust;
   private final BooleanSupplier lookAway, lookTowards, lookLeft, lookRight;
+  private final LoadShedder     loadShedder;
   private       boolean         resetHeading = false;
 
   /**
@@ -48,12 +52,14 @@ public class AbsoluteDriveAdv extends Command
    * @param lookTowards   Face the robot towards the driver
    * @param lookLeft      Face the robot left
    * @param lookRight     Face the robot right
+   * @param loadShedder   The robot's load shedder, for the debug dashboard output.
    */
   public AbsoluteDriveAdv(SwerveDrivetrain swerve, DoubleSupplier vX, DoubleSupplier vY, DoubleSupplier headingAdjust,
                           BooleanSupplier lookAway, BooleanSupplier lookTowards, BooleanSupplier lookLeft,
-                          BooleanSupplier lookRight)
+                          BooleanSupplier lookRight, LoadShedder loadShedder)
   {
     this.swerve = swerve;
+    this.loadShedder = loadShedder;
     this.vX = vX;
     this.vY = vY;
     this.headingAdjust = headingAdjust;
@@ -75,6 +81,7 @@ public class AbsoluteDriveAdv extends Command
   @Override
   public void execute()
   {
+    swerve.getLatencyTracer().mark(Stage.EXECUTE);
     double headingX = 0;
     double headingY = 0;
 
@@ -121,10 +128,13 @@ public class AbsoluteDriveAdv extends Command
     // Limit velocity to prevent tippy
     Translation2d translation = SwerveController.getTranslation2d(desiredSpeeds);
     translation = SwerveMath.limitVelocity(translation, swerve.getFieldVelocity(), swerve.getPose(),
-                                           Constants.LOOP_TIME, Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
+                                           swerve.getLoopTime(), Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
                                            swerve.getSwerveDriveConfiguration());
-    SmartDashboard.putNumber("LimitedTranslation", translation.getX());
-    SmartDashboard.putString("Translation", translation.toString());
+    if (loadShedder.shouldRun(Priority.BEST_EFFORT))
+    {
+      SmartDashboard.putNumber("LimitedTranslation", translation.getX());
+      SmartDashboard.putString("Translation", translation.toString());
+    }
 
     // Make the robot move
     if (headingX == 0 && headingY == 0 && Math.abs(headingAdjust.getAsDouble()) > 0)
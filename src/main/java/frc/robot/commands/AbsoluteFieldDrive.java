@@ -11,6 +11,9 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
 import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.LatencyTracer.Stage;
+import frc.robot.util.LoadShedder;
+import frc.robot.util.LoadShedder.Priority;
 import java.util.List;
 import java.util.function.DoubleSupplier;
 import swervelib.SwerveController;
@@ -24,6 +27,7 @@ public class AbsoluteFieldDrive extends Command
 
   private final SwerveDrivetrain swerve;
   private final DoubleSupplier  vX, vY, heading;
+  private final LoadShedder     loadShedder;
 
   /**
    * Used to drive a swerve robot in full field-centric mode.  vX and vY supply translation inputs, where x is
@@ -31,18 +35,20 @@ public class AbsoluteFieldDrive extends Command
    * coordinates from which the robot's angle will be derived— they will be converted to a polar angle, which the robot
    * will rotate to.
    *
-   * @param swerve  The swerve drivebase subsystem.
-   * @param vX      DoubleSupplier that supplies the x-translation joystick input.  Should be in the range -1 to 1 with
-   *                deadband already accounted for.  Positive X is away from the alliance wall.
-   * @param vY      DoubleSupplier that supplies the y-translation joystick input.  Should be in the range -1 to 1 with
-   *                deadband already accounted for.  Positive Y is towards the left wall when looking through the driver
-   *                station glass.
-   * @param heading DoubleSupplier that supplies the robot's heading angle.
+   * @param swerve      The swerve drivebase subsystem.
+   * @param vX          DoubleSupplier that supplies the x-translation joystick input.  Should be in the range -1 to 1
+   *                    with deadband already accounted for.  Positive X is away from the alliance wall.
+   * @param vY          DoubleSupplier that supplies the y-translation joystick input.  Should be in the range -1 to 1
+   *                    with deadband already accounted for.  Positive Y is towards the left wall when looking through
+   *                    the driver station glass.
+   * @param heading     DoubleSupplier that supplies the robot's heading angle.
+   * @param loadShedder The robot's load shedder, for the debug dashboard output.
    */
   public AbsoluteFieldDrive(SwerveDrivetrain swerve, DoubleSupplier vX, DoubleSupplier vY,
-                            DoubleSupplier heading)
+                            DoubleSupplier heading, LoadShedder loadShedder)
   {
     this.swerve = swerve;
+    this.loadShedder = loadShedder;
     this.vX = vX;
     this.vY = vY;
     this.heading = heading;
@@ -59,6 +65,7 @@ public class AbsoluteFieldDrive extends Command
   @Override
   public void execute()
   {
+    swerve.getLatencyTracer().mark(Stage.EXECUTE);
 
     // Get the desired chassis speeds based on a 2 joystick module.
 
@@ -68,10 +75,13 @@ public class AbsoluteFieldDrive extends Command
     // Limit velocity to prevent tippy
     Translation2d translation = SwerveController.getTranslation2d(desiredSpeeds);
     translation = SwerveMath.limitVelocity(translation, swerve.getFieldVelocity(), swerve.getPose(),
-                                           Constants.LOOP_TIME, Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
+                                           swerve.getLoopTime(), Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
                                            swerve.getSwerveDriveConfiguration());
-    SmartDashboard.putNumber("LimitedTranslation", translation.getX());
-    SmartDashboard.putString("Translation", translation.toString());
+    if (loadShedder.shouldRun(Priority.BEST_EFFORT))
+    {
+      SmartDashboard.putNumber("LimitedTranslation", translation.getX());
+      SmartDashboard.putString("Translation", translation.toString());
+    }
 
     // Make the robot move
     swerve.drive(translation, desiredSpeeds.omegaRadiansPerSecond, true);
@@ -8,6 +8,7 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.LatencyTracer.Stage;
 import swervelib.SwerveController;
 
 public class DriveRobotOriented extends Command {
@@ -28,6 +29,7 @@ public class DriveRobotOriented extends Command {
 
     @Override
     public void execute() {
+        swerveDrive.getLatencyTracer().mark(Stage.EXECUTE);
         ChassisSpeeds speeds = swerveDrive.getTargetSpeeds(xSpeed.getAsDouble(), ySpeed.getAsDouble(), Rotation2d.fromRadians(angle.getAsDouble()));
         Translation2d transform = SwerveController.getTranslation2d(speeds);
         transform = transform.rotateBy(Rotation2d.fromRadians(angle.getAsDouble()-Math.PI/2.0));
@@ -0,0 +1,145 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.AutonConstants;
+import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.odometry.PrimitivePoseEstimator;
+import frc.robot.util.path.TrajectoryTable;
+
+/**
+ * Follow a pre-sampled {@link TrajectoryTable} with the same feedforward plus PID scheme as the PathPlanner holonomic
+ * follower. Each loop interpolates between two table rows found by index, reads the pose from the primitive estimator
+ * and reuses its output objects, so nothing is allocated while following.
+ */
+public class FollowTrajectoryTable extends Command
+{
+
+  private final SwerveDrivetrain       swerve;
+  private final TrajectoryTable        blue, red;
+  private final PrimitivePoseEstimator poseEstimator;
+  private final Timer                  timer             = new Timer();
+  private final PIDController          xController       = new PIDController(AutonConstants.TRANSLATION_PID.kP,
+                                                                             AutonConstants.TRANSLATION_PID.kI,
+                                                                             AutonConstants.TRANSLATION_PID.kD);
+  private final PIDController          yController       = new PIDController(AutonConstants.TRANSLATION_PID.kP,
+                                                                             AutonConstants.TRANSLATION_PID.kI,
+                                                                             AutonConstants.TRANSLATION_PID.kD);
+  private final PIDController          headingController = new PIDController(AutonConstants.ANGLE_PID.kP,
+                                                                             AutonConstants.ANGLE_PID.kI,
+                                                                             AutonConstants.ANGLE_PID.kD);
+  private final ChassisSpeeds          speeds            = new ChassisSpeeds();
+  /**
+   * Feedforward module states as {angle, speed} pairs in radians and m/s, for comparison with the measured states.
+   */
+  private final double[]               moduleFeedforward = new double[2 * FourModuleKinematics.MODULES];
+  private final DoubleArrayPublisher   feedforwardPublisher;
+  private       TrajectoryTable        table;
+
+  /**
+   * @param swerve The swerve drivebase subsystem.
+   * @param blue   Table for the blue alliance.
+   * @param red    Table mirrored for the red alliance.
+   */
+  public FollowTrajectoryTable(SwerveDrivetrain swerve, TrajectoryTable blue, TrajectoryTable red)
+  {
+    this.swerve = swerve;
+    this.blue = blue;
+    this.red = red;
+    this.poseEstimator = swerve.getPoseEstimator();
+    headingController.enableContinuousInput(-Math.PI, Math.PI);
+    feedforwardPublisher = NetworkTableInstance.getDefault()
+                                               .getDoubleArrayTopic("/Trajectory/Module Feedforward").publish();
+    addRequirements(swerve);
+  }
+
+  /**
+   * Get the first sample of the table for the current alliance, to reset odometry to before an auto.
+   *
+   * @return Starting pose of the path.
+   */
+  public Pose2d getStartPose()
+  {
+    TrajectoryTable start = allianceTable();
+    return new Pose2d(start.x[0], start.y[0], new Rotation2d(start.heading[0]));
+  }
+
+  private TrajectoryTable allianceTable()
+  {
+    var alliance = DriverStation.getAlliance();
+    return alliance.isPresent() && alliance.get() == DriverStation.Alliance.Red ? red : blue;
+  }
+
+  @Override
+  public void initialize()
+  {
+    table = allianceTable();
+    xController.reset();
+    yController.reset();
+    headingController.reset();
+    swerve.postTrajectory(table);
+    timer.restart();
+  }
+
+  @Override
+  public void execute()
+  {
+    double t = timer.get();
+    int i = table.indexAt(t);
+    int j = Math.min(i + 1, table.size() - 1);
+    double f = j > i ? Math.min(1, (t - table.time[i]) / table.dt) : 0;
+
+    double targetX = lerp(table.x, i, j, f);
+    double targetY = lerp(table.y, i, j, f);
+    double targetHeading = table.heading[i] + FourModuleKinematics.wrap(table.heading[j] - table.heading[i]) * f;
+
+    double x = poseEstimator.getX();
+    double y = poseEstimator.getY();
+    double theta = poseEstimator.getHeadingRadians();
+    double fieldVx = lerp(table.vx, i, j, f) + xController.calculate(x, targetX);
+    double fieldVy = lerp(table.vy, i, j, f) + yController.calculate(y, targetY);
+    double omega = lerp(table.omega, i, j, f) + headingController.calculate(theta, targetHeading);
+
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    speeds.vxMetersPerSecond = fieldVx * cos + fieldVy * sin;
+    speeds.vyMetersPerSecond = -fieldVx * sin + fieldVy * cos;
+    speeds.omegaRadiansPerSecond = omega;
+    swerve.setChassisSpeeds(speeds);
+
+    for (int m = 0; m < FourModuleKinematics.MODULES; m++)
+    {
+      moduleFeedforward[2 * m] = table.moduleAngles[m][i];
+      moduleFeedforward[2 * m + 1] = table.moduleSpeeds[m][i];
+    }
+    feedforwardPublisher.set(moduleFeedforward);
+  }
+
+  private static double lerp(double[] values, int i, int j, double f)
+  {
+    return values[i] + (values[j] - values[i]) * f;
+  }
+
+  @Override
+  public boolean isFinished()
+  {
+    return timer.hasElapsed(table.getTotalTime());
+  }
+
+  @Override
+  public void end(boolean interrupted)
+  {
+    speeds.vxMetersPerSecond = 0;
+    speeds.vyMetersPerSecond = 0;
+    speeds.omegaRadiansPerSecond = 0;
+    swerve.setChassisSpeeds(speeds);
+  }
+}
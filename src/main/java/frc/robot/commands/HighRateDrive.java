@@ -0,0 +1,139 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants;
+import frc.robot.Constants.DrivebaseConstants;
+import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.DriveSetpointMailbox;
+import frc.robot.util.DriveSetpointMailbox.Mode;
+import frc.robot.util.DriveSetpointMailbox.Setpoint;
+import frc.robot.util.DriveStateSeqlock.Snapshot;
+import frc.robot.util.LatencyTracer.Stage;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import swervelib.SwerveController;
+import swervelib.math.Matter;
+import swervelib.math.SwerveMath;
+
+/**
+ * Robot oriented driving, like {@link DriveRobotOriented}, but with the drive path run from a dedicated
+ * {@link edu.wpi.first.wpilibj.TimedRobot#addPeriodic} callback at {@link DrivebaseConstants#HIGH_RATE_DRIVE_PERIOD}
+ * instead of the 50 Hz scheduler pass. While this command is scheduled it hands the drivetrain to the fast loop through
+ * the {@link DriveSetpointMailbox}; when another command takes the drivetrain this command ends and the fast loop goes
+ * idle. The handoff is sticks only: the fast loop reads and shapes the driver sticks itself, and commands such as path
+ * following keep driving from the scheduler.
+ *
+ * <p>Stick data only changes when the driver station data is refreshed, which the robot loop does once per 20 ms. The
+ * fast loop refreshes it itself, so a packet is picked up within one fast period of arriving instead of waiting for the
+ * next robot loop. It also samples the {@link frc.robot.util.LatencyTracer}, whose packet to sample stage shows the
+ * difference; compare it with this mode on and off before turning it on.
+ *
+ * <p>The fast loop is not a separate thread: addPeriodic callbacks run on the main robot thread, between robot loops.
+ * It reads the pose and velocity from the drivetrain state snapshot, the copy the last robot loop published, because
+ * that copy is consistent and costs no allocation, not for thread safety. The pose is only rebuilt when a new snapshot
+ * has been published, and the field velocity goes into a reused {@link ChassisSpeeds}, so the fast loop allocates little
+ * more than the swerve controller does.
+ *
+ * <p>The heading controller in {@link SwerveController} assumes a 20 ms period, so its derivative term is weaker at
+ * higher rates.
+ */
+public class HighRateDrive extends Command
+{
+
+  private static final List<Matter> CHASSIS = List.of(Constants.CHASSIS);
+
+  private final SwerveDrivetrain     swerve;
+  private final DoubleSupplier       xSpeed, ySpeed, angle;
+  private final DriveSetpointMailbox mailbox       = new DriveSetpointMailbox();
+  private final Setpoint             sticks        = new Setpoint(Mode.STICKS, 0, 0, 0, 0);
+  private final Snapshot             state         = new Snapshot();
+  private final ChassisSpeeds        fieldVelocity = new ChassisSpeeds();
+  /**
+   * Pose of the snapshot with version {@link #poseVersion}, and the rotation of {@link #lastAngle}.
+   */
+  private       Pose2d               pose          = new Pose2d();
+  private       long                 poseVersion   = -1;
+  private       Rotation2d           lastRotation  = new Rotation2d();
+  private       double               lastAngle;
+
+  /**
+   * @param swerve The swerve drivebase subsystem.
+   * @param xSpeed DoubleSupplier for the x-translation joystick input, -1 to 1.
+   * @param ySpeed DoubleSupplier for the y-translation joystick input, -1 to 1.
+   * @param angle  DoubleSupplier for the desired robot angle in radians.
+   */
+  public HighRateDrive(SwerveDrivetrain swerve, DoubleSupplier xSpeed, DoubleSupplier ySpeed, DoubleSupplier angle)
+  {
+    this.swerve = swerve;
+    this.xSpeed = xSpeed;
+    this.ySpeed = ySpeed;
+    this.angle = angle;
+    addRequirements(swerve);
+  }
+
+  @Override
+  public void initialize()
+  {
+    mailbox.post(sticks);
+  }
+
+  @Override
+  public void end(boolean interrupted)
+  {
+    mailbox.idle();
+  }
+
+  /**
+   * Fast loop body, registered with {@link edu.wpi.first.wpilibj.TimedRobot#addPeriodic}.
+   */
+  public void loop()
+  {
+    // Same thread as the robot loop, which refreshes again at its start.
+    DriverStation.refreshData();
+    swerve.getLatencyTracer().sample();
+    Setpoint setpoint = mailbox.peek();
+    if (!DriverStation.isEnabled() || setpoint.mode == Mode.IDLE)
+    {
+      return;
+    }
+    swerve.getLatencyTracer().mark(Stage.EXECUTE);
+
+    double desiredAngle = angle.getAsDouble();
+    if (desiredAngle != lastAngle)
+    {
+      lastAngle = desiredAngle;
+      lastRotation = Rotation2d.fromRadians(desiredAngle);
+    }
+    ChassisSpeeds speeds = swerve.getTargetSpeeds(xSpeed.getAsDouble(), ySpeed.getAsDouble(), lastRotation);
+    // Robot relative sticks, rotated by the desired angle less a quarter turn as DriveRobotOriented does.
+    double cos = Math.sin(desiredAngle), sin = -Math.cos(desiredAngle);
+    Translation2d translation = new Translation2d(speeds.vxMetersPerSecond * cos - speeds.vyMetersPerSecond * sin,
+                                                  speeds.vxMetersPerSecond * sin + speeds.vyMetersPerSecond * cos);
+
+    // Limit velocity to prevent tippy
+    swerve.getState(state);
+    if (state.version != poseVersion)
+    {
+      poseVersion = state.version;
+      pose = state.getPose();
+    }
+    fieldVelocity.vxMetersPerSecond = state.fieldVx;
+    fieldVelocity.vyMetersPerSecond = state.fieldVy;
+    fieldVelocity.omegaRadiansPerSecond = state.fieldOmega;
+    translation = SwerveMath.limitVelocity(translation, fieldVelocity, pose, Constants.HIGH_RATE_LOOP_TIME,
+                                           Constants.ROBOT_MASS, CHASSIS, swerve.getSwerveDriveConfiguration());
+
+    swerve.drive(translation, speeds.omegaRadiansPerSecond, true);
+  }
+
+  @Override
+  public boolean isFinished()
+  {
+    return false;
+  }
+}
@@ -10,6 +10,9 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
 import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.LatencyTracer.Stage;
+import frc.robot.util.LoadShedder;
+import frc.robot.util.LoadShedder.Priority;
 import swervelib.SwerveController;
 import swervelib.math.SwerveMath;
 
@@ -18,6 +21,7 @@ public class VelocitiesDrive extends Command {
   private final SwerveDrivetrain swerve;
   private final DoubleSupplier  vX, vY;
   private final DoubleSupplier omega;
+  private final LoadShedder loadShedder;
   private boolean initRotation = false;
 
   /**
@@ -26,9 +30,12 @@ public class VelocitiesDrive extends Command {
    * @param vXSupplier X Speed Supplier m/s
    * @param vYSupplier Y Speed Supplier m/s
    * @param omegaSupplier Rotation Speed Supplier rad/s
+   * @param loadShedder The robot's load shedder, for the debug dashboard output
    */
-  public VelocitiesDrive(SwerveDrivetrain swerveDrive, DoubleSupplier vXSupplier, DoubleSupplier vYSupplier, DoubleSupplier omegaSupplier) {
+  public VelocitiesDrive(SwerveDrivetrain swerveDrive, DoubleSupplier vXSupplier, DoubleSupplier vYSupplier, DoubleSupplier omegaSupplier,
+                         LoadShedder loadShedder) {
     this.swerve = swerveDrive;
+    this.loadShedder = loadShedder;
     this.vX = vXSupplier;
     this.vY = vYSupplier;
     double speed = 2.5;
@@ -46,7 +53,7 @@ public class VelocitiesDrive extends Command {
   @Override
   public void execute()
   {
-    System.out.println(omega.getAsDouble());
+    swerve.getLatencyTracer().mark(Stage.EXECUTE);
     // System.out.println(vX.getAsDouble());
     // System.out.println(vY.getAsDouble());
 
@@ -73,10 +80,13 @@ public class VelocitiesDrive extends Command {
     // Limit velocity to prevent tippy
     Translation2d translation = SwerveController.getTranslation2d(desiredSpeeds);
     translation = SwerveMath.limitVelocity(translation, swerve.getFieldVelocity(), swerve.getPose(),
-                                           Constants.LOOP_TIME, Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
+                                           swerve.getLoopTime(), Constants.ROBOT_MASS, List.of(Constants.CHASSIS),
                                            swerve.getSwerveDriveConfiguration());
-    SmartDashboard.putNumber("LimitedTranslation", translation.getX());
-    SmartDashboard.putString("Translation", translation.toString());
+    if (loadShedder.shouldRun(Priority.BEST_EFFORT))
+    {
+      SmartDashboard.putNumber("LimitedTranslation", translation.getX());
+      SmartDashboard.putString("Translation", translation.toString());
+    }
 
     // Make the robot move
     // System.out.println(translation);
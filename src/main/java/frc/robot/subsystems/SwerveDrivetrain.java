@@ -1,73 +1,234 @@
 package frc.robot.subsystems;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.function.DoubleSupplier;
 
 import org.photonvision.PhotonCamera;
 import org.photonvision.targeting.PhotonPipelineResult;
 
+import com.ctre.phoenix.sensors.PigeonIMU;
 import com.ctre.phoenix6.mechanisms.swerve.SimSwerveDrivetrain;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.commands.PathPlannerAuto;
 import com.pathplanner.lib.path.PathConstraints;
 import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.pathfinding.Pathfinding;
 import com.pathplanner.lib.util.HolonomicPathFollowerConfig;
 import com.pathplanner.lib.util.ReplanningConfig;
 
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Pair;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.kinematics.WheelPositions;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.trajectory.Trajectory;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.networktables.StructArrayPublisher;
 import edu.wpi.first.util.datalog.DataLogEntry;
+import edu.wpi.first.wpilibj.BuiltInAccelerometer;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine.Config;
+import frc.robot.Constants;
+import frc.robot.Constants.AimingConstants;
 import frc.robot.Constants.AutonConstants;
+import frc.robot.Constants.DrivebaseConstants;
+import frc.robot.Constants.LoggingConstants;
+import frc.robot.Constants.PathfindingConstants;
+import frc.robot.commands.FollowTrajectoryTable;
+import frc.robot.generated.SwerveConfig;
+import frc.robot.util.AimingTable;
+import frc.robot.util.ConfigFileWatcher;
+import frc.robot.util.DriveStateSeqlock;
+import frc.robot.util.DriveStateSeqlock.Snapshot;
+import frc.robot.util.FeedforwardEstimator;
+import frc.robot.util.LatencyTracer;
+import frc.robot.util.LatencyTracer.Stage;
+import frc.robot.util.LoadShedder;
+import frc.robot.util.LoadShedder.Priority;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.log.CompactLog;
+import frc.robot.util.odometry.PrimitivePoseEstimator;
+import frc.robot.util.odometry.SlipDetector;
+import frc.robot.util.path.DStarLitePathfinder;
+import frc.robot.util.path.FieldObstacles;
+import frc.robot.util.path.OccupancyGrid;
+import frc.robot.util.path.PathFile;
+import frc.robot.util.path.TrajectoryTable;
+import frc.robot.util.sim.HeadlessDrivetrain;
 import swervelib.SwerveController;
 import swervelib.SwerveDrive;
 import swervelib.SwerveDriveTest;
+import swervelib.SwerveModule;
 import swervelib.math.SwerveMath;
 import swervelib.parser.SwerveControllerConfiguration;
 import swervelib.parser.SwerveDriveConfiguration;
-import swervelib.parser.SwerveParser;
 import swervelib.parser.json.ControllerPropertiesJson;
-import swervelib.parser.json.ModuleJson;
 import swervelib.parser.json.PIDFPropertiesJson;
 import swervelib.parser.json.PhysicalPropertiesJson;
-import swervelib.parser.json.SwerveDriveJson;
 import swervelib.telemetry.SwerveDriveTelemetry;
 import swervelib.telemetry.SwerveDriveTelemetry.TelemetryVerbosity;
 
 public class SwerveDrivetrain extends SubsystemBase {
+  /**
+   * Configuration files that can be reloaded while the robot code is running, relative to the swerve directory.
+   */
+  private static final String PIDF_PROPERTIES       = "modules/pidfproperties.json";
+  private static final String PHYSICAL_PROPERTIES   = "modules/physicalproperties.json";
+  private static final String CONTROLLER_PROPERTIES = "controllerproperties.json";
+  /**
+   * Drive feedforward fitted by the SysId routine, see {@link #saveFeedforwardCommand()}.
+   */
+  private static final String DRIVE_FEEDFORWARD     = "modules/drivefeedforward.json";
+  /**
+   * Odometry standard deviation of the primitive pose estimator while the wheels are trusted.
+   */
+  private static final double STATE_STD_DEV         = 0.1;
+  private static final double GRAVITY               = 9.80665;
     /**
    * Swerve drive object.
    */
   private final SwerveDrive swerveDrive;
+  /**
+   * Allocation free kinematics for the four modules, built from the same module locations as the swerve drive.
+   */
+  private final FourModuleKinematics fastKinematics;
+  /**
+   * Allocation free pose estimator, the drivetrain's only pose source. YAGSL's odometry thread is stopped.
+   */
+  private       PrimitivePoseEstimator poseEstimator;
+  /**
+   * Pigeon behind YAGSL's gyro, read directly to avoid YAGSL allocating a rotation per read. Null in simulation, with
+   * other gyros, or when the drive is built from a configuration object.
+   */
+  private       PigeonIMU              pigeon;
+  /**
+   * Wheel slip and collision detector, scales the odometry and vision trust of the pose estimator.
+   */
+  private       SlipDetector           slipDetector;
+  private final BuiltInAccelerometer   accelerometer   = new BuiltInAccelerometer();
+  /**
+   * Gyro yaw and time of the previous slip check. The yaw is differentiated for the yaw rate only when there is no
+   * Pigeon to read the rate from.
+   */
+  private       double                 lastSlipYaw;
+  private       double                 lastSlipTime;
+  private final double[]               gyroRates       = new double[3];
+  /**
+   * Heading and range to the speaker over the whole field, built once at startup.
+   */
+  private final AimingTable            aimingTable     = new AimingTable(AimingConstants.FIELD_LENGTH,
+                                                                         AimingConstants.FIELD_WIDTH,
+                                                                         AimingConstants.GRID_RESOLUTION,
+                                                                         AimingConstants.BLUE_SPEAKER,
+                                                                         AimingConstants.RED_SPEAKER);
+  /**
+   * Online feedforward fits updated while the SysId routines run.
+   */
+  private final FeedforwardEstimator   driveFeedforward = new FeedforwardEstimator(0.05);
+  private final FeedforwardEstimator   angleFeedforward = new FeedforwardEstimator(5);
+  /**
+   * Previous module velocities and sample time, used to differentiate acceleration for the feedforward fits.
+   */
+  private final double[]               lastDriveVelocity = new double[FourModuleKinematics.MODULES];
+  private final double[]               lastAngleVelocity = new double[FourModuleKinematics.MODULES];
+  private       double                 lastFeedforwardSample;
+  /**
+   * Directory the swerve configuration was loaded from, null when built from a configuration object.
+   */
+  private final File                   configDirectory;
+  /**
+   * Watches the tunable swerve configuration files, null when there is no configuration directory.
+   */
+  private       ConfigFileWatcher      configWatcher;
+  /**
+   * Grid planner used by {@link #driveToPose(Pose2d)}, created with the PathPlanner configuration.
+   */
+  private       DStarLitePathfinder    pathfinder;
+  /**
+   * Field geometry used to validate paths and pose goals, null when deploy/fieldobstacles.json is missing.
+   */
+  private       FieldObstacles         fieldObstacles;
+  private final double[]               clampedGoal     = new double[2];
+  /**
+   * Module distances and angles read every loop, reused to avoid allocating.
+   */
+  private final double[]               moduleDistances = new double[FourModuleKinematics.MODULES];
+  private final double[]               moduleAngles    = new double[FourModuleKinematics.MODULES];
+  /**
+   * Compact log of the high rate drive channels, null until {@link #startCompactLog(File)}.
+   */
+  private       CompactLog             compactLog;
+  /**
+   * Decides which telemetry and logging to skip when the robot loop runs long, null to always run everything.
+   */
+  private       LoadShedder            loadShedder;
+  private final double[]               compactLogFrame  = new double[6 + 2 * FourModuleKinematics.MODULES];
+  /**
+   * Measured module speeds read every loop.
+   */
+  private final double[]               moduleSpeeds     = new double[FourModuleKinematics.MODULES];
+  /**
+   * Stick to module latency measurement.
+   */
+  private final LatencyTracer          latencyTracer    = new LatencyTracer();
+  /**
+   * Robot relative velocity from the module speeds of this loop.
+   */
+  private final double[]               robotVelocity    = new double[3];
+  /**
+   * State of this loop for readers on other threads.
+   */
+  private final DriveStateSeqlock      state            = new DriveStateSeqlock();
+  /**
+   * Current position for {@link #setPathfindingObstacles(List)}, reused so the call does not allocate a snapshot.
+   */
+  private final Snapshot               obstacleSnapshot = new Snapshot();
+  /**
+   * While set the drive methods do not command the modules and target speeds come from {@link #shadowController}, see
+   * {@link #setShadowMode(boolean)}.
+   */
+  private       boolean                shadowMode;
+  private       SwerveController       shadowController;
+  private       LatencyTracer          shadowLatencyTracer;
   // private DataLogEntry moduleLogEntry = new DataLogEntry();
   private final StructArrayPublisher<SwerveModuleState> modulePublisher;
   /**
    * Maximum speed of the robot in meters per second, used to limit acceleration.
    */
-  public double maximumSpeed = Units.feetToMeters(4.5);
+  public double maximumSpeed = DrivebaseConstants.MAX_SPEED;
 
   /**
-   * Initialize {@link SwerveDrive} with the directory provided.
+   * Initialize {@link SwerveDrive} from the configuration generated at build time. The directory provided is watched
+   * for tuning changes and receives saved feedforward gains.
    *
    * @param directory Directory of swerve drive config files.
    */ 
   public SwerveDrivetrain(File directory)
   {
+    configDirectory = directory;
     modulePublisher = NetworkTableInstance.getDefault().getStructArrayTopic("/SwerveStates", SwerveModuleState.struct).publish();
     // Angle conversion factor is 360 / (GEAR RATIO * ENCODER RESOLUTION)
     //  In this case the gear ratio is 12.8 motor revolutions per wheel rotation.
@@ -85,80 +246,30 @@ public class SwerveDrivetrain extends SubsystemBase {
 
     // Configure the Telemetry before creating the SwerveDrive to avoid unnecessary objects being created.
     SwerveDriveTelemetry.verbosity = TelemetryVerbosity.HIGH;
-    try
-    {
-      SwerveParser parser = new SwerveParser(directory);
-      SwerveDriveJson sdj = parser.swerveDriveJson;
-      PhysicalPropertiesJson ppj = parser.physicalPropertiesJson;
-      ControllerPropertiesJson cpj = parser.controllerPropertiesJson;
-      PIDFPropertiesJson pidj = parser.pidfPropertiesJson;
-      ModuleJson[] mjs = parser.moduleJsons;
-
-
-      System.out.println("-= Swerve Parser =-");
-      System.out.println(" - swervedrive.json -");
-      System.out.println("IMU Type: " + sdj.imu.type);
-      System.out.println("IMU CAN ID: " + sdj.imu.id);
-      System.out.println("IMU CAN Bus: " + sdj.imu.canbus);
-      System.out.println("Inverted IMU " + sdj.invertedIMU);
-      System.out.println("Modules: " + Arrays.toString(sdj.modules));
-      
-      System.out.println(" - physicalproperties.json -");
-      System.out.println("Optimal Voltage: " + ppj.optimalVoltage);
-      System.out.println("Grip Coefficient of Friction: " + ppj.wheelGripCoefficientOfFriction);
-      System.out.println("Current Limit Drive: " + ppj.currentLimit.drive);
-      System.out.println("Angle Gear Ratio: " + ppj.currentLimit.angle);
-      System.out.println("Drive Ramp Rate: " + ppj.rampRate.drive);
-      System.out.println("Angle Ramp Rate: " + ppj.rampRate.angle);
-
-      for (int i = 0; i < mjs.length; i++) {
-        ModuleJson json = mjs[i];
-        System.out.println(" - Module " + i + " -"); // Front Left -> Front Right -> Back Left -> Back Right
-        System.out.println("Location X: " + json.location.x);
-        System.out.println("Location Y: " + json.location.y);
-        System.out.println("Absolute Encoder Offset: " + json.absoluteEncoderOffset);
-        System.out.println("Drive Motor Type: " + json.drive.type);
-        System.out.println("Drive Motor CAN ID: " + json.drive.id);
-        System.out.println("Drive Motor CAN Bus: " + json.drive.canbus);
-        System.out.println("Drive Motor Inverted: " + json.inverted.drive);
-        System.out.println("Angle Motor Type: " + json.angle.type);
-        System.out.println("Angle Motor CAN ID: " + json.angle.id);
-        System.out.println("Angle Motor CAN Bus: " + json.angle.canbus);
-        System.out.println("Angle Motor Inverted: " + json.inverted.angle);
-        System.out.println("Encoder Type: " + json.encoder.type);
-        System.out.println("Encoder CAN ID: " + json.encoder.id);
-        System.out.println("Encoder CAN Bus: " + json.encoder.canbus);
-      }
-
-      System.out.println(" - controllerproperties.json -");
-      System.out.println("Joystick Radial Deadband: " + cpj.angleJoystickRadiusDeadband); 
-      System.out.println("Heading P: " + cpj.heading.p); 
-      System.out.println("Heading I: " + cpj.heading.i); 
-      System.out.println("Heading D: " + cpj.heading.d); 
-
-      System.out.println(" - pidfproperties.json -");
-      System.out.println("Drive P: " + pidj.drive.p);
-      System.out.println("Drive I: " + pidj.drive.i);
-      System.out.println("Drive D: " + pidj.drive.d);
-      System.out.println("Drive F: " + pidj.drive.f);
-      System.out.println("Drive Integral Zone: " + pidj.drive.iz);
-      System.out.println("Angle P: " + pidj.angle.p);
-      System.out.println("Angle I: " + pidj.angle.i);
-      System.out.println("Angle D: " + pidj.angle.d);
-      System.out.println("Angle F: " + pidj.angle.f);
-      System.out.println("Angle Integral Zone: " + pidj.angle.iz);
-
-      swerveDrive = parser.createSwerveDrive(maximumSpeed, SwerveMath.calculateMetersPerRotation(6, 1), 1);
+    // The configuration is generated from the deploy folder JSON at build time, see gradle/swerve-config.gradle.
+    System.out.println(SwerveConfig.DESCRIPTION);
+    SwerveDriveConfiguration driveConfiguration =
+        SwerveConfig.createDriveConfiguration(maximumSpeed, SwerveMath.calculateMetersPerRotation(6, 1), 1);
+    swerveDrive = new SwerveDrive(driveConfiguration,
+                                  SwerveConfig.createControllerConfiguration(driveConfiguration, maximumSpeed),
+                                  maximumSpeed);
 
-      // Alternative method if you don't want to supply the conversion factor via JSON files.
-      // swerveDrive = new SwerveParser(directory).createSwerveDrive(maximumSpeed, angleConversionFactor, driveConversionFactor);
-    } catch (Exception e)
-    {
-      throw new RuntimeException(e);
-    }
+    // Alternative method if you don't want to supply the conversion factor via JSON files.
+    // swerveDrive = new SwerveDrive(SwerveConfig.createDriveConfiguration(maximumSpeed, angleConversionFactor, driveConversionFactor), ...);
+    fastKinematics = new FourModuleKinematics(swerveDrive.swerveDriveConfiguration.moduleLocationsMeters);
+    pigeon = findPigeon();
+    setupPoseEstimator();
     swerveDrive.setHeadingCorrection(false); // Heading correction should only be used while controlling the robot via angle.
     swerveDrive.setCosineCompensator(!SwerveDriveTelemetry.isSimulation); // Disables cosine compensation for simulations since it causes discrepancies not seen in real life.
     setupPathPlanner();
+    loadDriveFeedforward();
+    try
+    {
+      configWatcher = new ConfigFileWatcher(directory, PIDF_PROPERTIES, PHYSICAL_PROPERTIES, CONTROLLER_PROPERTIES);
+    } catch (IOException e)
+    {
+      DriverStation.reportWarning("Swerve configuration hot reload disabled: " + e.getMessage(), false);
+    }
   }
 
   /**
@@ -169,8 +280,90 @@ public class SwerveDrivetrain extends SubsystemBase {
    */
   public SwerveDrivetrain(SwerveDriveConfiguration driveCfg, SwerveControllerConfiguration controllerCfg)
   {
+    configDirectory = null;
     modulePublisher = NetworkTableInstance.getDefault().getStructArrayTopic("/SwerveStates", SwerveModuleState.struct).publish();
     swerveDrive = new SwerveDrive(driveCfg, controllerCfg, maximumSpeed);
+    fastKinematics = new FourModuleKinematics(driveCfg.moduleLocationsMeters);
+    setupPoseEstimator();
+  }
+
+  /**
+   * Setup the primitive pose estimator with the same standard deviations as the YAGSL estimator, and stop the YAGSL
+   * odometry thread it replaces. In simulation {@link #periodic()} still runs YAGSL's odometry for the simulated gyro.
+   */
+  private void setupPoseEstimator()
+  {
+    swerveDrive.stopOdometryThread();
+    readModulePositions();
+    poseEstimator = new PrimitivePoseEstimator(fastKinematics,
+                                               readYaw(),
+                                               moduleDistances,
+                                               moduleAngles,
+                                               swerveDrive.getPose(),
+                                               new double[]{STATE_STD_DEV, STATE_STD_DEV, STATE_STD_DEV},
+                                               new double[]{0.9, 0.9, 0.9});
+    slipDetector = new SlipDetector(fastKinematics,
+                                    swerveDrive.swerveDriveConfiguration.physicalCharacteristics.wheelGripCoefficientOfFriction);
+    resetSlipDetector();
+  }
+
+  /**
+   * Get the Pigeon behind YAGSL's gyro so {@link #readYaw()} can read it directly.
+   *
+   * @return The Pigeon, or null in simulation or with another gyro.
+   */
+  private PigeonIMU findPigeon()
+  {
+    Object imu = swerveDrive.getGyro().getIMU();
+    return !SwerveDriveTelemetry.isSimulation && imu instanceof PigeonIMU ? (PigeonIMU) imu : null;
+  }
+
+  /**
+   * Read the gyro yaw. The Pigeon is read without allocating; other gyros and the simulated gyro go through YAGSL. The
+   * two differ by YAGSL's zero offset, which the pose estimator absorbs on every reset, so always read through here.
+   *
+   * @return Gyro yaw in radians, CCW positive.
+   */
+  private double readYaw()
+  {
+    if (pigeon == null)
+    {
+      return swerveDrive.getYaw().getRadians();
+    }
+    double yaw = Math.toRadians(pigeon.getYaw());
+    return SwerveConfig.INVERTED_IMU ? -yaw : yaw;
+  }
+
+  /**
+   * Copy the module positions into {@link #moduleDistances} and {@link #moduleAngles}. Reads the same drive motor and
+   * absolute encoder values as {@link SwerveModule#getPosition()} without building a position per module; in
+   * simulation the motors do not move, so the positions come from YAGSL's module simulation.
+   */
+  private void readModulePositions()
+  {
+    SwerveModule[] modules = swerveDrive.getModules();
+    for (int i = 0; i < FourModuleKinematics.MODULES; i++)
+    {
+      if (SwerveDriveTelemetry.isSimulation)
+      {
+        SwerveModulePosition position = modules[i].getPosition();
+        moduleDistances[i] = position.distanceMeters;
+        moduleAngles[i] = position.angle.getRadians();
+      } else
+      {
+        moduleDistances[i] = modules[i].getDriveMotor().getPosition();
+        moduleAngles[i] = Math.toRadians(modules[i].getAbsolutePosition());
+      }
+    }
+  }
+
+  /**
+   * Update the primitive pose estimator from the modules and gyro.
+   */
+  private void updatePoseEstimator()
+  {
+    readModulePositions();
+    poseEstimator.updateWithTime(Timer.getFPGATimestamp(), readYaw(), moduleDistances, moduleAngles);
   }
 
   /**
@@ -188,8 +381,8 @@ public class SwerveDrivetrain extends SubsystemBase {
                                          // Translation PID constants
                                          AutonConstants.ANGLE_PID,
                                          // Rotation PID constants
-                                         4.5,
-                                         // Max module speed, in m/s
+                                         AutonConstants.MAX_MODULE_SPEED,
+                                         // Max module speed, in m/s, same limit ./gradlew verifyPaths checks
                                          swerveDrive.swerveDriveConfiguration.getDriveBaseRadiusMeters(),
                                          // Drive base radius in meters. Distance from robot center to furthest module.
                                          new ReplanningConfig()
@@ -204,6 +397,84 @@ public class SwerveDrivetrain extends SubsystemBase {
         },
         this // Reference to this subsystem to set requirements
                                   );
+
+    // Field obstacles first, the pathfinding grid is built from them when no navgrid is deployed.
+    setupFieldObstacles();
+
+    // Replace PathPlanner's default pathfinder before any pathfinding command initializes it.
+    OccupancyGrid grid = null;
+    File navgrid = new File(Filesystem.getDeployDirectory(), "pathplanner/navgrid.json");
+    if (navgrid.isFile())
+    {
+      try
+      {
+        grid = OccupancyGrid.load(navgrid);
+      } catch (IOException e)
+      {
+        DriverStation.reportWarning("Could not load " + navgrid + ", pathfinding around the field obstacles instead: "
+                                    + e.getMessage(), false);
+      }
+    }
+    if (grid == null)
+    {
+      grid = new OccupancyGrid(AimingConstants.FIELD_LENGTH, AimingConstants.FIELD_WIDTH,
+                               PathfindingConstants.NODE_SIZE);
+      if (fieldObstacles != null)
+      {
+        fieldObstacles.fill(grid);
+      }
+    }
+    pathfinder = new DStarLitePathfinder(grid, PathfindingConstants.REPLAN_SLICE);
+    Pathfinding.setPathfinder(pathfinder);
+  }
+
+  /**
+   * Load the field obstacles, size the footprint from the module locations and check every deployed path against them.
+   * Leaves {@link #fieldObstacles} null when there is no obstacle file.
+   */
+  private void setupFieldObstacles()
+  {
+    File deploy = Filesystem.getDeployDirectory();
+    File file = new File(deploy, "fieldobstacles.json");
+    try
+    {
+      fieldObstacles = FieldObstacles.load(file);
+    } catch (IOException e)
+    {
+      DriverStation.reportWarning("Could not load " + file + ", paths and goals are not collision checked: "
+                                  + e.getMessage(), false);
+      return;
+    }
+    double halfLength = 0, halfWidth = 0;
+    for (Translation2d location : swerveDrive.swerveDriveConfiguration.moduleLocationsMeters)
+    {
+      halfLength = Math.max(halfLength, Math.abs(location.getX()));
+      halfWidth = Math.max(halfWidth, Math.abs(location.getY()));
+    }
+    fieldObstacles.setFootprint(halfLength + PathfindingConstants.FOOTPRINT_MARGIN,
+                                halfWidth + PathfindingConstants.FOOTPRINT_MARGIN);
+
+    int unsafe = 0;
+    try
+    {
+      for (PathFile path : PathFile.loadAll(new File(deploy, "pathplanner/paths")))
+      {
+        int i = fieldObstacles.firstCollision(path.x, path.y, path.rotation, path.size());
+        if (i >= 0)
+        {
+          unsafe++;
+          int next = Math.min(i + 1, path.size() - 1);
+          int hit = fieldObstacles.checkSweep(path.x[i], path.y[i], path.rotation[i], path.x[next], path.y[next],
+                                              path.rotation[next]);
+          DriverStation.reportWarning(String.format("Path %s hits %s near (%.2f, %.2f)", path.name,
+                                                    fieldObstacles.describe(hit), path.x[i], path.y[i]), false);
+        }
+      }
+    } catch (IOException e)
+    {
+      DriverStation.reportWarning("Could not check paths: " + e.getMessage(), false);
+    }
+    SmartDashboard.putNumber("Path Validation/Unsafe Paths", unsafe);
   }
 
   /**
@@ -227,29 +498,228 @@ public class SwerveDrivetrain extends SubsystemBase {
   }
 
   /**
-   * Get the path follower with events.
+   * Aim the robot at the alliance speaker using the precomputed {@link AimingTable}, optionally leading the shot by the
+   * robot velocity.
+   *
+   * @return A {@link Command} which will hold the robot pointed at the speaker.
+   */
+  public Command aimAtSpeaker()
+  {
+    return run(() -> {
+      var alliance = DriverStation.getAlliance();
+      int table = alliance.isPresent() && alliance.get() == DriverStation.Alliance.Red ? AimingTable.RED
+                                                                                         : AimingTable.BLUE;
+      ChassisSpeeds fieldVelocity = getFieldVelocity();
+      aimingTable.lookup(table, poseEstimator.getX(), poseEstimator.getY(), fieldVelocity.vxMetersPerSecond,
+                         fieldVelocity.vyMetersPerSecond, AimingConstants.PROJECTILE_SPEED);
+      driveFieldOriented(getTargetSpeeds(0, 0, new Rotation2d(aimingTable.getHeading())));
+      SmartDashboard.putNumber("Aim Range", aimingTable.getRange());
+    });
+  }
+
+  /**
+   * Run a PathPlanner auto's paths from pre-sampled trajectory tables. The paths are loaded and sampled for both
+   * alliances here, and odometry is reset to the start of the first path when the auto starts. Named commands and event
+   * markers in the auto are not run.
+   *
+   * @param autoName PathPlanner auto name.
+   * @return Command following each path of the auto in order, or nothing if a path could not be followed.
+   */
+  public Command getAutonomousCommand(String autoName)
+  {
+    List<PathPlannerPath> paths;
+    try
+    {
+      paths = PathPlannerAuto.getPathGroupFromAutoFile(autoName);
+    } catch (RuntimeException e)
+    {
+      DriverStation.reportError("Could not load auto " + autoName + ": " + e.getMessage(), false);
+      return Commands.none();
+    }
+    if (paths.isEmpty())
+    {
+      DriverStation.reportWarning("Auto " + autoName + " has no paths", false);
+      return Commands.none();
+    }
+    Command[] steps = new Command[paths.size() + 1];
+    for (int i = 0; i < paths.size(); i++)
+    {
+      FollowTrajectoryTable follower = followPathTable(autoName + " " + i, paths.get(i));
+      if (follower == null)
+      {
+        return Commands.none();
+      }
+      if (i == 0)
+      {
+        steps[0] = Commands.runOnce(() -> resetOdometry(follower.getStartPose()));
+      }
+      steps[i + 1] = follower;
+    }
+    return Commands.sequence(steps);
+  }
+
+  /**
+   * Follow a path from pre-sampled trajectory tables. The path is loaded and sampled for both alliances here, so call
+   * this while building commands rather than when scheduling them. Event markers are not triggered.
    *
-   * @param pathName       PathPlanner path name.
-   * @return {@link AutoBuilder#followPath(PathPlannerPath)} path command.
+   * @param pathName PathPlanner path name.
+   * @return {@link FollowTrajectoryTable} command.
    */
-  public Command getAutonomousCommand(String pathName)
+  public Command followPathTable(String pathName)
   {
-    // Create a path following command using AutoBuilder. This will also trigger event markers.
-    return new PathPlannerAuto(pathName);
+    FollowTrajectoryTable follower = followPathTable(pathName, PathPlannerPath.fromPathFile(pathName));
+    return follower != null ? follower : Commands.none();
   }
 
   /**
-   * Use PathPlanner Path finding to go to a point on the field.
+   * Sample a path for both alliances and check it against the field obstacles.
+   *
+   * @param name Name for the tables.
+   * @param path Path on the blue side.
+   * @return {@link FollowTrajectoryTable} command, or null if the path collides.
+   */
+  private FollowTrajectoryTable followPathTable(String name, PathPlannerPath path)
+  {
+    // Sampling turns the kinematics' module headings, so use a copy rather than the one shared with odometry.
+    FourModuleKinematics kinematics =
+        new FourModuleKinematics(swerveDrive.swerveDriveConfiguration.moduleLocationsMeters);
+    TrajectoryTable blue = TrajectoryTable.fromPath(name, path, kinematics, AutonConstants.TRAJECTORY_TABLE_DT);
+    TrajectoryTable red = TrajectoryTable.fromPath(name + " (red)", path.flipPath(), kinematics,
+                                                   AutonConstants.TRAJECTORY_TABLE_DT);
+    if (fieldObstacles != null)
+    {
+      for (TrajectoryTable table : new TrajectoryTable[]{blue, red})
+      {
+        int i = fieldObstacles.firstCollision(table.x, table.y, table.heading, table.size());
+        if (i >= 0)
+        {
+          DriverStation.reportWarning(String.format("Not following %s, it collides near (%.2f, %.2f)", table.name,
+                                                    table.x[i], table.y[i]), false);
+          return null;
+        }
+      }
+    }
+    double kilobytes = (blue.getSizeBytes() + red.getSizeBytes()) / 1024.0;
+    System.out.printf("Trajectory table %s: %d samples over %.2f s, %.1f KiB for both alliances%n",
+                      name, blue.size(), blue.getTotalTime(), kilobytes);
+    SmartDashboard.putNumber("Trajectory Tables/" + name + " KiB", kilobytes);
+    return new FollowTrajectoryTable(this, blue, red);
+  }
+
+  /**
+   * Fork the current drivetrain state into a headless simulation for what-if evaluation, for example to race several
+   * routines from this exact state with {@link HeadlessDrivetrain#raceRoutines(double)}. The pose estimator, module
+   * states, module distances and gyro are copied into the headless model, which runs the trajectory table follower on
+   * its own. YAGSL's module and gyro simulation, the command scheduler and the running commands are not part of it.
+   *
+   * @param pathNames PathPlanner paths the headless follower can run, sampled for the current alliance.
+   * @return Headless drivetrain starting from the current state, or null if a path could not be loaded.
+   */
+  public HeadlessDrivetrain forkSimulation(String... pathNames)
+  {
+    var alliance = DriverStation.getAlliance();
+    boolean red = alliance.isPresent() && alliance.get() == DriverStation.Alliance.Red;
+    FourModuleKinematics kinematics =
+        new FourModuleKinematics(swerveDrive.swerveDriveConfiguration.moduleLocationsMeters);
+    TrajectoryTable[] routines = new TrajectoryTable[pathNames.length];
+    try
+    {
+      for (int i = 0; i < pathNames.length; i++)
+      {
+        PathPlannerPath path = PathPlannerPath.fromPathFile(pathNames[i]);
+        routines[i] = TrajectoryTable.fromPath(pathNames[i], red ? path.flipPath() : path, kinematics,
+                                               AutonConstants.TRAJECTORY_TABLE_DT);
+      }
+    } catch (RuntimeException e)
+    {
+      DriverStation.reportError("Could not load paths to fork the simulation: " + e.getMessage(), false);
+      return null;
+    }
+    HeadlessDrivetrain headless = new HeadlessDrivetrain(swerveDrive.swerveDriveConfiguration.moduleLocationsMeters,
+                                                         swerveDrive.getMaximumVelocity(),
+                                                         DrivebaseConstants.SIM_DRIVE_TIME_CONSTANT,
+                                                         DrivebaseConstants.SIM_STEER_RATE,
+                                                         AutonConstants.TRANSLATION_PID,
+                                                         AutonConstants.ANGLE_PID,
+                                                         AutonConstants.TRAJECTORY_TABLE_DT,
+                                                         routines);
+    readModulePositions();
+    readModuleSpeeds();
+    headless.seed(Timer.getFPGATimestamp(), readYaw(), moduleSpeeds, moduleAngles,
+                  moduleDistances, poseEstimator);
+    return headless;
+  }
+
+  /**
+   * Race paths from the current state in forks of a headless simulation and publish how long each took, to pick the
+   * quickest from where the robot is now. Runs while disabled.
+   *
+   * @param pathNames PathPlanner paths to compare.
+   * @param timeout   Longest time to simulate each path, in seconds.
+   * @return Command publishing "What If/&lt;path&gt; s" for each path, infinite when it did not finish.
+   */
+  public Command racePathsCommand(String[] pathNames, double timeout)
+  {
+    return Commands.runOnce(() -> {
+      HeadlessDrivetrain headless = forkSimulation(pathNames);
+      if (headless == null)
+      {
+        return;
+      }
+      double[] finishTimes = headless.raceRoutines(timeout);
+      for (int i = 0; i < pathNames.length; i++)
+      {
+        SmartDashboard.putNumber("What If/" + pathNames[i] + " s", finishTimes[i]);
+      }
+    }).ignoringDisable(true);
+  }
+
+  /**
+   * Set obstacles that move, such as other robots seen by vision, for {@link #driveToPose(Pose2d)} to plan around. Only
+   * the grid cells that changed since the last call are replanned.
+   *
+   * <p>Call from the robot thread, the snapshot the current position is read into is reused between calls.
+   *
+   * @param obstacles Opposite corners of each obstacle's bounding box, field relative in meters.
+   */
+  public void setPathfindingObstacles(List<Pair<Translation2d, Translation2d>> obstacles)
+  {
+    state.read(obstacleSnapshot);
+    Pathfinding.setDynamicObstacles(obstacles, new Translation2d(obstacleSnapshot.x, obstacleSnapshot.y));
+  }
+
+  /**
+   * Use PathPlanner Path finding to go to a point on the field, planned by {@link DStarLitePathfinder}.
    *
    * @param pose Target {@link Pose2d} to go to.
    * @return PathFinding command
    */
   public Command driveToPose(Pose2d pose)
   {
+    if (fieldObstacles != null)
+    {
+      long start = System.nanoTime();
+      int hit = fieldObstacles.check(pose.getX(), pose.getY(), pose.getRotation().getRadians());
+      if (hit != FieldObstacles.FREE)
+      {
+        // Pull the goal back toward the robot until the footprint fits, or refuse to drive into the obstacle.
+        if (!fieldObstacles.clampGoal(pose.getX(), pose.getY(), pose.getRotation().getRadians(),
+                                      poseEstimator.getX(), poseEstimator.getY(), clampedGoal))
+        {
+          DriverStation.reportWarning("driveToPose goal " + pose + " hits " + fieldObstacles.describe(hit)
+                                      + " with no safe pose nearby, ignoring it", false);
+          return Commands.none();
+        }
+        DriverStation.reportWarning("driveToPose goal " + pose + " hits " + fieldObstacles.describe(hit)
+                                    + ", clamped to (" + clampedGoal[0] + ", " + clampedGoal[1] + ")", false);
+        pose = new Pose2d(clampedGoal[0], clampedGoal[1], pose.getRotation());
+      }
+      SmartDashboard.putNumber("Path Validation/Goal Check us", (System.nanoTime() - start) / 1000.0);
+    }
 // Create the constraints to use while pathfinding
     PathConstraints constraints = new PathConstraints(
-        swerveDrive.getMaximumVelocity(), 4.0,
-        swerveDrive.getMaximumAngularVelocity(), Units.degreesToRadians(720));
+        swerveDrive.getMaximumVelocity(), AutonConstants.MAX_ACCELERATION,
+        swerveDrive.getMaximumAngularVelocity(), AutonConstants.MAX_ANGULAR_ACCELERATION);
 
 // Since AutoBuilder is configured, we can use it to build pathfinding commands
     return AutoBuilder.pathfindToPose(
@@ -280,7 +750,7 @@ public class SwerveDrivetrain extends SubsystemBase {
       driveFieldOriented(swerveDrive.swerveController.getTargetSpeeds(xInput, yInput,
                                                                       headingX.getAsDouble(),
                                                                       headingY.getAsDouble(),
-                                                                      swerveDrive.getOdometryHeading().getRadians(),
+                                                                      getHeading().getRadians(),
                                                                       swerveDrive.getMaximumVelocity()));
     });
   }
@@ -301,7 +771,7 @@ public class SwerveDrivetrain extends SubsystemBase {
       driveFieldOriented(swerveDrive.swerveController.getTargetSpeeds(translationX.getAsDouble(),
                                                                       translationY.getAsDouble(),
                                                                       rotation.getAsDouble() * Math.PI,
-                                                                      swerveDrive.getOdometryHeading().getRadians(),
+                                                                      getHeading().getRadians(),
                                                                       swerveDrive.getMaximumVelocity()));
     });
   }
@@ -317,7 +787,8 @@ public class SwerveDrivetrain extends SubsystemBase {
         SwerveDriveTest.setDriveSysIdRoutine(
             new Config(),
             this, swerveDrive, 12),
-        3.0, 5.0, 3.0);
+        3.0, 5.0, 3.0)
+        .deadlineWith(feedforwardSampler(driveFeedforward, true));
   }
 
   /**
@@ -331,7 +802,204 @@ public class SwerveDrivetrain extends SubsystemBase {
         SwerveDriveTest.setAngleSysIdRoutine(
             new Config(),
             this, swerveDrive),
-        3.0, 5.0, 3.0);
+        3.0, 5.0, 3.0)
+        .deadlineWith(feedforwardSampler(angleFeedforward, false));
+  }
+
+  /**
+   * Command feeding module voltage, velocity and acceleration into a {@link FeedforwardEstimator} every loop and
+   * publishing the live fit. Does not require the drivetrain so it can run beside the SysId routine.
+   *
+   * @param estimator Estimator to feed, reset when the command starts.
+   * @param drive     True to sample the drive motors in m/s, false for the angle motors in deg/s.
+   * @return Sampling command.
+   */
+  private Command feedforwardSampler(FeedforwardEstimator estimator, boolean drive)
+  {
+    String name = drive ? "SysId/Drive " : "SysId/Angle ";
+    double[] lastVelocity = drive ? lastDriveVelocity : lastAngleVelocity;
+    return Commands.sequence(
+        Commands.runOnce(() -> {
+          estimator.reset();
+          Arrays.fill(lastVelocity, 0);
+          lastFeedforwardSample = Timer.getFPGATimestamp();
+        }),
+        Commands.run(() -> {
+          double now = Timer.getFPGATimestamp();
+          double dt = now - lastFeedforwardSample;
+          lastFeedforwardSample = now;
+          if (dt <= 0)
+          {
+            return;
+          }
+          SwerveModule[] modules = swerveDrive.getModules();
+          for (int i = 0; i < modules.length; i++)
+          {
+            double voltage = drive ? modules[i].getDriveMotor().getVoltage() : modules[i].getAngleMotor().getVoltage();
+            double velocity = drive ? modules[i].getState().speedMetersPerSecond
+                                    : modules[i].getAngleMotor().getVelocity();
+            estimator.addSample(voltage, velocity, (velocity - lastVelocity[i]) / dt);
+            lastVelocity[i] = velocity;
+          }
+          SmartDashboard.putNumber(name + "kS", estimator.getKs());
+          SmartDashboard.putNumber(name + "kV", estimator.getKv());
+          SmartDashboard.putNumber(name + "kA", estimator.getKa());
+          SmartDashboard.putNumber(name + "kS 95%", estimator.getConfidenceInterval(0));
+          SmartDashboard.putNumber(name + "kV 95%", estimator.getConfidenceInterval(1));
+          SmartDashboard.putNumber(name + "kA 95%", estimator.getConfidenceInterval(2));
+          SmartDashboard.putNumber(name + "Samples", estimator.getSampleCount());
+        }));
+  }
+
+  /**
+   * Save the drive feedforward fitted by {@link #sysIdDriveMotorCommand()} to modules/drivefeedforward.json and use it
+   * right away. The fit is in volts per m/s and m/s^2, the units of the feedforward YAGSL adds to the drive motors'
+   * velocity setpoints, so it replaces that feedforward. The PIDF "f" terms are left alone, a drive "f" would be added
+   * on top of it. The angle fit is only published: the angle motors are position controlled and YAGSL gives them no
+   * velocity feedforward.
+   *
+   * @return Command writing the file, does nothing when no fit is available.
+   */
+  public Command saveFeedforwardCommand()
+  {
+    return Commands.runOnce(() -> {
+      if (configDirectory == null)
+      {
+        DriverStation.reportWarning("No swerve configuration directory to write feedforward to", false);
+        return;
+      }
+      if (driveFeedforward.getSampleCount() <= 3)
+      {
+        DriverStation.reportWarning("No drive feedforward fit to save, run the SysId drive routine first", false);
+        return;
+      }
+      File file = new File(configDirectory, DRIVE_FEEDFORWARD);
+      try
+      {
+        driveFeedforward.save(file);
+        System.out.println("Wrote drive feedforward to " + file);
+      } catch (IOException e)
+      {
+        DriverStation.reportError("Could not write " + file + ": " + e.getMessage(), e.getStackTrace());
+        return;
+      }
+      loadDriveFeedforward();
+    }).ignoringDisable(true);
+  }
+
+  /**
+   * Use the drive feedforward saved by {@link #saveFeedforwardCommand()}, if there is one, in place of the one YAGSL
+   * estimates from the optimal voltage and maximum speed.
+   */
+  private void loadDriveFeedforward()
+  {
+    File file = new File(configDirectory, DRIVE_FEEDFORWARD);
+    if (!file.isFile())
+    {
+      return;
+    }
+    try
+    {
+      swerveDrive.replaceSwerveModuleFeedforward(FeedforwardEstimator.load(file));
+      System.out.println("Using the drive feedforward from " + file);
+    } catch (IOException e)
+    {
+      DriverStation.reportWarning("Could not load " + file + ", using the estimated drive feedforward: "
+                                  + e.getMessage(), false);
+    }
+  }
+
+  /**
+   * Re-read the tunable configuration files. Anything that changed is applied the next time the robot is disabled.
+   */
+  public void reloadConfiguration()
+  {
+    if (configWatcher != null)
+    {
+      configWatcher.requestReload();
+    }
+  }
+
+  /**
+   * Apply the configuration files that changed on disk to the live {@link SwerveDrive}. Gains, ramp rates and current
+   * limits are pushed to the existing motors without rebuilding the modules. Only call this while disabled, motor
+   * controllers may briefly stop closed loop control while they are reconfigured.
+   */
+  private void applyConfigurationChanges()
+  {
+    if (configWatcher == null)
+    {
+      return;
+    }
+    for (Map.Entry<String, JsonNode> change : configWatcher.poll().entrySet())
+    {
+      String name = change.getKey();
+      JsonNode json = change.getValue();
+      List<String> diff = ConfigFileWatcher.diff(configWatcher.getApplied(name), json);
+      List<String> needsRestart = new ArrayList<>();
+      try
+      {
+        ObjectMapper mapper = new ObjectMapper();
+        switch (name)
+        {
+          case PIDF_PROPERTIES:
+          {
+            PIDFPropertiesJson pidf = mapper.treeToValue(json, PIDFPropertiesJson.class);
+            for (SwerveModule module : swerveDrive.getModules())
+            {
+              module.setDrivePIDF(pidf.drive);
+              module.setAnglePIDF(pidf.angle);
+            }
+            break;
+          }
+          case PHYSICAL_PROPERTIES:
+          {
+            PhysicalPropertiesJson physical = mapper.treeToValue(json, PhysicalPropertiesJson.class);
+            for (SwerveModule module : swerveDrive.getModules())
+            {
+              module.getDriveMotor().setCurrentLimit(physical.currentLimit.drive);
+              module.getAngleMotor().setCurrentLimit(physical.currentLimit.angle);
+              module.getDriveMotor().setLoopRampRate(physical.rampRate.drive);
+              module.getAngleMotor().setLoopRampRate(physical.rampRate.angle);
+            }
+            for (String line : diff)
+            {
+              if (!line.startsWith("currentLimit.") && !line.startsWith("rampRate."))
+              {
+                needsRestart.add(line);
+              }
+            }
+            break;
+          }
+          case CONTROLLER_PROPERTIES:
+          {
+            ControllerPropertiesJson controller = mapper.treeToValue(json, ControllerPropertiesJson.class);
+            swerveDrive.swerveController.thetaController.setPID(controller.heading.p, controller.heading.i,
+                                                                controller.heading.d);
+            for (String line : diff)
+            {
+              if (!line.startsWith("heading."))
+              {
+                needsRestart.add(line);
+              }
+            }
+            break;
+          }
+          default:
+            continue;
+        }
+      } catch (IOException e)
+      {
+        DriverStation.reportError("Could not apply " + name + ": " + e.getMessage(), false);
+        continue;
+      }
+      configWatcher.markApplied(name, json);
+      System.out.println("Reloaded " + name);
+      for (String line : diff)
+      {
+        System.out.println("  " + line + (needsRestart.contains(line) ? " (needs a restart)" : ""));
+      }
+    }
   }
 
   /**
@@ -346,11 +1014,10 @@ public class SwerveDrivetrain extends SubsystemBase {
   {
     return run(() -> {
       // Make the robot move
-      swerveDrive.drive(new Translation2d(Math.pow(translationX.getAsDouble(), 3) * swerveDrive.getMaximumVelocity(),
-                                          Math.pow(translationY.getAsDouble(), 3) * swerveDrive.getMaximumVelocity()),
-                        Math.pow(angularRotationX.getAsDouble(), 3) * swerveDrive.getMaximumAngularVelocity(),
-                        true,
-                        false);
+      drive(new Translation2d(Math.pow(translationX.getAsDouble(), 3) * swerveDrive.getMaximumVelocity(),
+                              Math.pow(translationY.getAsDouble(), 3) * swerveDrive.getMaximumVelocity()),
+            Math.pow(angularRotationX.getAsDouble(), 3) * swerveDrive.getMaximumAngularVelocity(),
+            true);
     });
   }
 
@@ -370,10 +1037,17 @@ public class SwerveDrivetrain extends SubsystemBase {
    */
   public void drive(Translation2d translation, double rotation, boolean fieldRelative)
   {
-    swerveDrive.drive(translation,
-                      rotation,
-                      fieldRelative,
-                      false); // Open loop is disabled since it shouldn't be used most of the time.
+    if (shadowMode)
+    {
+      return;
+    }
+    latencyTracer.mark(Stage.DRIVE);
+    // Field relative speeds are rotated here, YAGSL would use the heading of its own stopped estimator.
+    // Closed loop, open loop shouldn't be used most of the time.
+    swerveDrive.drive(fieldRelative ? ChassisSpeeds.fromFieldRelativeSpeeds(translation.getX(), translation.getY(),
+                                                                            rotation, getHeading())
+                                    : new ChassisSpeeds(translation.getX(), translation.getY(), rotation));
+    latencyTracer.mark(Stage.SETPOINT);
   }
 
   /**
@@ -383,7 +1057,13 @@ public class SwerveDrivetrain extends SubsystemBase {
    */
   public void driveFieldOriented(ChassisSpeeds velocity)
   {
-    swerveDrive.driveFieldOriented(velocity);
+    if (shadowMode)
+    {
+      return;
+    }
+    latencyTracer.mark(Stage.DRIVE);
+    swerveDrive.drive(ChassisSpeeds.fromFieldRelativeSpeeds(velocity, getHeading()));
+    latencyTracer.mark(Stage.SETPOINT);
   }
 
   /**
@@ -393,22 +1073,276 @@ public class SwerveDrivetrain extends SubsystemBase {
    */
   public void drive(ChassisSpeeds velocity)
   {
+    if (shadowMode)
+    {
+      return;
+    }
+    latencyTracer.mark(Stage.DRIVE);
     swerveDrive.drive(velocity);
+    latencyTracer.mark(Stage.SETPOINT);
+  }
+
+  /**
+   * Run the drive code without moving the robot, for warming it up while disabled. In shadow mode the drive methods
+   * return without commanding the modules, and {@link #getTargetSpeeds} uses a heading controller of its own so the
+   * real controller's PID state and held heading are left alone. {@link #getLatencyTracer()} returns an idle tracer,
+   * so stage marks of the warmed commands do not land in a real trace. Only the robot thread may change the mode.
+   *
+   * @param shadowMode True to stop commanding the modules.
+   */
+  public void setShadowMode(boolean shadowMode)
+  {
+    if (shadowMode && shadowController == null)
+    {
+      shadowController = new SwerveController(swerveDrive.swerveController.config);
+      shadowLatencyTracer = new LatencyTracer();
+    }
+    this.shadowMode = shadowMode;
+  }
+
+  /**
+   * @return Whether the drive code is running without moving the robot, see {@link #setShadowMode(boolean)}.
+   */
+  public boolean isShadowMode()
+  {
+    return shadowMode;
+  }
+
+  /**
+   * Skip or decimate dashboard updates, then compact log frames, while the robot loop runs over its budget.
+   *
+   * @param loadShedder The robot's load shedder.
+   */
+  public void setLoadShedder(LoadShedder loadShedder)
+  {
+    this.loadShedder = loadShedder;
+  }
+
+  private boolean shouldRun(Priority priority)
+  {
+    return loadShedder == null || loadShedder.shouldRun(priority);
+  }
+
+  /**
+   * Start logging pose, field velocity and module states every loop to a {@link CompactLog}.
+   *
+   * @param directory Directory for the log files.
+   */
+  public void startCompactLog(File directory)
+  {
+    String[] names = new String[compactLogFrame.length];
+    double[] resolutions = new double[compactLogFrame.length];
+    String[] pose = {"Pose X", "Pose Y", "Pose Heading", "Field Velocity X", "Field Velocity Y", "Field Velocity Omega"};
+    double[] poseResolutions = {1e-4, 1e-4, 1e-4, 1e-3, 1e-3, 1e-3};
+    System.arraycopy(pose, 0, names, 0, pose.length);
+    System.arraycopy(poseResolutions, 0, resolutions, 0, pose.length);
+    for (int i = 0; i < FourModuleKinematics.MODULES; i++)
+    {
+      names[6 + 2 * i] = "Module " + i + " Speed";
+      resolutions[6 + 2 * i] = 1e-3;
+      names[7 + 2 * i] = "Module " + i + " Angle";
+      resolutions[7 + 2 * i] = 1e-4;
+    }
+    compactLog = new CompactLog(directory, LoggingConstants.COMPACT_LOG_MAX_BYTES,
+                                LoggingConstants.COMPACT_LOG_CAPACITY, names, resolutions);
+  }
+
+  /**
+   * Start a new compact log file, for example at the start of a match.
+   *
+   * @param label Label for the file name.
+   */
+  public void rotateCompactLog(String label)
+  {
+    if (compactLog != null)
+    {
+      compactLog.rotate(label);
+    }
+  }
+
+  /**
+   * Copy the measured module speeds into {@link #moduleSpeeds} and return their average magnitude.
+   */
+  private double readModuleSpeeds()
+  {
+    SwerveModule[] modules = swerveDrive.getModules();
+    double total = 0;
+    for (int i = 0; i < FourModuleKinematics.MODULES; i++)
+    {
+      // getState() allocates a state and a rotation, so read the drive motor directly outside of simulation.
+      moduleSpeeds[i] = SwerveDriveTelemetry.isSimulation ? modules[i].getState().speedMetersPerSecond
+                                                          : modules[i].getDriveMotor().getVelocity();
+      total += Math.abs(moduleSpeeds[i]);
+    }
+    return total / FourModuleKinematics.MODULES;
+  }
+
+  /**
+   * Check for wheel slip and collisions with the module readings of this loop, and scale the odometry trust of the
+   * primitive pose estimator to match. Vision measurements are scaled in {@link #addVisionMeasurement}.
+   */
+  private void updateSlipDetector()
+  {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastSlipTime;
+    lastSlipTime = now;
+    double yawRate;
+    if (pigeon != null)
+    {
+      pigeon.getRawGyro(gyroRates);
+      yawRate = Math.toRadians(SwerveConfig.INVERTED_IMU ? -gyroRates[2] : gyroRates[2]);
+    } else
+    {
+      double yaw = readYaw();
+      yawRate = dt > 0 ? MathUtil.angleModulus(yaw - lastSlipYaw) / dt : 0;
+      lastSlipYaw = yaw;
+    }
+
+    slipDetector.update(moduleSpeeds,
+                        moduleAngles,
+                        yawRate,
+                        accelerometer.getX() * GRAVITY,
+                        accelerometer.getY() * GRAVITY,
+                        dt);
+    double odometryStdDev = STATE_STD_DEV * slipDetector.getOdometryScale();
+    poseEstimator.setStateStdDevs(odometryStdDev, odometryStdDev, odometryStdDev);
+
+    if (!shouldRun(Priority.BEST_EFFORT))
+    {
+      return;
+    }
+    SmartDashboard.putBoolean("Odometry/Slipping", slipDetector.isSlipping());
+    SmartDashboard.putBoolean("Odometry/Collision", slipDetector.isCollided());
+    SmartDashboard.putNumber("Odometry/Residual", slipDetector.getResidual());
+    SmartDashboard.putNumber("Odometry/Trust Scale", slipDetector.getOdometryScale());
+  }
+
+  /**
+   * Restart the slip detector from the current gyro reading, after the gyro or odometry was reset. Otherwise the jump in
+   * yaw reads as a yaw rate the wheels did not see, which flags a slip.
+   */
+  private void resetSlipDetector()
+  {
+    lastSlipYaw = readYaw();
+    lastSlipTime = Timer.getFPGATimestamp();
+    slipDetector.reset();
+  }
+
+  /**
+   * Get the stick to module latency tracer. Commands mark {@link Stage#EXECUTE} with it, the drive methods mark the
+   * later stages.
+   *
+   * @return The latency tracer, an idle one that never traces in shadow mode.
+   */
+  public LatencyTracer getLatencyTracer()
+  {
+    return shadowMode ? shadowLatencyTracer : latencyTracer;
+  }
+
+  /**
+   * Latency to use for the velocity limiter, measured when {@link DrivebaseConstants#MEASURED_LOOP_TIME} is set.
+   *
+   * @return Stick to module latency in seconds, {@link frc.robot.Constants#LOOP_TIME} until measured.
+   */
+  public double getLoopTime()
+  {
+    return DrivebaseConstants.MEASURED_LOOP_TIME ? latencyTracer.getLoopTime(Constants.LOOP_TIME)
+                                                 : Constants.LOOP_TIME;
+  }
+
+  /**
+   * Publish this loop's pose, velocities and module states to {@link #state}. Uses the module positions and speeds read
+   * earlier in the loop.
+   */
+  private void publishState()
+  {
+    fastKinematics.toChassisSpeeds(moduleSpeeds, moduleAngles, robotVelocity);
+    state.publish(Timer.getFPGATimestamp(), poseEstimator.getX(), poseEstimator.getY(),
+                  poseEstimator.getHeadingRadians(), robotVelocity[0], robotVelocity[1], robotVelocity[2],
+                  moduleSpeeds, moduleAngles, moduleDistances);
+  }
+
+  /**
+   * Get a consistent copy of the drivetrain state published by the last loop. Safe to call from any thread, unlike
+   * {@link #getPose()} and the velocity getters, which read the swerve drive while the robot loop updates it.
+   *
+   * @param out Snapshot to fill, reuse it between calls.
+   */
+  public void getState(Snapshot out)
+  {
+    state.read(out);
+  }
+
+  /**
+   * Get the seqlock the drivetrain state is published to, for readers that want its version or retry counts.
+   *
+   * @return The drivetrain state seqlock.
+   */
+  public DriveStateSeqlock getStateSeqlock()
+  {
+    return state;
+  }
+
+  /**
+   * Queue this loop's frame to the compact log. Uses the velocity computed by {@link #publishState()}.
+   */
+  private void appendCompactLog()
+  {
+    double heading = poseEstimator.getHeadingRadians();
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    compactLogFrame[0] = poseEstimator.getX();
+    compactLogFrame[1] = poseEstimator.getY();
+    compactLogFrame[2] = heading;
+    compactLogFrame[3] = robotVelocity[0] * cos - robotVelocity[1] * sin;
+    compactLogFrame[4] = robotVelocity[0] * sin + robotVelocity[1] * cos;
+    compactLogFrame[5] = robotVelocity[2];
+    for (int i = 0; i < FourModuleKinematics.MODULES; i++)
+    {
+      compactLogFrame[6 + 2 * i] = moduleSpeeds[i];
+      compactLogFrame[7 + 2 * i] = moduleAngles[i];
+    }
+    compactLog.append(RobotController.getFPGATime(), compactLogFrame);
+    SmartDashboard.putNumber("Compact Log/Dropped Frames", compactLog.getDroppedFrames());
   }
 
   @Override
   public void periodic()
   {
-    allPeriodic();
+    if (SwerveDriveTelemetry.isSimulation)
+    {
+      // The simulated gyro integrates in YAGSL's odometry update, which no longer runs on its own thread.
+      swerveDrive.updateOdometry();
+    }
+    updatePoseEstimator();
+    latencyTracer.update(readModuleSpeeds());
+    updateSlipDetector();
+    publishState();
+    if (compactLog != null && shouldRun(Priority.IMPORTANT))
+    {
+      appendCompactLog();
+    }
+    if (DriverStation.isDisabled())
+    {
+      applyConfigurationChanges();
+    }
+    if (shouldRun(Priority.BEST_EFFORT))
+    {
+      allPeriodic();
+    }
   }
 
   @Override
   public void simulationPeriodic()
   {
-    allPeriodic();
+    if (shouldRun(Priority.BEST_EFFORT))
+    {
+      allPeriodic();
+    }
   }
 
   public void allPeriodic() {
+    swerveDrive.field.setRobotPose(getPose());
     SmartDashboard.putData("Field", swerveDrive.field);
     
     SmartDashboard.putNumber("Field Velocity X", getFieldVelocity().vxMetersPerSecond);
@@ -419,11 +1353,16 @@ public class SwerveDrivetrain extends SubsystemBase {
     SmartDashboard.putNumber("Robot Velocity Y", getRobotVelocity().vyMetersPerSecond);
     SmartDashboard.putNumber("Robot Velocity Ω", getRobotVelocity().omegaRadiansPerSecond);
 
-    SmartDashboard.putNumber("Pose X", getPose().getX());
-    SmartDashboard.putNumber("Pose Y", getPose().getY());
-    SmartDashboard.putNumber("Pose Degrees", getPose().getRotation().getDegrees());
+    SmartDashboard.putNumber("Pose X", poseEstimator.getX());
+    SmartDashboard.putNumber("Pose Y", poseEstimator.getY());
+    SmartDashboard.putNumber("Pose Degrees", Math.toDegrees(poseEstimator.getHeadingRadians()));
 
     modulePublisher.set(swerveDrive.getStates()); // kinda confused by this, this should log swerve states
+
+    if (pathfinder != null)
+    {
+      SmartDashboard.putNumber("Pathfinding/Replan ms", pathfinder.getLastReplanMillis());
+    }
   }
 
   /**
@@ -436,6 +1375,16 @@ public class SwerveDrivetrain extends SubsystemBase {
     return swerveDrive.kinematics;
   }
 
+  /**
+   * Get the allocation free four module kinematics. Use this in hot paths instead of {@link #getKinematics()}.
+   *
+   * @return {@link FourModuleKinematics} of the swerve drive.
+   */
+  public FourModuleKinematics getFastKinematics()
+  {
+    return fastKinematics;
+  }
+
   /**
    * Resets odometry to the given pose. Gyro angle and module positions do not need to be reset when calling this
    * method.  However, if either gyro angle or module position is reset, this must be called in order for odometry to
@@ -446,6 +1395,20 @@ public class SwerveDrivetrain extends SubsystemBase {
   public void resetOdometry(Pose2d initialHolonomicPose)
   {
     swerveDrive.resetOdometry(initialHolonomicPose);
+    readModulePositions();
+    poseEstimator.resetPosition(readYaw(), moduleDistances, initialHolonomicPose.getX(),
+                                initialHolonomicPose.getY(), initialHolonomicPose.getRotation().getRadians());
+    resetSlipDetector();
+  }
+
+  /**
+   * Get the allocation free pose estimator. Read the pose through its primitive getters in hot paths.
+   *
+   * @return {@link PrimitivePoseEstimator} of the swerve drive.
+   */
+  public PrimitivePoseEstimator getPoseEstimator()
+  {
+    return poseEstimator;
   }
 
   /**
@@ -455,7 +1418,7 @@ public class SwerveDrivetrain extends SubsystemBase {
    */
   public Pose2d getPose()
   {
-    return swerveDrive.getPose();
+    return poseEstimator.getPose();
   }
 
   /**
@@ -465,6 +1428,10 @@ public class SwerveDrivetrain extends SubsystemBase {
    */
   public void setChassisSpeeds(ChassisSpeeds chassisSpeeds)
   {
+    if (shadowMode)
+    {
+      return;
+    }
     swerveDrive.setChassisSpeeds(chassisSpeeds);
   }
 
@@ -478,12 +1445,31 @@ public class SwerveDrivetrain extends SubsystemBase {
     swerveDrive.postTrajectory(trajectory);
   }
 
+  /**
+   * Post a pre-sampled trajectory to the field, drawing the same samples the follower tracks.
+   *
+   * @param table The trajectory table to post.
+   */
+  public void postTrajectory(TrajectoryTable table)
+  {
+    List<Pose2d> poses = new ArrayList<>(table.size());
+    for (int i = 0; i < table.size(); i++)
+    {
+      poses.add(new Pose2d(table.x[i], table.y[i], new Rotation2d(table.heading[i])));
+    }
+    swerveDrive.field.getObject("Trajectory").setPoses(poses);
+  }
+
   /**
    * Resets the gyro angle to zero and resets odometry to the same position, but facing toward 0.
    */
   public void zeroGyro()
   {
     swerveDrive.zeroGyro();
+    readModulePositions();
+    poseEstimator.resetPosition(readYaw(), moduleDistances, poseEstimator.getX(),
+                                poseEstimator.getY(), 0);
+    resetSlipDetector();
   }
 
   /**
@@ -497,14 +1483,22 @@ public class SwerveDrivetrain extends SubsystemBase {
   }
 
   /**
-   * Gets the current yaw angle of the robot, as reported by the swerve pose estimator in the underlying drivebase.
-   * Note, this is not the raw gyro reading, this may be corrected from calls to resetOdometry().
+   * Gets the current yaw angle of the robot, as reported by the pose estimator. Note, this is not the raw gyro reading,
+   * this may be corrected from calls to resetOdometry().
    *
    * @return The yaw angle
    */
   public Rotation2d getHeading()
   {
-    return getPose().getRotation();
+    return new Rotation2d(poseEstimator.getHeadingRadians());
+  }
+
+  /**
+   * Heading controller for {@link #getTargetSpeeds}, the shadow one in shadow mode.
+   */
+  private SwerveController targetController()
+  {
+    return shadowMode ? shadowController : swerveDrive.swerveController;
   }
 
   /**
@@ -521,12 +1515,12 @@ public class SwerveDrivetrain extends SubsystemBase {
   {
     xInput = Math.pow(xInput, 3);
     yInput = Math.pow(yInput, 3);
-    return swerveDrive.swerveController.getTargetSpeeds(xInput,
-                                                        yInput,
-                                                        headingX,
-                                                        headingY,
-                                                        getHeading().getRadians(),
-                                                        maximumSpeed);
+    return targetController().getTargetSpeeds(xInput,
+                                              yInput,
+                                              headingX,
+                                              headingY,
+                                              getHeading().getRadians(),
+                                              maximumSpeed);
   }
 
   /**
@@ -542,11 +1536,11 @@ public class SwerveDrivetrain extends SubsystemBase {
   {
     xInput = Math.pow(xInput, 3);
     yInput = Math.pow(yInput, 3);
-    return swerveDrive.swerveController.getTargetSpeeds(xInput,
-                                                        yInput,
-                                                        angle.getRadians(),
-                                                        getHeading().getRadians(),
-                                                        maximumSpeed);
+    return targetController().getTargetSpeeds(xInput,
+                                              yInput,
+                                              angle.getRadians(),
+                                              getHeading().getRadians(),
+                                              maximumSpeed);
   }
 
   /**
@@ -556,7 +1550,7 @@ public class SwerveDrivetrain extends SubsystemBase {
    */
   public ChassisSpeeds getFieldVelocity()
   {
-    return swerveDrive.getFieldVelocity();
+    return ChassisSpeeds.fromRobotRelativeSpeeds(getRobotVelocity(), getHeading());
   }
 
   /**
@@ -607,11 +1601,28 @@ public class SwerveDrivetrain extends SubsystemBase {
     return swerveDrive.getPitch();
   }
 
+  /**
+   * Add a vision measurement to the pose estimator. The standard deviations are scaled down while the
+   * {@link SlipDetector} distrusts the wheels.
+   *
+   * @param pose      Robot pose measured by vision.
+   * @param timestamp Time the frame was captured, in seconds since FPGA startup.
+   * @param stdDevs   Standard deviations of the measurement, x and y in meters, heading in radians.
+   */
+  public void addVisionMeasurement(Pose2d pose, double timestamp, Matrix<N3, N1> stdDevs)
+  {
+    double scale = slipDetector.getVisionScale();
+    poseEstimator.setVisionMeasurementStdDevs(stdDevs.get(0, 0) * scale,
+                                              stdDevs.get(1, 0) * scale,
+                                              stdDevs.get(2, 0) * scale);
+    poseEstimator.addVisionMeasurement(pose.getX(), pose.getY(), pose.getRotation().getRadians(), timestamp);
+  }
+
   /**
    * Add a fake vision reading for testing purposes.
    */
   public void addFakeVisionReading()
   {
-    swerveDrive.addVisionMeasurement(new Pose2d(3, 3, Rotation2d.fromDegrees(65)), Timer.getFPGATimestamp());
+    poseEstimator.addVisionMeasurement(3, 3, Math.toRadians(65), Timer.getFPGATimestamp());
   }
 }
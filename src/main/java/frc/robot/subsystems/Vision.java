@@ -0,0 +1,340 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.PhotonCamera;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Pair;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.util.LoadShedder;
+import frc.robot.util.LoadShedder.Priority;
+
+/**
+ * Fuses AprilTag pose estimates from any number of PhotonVision cameras into the drivetrain pose estimator. Pose
+ * solving for each camera runs on a small background executor so the main loop only drains finished results, rejects
+ * outliers against odometry and applies the accepted measurements in one batch. Outliers are accepted while disabled,
+ * and once {@link VisionConstants#RECOVERY_FRAMES} of them in a row agree with each other, so vision can correct
+ * odometry that is far off.
+ *
+ * <p>Robots seen by the object detection camera are placed on the field from the bumper pitch and yaw and handed to the
+ * drivetrain as pathfinding obstacles.
+ */
+public class Vision extends SubsystemBase
+{
+
+  /**
+   * Drivetrain receiving the measurements.
+   */
+  private final SwerveDrivetrain      swerve;
+  /**
+   * One pose estimator per camera.
+   */
+  private final PhotonPoseEstimator[] estimators;
+  /**
+   * Whether a camera already has a solve in flight, so slow cameras do not pile up work.
+   */
+  private final AtomicBoolean[]       busy;
+  /**
+   * Executor running the per camera pose solving.
+   */
+  private final ExecutorService       executor;
+  /**
+   * Measurements that passed the per camera checks and wait for the main loop.
+   */
+  private final ConcurrentLinkedQueue<Measurement> results = new ConcurrentLinkedQueue<>();
+  /**
+   * Measurements drained this loop, reused between loops.
+   */
+  private final List<Measurement>     batch   = new ArrayList<>();
+  private final AprilTagFieldLayout   fieldLayout;
+  /**
+   * Measurement counters, rejections are counted from the executor threads as well.
+   */
+  private       long                  accepted;
+  private final AtomicLong            rejected = new AtomicLong();
+  /**
+   * Last measurement that disagreed with odometry and how many in a row agreed with it.
+   */
+  private       Translation2d         lastOutlier;
+  private       int                   consistentOutliers;
+  /**
+   * Object detection camera that sees other robots and where it is mounted.
+   */
+  private final PhotonCamera          robotCamera;
+  private final Transform3d           robotToRobotCamera;
+  /**
+   * Capture time of the last robot camera frame used and the last time it saw a robot.
+   */
+  private       double                lastRobotFrame = -1;
+  private       double                lastRobotSeen;
+  private       boolean               hasObstacles;
+  /**
+   * Sheds the dashboard counters while the robot loop runs over its budget, null until set.
+   */
+  private       LoadShedder           loadShedder;
+
+  /**
+   * A vision pose estimate with its standard deviations.
+   */
+  private static class Measurement
+  {
+
+    final Pose2d         pose;
+    final double         timestamp;
+    final Matrix<N3, N1> stdDevs;
+
+    Measurement(Pose2d pose, double timestamp, Matrix<N3, N1> stdDevs)
+    {
+      this.pose = pose;
+      this.timestamp = timestamp;
+      this.stdDevs = stdDevs;
+    }
+  }
+
+  /**
+   * Create the vision subsystem.
+   *
+   * @param swerve             Drivetrain to send measurements to.
+   * @param cameras            Cameras to read.
+   * @param robotToCameras     Transform from the robot center to each camera, same order as the cameras.
+   * @param robotCamera        Object detection camera that sees other robots.
+   * @param robotToRobotCamera Transform from the robot center to the object detection camera.
+   */
+  public Vision(SwerveDrivetrain swerve, PhotonCamera[] cameras, Transform3d[] robotToCameras,
+                PhotonCamera robotCamera, Transform3d robotToRobotCamera)
+  {
+    if (cameras.length != robotToCameras.length)
+    {
+      throw new IllegalArgumentException("Every camera needs a robot to camera transform");
+    }
+    this.swerve = swerve;
+    this.robotCamera = robotCamera;
+    this.robotToRobotCamera = robotToRobotCamera;
+    fieldLayout = AprilTagFields.k2024Crescendo.loadAprilTagLayoutField();
+    estimators = new PhotonPoseEstimator[cameras.length];
+    busy = new AtomicBoolean[cameras.length];
+    for (int i = 0; i < cameras.length; i++)
+    {
+      estimators[i] = new PhotonPoseEstimator(fieldLayout, PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR, cameras[i],
+                                              robotToCameras[i]);
+      estimators[i].setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
+      busy[i] = new AtomicBoolean(false);
+    }
+    executor = Executors.newFixedThreadPool(Math.min(cameras.length, VisionConstants.MAX_THREADS), runnable -> {
+      Thread thread = new Thread(runnable, "Vision");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public void periodic()
+  {
+    // Apply whatever finished since the last loop, then start the next round of solves.
+    batch.clear();
+    Measurement measurement;
+    while ((measurement = results.poll()) != null)
+    {
+      batch.add(measurement);
+    }
+    batch.sort((a, b) -> Double.compare(a.timestamp, b.timestamp));
+
+    Pose2d odometryPose = swerve.getPose();
+    boolean disabled = DriverStation.isDisabled();
+    for (Measurement m : batch)
+    {
+      Translation2d translation = m.pose.getTranslation();
+      if (translation.getDistance(odometryPose.getTranslation()) <= VisionConstants.MAX_ODOMETRY_DISAGREEMENT)
+      {
+        consistentOutliers = 0;
+      } else if (!disabled)
+      {
+        // Outliers that agree with each other mean odometry is lost, for example after a collision.
+        consistentOutliers = lastOutlier != null
+                             && translation.getDistance(lastOutlier) <= VisionConstants.MAX_FRAME_DISAGREEMENT
+                             ? consistentOutliers + 1 : 1;
+        lastOutlier = translation;
+        if (consistentOutliers < VisionConstants.RECOVERY_FRAMES)
+        {
+          rejected.incrementAndGet();
+          continue;
+        }
+      }
+      swerve.addVisionMeasurement(m.pose, m.timestamp, m.stdDevs);
+      accepted++;
+    }
+    updateObstacles(odometryPose);
+
+    for (int i = 0; i < estimators.length; i++)
+    {
+      if (busy[i].compareAndSet(false, true))
+      {
+        int camera = i;
+        executor.execute(() -> {
+          try
+          {
+            solve(camera);
+          } finally
+          {
+            busy[camera].set(false);
+          }
+        });
+      }
+    }
+
+    // Running totals, so a skipped update is caught up by the next one.
+    if (loadShedder == null || loadShedder.shouldRun(Priority.BEST_EFFORT))
+    {
+      SmartDashboard.putNumber("Vision/Accepted", accepted);
+      SmartDashboard.putNumber("Vision/Rejected", rejected.get());
+    }
+  }
+
+  /**
+   * Skip or decimate the dashboard counters while the robot loop runs over its budget.
+   *
+   * @param loadShedder The robot's load shedder.
+   */
+  public void setLoadShedder(LoadShedder loadShedder)
+  {
+    this.loadShedder = loadShedder;
+  }
+
+  /**
+   * Place the robots in the latest object detection frame on the field and send them to the pathfinder. Frames are only
+   * used once, and the obstacles are cleared when no robot was seen for {@link VisionConstants#OBSTACLE_TIMEOUT}.
+   *
+   * @param odometryPose Current robot pose.
+   */
+  private void updateObstacles(Pose2d odometryPose)
+  {
+    PhotonPipelineResult result = robotCamera.getLatestResult();
+    double frameTime = result.getTimestampSeconds();
+    if (frameTime == lastRobotFrame || !result.hasTargets())
+    {
+      if (hasObstacles && Timer.getFPGATimestamp() - lastRobotSeen > VisionConstants.OBSTACLE_TIMEOUT)
+      {
+        swerve.setPathfindingObstacles(List.of());
+        hasObstacles = false;
+      }
+      return;
+    }
+    lastRobotFrame = frameTime;
+
+    double cameraHeight = robotToRobotCamera.getZ() - VisionConstants.BUMPER_HEIGHT;
+    double cameraPitch = robotToRobotCamera.getRotation().getY(); // positive pitches down
+    double cameraYaw = robotToRobotCamera.getRotation().getZ();
+    double half = VisionConstants.OBSTACLE_SIZE / 2;
+    List<Pair<Translation2d, Translation2d>> obstacles = new ArrayList<>();
+    for (PhotonTrackedTarget target : result.getTargets())
+    {
+      // Target pitch is positive up and yaw positive to the right.
+      double below = cameraPitch - Math.toRadians(target.getPitch());
+      if (below <= 0)
+      {
+        continue;
+      }
+      double distance = cameraHeight / Math.tan(below);
+      double bearing = cameraYaw - Math.toRadians(target.getYaw());
+      double robotX = robotToRobotCamera.getX() + distance * Math.cos(bearing);
+      double robotY = robotToRobotCamera.getY() + distance * Math.sin(bearing);
+      Translation2d center = odometryPose.getTranslation()
+                                         .plus(new Translation2d(robotX, robotY).rotateBy(odometryPose.getRotation()));
+      obstacles.add(new Pair<>(new Translation2d(center.getX() - half, center.getY() - half),
+                               new Translation2d(center.getX() + half, center.getY() + half)));
+    }
+    if (obstacles.isEmpty())
+    {
+      return;
+    }
+    swerve.setPathfindingObstacles(obstacles);
+    lastRobotSeen = Timer.getFPGATimestamp();
+    hasObstacles = true;
+  }
+
+  /**
+   * Solve the latest frame of a camera and queue it if it passes the ambiguity and distance checks. Runs on the
+   * executor.
+   *
+   * @param camera Index of the camera.
+   */
+  private void solve(int camera)
+  {
+    Optional<EstimatedRobotPose> estimate = estimators[camera].update();
+    if (estimate.isEmpty())
+    {
+      return;
+    }
+    EstimatedRobotPose robotPose = estimate.get();
+    Pose3d pose = robotPose.estimatedPose;
+    List<PhotonTrackedTarget> targets = robotPose.targetsUsed;
+
+    // Only tags in the field layout count, the solve ignores the others.
+    int tagCount = 0;
+    double totalDistance = 0;
+    double ambiguity = 0;
+    for (PhotonTrackedTarget target : targets)
+    {
+      Optional<Pose3d> tagPose = fieldLayout.getTagPose(target.getFiducialId());
+      if (tagPose.isEmpty())
+      {
+        continue;
+      }
+      tagCount++;
+      totalDistance += tagPose.get().getTranslation().getDistance(pose.getTranslation());
+      ambiguity = Math.max(ambiguity, target.getPoseAmbiguity());
+    }
+    if (tagCount == 0)
+    {
+      rejected.incrementAndGet();
+      return;
+    }
+    double averageDistance = totalDistance / tagCount;
+
+    // A single tag can flip between two solutions, only trust it when the solve is unambiguous and close.
+    if (tagCount == 1 && (ambiguity > VisionConstants.MAX_AMBIGUITY
+                          || averageDistance > VisionConstants.MAX_SINGLE_TAG_DISTANCE))
+    {
+      rejected.incrementAndGet();
+      return;
+    }
+    if (averageDistance > VisionConstants.MAX_TAG_DISTANCE)
+    {
+      rejected.incrementAndGet();
+      return;
+    }
+
+    // Error grows with the square of the distance and shrinks with more tags.
+    double scale = 1 + (averageDistance * averageDistance) / VisionConstants.STD_DEV_DISTANCE_SCALE;
+    double xy = (tagCount > 1 ? VisionConstants.MULTI_TAG_XY_STD_DEV : VisionConstants.SINGLE_TAG_XY_STD_DEV) * scale;
+    double theta = (tagCount > 1 ? VisionConstants.MULTI_TAG_THETA_STD_DEV : VisionConstants.SINGLE_TAG_THETA_STD_DEV)
+                   * scale;
+    results.add(new Measurement(pose.toPose2d(), robotPose.timestampSeconds, VecBuilder.fill(xy, xy, theta)));
+  }
+}
@@ -0,0 +1,118 @@
+package frc.robot.tools;
+
+import frc.robot.util.log.CompactLog;
+import frc.robot.util.log.CompactLogReader;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts {@link CompactLog} files to .wpilog so AdvantageScope and the other WPILib log tools can open them. The
+ * .wpilog is written directly rather than through {@link edu.wpi.first.util.datalog.DataLog}, which needs the native
+ * libraries. Run with {@code ./gradlew convertCompactLogs -Plogs=<file or directory>}.
+ */
+public final class CompactLogConverter
+{
+
+  private static final byte[] WPILOG_MAGIC = "WPILOG".getBytes(StandardCharsets.US_ASCII);
+  private static final short  WPILOG_VERSION = 0x0100;
+  /**
+   * Record header with a four byte entry id, four byte payload size and eight byte timestamp.
+   */
+  private static final byte   RECORD_HEADER = 0x7F;
+
+  private CompactLogConverter()
+  {
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length == 0)
+    {
+      System.err.println("Usage: CompactLogConverter <file.clog | directory>...");
+      System.exit(1);
+    }
+    List<File> inputs = new ArrayList<>();
+    for (String arg : args)
+    {
+      File file = new File(arg);
+      File[] children = file.listFiles((dir, name) -> name.endsWith(CompactLog.EXTENSION));
+      if (children != null)
+      {
+        inputs.addAll(List.of(children));
+      } else
+      {
+        inputs.add(file);
+      }
+    }
+    for (File input : inputs)
+    {
+      String name = input.getName();
+      File output = new File(input.getParentFile(),
+                             name.substring(0, name.length() - CompactLog.EXTENSION.length()) + ".wpilog");
+      long frames = convert(input, output);
+      System.out.printf("%s: %d frames, %d KiB -> %s, %d KiB%n", input, frames, input.length() / 1024, output.getName(),
+                        output.length() / 1024);
+    }
+  }
+
+  /**
+   * Convert one file. Each channel becomes a double entry under {@code CompactLog/}.
+   *
+   * @param input  The .clog file.
+   * @param output The .wpilog file to write.
+   * @return Number of frames converted.
+   * @throws IOException If a file cannot be read or written.
+   */
+  public static long convert(File input, File output) throws IOException
+  {
+    try (CompactLogReader reader = new CompactLogReader(input);
+         OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16))
+    {
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+      byte[] extraHeader = ("converted from " + input.getName()).getBytes(StandardCharsets.UTF_8);
+      buffer.put(WPILOG_MAGIC).putShort(WPILOG_VERSION).putInt(extraHeader.length).put(extraHeader);
+      flush(buffer, out);
+
+      String[] names = reader.getNames();
+      for (int i = 0; i < names.length; i++)
+      {
+        byte[] entryName = ("CompactLog/" + names[i]).getBytes(StandardCharsets.UTF_8);
+        byte[] type = "double".getBytes(StandardCharsets.UTF_8);
+        int payload = 1 + 4 + 4 + entryName.length + 4 + type.length + 4;
+        // Start control records go on entry 0 at time zero.
+        buffer.put(RECORD_HEADER).putInt(0).putInt(payload).putLong(0);
+        buffer.put((byte) 0).putInt(i + 1)
+              .putInt(entryName.length).put(entryName)
+              .putInt(type.length).put(type)
+              .putInt(0);
+        flush(buffer, out);
+      }
+
+      return reader.forEach((timestamp, values) -> {
+        for (int i = 0; i < values.length; i++)
+        {
+          buffer.put(RECORD_HEADER).putInt(i + 1).putInt(Double.BYTES).putLong(timestamp).putDouble(values[i]);
+          if (buffer.remaining() < 64)
+          {
+            flush(buffer, out);
+          }
+        }
+        flush(buffer, out);
+      });
+    }
+  }
+
+  private static void flush(ByteBuffer buffer, OutputStream out) throws IOException
+  {
+    out.write(buffer.array(), 0, buffer.position());
+    buffer.clear();
+  }
+}
@@ -0,0 +1,72 @@
+package frc.robot.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.util.Units;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads the parts of the deploy folder swerve configuration that desktop tools need, without going through
+ * {@link swervelib.parser.SwerveParser} and the hardware it creates.
+ */
+public final class DeployConfig
+{
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private DeployConfig()
+  {
+  }
+
+  /**
+   * Module locations in the order listed in swervedrive.json. Like YAGSL, the JSON locations are in inches.
+   *
+   * @param swerveDirectory The deploy/swerve directory.
+   * @return Module locations in meters.
+   * @throws IOException If a file cannot be read.
+   */
+  public static Translation2d[] readModuleLocations(File swerveDirectory) throws IOException
+  {
+    JsonNode modules = MAPPER.readTree(new File(swerveDirectory, "swervedrive.json")).get("modules");
+    Translation2d[] locations = new Translation2d[modules.size()];
+    for (int i = 0; i < locations.length; i++)
+    {
+      JsonNode location = MAPPER.readTree(new File(swerveDirectory, "modules/" + modules.get(i).asText()))
+                                .get("location");
+      locations[i] = new Translation2d(Units.inchesToMeters(location.get("front").asDouble()),
+                                       Units.inchesToMeters(location.get("left").asDouble()));
+    }
+    return locations;
+  }
+
+  /**
+   * Read a JSON file from the swerve configuration.
+   *
+   * @param swerveDirectory The deploy/swerve directory.
+   * @param name            File name relative to the directory.
+   * @return The parsed JSON.
+   * @throws IOException If the file cannot be read.
+   */
+  public static JsonNode read(File swerveDirectory, String name) throws IOException
+  {
+    return MAPPER.readTree(new File(swerveDirectory, name));
+  }
+
+  /**
+   * Distance from the robot center to the furthest module.
+   *
+   * @param locations Module locations in meters.
+   * @return Drive base radius in meters.
+   */
+  public static double driveBaseRadius(Translation2d[] locations)
+  {
+    double radius = 0;
+    for (Translation2d location : locations)
+    {
+      radius = Math.max(radius, location.getNorm());
+    }
+    return radius;
+  }
+}
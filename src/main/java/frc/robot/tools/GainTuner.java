@@ -0,0 +1,344 @@
+package frc.robot.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants.AutonConstants;
+import frc.robot.Constants.DrivebaseConstants;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.path.PathFile;
+import frc.robot.util.sim.HeadlessSwerveSim;
+import frc.robot.util.sim.SimPid;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Desktop tool searching heading and path follower PID gains in headless simulation. Every candidate is scored on
+ * scripted heading steps and on following each deploy folder path (plus two scripted paths), using tracking error,
+ * settling time and overshoot. The search is a separable CMA-ES over the logarithm of the gains, with each generation
+ * evaluated in parallel on all cores. The best gain sets are printed and written to build/tuning/gains.csv.
+ *
+ * <p>Run with {@code ./gradlew tuneGains -Pgenerations=60}.
+ */
+public final class GainTuner
+{
+
+  private static final double   DT                = 0.02;
+  private static final double   HEADING_STEP_TIME = 3.0;
+  private static final double   SETTLE_TOLERANCE  = Math.toRadians(2);
+  private static final double[] HEADING_TARGETS   = {Math.PI / 2, -3 * Math.PI / 4, Math.PI, Math.PI / 6};
+  private static final String[] NAMES             = {"heading P", "heading I", "heading D",
+                                                     "translation P", "translation I", "translation D",
+                                                     "rotation P", "rotation I", "rotation D"};
+  /**
+   * Gains at or below this are reported as zero, the search works in log space and cannot reach zero exactly.
+   */
+  private static final double   ZERO_GAIN         = 1e-4;
+
+  private final Translation2d[] moduleLocations;
+  private final double          maxSpeed;
+  private final double          maxAngularVelocity;
+  private final List<PathFile>  paths;
+  /**
+   * Time parameterisation of each path, computed once and shared read only by all evaluations.
+   */
+  private final List<double[]>  pathTimes      = new ArrayList<>();
+  private final List<double[]>  pathVelocities = new ArrayList<>();
+
+  private GainTuner(Translation2d[] moduleLocations, double maxSpeed, List<PathFile> paths)
+  {
+    this.moduleLocations = moduleLocations;
+    this.maxSpeed = maxSpeed;
+    this.maxAngularVelocity = maxSpeed / DeployConfig.driveBaseRadius(moduleLocations);
+    this.paths = paths;
+    for (PathFile path : paths)
+    {
+      double[] velocities = new double[path.size()];
+      double[] times = new double[path.size()];
+      path.profile(Math.min(path.maxVelocity, maxSpeed), path.maxAcceleration, Double.POSITIVE_INFINITY, velocities,
+                   times);
+      pathVelocities.add(velocities);
+      pathTimes.add(times);
+    }
+  }
+
+  /**
+   * Score a gain set, lower is better.
+   *
+   * @param gains Gains in the order of {@link #NAMES}.
+   * @return The score.
+   */
+  private double evaluate(double[] gains)
+  {
+    HeadlessSwerveSim sim = new HeadlessSwerveSim(moduleLocations, maxSpeed, DrivebaseConstants.SIM_DRIVE_TIME_CONSTANT,
+                                                  DrivebaseConstants.SIM_STEER_RATE);
+    double score = 0;
+
+    // Heading steps in place, the same way SwerveController scales the heading PID output.
+    SimPid heading = new SimPid(gains[0], gains[1], gains[2], DT, true);
+    for (double target : HEADING_TARGETS)
+    {
+      sim.reset(0, 0, 0);
+      heading.reset();
+      double integratedError = 0;
+      double overshoot = 0;
+      double settleTime = 0;
+      double direction = Math.signum(target);
+      for (double t = 0; t < HEADING_STEP_TIME; t += DT)
+      {
+        sim.step(0, 0, heading.calculate(sim.theta, target) * maxAngularVelocity, DT);
+        double error = FourModuleKinematics.wrap(target - sim.theta);
+        integratedError += Math.abs(error) * DT;
+        overshoot = Math.max(overshoot, -error * direction);
+        if (Math.abs(error) > SETTLE_TOLERANCE)
+        {
+          settleTime = t + DT;
+        }
+      }
+      score += integratedError + 0.5 * settleTime + 5 * overshoot;
+    }
+
+    // Path following, the same way the PathPlanner holonomic controller combines feedforward and PID.
+    SimPid xPid = new SimPid(gains[3], gains[4], gains[5], DT, false);
+    SimPid yPid = new SimPid(gains[3], gains[4], gains[5], DT, false);
+    SimPid rotationPid = new SimPid(gains[6], gains[7], gains[8], DT, true);
+    for (int p = 0; p < paths.size(); p++)
+    {
+      PathFile path = paths.get(p);
+      double[] times = pathTimes.get(p);
+      double[] velocities = pathVelocities.get(p);
+      int last = path.size() - 1;
+      sim.reset(path.x[0], path.y[0], path.rotation[0]);
+      xPid.reset();
+      yPid.reset();
+      rotationPid.reset();
+      double squaredError = 0;
+      double squaredHeadingError = 0;
+      int steps = 0;
+      int index = 0;
+      double endTime = times[last] + 1.0;
+      for (double t = 0; t < endTime; t += DT)
+      {
+        while (index < last && times[index + 1] <= t)
+        {
+          index++;
+        }
+        int next = Math.min(index + 1, last);
+        double span = times[next] - times[index];
+        double f = span > 0 ? Math.min(1, (t - times[index]) / span) : 1;
+        double targetX = path.x[index] + (path.x[next] - path.x[index]) * f;
+        double targetY = path.y[index] + (path.y[next] - path.y[index]) * f;
+        double targetRotation = path.rotation[index]
+                                + FourModuleKinematics.wrap(path.rotation[next] - path.rotation[index]) * f;
+        double speed = t > times[last] ? 0 : velocities[index] + (velocities[next] - velocities[index]) * f;
+        double tangent = Math.atan2(path.y[next] - path.y[index], path.x[next] - path.x[index]);
+        double feedforwardOmega = span > 0 && t <= times[last]
+                                  ? FourModuleKinematics.wrap(path.rotation[next] - path.rotation[index]) / span : 0;
+
+        double vx = speed * Math.cos(tangent) + xPid.calculate(sim.x, targetX);
+        double vy = speed * Math.sin(tangent) + yPid.calculate(sim.y, targetY);
+        double omega = feedforwardOmega + rotationPid.calculate(sim.theta, targetRotation);
+        sim.stepFieldRelative(vx, vy, omega, DT);
+
+        squaredError += (sim.x - targetX) * (sim.x - targetX) + (sim.y - targetY) * (sim.y - targetY);
+        double headingError = FourModuleKinematics.wrap(targetRotation - sim.theta);
+        squaredHeadingError += headingError * headingError;
+        steps++;
+      }
+      double finalError = Math.hypot(sim.x - path.x[last], sim.y - path.y[last]);
+      score += 10 * Math.sqrt(squaredError / steps) + 10 * finalError + 2 * Math.sqrt(squaredHeadingError / steps);
+    }
+    return Double.isFinite(score) ? score : Double.MAX_VALUE;
+  }
+
+  /**
+   * A scored gain set.
+   */
+  private static final class Candidate
+  {
+
+    final double[] gains;
+    final double   score;
+
+    Candidate(double[] gains, double score)
+    {
+      this.gains = gains;
+      this.score = score;
+    }
+  }
+
+  /**
+   * Run the separable CMA-ES.
+   *
+   * @param initialGains Starting gains.
+   * @param generations  Number of generations.
+   * @param lambda       Population size.
+   * @param seed         Random seed.
+   * @return Every evaluated candidate.
+   */
+  private List<Candidate> optimise(double[] initialGains, int generations, int lambda, long seed)
+  {
+    int n = initialGains.length;
+    int mu = lambda / 2;
+    double[] weights = new double[mu];
+    double weightSum = 0;
+    for (int i = 0; i < mu; i++)
+    {
+      weights[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+      weightSum += weights[i];
+    }
+    double weightSquares = 0;
+    for (int i = 0; i < mu; i++)
+    {
+      weights[i] /= weightSum;
+      weightSquares += weights[i] * weights[i];
+    }
+    double muEff = 1 / weightSquares;
+    double cSigma = (muEff + 2) / (n + muEff + 5);
+    double dSigma = 1 + 2 * Math.max(0, Math.sqrt((muEff - 1) / (n + 1)) - 1) + cSigma;
+    double cc = (4 + muEff / n) / (n + 4 + 2 * muEff / n);
+    double c1 = 2 / ((n + 1.3) * (n + 1.3) + muEff);
+    double cMu = Math.min(1 - c1, 2 * (muEff - 2 + 1 / muEff) / ((n + 2) * (n + 2) + muEff));
+    // Separable variant learns only the diagonal, which allows faster learning rates.
+    c1 *= (n + 2) / 3.0;
+    cMu = Math.min(1 - c1, cMu * (n + 2) / 3.0);
+    double chiN = Math.sqrt(n) * (1 - 1.0 / (4 * n) + 1.0 / (21.0 * n * n));
+
+    double[] mean = new double[n];
+    for (int i = 0; i < n; i++)
+    {
+      mean[i] = Math.log(Math.max(initialGains[i], ZERO_GAIN));
+    }
+    double sigma = 1.0;
+    double[] c = new double[n];
+    Arrays.fill(c, 1);
+    double[] pSigma = new double[n];
+    double[] pc = new double[n];
+    Random random = new Random(seed);
+    List<Candidate> archive = new ArrayList<>();
+
+    for (int generation = 0; generation < generations; generation++)
+    {
+      double[][] ys = new double[lambda][n];
+      double[][] gains = new double[lambda][n];
+      for (int k = 0; k < lambda; k++)
+      {
+        for (int i = 0; i < n; i++)
+        {
+          ys[k][i] = Math.sqrt(c[i]) * random.nextGaussian();
+          gains[k][i] = Math.exp(mean[i] + sigma * ys[k][i]);
+        }
+      }
+      double[] scores = new double[lambda];
+      IntStream.range(0, lambda).parallel().forEach(k -> scores[k] = evaluate(gains[k]));
+
+      Integer[] order = new Integer[lambda];
+      for (int k = 0; k < lambda; k++)
+      {
+        order[k] = k;
+        archive.add(new Candidate(gains[k], scores[k]));
+      }
+      Arrays.sort(order, Comparator.comparingDouble(k -> scores[k]));
+
+      double[] yw = new double[n];
+      for (int j = 0; j < mu; j++)
+      {
+        for (int i = 0; i < n; i++)
+        {
+          yw[i] += weights[j] * ys[order[j]][i];
+        }
+      }
+      double pSigmaNorm = 0;
+      for (int i = 0; i < n; i++)
+      {
+        mean[i] += sigma * yw[i];
+        pSigma[i] = (1 - cSigma) * pSigma[i] + Math.sqrt(cSigma * (2 - cSigma) * muEff) * yw[i] / Math.sqrt(c[i]);
+        pSigmaNorm += pSigma[i] * pSigma[i];
+      }
+      pSigmaNorm = Math.sqrt(pSigmaNorm);
+      boolean hSigma = pSigmaNorm / Math.sqrt(1 - Math.pow(1 - cSigma, 2 * (generation + 1)))
+                       < (1.4 + 2.0 / (n + 1)) * chiN;
+      for (int i = 0; i < n; i++)
+      {
+        pc[i] = (1 - cc) * pc[i] + (hSigma ? Math.sqrt(cc * (2 - cc) * muEff) * yw[i] : 0);
+        double rankMu = 0;
+        for (int j = 0; j < mu; j++)
+        {
+          double y = ys[order[j]][i];
+          rankMu += weights[j] * y * y;
+        }
+        c[i] = (1 - c1 - cMu) * c[i]
+               + c1 * (pc[i] * pc[i] + (hSigma ? 0 : cc * (2 - cc) * c[i]))
+               + cMu * rankMu;
+      }
+      sigma *= Math.exp((cSigma / dSigma) * (pSigmaNorm / chiN - 1));
+
+      System.out.printf("Generation %3d  best %.4f  sigma %.3f%n", generation, scores[order[0]], sigma);
+    }
+    return archive;
+  }
+
+  /**
+   * Entry point.
+   *
+   * @param args Deploy directory, number of generations and population size, all optional.
+   * @throws IOException If the configuration cannot be read or the results cannot be written.
+   */
+  public static void main(String... args) throws IOException
+  {
+    File deploy = new File(args.length > 0 ? args[0] : "src/main/deploy");
+    int generations = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+    int lambda = args.length > 2 ? Integer.parseInt(args[2])
+                                 : Math.max(16, 2 * Runtime.getRuntime().availableProcessors());
+    File swerve = new File(deploy, "swerve");
+
+    List<PathFile> paths = new ArrayList<>(PathFile.loadAll(new File(deploy, "pathplanner/paths")));
+    System.out.println("Loaded " + paths.size() + " deploy paths");
+    paths.add(PathFile.fromPoints("Scripted Straight", new double[][]{{2, 2}, {6, 2}}, 0, 0, 3, 3));
+    paths.add(PathFile.fromPoints("Scripted S-Curve", new double[][]{{2, 2}, {4, 4}, {6, 2}, {8, 4}}, 0,
+                                  Math.PI / 2, 3, 3));
+
+    JsonNode heading = DeployConfig.read(swerve, "controllerproperties.json").get("heading");
+    double[] initial = {heading.get("p").asDouble(), heading.get("i").asDouble(), heading.get("d").asDouble(),
+                        AutonConstants.TRANSLATION_PID.kP, AutonConstants.TRANSLATION_PID.kI,
+                        AutonConstants.TRANSLATION_PID.kD,
+                        AutonConstants.ANGLE_PID.kP, AutonConstants.ANGLE_PID.kI, AutonConstants.ANGLE_PID.kD};
+
+    GainTuner tuner = new GainTuner(DeployConfig.readModuleLocations(swerve), DrivebaseConstants.MAX_SPEED, paths);
+    System.out.printf("Current gains score %.4f%n", tuner.evaluate(initial));
+
+    long start = System.nanoTime();
+    List<Candidate> archive = tuner.optimise(initial, generations, lambda, 1);
+    double minutes = (System.nanoTime() - start) / 60e9;
+    System.out.printf("Evaluated %d candidates, %.0f per minute%n", archive.size(), archive.size() / minutes);
+
+    archive.sort(Comparator.comparingDouble(candidate -> candidate.score));
+    File output = new File("build/tuning/gains.csv");
+    output.getParentFile().mkdirs();
+    try (PrintWriter writer = new PrintWriter(output))
+    {
+      writer.println("rank,score," + String.join(",", NAMES));
+      for (int rank = 0; rank < Math.min(archive.size(), 50); rank++)
+      {
+        Candidate candidate = archive.get(rank);
+        StringBuilder line = new StringBuilder().append(rank + 1).append(',').append(candidate.score);
+        for (double gain : candidate.gains)
+        {
+          line.append(',').append(gain <= ZERO_GAIN ? 0 : gain);
+        }
+        writer.println(line);
+        if (rank < 10)
+        {
+          System.out.println(line);
+        }
+      }
+    }
+    System.out.println("Wrote " + output.getAbsolutePath());
+  }
+}
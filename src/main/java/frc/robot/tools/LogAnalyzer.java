@@ -0,0 +1,348 @@
+package frc.robot.tools;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.Robot;
+import frc.robot.util.Histogram;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Desktop tool summarising a directory of .wpilog files, for example a whole event. Each file is memory mapped by
+ * {@link DataLogReader} and streamed once, keeping only fixed size histograms and counters, so memory does not grow with
+ * the length of the logs. Files are analysed in parallel on all cores and the results merged into one report:
+ * <ul>
+ *   <li>loop time while enabled, from the {@value Robot#LOOP_TIME_ENTRY} entry the robot appends every loop,</li>
+ *   <li>drive tracking error between the YAGSL desired and measured chassis speeds while enabled,</li>
+ *   <li>module angle error between the YAGSL desired states and {@code /SwerveStates} while enabled,</li>
+ *   <li>brownouts and minimum battery voltage,</li>
+ *   <li>vision measurements accepted and rejected while enabled.</li>
+ * </ul>
+ *
+ * <p>Run with {@code ./gradlew analyzeLogs -Plogs=<directory>}; the report is printed and written to
+ * build/reports/logs/summary.txt.
+ */
+public final class LogAnalyzer
+{
+
+  private static final String LOOP_TIME        = Robot.LOOP_TIME_ENTRY;
+  private static final String SWERVE_STATES    = "NT:/SwerveStates";
+  private static final String DESIRED_STATES   = "NT:/SmartDashboard/swerve/desiredStates";
+  private static final String DESIRED_SPEEDS   = "NT:/SmartDashboard/swerve/desiredChassisSpeeds";
+  private static final String MEASURED_SPEEDS  = "NT:/SmartDashboard/swerve/measuredChassisSpeeds";
+  private static final String BROWNOUT         = "NT:/SmartDashboard/Power/Brownout";
+  private static final String BATTERY_VOLTAGE  = "NT:/SmartDashboard/Power/Battery Voltage";
+  private static final String VISION_ACCEPTED  = "NT:/SmartDashboard/Vision/Accepted";
+  private static final String VISION_REJECTED  = "NT:/SmartDashboard/Vision/Rejected";
+  private static final String ENABLED          = "DS:enabled";
+  private static final String[] CHANNELS       = {LOOP_TIME, SWERVE_STATES, DESIRED_STATES, DESIRED_SPEEDS,
+                                                  MEASURED_SPEEDS, BROWNOUT, BATTERY_VOLTAGE, VISION_ACCEPTED,
+                                                  VISION_REJECTED, ENABLED};
+  /**
+   * Loops whose work takes longer than the TimedRobot period count as overruns.
+   */
+  private static final double   LOOP_OVERRUN_MS = 20;
+  /**
+   * Below this desired module speed the steering target does not matter and angle error is not counted.
+   */
+  private static final double   MIN_MODULE_SPEED = 0.1;
+
+  private LogAnalyzer()
+  {
+  }
+
+  /**
+   * Results for one or more logs. Everything is fixed size so summaries can be merged cheaply.
+   */
+  private static final class Summary
+  {
+
+    final Histogram loopMillis          = new Histogram(0.5, 200);
+    final Histogram translationError    = new Histogram(0.02, 250);
+    final Histogram rotationError       = new Histogram(1, 360);
+    final Histogram moduleAngleError    = new Histogram(0.5, 180);
+    int             files;
+    long            records;
+    long            bytes;
+    double          enabledSeconds;
+    long            brownouts;
+    double          minVoltage          = Double.POSITIVE_INFINITY;
+    long            visionAccepted;
+    long            visionRejected;
+    final List<String> fileLines        = new ArrayList<>();
+
+    void merge(Summary other)
+    {
+      loopMillis.merge(other.loopMillis);
+      translationError.merge(other.translationError);
+      rotationError.merge(other.rotationError);
+      moduleAngleError.merge(other.moduleAngleError);
+      files += other.files;
+      records += other.records;
+      bytes += other.bytes;
+      enabledSeconds += other.enabledSeconds;
+      brownouts += other.brownouts;
+      minVoltage = Math.min(minVoltage, other.minVoltage);
+      visionAccepted += other.visionAccepted;
+      visionRejected += other.visionRejected;
+      fileLines.addAll(other.fileLines);
+    }
+  }
+
+  /**
+   * Stream one log into a summary.
+   *
+   * @param file The .wpilog file.
+   * @return Its summary.
+   */
+  private static Summary analyze(File file)
+  {
+    Summary summary = new Summary();
+    summary.files = 1;
+    summary.bytes = file.length();
+    DataLogReader reader;
+    try
+    {
+      reader = new DataLogReader(file.getPath());
+    } catch (IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+    if (!reader.isValid())
+    {
+      summary.fileLines.add(String.format("%-48s not a valid .wpilog", file.getName()));
+      return summary;
+    }
+
+    // Entry ids are per file; map the ones we use to their index in CHANNELS.
+    Map<Integer, Integer> channels = new HashMap<>();
+    boolean enabled = false;
+    long enabledSince = 0;
+    boolean brownedOut = false;
+    double[] desiredSpeeds = null;
+    double[] desiredStates = null;
+    // The vision counters run from robot boot and are only logged when they change, so sum their increases while
+    // enabled. NaN until the first value of the file.
+    double lastAccepted = Double.NaN, lastRejected = Double.NaN;
+    long lastTimestamp = 0;
+    long fileBrownouts = 0;
+
+    for (DataLogRecord record : reader)
+    {
+      summary.records++;
+      if (record.isStart())
+      {
+        DataLogRecord.StartRecordData start = record.getStartData();
+        for (int i = 0; i < CHANNELS.length; i++)
+        {
+          if (CHANNELS[i].equals(start.name))
+          {
+            channels.put(start.entry, i);
+          }
+        }
+        continue;
+      }
+      if (record.isControl())
+      {
+        continue;
+      }
+      Integer channel = channels.get(record.getEntry());
+      if (channel == null)
+      {
+        continue;
+      }
+      long timestamp = record.getTimestamp();
+      lastTimestamp = Math.max(lastTimestamp, timestamp);
+      switch (CHANNELS[channel])
+      {
+        case LOOP_TIME:
+          if (enabled)
+          {
+            summary.loopMillis.add(record.getDouble());
+          }
+          break;
+        case SWERVE_STATES:
+        {
+          if (enabled && desiredStates != null)
+          {
+            // Struct SwerveModuleState: speed then angle in radians, both little endian doubles.
+            ByteBuffer states = ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN);
+            for (int m = 0; m < desiredStates.length / 2 && states.remaining() >= 16; m++)
+            {
+              states.getDouble();
+              double measured = Math.toDegrees(states.getDouble());
+              if (Math.abs(desiredStates[2 * m + 1]) < MIN_MODULE_SPEED)
+              {
+                continue;
+              }
+              // A module pointing backwards with the drive reversed is on target, so fold the error into 0 to 90.
+              double error = Math.abs(Math.IEEEremainder(desiredStates[2 * m] - measured, 180));
+              summary.moduleAngleError.add(error);
+            }
+          }
+          break;
+        }
+        case DESIRED_STATES:
+          desiredStates = record.getDoubleArray();
+          break;
+        case DESIRED_SPEEDS:
+          desiredSpeeds = record.getDoubleArray();
+          break;
+        case MEASURED_SPEEDS:
+        {
+          double[] measured = record.getDoubleArray();
+          if (enabled && desiredSpeeds != null && measured.length >= 3 && desiredSpeeds.length >= 3)
+          {
+            summary.translationError.add(Math.hypot(desiredSpeeds[0] - measured[0], desiredSpeeds[1] - measured[1]));
+            // YAGSL publishes the angular velocity in degrees per second.
+            summary.rotationError.add(Math.abs(desiredSpeeds[2] - measured[2]));
+          }
+          break;
+        }
+        case BROWNOUT:
+        {
+          boolean value = record.getBoolean();
+          if (value && !brownedOut)
+          {
+            fileBrownouts++;
+          }
+          brownedOut = value;
+          break;
+        }
+        case BATTERY_VOLTAGE:
+          summary.minVoltage = Math.min(summary.minVoltage, record.getDouble());
+          break;
+        case VISION_ACCEPTED:
+        {
+          double value = record.getDouble();
+          summary.visionAccepted += enabled ? increase(lastAccepted, value) : 0;
+          lastAccepted = value;
+          break;
+        }
+        case VISION_REJECTED:
+        {
+          double value = record.getDouble();
+          summary.visionRejected += enabled ? increase(lastRejected, value) : 0;
+          lastRejected = value;
+          break;
+        }
+        case ENABLED:
+        {
+          boolean value = record.getBoolean();
+          if (value && !enabled)
+          {
+            enabledSince = timestamp;
+          } else if (!value && enabled)
+          {
+            summary.enabledSeconds += (timestamp - enabledSince) / 1e6;
+          }
+          enabled = value;
+          break;
+        }
+        default:
+          break;
+      }
+    }
+    if (enabled)
+    {
+      summary.enabledSeconds += (lastTimestamp - enabledSince) / 1e6;
+    }
+    summary.brownouts = fileBrownouts;
+    summary.fileLines.add(String.format("%-48s %7.1f s enabled  loop p99 %5.1f ms  overruns %5d  brownouts %3d",
+                                        file.getName(), summary.enabledSeconds,
+                                        summary.loopMillis.getPercentile(99),
+                                        summary.loopMillis.countAbove(LOOP_OVERRUN_MS), fileBrownouts));
+    return summary;
+  }
+
+  /**
+   * Increase of a counter since its previous logged value.
+   *
+   * @param previous Previous value, NaN if there was none.
+   * @param value    New value.
+   * @return The increase, 0 for the first value or when the counter restarted.
+   */
+  private static long increase(double previous, double value)
+  {
+    return Double.isNaN(previous) || value < previous ? 0 : (long) (value - previous);
+  }
+
+  private static String report(Summary s, double seconds)
+  {
+    StringWriter text = new StringWriter();
+    PrintWriter out = new PrintWriter(text);
+    out.printf("%d logs, %.1f MiB, %d records in %.2f s%n", s.files, s.bytes / 1048576.0, s.records, seconds);
+    out.printf("Enabled time %.1f s%n%n", s.enabledSeconds);
+    printHistogram(out, "Enabled loop time (ms)", s.loopMillis);
+    out.printf("  overruns over %.0f ms: %d%n", LOOP_OVERRUN_MS, s.loopMillis.countAbove(LOOP_OVERRUN_MS));
+    printHistogram(out, "Drive translation error (m/s)", s.translationError);
+    printHistogram(out, "Drive rotation error (deg/s)", s.rotationError);
+    printHistogram(out, "Module angle error (deg)", s.moduleAngleError);
+    out.printf("Brownouts %d, minimum battery voltage %s%n", s.brownouts,
+               s.minVoltage == Double.POSITIVE_INFINITY ? "not logged" : String.format("%.2f V", s.minVoltage));
+    long vision = s.visionAccepted + s.visionRejected;
+    out.printf("Vision measurements %d accepted, %d rejected, acceptance %s%n%n", s.visionAccepted, s.visionRejected,
+               vision == 0 ? "n/a" : String.format("%.1f%%", 100.0 * s.visionAccepted / vision));
+    s.fileLines.sort(Comparator.naturalOrder());
+    s.fileLines.forEach(out::println);
+    out.flush();
+    return text.toString();
+  }
+
+  private static void printHistogram(PrintWriter out, String name, Histogram histogram)
+  {
+    out.printf("%-30s n %8d  mean %8.3f  p50 %8.3f  p95 %8.3f  p99 %8.3f  max %8.3f%n", name, histogram.getCount(),
+               histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(95),
+               histogram.getPercentile(99), histogram.getMax());
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length == 0)
+    {
+      System.err.println("Usage: LogAnalyzer <file.wpilog | directory>...");
+      System.exit(1);
+    }
+    List<File> files = new ArrayList<>();
+    for (String arg : args)
+    {
+      File file = new File(arg);
+      File[] children = file.listFiles((dir, name) -> name.endsWith(".wpilog"));
+      if (children != null)
+      {
+        files.addAll(List.of(children));
+      } else
+      {
+        files.add(file);
+      }
+    }
+
+    long start = System.nanoTime();
+    Summary total = files.parallelStream().map(LogAnalyzer::analyze).reduce(new Summary(), (a, b) -> {
+      Summary merged = new Summary();
+      merged.merge(a);
+      merged.merge(b);
+      return merged;
+    });
+    String report = report(total, (System.nanoTime() - start) / 1e9);
+    System.out.print(report);
+
+    File output = new File("build/reports/logs/summary.txt");
+    output.getParentFile().mkdirs();
+    try (PrintWriter writer = new PrintWriter(output))
+    {
+      writer.print(report);
+    }
+    System.out.println("Wrote " + output.getAbsolutePath());
+  }
+}
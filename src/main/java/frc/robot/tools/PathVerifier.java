@@ -0,0 +1,344 @@
+package frc.robot.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.Constants;
+import frc.robot.Constants.AutonConstants;
+import frc.robot.util.kinematics.BatchKinematics;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.path.PathFile;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Build time check that every deploy folder path can be driven by this drivetrain. Each path is time parameterised with
+ * its own PathPlanner constraints, then run through the kinematics to get what it asks of the robot:
+ * <ul>
+ *   <li>module speed, against the path follower's {@link AutonConstants#MAX_MODULE_SPEED},</li>
+ *   <li>module acceleration, against the tire grip from physicalproperties.json,</li>
+ *   <li>tip margin, from the chassis acceleration and the {@link Constants#CHASSIS} center of mass over the wheel
+ *   base.</li>
+ * </ul>
+ * Autos are checked for references to missing paths and for jumps between consecutive paths. Paths and autos are
+ * loaded and checked in parallel. The per segment report is printed and written to build/reports/paths/feasibility.txt,
+ * and the tool exits with an error when anything is over a limit.
+ *
+ * <p>Run with {@code ./gradlew verifyPaths}. It is not part of {@code ./gradlew check} until the module locations in
+ * the deploy swerve configuration are measured, the placeholder locations fail every path on the tip check.
+ */
+public final class PathVerifier
+{
+
+  private static final double GRAVITY   = 9.80665;
+  private static final int    MODULES   = FourModuleKinematics.MODULES;
+  /**
+   * Slack over the limits before a path fails, for the finite differences along the sampled curve.
+   */
+  private static final double TOLERANCE = 1.02;
+  /**
+   * Distance between the end of a path and the start of the next one in an auto that counts as a jump.
+   */
+  private static final double MAX_GAP   = 0.1; // meters
+
+  private final Translation2d[] moduleLocations;
+  private final double          maxModuleSpeed;
+  private final double          maxModuleAcceleration;
+  /**
+   * Center of mass height and its distance to each side of the wheel base: front, back, left and right.
+   */
+  private final double          comHeight;
+  private final double          front, back, left, right;
+
+  private PathVerifier(Translation2d[] moduleLocations, double maxModuleSpeed, double frictionCoefficient,
+                       Translation3d centerOfMass)
+  {
+    this.moduleLocations = moduleLocations;
+    this.maxModuleSpeed = maxModuleSpeed;
+    this.maxModuleAcceleration = frictionCoefficient * GRAVITY;
+    this.comHeight = centerOfMass.getZ();
+    double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (Translation2d location : moduleLocations)
+    {
+      minX = Math.min(minX, location.getX());
+      maxX = Math.max(maxX, location.getX());
+      minY = Math.min(minY, location.getY());
+      maxY = Math.max(maxY, location.getY());
+    }
+    front = maxX - centerOfMass.getX();
+    back = centerOfMass.getX() - minX;
+    left = maxY - centerOfMass.getY();
+    right = centerOfMass.getY() - minY;
+  }
+
+  /**
+   * Report for one path or auto.
+   */
+  private static final class Result
+  {
+
+    final String       name;
+    final List<String> lines = new ArrayList<>();
+    boolean            failed;
+
+    Result(String name)
+    {
+      this.name = name;
+    }
+  }
+
+  /**
+   * Check one path segment by segment.
+   *
+   * @param path The path.
+   * @return The report.
+   */
+  private Result verify(PathFile path)
+  {
+    Result result = new Result("Path " + path.name);
+    int n = path.size();
+    double[] velocities = new double[n];
+    double[] times = new double[n];
+    path.profile(path.maxVelocity, path.maxAcceleration, Double.POSITIVE_INFINITY, velocities, times);
+
+    // Field relative velocity along the tangent and angular velocity, then robot relative for the kinematics.
+    double[] fieldVx = new double[n], fieldVy = new double[n];
+    double[] vx = new double[n], vy = new double[n], omega = new double[n];
+    for (int i = 0; i < n; i++)
+    {
+      int lo = Math.max(i - 1, 0), hi = Math.min(i + 1, n - 1);
+      double tangent = Math.atan2(path.y[hi] - path.y[lo], path.x[hi] - path.x[lo]);
+      fieldVx[i] = velocities[i] * Math.cos(tangent);
+      fieldVy[i] = velocities[i] * Math.sin(tangent);
+      double dt = times[hi] - times[lo];
+      omega[i] = dt > 1e-9 ? FourModuleKinematics.wrap(path.rotation[hi] - path.rotation[lo]) / dt : 0;
+      double cos = Math.cos(path.rotation[i]), sin = Math.sin(path.rotation[i]);
+      vx[i] = fieldVx[i] * cos + fieldVy[i] * sin;
+      vy[i] = -fieldVx[i] * sin + fieldVy[i] * cos;
+    }
+    double[][] moduleVx = new double[MODULES][n], moduleVy = new double[MODULES][n];
+    new BatchKinematics(moduleLocations).toModuleVelocities(vx, vy, omega, n, moduleVx, moduleVy);
+
+    int segments = Math.max(1, (int) Math.ceil(path.waypointPosition[n - 1] - 1e-9));
+    double[] speed = new double[segments], acceleration = new double[segments], margin = new double[segments];
+    double[] start = new double[segments], end = new double[segments];
+    Arrays.fill(margin, 1);
+    Arrays.fill(start, Double.NaN);
+    for (int i = 0; i < n; i++)
+    {
+      int segment = Math.min((int) path.waypointPosition[i], segments - 1);
+      if (Double.isNaN(start[segment]))
+      {
+        start[segment] = times[i];
+      }
+      end[segment] = times[i];
+      for (int m = 0; m < MODULES; m++)
+      {
+        speed[segment] = Math.max(speed[segment], Math.hypot(moduleVx[m][i], moduleVy[m][i]));
+      }
+      if (i == 0)
+      {
+        continue;
+      }
+      double dt = times[i] - times[i - 1];
+      if (dt < 1e-9)
+      {
+        continue;
+      }
+      for (int m = 0; m < MODULES; m++)
+      {
+        double ax = (moduleVx[m][i] - moduleVx[m][i - 1]) / dt;
+        double ay = (moduleVy[m][i] - moduleVy[m][i - 1]) / dt;
+        acceleration[segment] = Math.max(acceleration[segment], Math.hypot(ax, ay));
+      }
+      // The zero moment point moves away from the acceleration by a * h / g; the robot tips once it leaves the base.
+      double ax = (fieldVx[i] - fieldVx[i - 1]) / dt, ay = (fieldVy[i] - fieldVy[i - 1]) / dt;
+      double cos = Math.cos(path.rotation[i]), sin = Math.sin(path.rotation[i]);
+      double robotAx = ax * cos + ay * sin, robotAy = -ax * sin + ay * cos;
+      double shiftX = robotAx * comHeight / GRAVITY, shiftY = robotAy * comHeight / GRAVITY;
+      double used = Math.max(shiftX > 0 ? shiftX / back : -shiftX / front,
+                             shiftY > 0 ? shiftY / right : -shiftY / left);
+      margin[segment] = Math.min(margin[segment], 1 - used);
+    }
+
+    result.lines.add(String.format("  %-8s %8s %13s %16s %11s", "segment", "time s", "module m/s", "module m/s^2",
+                                   "tip margin"));
+    for (int s = 0; s < segments; s++)
+    {
+      StringBuilder line = new StringBuilder(String.format("  %-8d %8.2f %13.2f %16.2f %10.0f%%", s,
+                                                           end[s] - start[s], speed[s], acceleration[s],
+                                                           margin[s] * 100));
+      if (speed[s] > maxModuleSpeed * TOLERANCE)
+      {
+        line.append("  module speed over ").append(String.format("%.2f", maxModuleSpeed));
+        result.failed = true;
+      }
+      if (acceleration[s] > maxModuleAcceleration * TOLERANCE)
+      {
+        line.append("  wheels slip over ").append(String.format("%.2f", maxModuleAcceleration));
+        result.failed = true;
+      }
+      if (margin[s] < 0)
+      {
+        line.append("  tips over");
+        result.failed = true;
+      }
+      result.lines.add(line.toString());
+    }
+    return result;
+  }
+
+  /**
+   * Check that an auto only references paths that exist and that consecutive paths join up.
+   *
+   * @param file  The .auto file.
+   * @param paths Loaded paths by name.
+   * @return The report.
+   */
+  private static Result verifyAuto(File file, Map<String, PathFile> paths)
+  {
+    Result result = new Result("Auto " + file.getName().replace(".auto", ""));
+    List<String> names = new ArrayList<>();
+    try
+    {
+      collectPaths(new ObjectMapper().readTree(file).get("command"), names);
+    } catch (IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+    PathFile previous = null;
+    for (String name : names)
+    {
+      PathFile path = paths.get(name);
+      if (path == null)
+      {
+        result.lines.add("  references missing path " + name);
+        result.failed = true;
+        previous = null;
+        continue;
+      }
+      if (previous != null)
+      {
+        int last = previous.size() - 1;
+        double gap = Math.hypot(path.x[0] - previous.x[last], path.y[0] - previous.y[last]);
+        if (gap > MAX_GAP)
+        {
+          result.lines.add(String.format("  jumps %.2f m from the end of %s to the start of %s", gap, previous.name,
+                                         name));
+          result.failed = true;
+        }
+      }
+      previous = path;
+    }
+    if (!result.failed)
+    {
+      result.lines.add("  " + names.size() + " paths, all present and joined");
+    }
+    return result;
+  }
+
+  /**
+   * Collect the path names of an auto's command tree in the order they run.
+   */
+  private static void collectPaths(JsonNode command, List<String> names)
+  {
+    if (command == null || command.isNull())
+    {
+      return;
+    }
+    JsonNode data = command.get("data");
+    if ("path".equals(command.path("type").asText()) && data != null)
+    {
+      names.add(data.path("pathName").asText());
+    }
+    if (data != null && data.has("commands"))
+    {
+      for (JsonNode child : data.get("commands"))
+      {
+        collectPaths(child, names);
+      }
+    }
+  }
+
+  /**
+   * Entry point.
+   *
+   * @param args Deploy directory, optional.
+   * @throws IOException If the configuration cannot be read or the report cannot be written.
+   */
+  public static void main(String... args) throws IOException
+  {
+    File deploy = new File(args.length > 0 ? args[0] : "src/main/deploy");
+    File swerve = new File(deploy, "swerve");
+    double friction = DeployConfig.read(swerve, "modules/physicalproperties.json")
+                                  .get("wheelGripCoefficientOfFriction").asDouble();
+    PathVerifier verifier = new PathVerifier(DeployConfig.readModuleLocations(swerve),
+                                             AutonConstants.MAX_MODULE_SPEED,
+                                             friction, Constants.CHASSIS.position);
+
+    File[] pathFiles = new File(deploy, "pathplanner/paths").listFiles((dir, name) -> name.endsWith(".path"));
+    File[] autoFiles = new File(deploy, "pathplanner/autos").listFiles((dir, name) -> name.endsWith(".auto"));
+    List<PathFile> paths = Arrays.stream(pathFiles == null ? new File[0] : pathFiles).parallel().map(file -> {
+      try
+      {
+        return PathFile.load(file);
+      } catch (IOException e)
+      {
+        throw new UncheckedIOException(e);
+      }
+    }).collect(Collectors.toList());
+    Map<String, PathFile> byName = paths.stream().collect(Collectors.toMap(path -> path.name, Function.identity()));
+
+    List<Result> results = new ArrayList<>(paths.parallelStream().map(verifier::verify).collect(Collectors.toList()));
+    results.addAll(Arrays.stream(autoFiles == null ? new File[0] : autoFiles).parallel()
+                         .map(file -> verifyAuto(file, byName)).collect(Collectors.toList()));
+    results.sort(Comparator.comparing(result -> result.name));
+
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("Path feasibility: module speed %.2f m/s, module acceleration %.2f m/s^2, "
+                                + "center of mass %.2f m high%n", verifier.maxModuleSpeed,
+                                verifier.maxModuleAcceleration, verifier.comHeight));
+    Set<String> failed = new TreeSet<>();
+    for (Result result : results)
+    {
+      report.append(result.name).append(result.failed ? ": FAILED" : ": ok").append(System.lineSeparator());
+      for (String line : result.lines)
+      {
+        report.append(line).append(System.lineSeparator());
+      }
+      if (result.failed)
+      {
+        failed.add(result.name);
+      }
+    }
+    report.append(String.format("%d paths, %d autos, %d failed%n", paths.size(),
+                                autoFiles == null ? 0 : autoFiles.length, failed.size()));
+    System.out.print(report);
+
+    File output = new File("build/reports/paths/feasibility.txt");
+    output.getParentFile().mkdirs();
+    try (PrintWriter writer = new PrintWriter(output))
+    {
+      writer.print(report);
+    }
+    System.out.println("Wrote " + output.getAbsolutePath());
+    if (!failed.isEmpty())
+    {
+      System.err.println("Infeasible: " + String.join(", ", failed));
+      System.exit(1);
+    }
+  }
+}
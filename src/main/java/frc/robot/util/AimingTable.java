@@ -0,0 +1,155 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Precomputed field grid mapping the robot position to the heading and range of a target, one table per alliance.
+ * The table is built once at startup so each loop the heading setpoint is a bilinear lookup instead of trigonometry on
+ * vision data. Headings are stored as unit vectors so interpolation does not break across the +-pi wrap.
+ */
+public class AimingTable
+{
+
+  /**
+   * Alliance index for the blue table.
+   */
+  public static final int BLUE = 0;
+  /**
+   * Alliance index for the red table.
+   */
+  public static final int RED  = 1;
+
+  private final double   resolution;
+  private final int      columns, rows;
+  /**
+   * Per alliance tables, row major with x along the columns.
+   */
+  private final float[][] cos;
+  private final float[][] sin;
+  private final float[][] range;
+  /**
+   * Output of the last {@link #lookup} call.
+   */
+  private double heading, distance;
+
+  /**
+   * Build the tables.
+   *
+   * @param fieldLength Length of the field along x in meters.
+   * @param fieldWidth  Width of the field along y in meters.
+   * @param resolution  Grid spacing in meters.
+   * @param blueTarget  Target position for the blue alliance.
+   * @param redTarget   Target position for the red alliance.
+   */
+  public AimingTable(double fieldLength, double fieldWidth, double resolution, Translation2d blueTarget,
+                     Translation2d redTarget)
+  {
+    this.resolution = resolution;
+    columns = (int) Math.ceil(fieldLength / resolution) + 1;
+    rows = (int) Math.ceil(fieldWidth / resolution) + 1;
+    cos = new float[2][columns * rows];
+    sin = new float[2][columns * rows];
+    range = new float[2][columns * rows];
+    fill(BLUE, blueTarget);
+    fill(RED, redTarget);
+  }
+
+  private void fill(int alliance, Translation2d target)
+  {
+    for (int row = 0; row < rows; row++)
+    {
+      for (int column = 0; column < columns; column++)
+      {
+        double dx = target.getX() - column * resolution;
+        double dy = target.getY() - row * resolution;
+        double d = Math.hypot(dx, dy);
+        int cell = row * columns + column;
+        range[alliance][cell] = (float) d;
+        // Directly on the target there is no heading, face along +x.
+        cos[alliance][cell] = (float) (d > 1e-6 ? dx / d : 1);
+        sin[alliance][cell] = (float) (d > 1e-6 ? dy / d : 0);
+      }
+    }
+  }
+
+  /**
+   * Look up the heading and range to the target. Positions outside the field are clamped to the edge. Read the result
+   * with {@link #getHeading()} and {@link #getRange()}.
+   *
+   * @param alliance {@link #BLUE} or {@link #RED}.
+   * @param x        Robot x in meters.
+   * @param y        Robot y in meters.
+   */
+  public void lookup(int alliance, double x, double y)
+  {
+    double gx = Math.max(0, Math.min(x / resolution, columns - 1.000001));
+    double gy = Math.max(0, Math.min(y / resolution, rows - 1.000001));
+    int column = (int) gx;
+    int row = (int) gy;
+    double tx = gx - column;
+    double ty = gy - row;
+    int c00 = row * columns + column;
+    int c10 = c00 + 1;
+    int c01 = c00 + columns;
+    int c11 = c01 + 1;
+
+    double c = bilinear(cos[alliance], c00, c10, c01, c11, tx, ty);
+    double s = bilinear(sin[alliance], c00, c10, c01, c11, tx, ty);
+    heading = Math.atan2(s, c);
+    distance = bilinear(range[alliance], c00, c10, c01, c11, tx, ty);
+  }
+
+  /**
+   * Look up the heading and range while moving, leading the target by the time of flight. The robot is treated as if
+   * it were where its velocity carries it during the flight, which is equivalent to aiming at the target minus the
+   * robot velocity times the flight time.
+   *
+   * @param alliance        {@link #BLUE} or {@link #RED}.
+   * @param x               Robot x in meters.
+   * @param y               Robot y in meters.
+   * @param vx              Field relative robot x velocity in m/s.
+   * @param vy              Field relative robot y velocity in m/s.
+   * @param projectileSpeed Average projectile speed in m/s, 0 or less disables the lead.
+   */
+  public void lookup(int alliance, double x, double y, double vx, double vy, double projectileSpeed)
+  {
+    lookup(alliance, x, y);
+    if (projectileSpeed <= 0)
+    {
+      return;
+    }
+    double timeOfFlight = distance / projectileSpeed;
+    lookup(alliance, x + vx * timeOfFlight, y + vy * timeOfFlight);
+  }
+
+  private static double bilinear(float[] table, int c00, int c10, int c01, int c11, double tx, double ty)
+  {
+    double bottom = table[c00] + (table[c10] - table[c00]) * tx;
+    double top = table[c01] + (table[c11] - table[c01]) * tx;
+    return bottom + (top - bottom) * ty;
+  }
+
+  /**
+   * @return Field relative heading to the target from the last lookup, in radians.
+   */
+  public double getHeading()
+  {
+    return heading;
+  }
+
+  /**
+   * @return Distance to the target from the last lookup, in meters.
+   */
+  public double getRange()
+  {
+    return distance;
+  }
+
+  /**
+   * @return Memory used by the tables in bytes.
+   */
+  public long getSizeBytes()
+  {
+    return 3L * 2 * columns * rows * Float.BYTES;
+  }
+}
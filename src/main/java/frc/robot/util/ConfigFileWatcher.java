@@ -0,0 +1,220 @@
+package frc.robot.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Watches a set of JSON files for changes on a background thread. Only the file that changed is parsed again, and the
+ * result is handed to the main loop through {@link #poll()}, so nothing is applied until the caller decides it is safe.
+ * Files that fail to parse, for example while an editor is part way through saving, are skipped until the next change.
+ */
+public class ConfigFileWatcher implements AutoCloseable
+{
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final File                    root;
+  private final List<String>            names;
+  /**
+   * Last contents handed out for each file, used as the base of the next diff.
+   */
+  private final Map<String, JsonNode>   applied = new HashMap<>();
+  /**
+   * Parsed contents waiting for the main loop, keyed by file name relative to the root.
+   */
+  private final Map<String, JsonNode>   pending = new ConcurrentHashMap<>();
+  private final WatchService            watchService;
+  private final Map<WatchKey, Path>     directories = new HashMap<>();
+  private final Thread                  thread;
+
+  /**
+   * Start watching.
+   *
+   * @param root  Directory the file names are relative to.
+   * @param names File names relative to the root, for example {@code modules/pidfproperties.json}.
+   * @throws IOException If the watch service cannot be created or a file cannot be read.
+   */
+  public ConfigFileWatcher(File root, String... names) throws IOException
+  {
+    this.root = root;
+    this.names = List.of(names);
+    watchService = FileSystems.getDefault().newWatchService();
+    for (String name : names)
+    {
+      applied.put(name, MAPPER.readTree(new File(root, name)));
+      Path directory = new File(root, name).getParentFile().toPath();
+      if (!directories.containsValue(directory))
+      {
+        // Editors often save by writing a new file and renaming it over the old one, so creation counts as a change.
+        directories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                                           StandardWatchEventKinds.ENTRY_CREATE), directory);
+      }
+    }
+    thread = new Thread(this::run, "Config Watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void run()
+  {
+    try
+    {
+      while (true)
+      {
+        WatchKey key = watchService.take();
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+          if (directory == null || event.kind() == StandardWatchEventKinds.OVERFLOW)
+          {
+            continue;
+          }
+          String name = root.toPath().relativize(directory.resolve((Path) event.context())).toString()
+                            .replace(File.separatorChar, '/');
+          if (names.contains(name))
+          {
+            parse(name);
+          }
+        }
+        key.reset();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e)
+    {
+      // Closed, let the thread end.
+    }
+  }
+
+  private void parse(String name)
+  {
+    try
+    {
+      pending.put(name, MAPPER.readTree(new File(root, name)));
+    } catch (IOException e)
+    {
+      DriverStation.reportWarning("Skipping " + name + " until it parses: " + e.getMessage(), false);
+    }
+  }
+
+  /**
+   * Queue every watched file as changed, whether or not it was modified.
+   */
+  public void requestReload()
+  {
+    for (String name : names)
+    {
+      parse(name);
+    }
+  }
+
+  /**
+   * Take the files that changed since the last call. Each file is only returned if its contents differ from the last
+   * time it was returned, since saving without edits still produces a file system event.
+   *
+   * @return Changed files keyed by name relative to the root, with their new contents, possibly empty.
+   */
+  public Map<String, JsonNode> poll()
+  {
+    if (pending.isEmpty())
+    {
+      return Map.of();
+    }
+    Map<String, JsonNode> changed = new HashMap<>();
+    for (Map.Entry<String, JsonNode> entry : pending.entrySet())
+    {
+      String name = entry.getKey();
+      JsonNode json = entry.getValue();
+      // Only remove the value read here, a newer one the watcher stored meanwhile stays for the next poll.
+      pending.remove(name, json);
+      if (!json.equals(applied.get(name)))
+      {
+        changed.put(name, json);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Contents of a file as of the last time it was returned from {@link #poll()}. Call {@link #markApplied} once a
+   * change has been applied so the next diff is taken against it.
+   *
+   * @param name File name relative to the root.
+   * @return The contents.
+   */
+  public JsonNode getApplied(String name)
+  {
+    return applied.get(name);
+  }
+
+  /**
+   * Record that a file's contents have been applied.
+   *
+   * @param name     File name relative to the root.
+   * @param contents The applied contents.
+   */
+  public void markApplied(String name, JsonNode contents)
+  {
+    applied.put(name, contents);
+  }
+
+  /**
+   * Describe the differences between two JSON trees, one line per changed value.
+   *
+   * @param before Old contents.
+   * @param after  New contents.
+   * @return Lines like {@code drive.p: 0.002 -> 0.003}.
+   */
+  public static List<String> diff(JsonNode before, JsonNode after)
+  {
+    List<String> lines = new ArrayList<>();
+    diff("", before, after, lines);
+    return lines;
+  }
+
+  private static void diff(String path, JsonNode before, JsonNode after, List<String> lines)
+  {
+    if (before != null && after != null && before.isObject() && after.isObject())
+    {
+      Iterator<String> fields = before.fieldNames();
+      while (fields.hasNext())
+      {
+        String field = fields.next();
+        diff(path.isEmpty() ? field : path + "." + field, before.get(field), after.get(field), lines);
+      }
+      fields = after.fieldNames();
+      while (fields.hasNext())
+      {
+        String field = fields.next();
+        if (!before.has(field))
+        {
+          diff(path.isEmpty() ? field : path + "." + field, null, after.get(field), lines);
+        }
+      }
+    } else if (before == null ? after != null : !before.equals(after))
+    {
+      lines.add(path + ": " + before + " -> " + after);
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    watchService.close();
+    thread.interrupt();
+  }
+}
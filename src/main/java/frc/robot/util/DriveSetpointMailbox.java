@@ -0,0 +1,85 @@
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single slot, lock free mailbox used by the command scheduler to hand drive setpoints to the high rate drive loop.
+ * Only the latest setpoint matters, so posting simply replaces whatever was there.
+ */
+public class DriveSetpointMailbox
+{
+
+  /**
+   * Who is driving the robot.
+   */
+  public enum Mode
+  {
+    /**
+     * The scheduler owns the drivetrain, the high rate loop does nothing.
+     */
+    IDLE,
+    /**
+     * The high rate loop reads and shapes the driver sticks itself.
+     */
+    STICKS,
+    /**
+     * The posted robot relative chassis speeds drive the robot, used by the sim control drive override.
+     */
+    CHASSIS_SPEEDS
+  }
+
+  /**
+   * Immutable setpoint posted to the mailbox.
+   */
+  public static final class Setpoint
+  {
+
+    public final Mode   mode;
+    public final double vxMetersPerSecond;
+    public final double vyMetersPerSecond;
+    public final double omegaRadiansPerSecond;
+    public final double timestamp;
+
+    public Setpoint(Mode mode, double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond,
+                    double timestamp)
+    {
+      this.mode = mode;
+      this.vxMetersPerSecond = vxMetersPerSecond;
+      this.vyMetersPerSecond = vyMetersPerSecond;
+      this.omegaRadiansPerSecond = omegaRadiansPerSecond;
+      this.timestamp = timestamp;
+    }
+  }
+
+  private static final Setpoint IDLE_SETPOINT = new Setpoint(Mode.IDLE, 0, 0, 0, 0);
+
+  private final AtomicReference<Setpoint> latest = new AtomicReference<>(IDLE_SETPOINT);
+
+  /**
+   * Replace the current setpoint.
+   *
+   * @param setpoint New setpoint.
+   */
+  public void post(Setpoint setpoint)
+  {
+    latest.set(setpoint);
+  }
+
+  /**
+   * Hand the drivetrain back to the scheduler.
+   */
+  public void idle()
+  {
+    latest.set(IDLE_SETPOINT);
+  }
+
+  /**
+   * Read the latest setpoint without consuming it.
+   *
+   * @return The latest setpoint.
+   */
+  public Setpoint peek()
+  {
+    return latest.get();
+  }
+}
@@ -0,0 +1,185 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Latest drivetrain state published by the robot loop for readers on other threads, such as vision, NetworkTables
+ * listeners and the pathfinding thread. It is a seqlock: the single writer makes the sequence odd, writes the record
+ * and makes it even again, and a reader copies the record between two reads of the sequence and retries if a write
+ * overlapped. Readers never take a lock and never hold up the writer, and every snapshot they get comes from one
+ * publish. Neither side allocates.
+ */
+public class DriveStateSeqlock
+{
+
+  private static final int MODULES = FourModuleKinematics.MODULES;
+  /**
+   * Retries a reader spins for before yielding, in case the writer was preempted in the middle of a publish.
+   */
+  private static final int SPINS   = 64;
+  /**
+   * Record layout: timestamp, pose, robot relative velocity, field relative velocity, then the module speeds, angles
+   * and distances.
+   */
+  private static final int TIMESTAMP = 0;
+  private static final int POSE      = 1;
+  private static final int ROBOT     = 4;
+  private static final int FIELD     = 7;
+  private static final int SPEEDS    = 10;
+  private static final int ANGLES    = SPEEDS + MODULES;
+  private static final int DISTANCES = ANGLES + MODULES;
+  private static final int SIZE      = DISTANCES + MODULES;
+
+  /**
+   * A copy of one published state, reused by its reader.
+   */
+  public static final class Snapshot
+  {
+
+    /**
+     * Sequence number of the publish this snapshot came from, zero before the first publish.
+     */
+    public       long     version;
+    /**
+     * FPGA time of the publish in seconds.
+     */
+    public       double   timestamp;
+    /**
+     * Field relative pose in meters and radians.
+     */
+    public       double   x, y, theta;
+    /**
+     * Robot relative velocity in m/s and rad/s.
+     */
+    public       double   vx, vy, omega;
+    /**
+     * Field relative velocity in m/s and rad/s.
+     */
+    public       double   fieldVx, fieldVy, fieldOmega;
+    /**
+     * Module states in swervedrive.json order.
+     */
+    public final double[] moduleSpeeds    = new double[MODULES];
+    public final double[] moduleAngles    = new double[MODULES];
+    public final double[] moduleDistances = new double[MODULES];
+
+    /**
+     * @return The pose as a {@link Pose2d}, allocated on each call.
+     */
+    public Pose2d getPose()
+    {
+      return new Pose2d(x, y, new Rotation2d(theta));
+    }
+  }
+
+  private final    double[] record = new double[SIZE];
+  private volatile long     sequence;
+  private volatile long     retries;
+
+  /**
+   * Publish a new state. Only one thread may publish, normally the robot loop.
+   *
+   * @param timestamp FPGA time in seconds.
+   * @param x         Field relative x in meters.
+   * @param y         Field relative y in meters.
+   * @param theta     Heading in radians.
+   * @param vx        Robot relative forward velocity in m/s.
+   * @param vy        Robot relative left velocity in m/s.
+   * @param omega     Angular velocity in rad/s.
+   * @param speeds    Module speeds in m/s.
+   * @param angles    Module angles in radians.
+   * @param distances Module distances in meters.
+   */
+  public void publish(double timestamp, double x, double y, double theta, double vx, double vy, double omega,
+                      double[] speeds, double[] angles, double[] distances)
+  {
+    long next = sequence + 1;
+    sequence = next;
+    // The record writes must not move ahead of the odd sequence, the volatile write alone only orders earlier writes.
+    VarHandle.storeStoreFence();
+    double cos = Math.cos(theta), sin = Math.sin(theta);
+    record[TIMESTAMP] = timestamp;
+    record[POSE] = x;
+    record[POSE + 1] = y;
+    record[POSE + 2] = theta;
+    record[ROBOT] = vx;
+    record[ROBOT + 1] = vy;
+    record[ROBOT + 2] = omega;
+    record[FIELD] = vx * cos - vy * sin;
+    record[FIELD + 1] = vx * sin + vy * cos;
+    record[FIELD + 2] = omega;
+    System.arraycopy(speeds, 0, record, SPEEDS, MODULES);
+    System.arraycopy(angles, 0, record, ANGLES, MODULES);
+    System.arraycopy(distances, 0, record, DISTANCES, MODULES);
+    sequence = next + 1;
+  }
+
+  /**
+   * Copy the latest published state. Spins while a publish is in progress, which lasts well under a microsecond, and
+   * yields to other threads if it takes longer than that.
+   *
+   * @param out Snapshot to fill.
+   * @return Number of times the copy was retried because a publish overlapped it.
+   */
+  public int read(Snapshot out)
+  {
+    int attempts = 0;
+    while (true)
+    {
+      long before = sequence;
+      if ((before & 1) == 0)
+      {
+        out.timestamp = record[TIMESTAMP];
+        out.x = record[POSE];
+        out.y = record[POSE + 1];
+        out.theta = record[POSE + 2];
+        out.vx = record[ROBOT];
+        out.vy = record[ROBOT + 1];
+        out.omega = record[ROBOT + 2];
+        out.fieldVx = record[FIELD];
+        out.fieldVy = record[FIELD + 1];
+        out.fieldOmega = record[FIELD + 2];
+        System.arraycopy(record, SPEEDS, out.moduleSpeeds, 0, MODULES);
+        System.arraycopy(record, ANGLES, out.moduleAngles, 0, MODULES);
+        System.arraycopy(record, DISTANCES, out.moduleDistances, 0, MODULES);
+        // The copy must finish before the sequence is checked again.
+        VarHandle.loadLoadFence();
+        if (sequence == before)
+        {
+          out.version = before / 2;
+          if (attempts > 0)
+          {
+            retries += attempts;
+          }
+          return attempts;
+        }
+      }
+      if (++attempts % SPINS == 0)
+      {
+        Thread.yield();
+      } else
+      {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  /**
+   * @return Number of publishes so far.
+   */
+  public long getVersion()
+  {
+    return sequence / 2;
+  }
+
+  /**
+   * @return Total reads retried because of an overlapping publish, approximate when readers race to count.
+   */
+  public long getRetries()
+  {
+    return retries;
+  }
+}
@@ -0,0 +1,219 @@
+package frc.robot.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Online fit of the simple motor feedforward {@code V = kS * sign(v) + kV * v + kA * a} using recursive least squares.
+ * Each sample is folded into a 3x3 covariance and the running residual, so memory use is constant no matter how long
+ * the SysId routine runs, and the gains and their 95% confidence intervals can be read at any time. The fit can be
+ * saved as JSON and read back as a {@link SimpleMotorFeedforward}.
+ */
+public class FeedforwardEstimator
+{
+
+  /**
+   * Two sided 95% normal quantile.
+   */
+  private static final double Z_95                = 1.959964;
+  /**
+   * Initial covariance, large so the first samples dominate the prior of zero.
+   */
+  private static final double INITIAL_COVARIANCE  = 1e4;
+
+  /**
+   * Velocities below this are treated as static and skipped, since sign(v) is undefined there.
+   */
+  private final double minVelocity;
+  /**
+   * Forgetting factor, 1 weighs every sample equally.
+   */
+  private final double lambda;
+
+  /**
+   * Parameters [kS, kV, kA] and their covariance.
+   */
+  private final double[]   theta = new double[3];
+  private final double[][] p     = new double[3][3];
+  private final double[]   px    = new double[3];
+  private final double[]   gain  = new double[3];
+  private       long       samples;
+  private       double     squaredResiduals;
+
+  /**
+   * Create an estimator that weighs every sample equally.
+   *
+   * @param minVelocity Velocities with a smaller magnitude are ignored.
+   */
+  public FeedforwardEstimator(double minVelocity)
+  {
+    this(minVelocity, 1.0);
+  }
+
+  /**
+   * Create an estimator.
+   *
+   * @param minVelocity Velocities with a smaller magnitude are ignored.
+   * @param lambda      Forgetting factor in (0, 1], smaller values track changing dynamics faster.
+   */
+  public FeedforwardEstimator(double minVelocity, double lambda)
+  {
+    this.minVelocity = minVelocity;
+    this.lambda = lambda;
+    reset();
+  }
+
+  /**
+   * Forget every sample.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < 3; i++)
+    {
+      theta[i] = 0;
+      for (int j = 0; j < 3; j++)
+      {
+        p[i][j] = i == j ? INITIAL_COVARIANCE : 0;
+      }
+    }
+    samples = 0;
+    squaredResiduals = 0;
+  }
+
+  /**
+   * Add a sample.
+   *
+   * @param voltage      Applied voltage.
+   * @param velocity     Measured velocity.
+   * @param acceleration Measured acceleration.
+   */
+  public void addSample(double voltage, double velocity, double acceleration)
+  {
+    if (Math.abs(velocity) < minVelocity || !Double.isFinite(voltage + velocity + acceleration))
+    {
+      return;
+    }
+    double x0 = Math.signum(velocity);
+    double x1 = velocity;
+    double x2 = acceleration;
+
+    // P x and x' P x
+    for (int i = 0; i < 3; i++)
+    {
+      px[i] = p[i][0] * x0 + p[i][1] * x1 + p[i][2] * x2;
+    }
+    double denominator = lambda + x0 * px[0] + x1 * px[1] + x2 * px[2];
+    for (int i = 0; i < 3; i++)
+    {
+      gain[i] = px[i] / denominator;
+    }
+
+    double error = voltage - (theta[0] * x0 + theta[1] * x1 + theta[2] * x2);
+    for (int i = 0; i < 3; i++)
+    {
+      theta[i] += gain[i] * error;
+    }
+
+    // P = (P - K x' P) / lambda, P is symmetric so x' P = (P x)'
+    for (int i = 0; i < 3; i++)
+    {
+      for (int j = 0; j < 3; j++)
+      {
+        p[i][j] = (p[i][j] - gain[i] * px[j]) / lambda;
+      }
+    }
+
+    double residual = voltage - (theta[0] * x0 + theta[1] * x1 + theta[2] * x2);
+    squaredResiduals = lambda * squaredResiduals + residual * residual;
+    samples++;
+  }
+
+  /**
+   * @return Number of samples used in the fit.
+   */
+  public long getSampleCount()
+  {
+    return samples;
+  }
+
+  /**
+   * @return Static gain in volts.
+   */
+  public double getKs()
+  {
+    return theta[0];
+  }
+
+  /**
+   * @return Velocity gain in volts per unit of velocity.
+   */
+  public double getKv()
+  {
+    return theta[1];
+  }
+
+  /**
+   * @return Acceleration gain in volts per unit of acceleration.
+   */
+  public double getKa()
+  {
+    return theta[2];
+  }
+
+  /**
+   * Half width of the 95% confidence interval of a parameter.
+   *
+   * @param index 0 for kS, 1 for kV, 2 for kA.
+   * @return The half width, or infinity until there are enough samples.
+   */
+  public double getConfidenceInterval(int index)
+  {
+    if (samples <= 3)
+    {
+      return Double.POSITIVE_INFINITY;
+    }
+    double variance = squaredResiduals / (samples - 3);
+    return Z_95 * Math.sqrt(variance * p[index][index]);
+  }
+
+  /**
+   * Write the fitted gains to a JSON file with "kS", "kV" and "kA" entries.
+   *
+   * @param file File to write.
+   * @throws IOException If the file could not be written.
+   */
+  public void save(File file) throws IOException
+  {
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectNode json = mapper.createObjectNode();
+    json.put("kS", getKs());
+    json.put("kV", getKv());
+    json.put("kA", getKa());
+    mapper.writerWithDefaultPrettyPrinter().writeValue(file, json);
+  }
+
+  /**
+   * Read gains written by {@link #save(File)}.
+   *
+   * @param file File to read.
+   * @return The feedforward.
+   * @throws IOException If the file could not be read or is missing a gain.
+   */
+  public static SimpleMotorFeedforward load(File file) throws IOException
+  {
+    JsonNode json = new ObjectMapper().readTree(file);
+    for (String gain : new String[]{"kS", "kV", "kA"})
+    {
+      if (json == null || !json.path(gain).isNumber())
+      {
+        throw new IOException(file + " has no " + gain);
+      }
+    }
+    return new SimpleMotorFeedforward(json.get("kS").asDouble(), json.get("kV").asDouble(),
+                                      json.get("kA").asDouble());
+  }
+}
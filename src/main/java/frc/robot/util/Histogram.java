@@ -0,0 +1,144 @@
+package frc.robot.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed width histogram of non-negative values with an overflow bin. Adding a value does not allocate, and histograms
+ * with the same bins can be merged, so per thread or per file histograms can be combined at the end.
+ */
+public class Histogram
+{
+
+  private final double binWidth;
+  private final long[] counts;
+  private long         overflow;
+  private long         count;
+  private double       sum;
+  private double       max;
+
+  /**
+   * @param binWidth Width of each bin.
+   * @param bins     Number of bins; values past {@code binWidth * bins} go to the overflow bin.
+   */
+  public Histogram(double binWidth, int bins)
+  {
+    this.binWidth = binWidth;
+    counts = new long[bins];
+  }
+
+  /**
+   * @param value Value to add, negative values count as zero.
+   */
+  public void add(double value)
+  {
+    int bin = (int) (Math.max(value, 0) / binWidth);
+    if (bin < counts.length)
+    {
+      counts[bin]++;
+    } else
+    {
+      overflow++;
+    }
+    count++;
+    sum += value;
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Add the values of another histogram with the same bins.
+   *
+   * @param other Histogram to merge.
+   */
+  public void merge(Histogram other)
+  {
+    if (other.counts.length != counts.length || other.binWidth != binWidth)
+    {
+      throw new IllegalArgumentException("Histograms have different bins");
+    }
+    for (int i = 0; i < counts.length; i++)
+    {
+      counts[i] += other.counts[i];
+    }
+    overflow += other.overflow;
+    count += other.count;
+    sum += other.sum;
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Forget every value.
+   */
+  public void reset()
+  {
+    Arrays.fill(counts, 0);
+    overflow = 0;
+    count = 0;
+    sum = 0;
+    max = 0;
+  }
+
+  /**
+   * @return Number of values added.
+   */
+  public long getCount()
+  {
+    return count;
+  }
+
+  /**
+   * @return Mean of the values, zero when empty.
+   */
+  public double getMean()
+  {
+    return count == 0 ? 0 : sum / count;
+  }
+
+  /**
+   * @return Largest value added.
+   */
+  public double getMax()
+  {
+    return max;
+  }
+
+  /**
+   * Number of values at or above a threshold, to the resolution of the bins.
+   *
+   * @param threshold Threshold.
+   * @return Count of values in the bins starting at or after the threshold.
+   */
+  public long countAbove(double threshold)
+  {
+    long above = overflow;
+    for (int i = counts.length - 1; i >= 0 && i * binWidth >= threshold; i--)
+    {
+      above += counts[i];
+    }
+    return above;
+  }
+
+  /**
+   * Percentile estimated as the upper edge of the bin containing it. Percentiles in the overflow bin return the maximum.
+   *
+   * @param percentile Percentile from 0 to 100.
+   * @return The estimate, zero when empty.
+   */
+  public double getPercentile(double percentile)
+  {
+    if (count == 0)
+    {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100 * count);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++)
+    {
+      seen += counts[i];
+      if (seen >= rank)
+      {
+        return Math.min((i + 1) * binWidth, max);
+      }
+    }
+    return max;
+  }
+}
@@ -0,0 +1,318 @@
+package frc.robot.util;
+
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.path.PathPlannerTrajectory.State;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.AutonConstants;
+import frc.robot.commands.AbsoluteDrive;
+import frc.robot.commands.DriveRobotOriented;
+import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.odometry.PrimitivePoseEstimator;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs the drive code on synthetic inputs while the robot is disabled, so the JIT has compiled it before the first
+ * enabled loop instead of during it. Each {@link #run()} takes a slice of a disabled loop and drives the real
+ * {@link AbsoluteDrive} and {@link DriveRobotOriented} commands with the drivetrain in shadow mode, then the swerve
+ * kinematics, the primitive pose estimator and the PathPlanner holonomic controller on copies of their own, so no motor
+ * is commanded and no state the robot uses is touched.
+ *
+ * <p>The JVM only exposes a JVM wide compilation time counter, not which methods are compiled, so warm-up is done once
+ * that counter has not moved for a while after enough iterations to pass the compile thresholds. The first and latest
+ * iteration times, and the work time of the first loops after each enable, are published under "JIT Warmup" so runs
+ * with and without warm-up can be compared.
+ */
+public class JitWarmup
+{
+
+  /**
+   * Synthetic loop period used to advance the synthetic inputs and estimator timestamps.
+   */
+  private static final double DT = 0.02;
+
+  private final SwerveDrivetrain           drivebase;
+  private final CompilationMXBean          compilation      = ManagementFactory.getCompilationMXBean();
+  private final long                       sliceNanos;
+  private final long                       plateauNanos;
+  private final long                       timeoutNanos;
+  private final int                        minIterations;
+  private final int                        reportLoops;
+  private final double                     maxSpeed;
+  private final Command                    absoluteDrive;
+  private final Command                    robotOrientedDrive;
+  /**
+   * Copies of the kinematics and estimator, their remembered module headings and history must not be disturbed.
+   */
+  private final SwerveDriveKinematics      kinematics;
+  private final FourModuleKinematics       fastKinematics;
+  private final PrimitivePoseEstimator     poseEstimator;
+  private final PPHolonomicDriveController pathController;
+  private final PathPlannerTrajectory      trajectory;
+  private final double[]                   speeds           = new double[FourModuleKinematics.MODULES];
+  private final double[]                   angles           = new double[FourModuleKinematics.MODULES];
+  private final double[]                   currentAngles    = new double[FourModuleKinematics.MODULES];
+  private final double[]                   distances        = new double[FourModuleKinematics.MODULES];
+  private final double[]                   chassis          = new double[3];
+  /**
+   * Synthetic stick inputs read by the warmed commands.
+   */
+  private       double                     inputX, inputY, headingX, headingY;
+  private       double                     theta;
+  private       long                       iterations;
+  private       long                       warmupNanos;
+  private       long                       lastCompileNanos;
+  private       long                       lastCompileMillis;
+  private       double                     coldIterationMicros;
+  private       double                     warmIterationMicros;
+  private       boolean                    finished;
+  private       boolean                    compiled;
+  private       boolean                    wasEnabled;
+  private       int                        enabledLoops;
+  private       long                       firstLoopMicros;
+  private       long                       maxLoopMicros;
+
+  /**
+   * @param drivebase     The drivetrain whose drive code is warmed up.
+   * @param slice         Warm-up time to take from each call to {@link #run()} in seconds.
+   * @param minIterations Iterations to run before trusting the compilation counter.
+   * @param plateauTime   Time in seconds the compilation counter has to stay still for warm-up to be done.
+   * @param timeout       Warm-up time in seconds after which warm-up gives up.
+   * @param reportLoops   Enabled loops timed after each enable.
+   */
+  public JitWarmup(SwerveDrivetrain drivebase, double slice, int minIterations, double plateauTime, double timeout,
+                   int reportLoops)
+  {
+    this.drivebase = drivebase;
+    this.sliceNanos = (long) (slice * 1e9);
+    this.minIterations = minIterations;
+    this.plateauNanos = (long) (plateauTime * 1e9);
+    this.timeoutNanos = (long) (timeout * 1e9);
+    this.reportLoops = reportLoops;
+    this.maxSpeed = drivebase.maximumSpeed;
+
+    absoluteDrive = new AbsoluteDrive(drivebase, () -> inputX, () -> inputY, () -> headingX, () -> headingY);
+    robotOrientedDrive = new DriveRobotOriented(drivebase, () -> inputX, () -> inputY,
+                                                () -> Math.atan2(headingX, headingY));
+
+    Translation2d[] locations = drivebase.getSwerveDriveConfiguration().moduleLocationsMeters;
+    kinematics = new SwerveDriveKinematics(locations);
+    fastKinematics = new FourModuleKinematics(locations);
+    poseEstimator = new PrimitivePoseEstimator(fastKinematics, 0, distances, currentAngles, new Pose2d(),
+                                               new double[]{0.1, 0.1, 0.1}, new double[]{0.9, 0.9, 0.9});
+
+    double radius = drivebase.getSwerveDriveConfiguration().getDriveBaseRadiusMeters();
+    pathController = new PPHolonomicDriveController(AutonConstants.TRANSLATION_PID, AutonConstants.ANGLE_PID, maxSpeed,
+                                                    radius);
+    PathPlannerPath path = new PathPlannerPath(
+        PathPlannerPath.bezierFromPoses(new Pose2d(2, 2, new Rotation2d()),
+                                        new Pose2d(5, 3, Rotation2d.fromDegrees(30)),
+                                        new Pose2d(7, 6, Rotation2d.fromDegrees(90))),
+        new PathConstraints(maxSpeed, AutonConstants.MAX_ACCELERATION,
+                            drivebase.getSwerveController().config.maxAngularVelocity,
+                            AutonConstants.MAX_ANGULAR_ACCELERATION),
+        new GoalEndState(0, Rotation2d.fromDegrees(90)));
+    trajectory = path.getTrajectory(new ChassisSpeeds(), new Rotation2d());
+
+    if (compilation == null || !compilation.isCompilationTimeMonitoringSupported())
+    {
+      DriverStation.reportWarning("JVM does not report JIT compilation time, warm-up runs a fixed "
+                                  + minIterations + " iterations", false);
+    }
+  }
+
+  /**
+   * Run one slice of warm-up. Call from disabledPeriodic; does nothing once warm-up is done.
+   */
+  public void run()
+  {
+    if (finished)
+    {
+      return;
+    }
+    long start = System.nanoTime();
+    long now = start;
+    int n = 0;
+    drivebase.setShadowMode(true);
+    try
+    {
+      do
+      {
+        iterate();
+        n++;
+        now = System.nanoTime();
+        if (iterations == 1)
+        {
+          coldIterationMicros = (now - start) / 1e3;
+        }
+      } while (now - start < sliceNanos);
+    } finally
+    {
+      drivebase.setShadowMode(false);
+    }
+    warmupNanos += now - start;
+    warmIterationMicros = (now - start) / 1e3 / n;
+
+    long compileMillis = getCompilationMillis();
+    if (compileMillis != lastCompileMillis || lastCompileNanos == 0)
+    {
+      lastCompileMillis = compileMillis;
+      lastCompileNanos = now;
+    }
+    if (iterations >= minIterations && now - lastCompileNanos >= plateauNanos)
+    {
+      finished = true;
+      compiled = true;
+    } else if (warmupNanos >= timeoutNanos)
+    {
+      finished = true;
+      DriverStation.reportWarning("JIT warm-up gave up after " + iterations + " iterations, compilation never settled",
+                                  false);
+    }
+    if (finished)
+    {
+      System.out.printf("JIT warm-up %s after %d iterations in %.1f s, first iteration %.0f us, last %.1f us%n",
+                        compiled ? "done" : "timed out", iterations, warmupNanos / 1e9, coldIterationMicros,
+                        warmIterationMicros);
+    }
+    publish();
+  }
+
+  /**
+   * One synthetic drive loop through every warmed path.
+   */
+  private void iterate()
+  {
+    double t = iterations * DT;
+    long step = iterations++;
+    inputX = Math.sin(0.7 * t);
+    inputY = Math.cos(0.3 * t);
+    // Leave the heading stick centred now and then so the held heading branch is compiled too.
+    boolean hold = step % 400 < 100;
+    headingX = hold ? 0 : Math.sin(0.2 * t);
+    headingY = hold ? 0 : Math.cos(0.2 * t);
+    if (step % 250 == 0)
+    {
+      absoluteDrive.initialize();
+    }
+    absoluteDrive.execute();
+    robotOrientedDrive.execute();
+
+    // What the swerve drive does with the chassis speeds, on the copied kinematics.
+    double vx = inputX * maxSpeed;
+    double vy = inputY * maxSpeed;
+    double omega = headingX * Math.PI;
+    SwerveModuleState[] states = kinematics.toSwerveModuleStates(
+        ChassisSpeeds.fromFieldRelativeSpeeds(vx, vy, omega, Rotation2d.fromRadians(theta)));
+    SwerveDriveKinematics.desaturateWheelSpeeds(states, maxSpeed);
+    for (int m = 0; m < FourModuleKinematics.MODULES; m++)
+    {
+      states[m] = SwerveModuleState.optimize(states[m], Rotation2d.fromRadians(currentAngles[m]));
+    }
+
+    fastKinematics.toModuleStates(vx, vy, omega, speeds, angles);
+    FourModuleKinematics.desaturate(speeds, maxSpeed);
+    FourModuleKinematics.optimize(speeds, angles, currentAngles);
+    fastKinematics.toChassisSpeeds(speeds, angles, chassis);
+    for (int m = 0; m < FourModuleKinematics.MODULES; m++)
+    {
+      distances[m] += speeds[m] * DT;
+      currentAngles[m] = angles[m];
+    }
+    theta += chassis[2] * DT;
+    poseEstimator.updateWithTime(t, theta, distances, currentAngles);
+    if (step % 10 == 0)
+    {
+      poseEstimator.addVisionMeasurement(poseEstimator.getX(), poseEstimator.getY(), theta, t - DT);
+    }
+
+    State reference = trajectory.sample(t % trajectory.getTotalTimeSeconds());
+    Pose2d pose = new Pose2d(reference.positionMeters.getX() + 0.1 * inputX,
+                             reference.positionMeters.getY() + 0.1 * inputY,
+                             reference.targetHolonomicRotation.plus(Rotation2d.fromRadians(0.1 * headingX)));
+    drivebase.setChassisSpeeds(pathController.calculateRobotRelativeSpeeds(pose, reference));
+  }
+
+  /**
+   * @return Total JIT compilation time in milliseconds, or zero when the JVM does not report it.
+   */
+  private long getCompilationMillis()
+  {
+    return compilation != null && compilation.isCompilationTimeMonitoringSupported()
+           ? compilation.getTotalCompilationTime() : 0;
+  }
+
+  /**
+   * Report the robot loop's work time, so the first enabled loops can be compared with and without warm-up. Call
+   * once per loop.
+   *
+   * @param workMicros Time from the start to the end of the loop's work in microseconds.
+   */
+  public void endLoop(long workMicros)
+  {
+    boolean enabled = DriverStation.isEnabled();
+    if (enabled && !wasEnabled)
+    {
+      enabledLoops = 0;
+      firstLoopMicros = workMicros;
+      maxLoopMicros = 0;
+      if (!compiled)
+      {
+        DriverStation.reportWarning("Enabled before JIT warm-up finished, the first loops may run long", false);
+      }
+    }
+    wasEnabled = enabled;
+    if (!enabled || enabledLoops >= reportLoops)
+    {
+      return;
+    }
+    maxLoopMicros = Math.max(maxLoopMicros, workMicros);
+    if (++enabledLoops == reportLoops)
+    {
+      System.out.printf("First enabled loop %.1f ms, worst of the first %d %.1f ms, drive code %s%n",
+                        firstLoopMicros / 1000.0, reportLoops, maxLoopMicros / 1000.0,
+                        compiled ? "warmed up" : "not warmed up");
+      SmartDashboard.putNumber("JIT Warmup/First Enabled Loop ms", firstLoopMicros / 1000.0);
+      SmartDashboard.putNumber("JIT Warmup/Worst Early Loop ms", maxLoopMicros / 1000.0);
+      SmartDashboard.putBoolean("JIT Warmup/Warm At Enable", compiled);
+    }
+  }
+
+  private void publish()
+  {
+    SmartDashboard.putNumber("JIT Warmup/Iterations", iterations);
+    SmartDashboard.putNumber("JIT Warmup/First Iteration us", coldIterationMicros);
+    SmartDashboard.putNumber("JIT Warmup/Iteration us", warmIterationMicros);
+    SmartDashboard.putNumber("JIT Warmup/Compilation ms", getCompilationMillis());
+    SmartDashboard.putBoolean("JIT Warmup/Compiled", compiled);
+  }
+
+  /**
+   * @return Whether warm-up is done, compiled or timed out.
+   */
+  public boolean isFinished()
+  {
+    return finished;
+  }
+
+  /**
+   * @return Whether warm-up ended with the compilation counter settled.
+   */
+  public boolean isCompiled()
+  {
+    return compiled;
+  }
+}
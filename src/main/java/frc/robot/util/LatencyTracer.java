@@ -0,0 +1,247 @@
+package frc.robot.util;
+
+import edu.wpi.first.hal.DriverStationJNI;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Measures the latency from a driver stick movement to the modules responding. A trace starts when the traced stick
+ * axis steps by more than a threshold between two samples, and each stage of the drive pipeline marks the time it first
+ * handles the new input: the arrival of the driver station packet, the sample after the robot code refreshed the
+ * driver station data, the command's execute, the drivetrain drive call, the return from YAGSL once the motor setpoints
+ * are written, and the first loop the measured module speed moves. Each stage keeps a histogram of its delay from the
+ * previous stage reached, and the whole trace a histogram of its end to end latency.
+ *
+ * <p>Packet arrival is timed by a thread waiting on the HAL's new data event, taking the first packet since the
+ * previous sample. The packet to sample stage is how long new stick data waits for the robot code to pick it up, up to
+ * a robot loop at 50 Hz, which is what a faster drive loop that refreshes the data itself can shorten. The time the
+ * driver station took to send the packet is not included. Only one trace runs at a time and everything else runs on
+ * the robot loop thread.
+ */
+public class LatencyTracer
+{
+
+  /**
+   * Pipeline stages in order.
+   */
+  public enum Stage
+  {
+    PACKET("DS Packet"),
+    SAMPLE("HID Sample"),
+    EXECUTE("Command Execute"),
+    DRIVE("Drive Call"),
+    SETPOINT("Setpoint Write"),
+    RESPONSE("Module Response");
+
+    final String label;
+
+    Stage(String label)
+    {
+      this.label = label;
+    }
+  }
+
+  private static final Stage[] STAGES             = Stage.values();
+  /**
+   * Stick change between two loops that starts a trace.
+   */
+  private static final double  STEP_THRESHOLD     = 0.2;
+  /**
+   * Change of the average measured module speed that counts as the response.
+   */
+  private static final double  RESPONSE_THRESHOLD = 0.05; // m/s
+  private static final long    TIMEOUT_MICROS     = 500_000;
+  /**
+   * Traces needed before {@link #getLoopTime(double)} trusts the measurement.
+   */
+  private static final int     MIN_TRACES         = 20;
+  private static final int     PUBLISH_PERIOD     = 50;
+
+  private final long[]         marks       = new long[STAGES.length];
+  /**
+   * FPGA time of the first driver station packet since the last sample, zero if none arrived. Set by the packet thread.
+   */
+  private final AtomicLong     packetTime  = new AtomicLong();
+  private       Thread         packetThread;
+  private final Histogram[]    stageMillis = new Histogram[STAGES.length];
+  private final Histogram      totalMillis = new Histogram(0.5, 400);
+  private       DoubleSupplier input;
+  private       double         lastInput;
+  private       double         lastSpeed;
+  private       double         baselineSpeed;
+  private       boolean        active;
+  private       long           timeouts;
+  private       int            loops;
+
+  public LatencyTracer()
+  {
+    for (int i = 0; i < STAGES.length; i++)
+    {
+      stageMillis[i] = new Histogram(0.5, 400);
+    }
+  }
+
+  /**
+   * Set the stick axis to trace, and start timing driver station packets.
+   *
+   * @param input Raw axis value, before deadband and shaping.
+   */
+  public void setInput(DoubleSupplier input)
+  {
+    this.input = input;
+    lastInput = input.getAsDouble();
+    if (packetThread == null)
+    {
+      startPacketThread();
+    }
+  }
+
+  private void startPacketThread()
+  {
+    int event = WPIUtilJNI.createEvent(false, false);
+    DriverStationJNI.provideNewDataEventHandle(event);
+    packetThread = new Thread(() -> {
+      try
+      {
+        while (true)
+        {
+          WPIUtilJNI.waitForObject(event);
+          packetTime.compareAndSet(0, RobotController.getFPGATime());
+        }
+      } catch (InterruptedException e)
+      {
+        DriverStationJNI.removeNewDataEventHandle(event);
+        WPIUtilJNI.destroyEvent(event);
+      }
+    }, "DS Packet Timer");
+    packetThread.setDaemon(true);
+    packetThread.start();
+  }
+
+  /**
+   * Read the traced axis and start a trace if it stepped. Call right after every driver station data refresh: once per
+   * loop before the command scheduler runs, and from a faster drive loop that refreshes the data itself.
+   */
+  public void sample()
+  {
+    if (input == null)
+    {
+      return;
+    }
+    long packet = packetTime.getAndSet(0);
+    double value = input.getAsDouble();
+    if (!active && Math.abs(value - lastInput) > STEP_THRESHOLD)
+    {
+      active = true;
+      Arrays.fill(marks, 0);
+      long now = RobotController.getFPGATime();
+      // Replayed inputs do not come in packets, the trace then starts at the sample.
+      marks[Stage.PACKET.ordinal()] = packet != 0 ? packet : now;
+      marks[Stage.SAMPLE.ordinal()] = now;
+      baselineSpeed = lastSpeed;
+    }
+    lastInput = value;
+  }
+
+  /**
+   * Mark the first time a stage handles the traced input. Stages that are not part of the current drive path, such as
+   * the command execute for a fast loop, are simply never marked.
+   *
+   * @param stage The stage.
+   */
+  public void mark(Stage stage)
+  {
+    if (active && marks[stage.ordinal()] == 0)
+    {
+      marks[stage.ordinal()] = RobotController.getFPGATime();
+    }
+  }
+
+  /**
+   * Check for the module response and publish the histograms now and then. Call once per loop after reading the
+   * modules.
+   *
+   * @param averageModuleSpeed Average of the measured module speed magnitudes in m/s.
+   */
+  public void update(double averageModuleSpeed)
+  {
+    lastSpeed = averageModuleSpeed;
+    if (active)
+    {
+      long now = RobotController.getFPGATime();
+      if (now - marks[Stage.SAMPLE.ordinal()] > TIMEOUT_MICROS)
+      {
+        // The stick moved but the robot did not, for example inside the deadband or while disabled.
+        active = false;
+        timeouts++;
+      } else if (marks[Stage.SETPOINT.ordinal()] != 0
+                 && Math.abs(averageModuleSpeed - baselineSpeed) > RESPONSE_THRESHOLD)
+      {
+        marks[Stage.RESPONSE.ordinal()] = now;
+        record();
+        active = false;
+      }
+    }
+    if (++loops % PUBLISH_PERIOD == 0)
+    {
+      publish();
+    }
+  }
+
+  private void record()
+  {
+    long previous = marks[0];
+    for (int i = 1; i < STAGES.length; i++)
+    {
+      if (marks[i] != 0)
+      {
+        stageMillis[i].add((marks[i] - previous) / 1000.0);
+        previous = marks[i];
+      }
+    }
+    totalMillis.add((marks[Stage.RESPONSE.ordinal()] - marks[0]) / 1000.0);
+  }
+
+  private void publish()
+  {
+    for (int i = 1; i < STAGES.length; i++)
+    {
+      SmartDashboard.putNumber("Latency/" + STAGES[i].label + " p50 ms", stageMillis[i].getPercentile(50));
+      SmartDashboard.putNumber("Latency/" + STAGES[i].label + " p95 ms", stageMillis[i].getPercentile(95));
+    }
+    SmartDashboard.putNumber("Latency/Total p50 ms", totalMillis.getPercentile(50));
+    SmartDashboard.putNumber("Latency/Total p95 ms", totalMillis.getPercentile(95));
+    SmartDashboard.putNumber("Latency/Total max ms", totalMillis.getMax());
+    SmartDashboard.putNumber("Latency/Traces", totalMillis.getCount());
+    SmartDashboard.putNumber("Latency/Timeouts", timeouts);
+  }
+
+  /**
+   * Stick to module latency to use for the velocity limiter.
+   *
+   * @param fallback Value to use until enough traces were measured, in seconds.
+   * @return The 95th percentile of the measured end to end latency in seconds, or the fallback.
+   */
+  public double getLoopTime(double fallback)
+  {
+    return totalMillis.getCount() >= MIN_TRACES ? totalMillis.getPercentile(95) / 1000.0 : fallback;
+  }
+
+  /**
+   * Forget the measurements, for example after changing CAN status frame rates.
+   */
+  public void reset()
+  {
+    for (Histogram histogram : stageMillis)
+    {
+      histogram.reset();
+    }
+    totalMillis.reset();
+    timeouts = 0;
+    active = false;
+  }
+}
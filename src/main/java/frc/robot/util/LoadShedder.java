@@ -0,0 +1,194 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Skips or decimates lower priority work while the robot loop runs over its time budget. Work is tagged with a
+ * {@link Priority} and asks {@link #shouldRun(Priority)} each loop; the robot loop reports how long its work took with
+ * {@link #endLoop(long)}. When the smoothed loop time goes over the budget, or a single loop overruns the period, the
+ * shed level goes up one step: first best effort work only runs every few loops, then it stops and important work is
+ * decimated instead. Critical work always runs. Once the loop time stays well under the budget for a while the level
+ * comes back down one step at a time.
+ *
+ * <p>Counts of shed work are published to NetworkTables under "Load Shedding". Everything runs on the robot loop
+ * thread.
+ */
+public class LoadShedder
+{
+
+  /**
+   * How much a piece of work matters when the loop is short of time.
+   */
+  public enum Priority
+  {
+    /**
+     * Drive control, odometry and anything else the robot cannot do without. Never shed.
+     */
+    CRITICAL,
+    /**
+     * Match logs and telemetry used after the match. Decimated only when shedding best effort work was not enough.
+     */
+    IMPORTANT,
+    /**
+     * Dashboard updates, field widgets and debug output. Decimated first, then skipped.
+     */
+    BEST_EFFORT
+  }
+
+  /**
+   * Shed levels, each one sheds more than the one before.
+   */
+  private static final int      NORMAL          = 0;
+  private static final int      DECIMATE_BEST   = 1;
+  private static final int      SHED_BEST       = 2;
+  private static final int      MAX_LEVEL       = SHED_BEST;
+  /**
+   * Smoothing factor of the loop time average.
+   */
+  private static final double   ALPHA           = 0.2;
+  /**
+   * Loops to wait after raising the level before raising it again, so the last step has time to show.
+   */
+  private static final int      SETTLE_LOOPS    = 10;
+  private static final int      PUBLISH_PERIOD  = 10;
+  private static final String[] NAMES           = {"Normal", "Decimate Best Effort", "Shed Best Effort"};
+
+  private final long   periodMicros;
+  private final long   budgetMicros;
+  private final long   restoreMicros;
+  private final int    restoreLoops;
+  private final int    decimation;
+  private final long[] shed          = new long[Priority.values().length];
+  private       double averageMicros;
+  private       long   lastMicros;
+  private       int    level         = NORMAL;
+  private       int    loopsAtLevel;
+  private       int    loopsUnderRestore;
+  private       long   loops;
+  private       long   overruns;
+
+  /**
+   * @param period          Robot loop period in seconds.
+   * @param budget          Loop time in seconds above which work is shed.
+   * @param restoreFraction Fraction of the budget the loop time has to stay under before shed work is restored.
+   * @param restoreTime     Time in seconds the loop time has to stay under the restore threshold.
+   * @param decimation      Decimated work runs once every this many loops.
+   */
+  public LoadShedder(double period, double budget, double restoreFraction, double restoreTime, int decimation)
+  {
+    this.periodMicros = (long) (period * 1e6);
+    this.budgetMicros = (long) (budget * 1e6);
+    this.restoreMicros = (long) (budget * restoreFraction * 1e6);
+    this.restoreLoops = (int) Math.ceil(restoreTime / period);
+    this.decimation = decimation;
+  }
+
+  /**
+   * Whether work of a priority should run in this loop. Counts the work as shed when it should not, so call it once
+   * per piece of work per loop.
+   *
+   * @param priority Priority of the work.
+   * @return True to run the work.
+   */
+  public boolean shouldRun(Priority priority)
+  {
+    boolean decimatedLoop = loops % decimation == 0;
+    boolean run;
+    if (priority == Priority.CRITICAL)
+    {
+      run = true;
+    } else if (priority == Priority.IMPORTANT)
+    {
+      run = level < SHED_BEST || decimatedLoop;
+    } else
+    {
+      run = level == NORMAL || (level == DECIMATE_BEST && decimatedLoop);
+    }
+    if (!run)
+    {
+      shed[priority.ordinal()]++;
+    }
+    return run;
+  }
+
+  /**
+   * Report the time the robot loop's work took and adjust the shed level for the next loop.
+   *
+   * @param workMicros Time from the start to the end of the loop's work in microseconds.
+   */
+  public void endLoop(long workMicros)
+  {
+    lastMicros = workMicros;
+    averageMicros = loops == 0 ? workMicros : averageMicros + ALPHA * (workMicros - averageMicros);
+    loops++;
+    loopsAtLevel++;
+    int previous = level;
+
+    boolean overrun = workMicros > periodMicros;
+    if (overrun)
+    {
+      overruns++;
+    }
+    if ((overrun || averageMicros > budgetMicros) && level < MAX_LEVEL
+        && (level == NORMAL || loopsAtLevel >= SETTLE_LOOPS))
+    {
+      setLevel(level + 1);
+    } else if (level > NORMAL && averageMicros < restoreMicros)
+    {
+      if (++loopsUnderRestore >= restoreLoops)
+      {
+        setLevel(level - 1);
+      }
+    } else
+    {
+      loopsUnderRestore = 0;
+    }
+
+    if (level != previous || loops % PUBLISH_PERIOD == 0)
+    {
+      publish();
+    }
+  }
+
+  private void setLevel(int level)
+  {
+    this.level = level;
+    loopsAtLevel = 0;
+    loopsUnderRestore = 0;
+  }
+
+  private void publish()
+  {
+    SmartDashboard.putString("Load Shedding/Level", NAMES[level]);
+    SmartDashboard.putNumber("Load Shedding/Loop ms", lastMicros / 1000.0);
+    SmartDashboard.putNumber("Load Shedding/Average ms", averageMicros / 1000.0);
+    SmartDashboard.putNumber("Load Shedding/Overruns", overruns);
+    SmartDashboard.putNumber("Load Shedding/Shed Important", shed[Priority.IMPORTANT.ordinal()]);
+    SmartDashboard.putNumber("Load Shedding/Shed Best Effort", shed[Priority.BEST_EFFORT.ordinal()]);
+  }
+
+  /**
+   * @return Whether any work is being shed.
+   */
+  public boolean isShedding()
+  {
+    return level != NORMAL;
+  }
+
+  /**
+   * @param priority Priority of the work.
+   * @return Number of times work of that priority was skipped.
+   */
+  public long getShedCount(Priority priority)
+  {
+    return shed[priority.ordinal()];
+  }
+
+  /**
+   * @return Smoothed loop work time in seconds.
+   */
+  public double getAverageLoopTime()
+  {
+    return averageMicros / 1e6;
+  }
+}
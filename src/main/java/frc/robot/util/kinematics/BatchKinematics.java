@@ -0,0 +1,282 @@
+package frc.robot.util.kinematics;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.odometry.PrimitivePoseEstimator;
+import java.util.Arrays;
+
+/**
+ * Four module kinematics over whole arrays of samples, for offline tools that evaluate paths, sweeps or logs. Inputs
+ * and outputs are struct of arrays: chassis speeds and poses as one array per component, module states as
+ * {@code [module][sample]} like {@link frc.robot.util.path.TrajectoryTable}. Each inner loop runs over one module and
+ * contiguous samples without branches where the math allows, so the JIT can unroll and vectorise the arithmetic; only
+ * the trigonometry stays scalar. Results match {@link FourModuleKinematics} to rounding.
+ */
+public class BatchKinematics
+{
+
+  private static final int MODULES = FourModuleKinematics.MODULES;
+
+  private final double[] moduleX      = new double[MODULES];
+  private final double[] moduleY      = new double[MODULES];
+  private final double[] forwardVx    = new double[MODULES * 2];
+  private final double[] forwardVy    = new double[MODULES * 2];
+  private final double[] forwardOmega = new double[MODULES * 2];
+  private final double[] pose         = new double[3];
+
+  /**
+   * @param moduleLocations Module locations in meters, front left, front right, back left, back right.
+   */
+  public BatchKinematics(Translation2d... moduleLocations)
+  {
+    new FourModuleKinematics(moduleLocations).getForwardRows(forwardVx, forwardVy, forwardOmega);
+    for (int m = 0; m < MODULES; m++)
+    {
+      moduleX[m] = moduleLocations[m].getX();
+      moduleY[m] = moduleLocations[m].getY();
+    }
+  }
+
+  /**
+   * Convert robot relative chassis speeds into module states. A sample where the robot is told to stop keeps the module
+   * angles of the sample before it, the first sample keeps zero, matching {@link FourModuleKinematics} run in order.
+   *
+   * @param vx     Robot relative forward velocities in m/s.
+   * @param vy     Robot relative left velocities in m/s.
+   * @param omega  Angular velocities in rad/s.
+   * @param count  Number of samples.
+   * @param speeds Output module speeds in m/s, [module][sample].
+   * @param angles Output module angles in radians, [module][sample].
+   */
+  public void toModuleStates(double[] vx, double[] vy, double[] omega, int count, double[][] speeds,
+                             double[][] angles)
+  {
+    for (int m = 0; m < MODULES; m++)
+    {
+      double lx = moduleX[m], ly = moduleY[m];
+      double[] s = speeds[m], a = angles[m];
+      for (int i = 0; i < count; i++)
+      {
+        double mx = vx[i] - omega[i] * ly;
+        double my = vy[i] + omega[i] * lx;
+        s[i] = Math.sqrt(mx * mx + my * my);
+      }
+      for (int i = 0; i < count; i++)
+      {
+        a[i] = s[i] > 1e-6 ? Math.atan2(vy[i] + omega[i] * lx, vx[i] - omega[i] * ly) : 0.0;
+      }
+      for (int i = 0; i < count; i++)
+      {
+        if (vx[i] == 0 && vy[i] == 0 && omega[i] == 0)
+        {
+          a[i] = i > 0 ? a[i - 1] : 0.0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Scale the module speeds of each sample so none exceed the maximum, same as
+   * {@link FourModuleKinematics#desaturate(double[], double)}.
+   *
+   * @param speeds   Module speeds in m/s, [module][sample], modified in place.
+   * @param count    Number of samples.
+   * @param maxSpeed Maximum attainable module speed in m/s.
+   */
+  public static void desaturate(double[][] speeds, int count, double maxSpeed)
+  {
+    double[] s0 = speeds[0], s1 = speeds[1], s2 = speeds[2], s3 = speeds[3];
+    for (int i = 0; i < count; i++)
+    {
+      double realMax = Math.max(Math.max(Math.abs(s0[i]), Math.abs(s1[i])),
+                                Math.max(Math.abs(s2[i]), Math.abs(s3[i])));
+      double scale = realMax > maxSpeed ? maxSpeed / realMax : 1.0;
+      s0[i] *= scale;
+      s1[i] *= scale;
+      s2[i] *= scale;
+      s3[i] *= scale;
+    }
+  }
+
+  /**
+   * Convert module states into robot relative chassis speeds with the least squares fit over the four modules.
+   *
+   * @param speeds Module speeds in m/s, [module][sample].
+   * @param angles Module angles in radians, [module][sample].
+   * @param count  Number of samples.
+   * @param vx     Output forward velocities in m/s.
+   * @param vy     Output left velocities in m/s.
+   * @param omega  Output angular velocities in rad/s.
+   */
+  public void toChassisSpeeds(double[][] speeds, double[][] angles, int count, double[] vx, double[] vy,
+                              double[] omega)
+  {
+    Arrays.fill(vx, 0, count, 0);
+    Arrays.fill(vy, 0, count, 0);
+    Arrays.fill(omega, 0, count, 0);
+    for (int m = 0; m < MODULES; m++)
+    {
+      double[] s = speeds[m], a = angles[m];
+      double fx0 = forwardVx[2 * m], fx1 = forwardVx[2 * m + 1];
+      double fy0 = forwardVy[2 * m], fy1 = forwardVy[2 * m + 1];
+      double fw0 = forwardOmega[2 * m], fw1 = forwardOmega[2 * m + 1];
+      for (int i = 0; i < count; i++)
+      {
+        double mx = s[i] * Math.cos(a[i]);
+        double my = s[i] * Math.sin(a[i]);
+        vx[i] += fx0 * mx + fx1 * my;
+        vy[i] += fy0 * mx + fy1 * my;
+        omega[i] += fw0 * mx + fw1 * my;
+      }
+    }
+  }
+
+  /**
+   * Convert robot relative chassis speeds into module velocity vectors. Tools that only need module speeds, such as
+   * feasibility checks, should use the vector form: it has no trigonometry, so every loop vectorises.
+   *
+   * @param vx       Robot relative forward velocities in m/s.
+   * @param vy       Robot relative left velocities in m/s.
+   * @param omega    Angular velocities in rad/s.
+   * @param count    Number of samples.
+   * @param moduleVx Output module velocities along the robot x axis in m/s, [module][sample].
+   * @param moduleVy Output module velocities along the robot y axis in m/s, [module][sample].
+   */
+  public void toModuleVelocities(double[] vx, double[] vy, double[] omega, int count, double[][] moduleVx,
+                                 double[][] moduleVy)
+  {
+    for (int m = 0; m < MODULES; m++)
+    {
+      double lx = moduleX[m], ly = moduleY[m];
+      double[] mx = moduleVx[m], my = moduleVy[m];
+      for (int i = 0; i < count; i++)
+      {
+        mx[i] = vx[i] - omega[i] * ly;
+        my[i] = vy[i] + omega[i] * lx;
+      }
+    }
+  }
+
+  /**
+   * Scale the module velocity vectors of each sample so no module exceeds the maximum speed, the vector form of
+   * {@link #desaturate(double[][], int, double)}.
+   *
+   * @param moduleVx Module velocities along the robot x axis in m/s, [module][sample], modified in place.
+   * @param moduleVy Module velocities along the robot y axis in m/s, [module][sample], modified in place.
+   * @param count    Number of samples.
+   * @param maxSpeed Maximum attainable module speed in m/s.
+   */
+  public static void desaturateVelocities(double[][] moduleVx, double[][] moduleVy, int count, double maxSpeed)
+  {
+    double maxSquared = maxSpeed * maxSpeed;
+    double[] x0 = moduleVx[0], x1 = moduleVx[1], x2 = moduleVx[2], x3 = moduleVx[3];
+    double[] y0 = moduleVy[0], y1 = moduleVy[1], y2 = moduleVy[2], y3 = moduleVy[3];
+    for (int i = 0; i < count; i++)
+    {
+      double realMaxSquared = Math.max(Math.max(x0[i] * x0[i] + y0[i] * y0[i], x1[i] * x1[i] + y1[i] * y1[i]),
+                                       Math.max(x2[i] * x2[i] + y2[i] * y2[i], x3[i] * x3[i] + y3[i] * y3[i]));
+      double scale = realMaxSquared > maxSquared ? maxSpeed / Math.sqrt(realMaxSquared) : 1.0;
+      x0[i] *= scale;
+      x1[i] *= scale;
+      x2[i] *= scale;
+      x3[i] *= scale;
+      y0[i] *= scale;
+      y1[i] *= scale;
+      y2[i] *= scale;
+      y3[i] *= scale;
+    }
+  }
+
+  /**
+   * Convert module velocity vectors into robot relative chassis speeds, the vector form of
+   * {@link #toChassisSpeeds(double[][], double[][], int, double[], double[], double[])}.
+   *
+   * @param moduleVx Module velocities along the robot x axis in m/s, [module][sample].
+   * @param moduleVy Module velocities along the robot y axis in m/s, [module][sample].
+   * @param count    Number of samples.
+   * @param vx       Output forward velocities in m/s.
+   * @param vy       Output left velocities in m/s.
+   * @param omega    Output angular velocities in rad/s.
+   */
+  public void fromModuleVelocities(double[][] moduleVx, double[][] moduleVy, int count, double[] vx, double[] vy,
+                                   double[] omega)
+  {
+    Arrays.fill(vx, 0, count, 0);
+    Arrays.fill(vy, 0, count, 0);
+    Arrays.fill(omega, 0, count, 0);
+    for (int m = 0; m < MODULES; m++)
+    {
+      double[] mx = moduleVx[m], my = moduleVy[m];
+      double fx0 = forwardVx[2 * m], fx1 = forwardVx[2 * m + 1];
+      double fy0 = forwardVy[2 * m], fy1 = forwardVy[2 * m + 1];
+      double fw0 = forwardOmega[2 * m], fw1 = forwardOmega[2 * m + 1];
+      for (int i = 0; i < count; i++)
+      {
+        vx[i] += fx0 * mx[i] + fx1 * my[i];
+        vy[i] += fy0 * mx[i] + fy1 * my[i];
+        omega[i] += fw0 * mx[i] + fw1 * my[i];
+      }
+    }
+  }
+
+  /**
+   * Integrate module positions into field relative poses, with the same odometry as {@link PrimitivePoseEstimator}.
+   * The output arrays may not alias the inputs.
+   *
+   * @param distances Module distances in meters, [module][sample].
+   * @param angles    Module angles in radians, [module][sample].
+   * @param gyro      Gyro angles in radians, or null to integrate the heading from the modules alone.
+   * @param count     Number of samples.
+   * @param x0        X of the first sample in meters.
+   * @param y0        Y of the first sample in meters.
+   * @param theta0    Heading of the first sample in radians.
+   * @param x         Output x in meters.
+   * @param y         Output y in meters.
+   * @param theta     Output heading in radians.
+   */
+  public void integrate(double[][] distances, double[][] angles, double[] gyro, int count, double x0, double y0,
+                        double theta0, double[] x, double[] y, double[] theta)
+  {
+    if (count == 0)
+    {
+      return;
+    }
+    // First the twist of every interval, which is independent per sample, then the sequential composition in place.
+    Arrays.fill(x, 0, count, 0);
+    Arrays.fill(y, 0, count, 0);
+    Arrays.fill(theta, 0, count, 0);
+    for (int m = 0; m < MODULES; m++)
+    {
+      double[] d = distances[m], a = angles[m];
+      double fx0 = forwardVx[2 * m], fx1 = forwardVx[2 * m + 1];
+      double fy0 = forwardVy[2 * m], fy1 = forwardVy[2 * m + 1];
+      double fw0 = forwardOmega[2 * m], fw1 = forwardOmega[2 * m + 1];
+      for (int i = 1; i < count; i++)
+      {
+        double delta = d[i] - d[i - 1];
+        double dx = delta * Math.cos(a[i]);
+        double dy = delta * Math.sin(a[i]);
+        x[i] += fx0 * dx + fx1 * dy;
+        y[i] += fy0 * dx + fy1 * dy;
+        theta[i] += fw0 * dx + fw1 * dy;
+      }
+    }
+
+    double gyroOffset = gyro != null ? theta0 - gyro[0] : 0;
+    double px = x0, py = y0, ptheta = theta0;
+    x[0] = x0;
+    y[0] = y0;
+    theta[0] = theta0;
+    for (int i = 1; i < count; i++)
+    {
+      double heading = gyro != null ? FourModuleKinematics.wrap(gyro[i] + gyroOffset)
+                                    : FourModuleKinematics.wrap(ptheta + theta[i]);
+      PrimitivePoseEstimator.exp(px, py, ptheta, x[i], y[i], FourModuleKinematics.wrap(heading - ptheta), pose);
+      px = pose[0];
+      py = pose[1];
+      ptheta = heading;
+      x[i] = px;
+      y[i] = py;
+      theta[i] = ptheta;
+    }
+  }
+}
@@ -0,0 +1,308 @@
+package frc.robot.util.kinematics;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Kinematics for a swerve drive with exactly four modules, unrolled into primitive math. This mirrors
+ * {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics} without going through EJML and without allocating; every
+ * method writes into caller supplied arrays. Module order is the order of the modules in swervedrive.json.
+ */
+public class FourModuleKinematics
+{
+
+  /**
+   * Number of modules this class supports.
+   */
+  public static final int MODULES = 4;
+
+  /**
+   * Module locations relative to the center of the robot in meters.
+   */
+  private final double x0, y0, x1, y1, x2, y2, x3, y3;
+  /**
+   * Rows of the pseudo-inverse of the inverse kinematics matrix, used for forward kinematics. Each row holds the
+   * coefficients for [vx0, vy0, vx1, vy1, vx2, vy2, vx3, vy3].
+   */
+  private final double[] forwardVx    = new double[MODULES * 2];
+  private final double[] forwardVy    = new double[MODULES * 2];
+  private final double[] forwardOmega = new double[MODULES * 2];
+  /**
+   * Last commanded module headings in radians, used when the robot is told to stop so the wheels hold their angle.
+   */
+  private final double[] moduleHeadings = new double[MODULES];
+
+  /**
+   * Create the kinematics from the module locations.
+   *
+   * @param moduleLocations Module locations in meters, front left, front right, back left, back right.
+   */
+  public FourModuleKinematics(Translation2d... moduleLocations)
+  {
+    if (moduleLocations.length != MODULES)
+    {
+      throw new IllegalArgumentException("FourModuleKinematics requires exactly 4 modules, got "
+                                         + moduleLocations.length);
+    }
+    x0 = moduleLocations[0].getX();
+    y0 = moduleLocations[0].getY();
+    x1 = moduleLocations[1].getX();
+    y1 = moduleLocations[1].getY();
+    x2 = moduleLocations[2].getX();
+    y2 = moduleLocations[2].getY();
+    x3 = moduleLocations[3].getX();
+    y3 = moduleLocations[3].getY();
+
+    // The inverse kinematics matrix A has rows [1, 0, -y] and [0, 1, x] per module. The forward kinematics are the
+    // least squares solution (A^T A)^-1 A^T, computed once here.
+    double sumX = x0 + x1 + x2 + x3;
+    double sumY = y0 + y1 + y2 + y3;
+    double sumR = x0 * x0 + y0 * y0 + x1 * x1 + y1 * y1 + x2 * x2 + y2 * y2 + x3 * x3 + y3 * y3;
+    // A^T A = [[n, 0, -sumY], [0, n, sumX], [-sumY, sumX, sumR]]
+    double n = MODULES;
+    double[][] ata = {{n, 0, -sumY}, {0, n, sumX}, {-sumY, sumX, sumR}};
+    double[][] inv = invert3x3(ata);
+
+    double[] xs = {x0, x1, x2, x3};
+    double[] ys = {y0, y1, y2, y3};
+    for (int i = 0; i < MODULES; i++)
+    {
+      // Column of A^T for the module's x row is [1, 0, -y], for the y row [0, 1, x].
+      forwardVx[2 * i] = inv[0][0] - inv[0][2] * ys[i];
+      forwardVx[2 * i + 1] = inv[0][1] + inv[0][2] * xs[i];
+      forwardVy[2 * i] = inv[1][0] - inv[1][2] * ys[i];
+      forwardVy[2 * i + 1] = inv[1][1] + inv[1][2] * xs[i];
+      forwardOmega[2 * i] = inv[2][0] - inv[2][2] * ys[i];
+      forwardOmega[2 * i + 1] = inv[2][1] + inv[2][2] * xs[i];
+    }
+  }
+
+  /**
+   * Invert a 3x3 matrix using the adjugate.
+   *
+   * @param m Matrix to invert.
+   * @return The inverse.
+   */
+  private static double[][] invert3x3(double[][] m)
+  {
+    double a = m[0][0], b = m[0][1], c = m[0][2];
+    double d = m[1][0], e = m[1][1], f = m[1][2];
+    double g = m[2][0], h = m[2][1], i = m[2][2];
+    double det = a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+    if (Math.abs(det) < 1e-12)
+    {
+      throw new IllegalArgumentException("Module locations are degenerate, cannot compute forward kinematics");
+    }
+    double invDet = 1.0 / det;
+    return new double[][]{
+        {(e * i - f * h) * invDet, (c * h - b * i) * invDet, (b * f - c * e) * invDet},
+        {(f * g - d * i) * invDet, (a * i - c * g) * invDet, (c * d - a * f) * invDet},
+        {(d * h - e * g) * invDet, (b * g - a * h) * invDet, (a * e - b * d) * invDet}};
+  }
+
+  /**
+   * Convert robot relative chassis speeds into module speeds and angles. When all speeds are zero the modules keep the
+   * last commanded heading, matching {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics}.
+   *
+   * @param vx     Robot relative forward velocity in m/s.
+   * @param vy     Robot relative left velocity in m/s.
+   * @param omega  Angular velocity in rad/s, CCW positive.
+   * @param speeds Output module speeds in m/s, length 4.
+   * @param angles Output module angles in radians, length 4.
+   */
+  public void toModuleStates(double vx, double vy, double omega, double[] speeds, double[] angles)
+  {
+    if (vx == 0 && vy == 0 && omega == 0)
+    {
+      speeds[0] = 0;
+      speeds[1] = 0;
+      speeds[2] = 0;
+      speeds[3] = 0;
+      angles[0] = moduleHeadings[0];
+      angles[1] = moduleHeadings[1];
+      angles[2] = moduleHeadings[2];
+      angles[3] = moduleHeadings[3];
+      return;
+    }
+
+    double mx0 = vx - omega * y0, my0 = vy + omega * x0;
+    double mx1 = vx - omega * y1, my1 = vy + omega * x1;
+    double mx2 = vx - omega * y2, my2 = vy + omega * x2;
+    double mx3 = vx - omega * y3, my3 = vy + omega * x3;
+
+    speeds[0] = Math.hypot(mx0, my0);
+    speeds[1] = Math.hypot(mx1, my1);
+    speeds[2] = Math.hypot(mx2, my2);
+    speeds[3] = Math.hypot(mx3, my3);
+    angles[0] = moduleAngle(mx0, my0, speeds[0]);
+    angles[1] = moduleAngle(mx1, my1, speeds[1]);
+    angles[2] = moduleAngle(mx2, my2, speeds[2]);
+    angles[3] = moduleAngle(mx3, my3, speeds[3]);
+
+    moduleHeadings[0] = angles[0];
+    moduleHeadings[1] = angles[1];
+    moduleHeadings[2] = angles[2];
+    moduleHeadings[3] = angles[3];
+  }
+
+  /**
+   * Angle of a module velocity vector, 0 when the vector is too small to have a direction like
+   * {@link edu.wpi.first.math.geometry.Rotation2d#Rotation2d(double, double)}.
+   */
+  private static double moduleAngle(double x, double y, double magnitude)
+  {
+    return magnitude > 1e-6 ? Math.atan2(y, x) : 0.0;
+  }
+
+  /**
+   * Convert module speeds and angles into robot relative chassis speeds using the least squares fit over all four
+   * modules.
+   *
+   * @param speeds Module speeds in m/s.
+   * @param angles Module angles in radians.
+   * @param out    Output array of length 3 filled with vx, vy and omega.
+   */
+  public void toChassisSpeeds(double[] speeds, double[] angles, double[] out)
+  {
+    double mx0 = speeds[0] * Math.cos(angles[0]), my0 = speeds[0] * Math.sin(angles[0]);
+    double mx1 = speeds[1] * Math.cos(angles[1]), my1 = speeds[1] * Math.sin(angles[1]);
+    double mx2 = speeds[2] * Math.cos(angles[2]), my2 = speeds[2] * Math.sin(angles[2]);
+    double mx3 = speeds[3] * Math.cos(angles[3]), my3 = speeds[3] * Math.sin(angles[3]);
+    out[0] = solveRow(forwardVx, mx0, my0, mx1, my1, mx2, my2, mx3, my3);
+    out[1] = solveRow(forwardVy, mx0, my0, mx1, my1, mx2, my2, mx3, my3);
+    out[2] = solveRow(forwardOmega, mx0, my0, mx1, my1, mx2, my2, mx3, my3);
+  }
+
+  /**
+   * Copy the forward kinematics rows, for {@link BatchKinematics}.
+   *
+   * @param vx    Output coefficients of vx, length 8.
+   * @param vy    Output coefficients of vy, length 8.
+   * @param omega Output coefficients of omega, length 8.
+   */
+  void getForwardRows(double[] vx, double[] vy, double[] omega)
+  {
+    System.arraycopy(forwardVx, 0, vx, 0, MODULES * 2);
+    System.arraycopy(forwardVy, 0, vy, 0, MODULES * 2);
+    System.arraycopy(forwardOmega, 0, omega, 0, MODULES * 2);
+  }
+
+  /**
+   * Convert module position deltas into a robot relative twist. Identical math to
+   * {@link #toChassisSpeeds(double[], double[], double[])} with distances in place of speeds.
+   *
+   * @param deltaDistances Distance each wheel travelled since the last sample in meters.
+   * @param angles         Module angles in radians at the current sample.
+   * @param out            Output array of length 3 filled with dx, dy and dtheta.
+   */
+  public void toTwist(double[] deltaDistances, double[] angles, double[] out)
+  {
+    toChassisSpeeds(deltaDistances, angles, out);
+  }
+
+  /**
+   * Root mean square difference between the measured module velocities and the velocities implied by fitted chassis
+   * speeds. It is zero when the four modules agree on one rigid body motion and grows when a wheel slips or is dragged.
+   *
+   * @param speeds  Module speeds in m/s.
+   * @param angles  Module angles in radians.
+   * @param chassis Robot relative vx, vy and omega fitted by {@link #toChassisSpeeds(double[], double[], double[])}.
+   * @return The residual in m/s.
+   */
+  public double residual(double[] speeds, double[] angles, double[] chassis)
+  {
+    double vx = chassis[0], vy = chassis[1], omega = chassis[2];
+    double sum = moduleError(speeds[0], angles[0], x0, y0, vx, vy, omega)
+                 + moduleError(speeds[1], angles[1], x1, y1, vx, vy, omega)
+                 + moduleError(speeds[2], angles[2], x2, y2, vx, vy, omega)
+                 + moduleError(speeds[3], angles[3], x3, y3, vx, vy, omega);
+    return Math.sqrt(sum / MODULES);
+  }
+
+  private static double moduleError(double speed, double angle, double x, double y, double vx, double vy,
+                                    double omega)
+  {
+    double ex = speed * Math.cos(angle) - (vx - omega * y);
+    double ey = speed * Math.sin(angle) - (vy + omega * x);
+    return ex * ex + ey * ey;
+  }
+
+  private static double solveRow(double[] row, double mx0, double my0, double mx1, double my1, double mx2, double my2,
+                                 double mx3, double my3)
+  {
+    return row[0] * mx0 + row[1] * my0 + row[2] * mx1 + row[3] * my1
+           + row[4] * mx2 + row[5] * my2 + row[6] * mx3 + row[7] * my3;
+  }
+
+  /**
+   * Scale module speeds down so none exceed the maximum, keeping their ratios. Same behaviour as
+   * {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics#desaturateWheelSpeeds}.
+   *
+   * @param speeds                 Module speeds in m/s, modified in place.
+   * @param maxSpeedMeterPerSecond Maximum attainable module speed in m/s.
+   */
+  public static void desaturate(double[] speeds, double maxSpeedMeterPerSecond)
+  {
+    double realMax = Math.max(Math.max(Math.abs(speeds[0]), Math.abs(speeds[1])),
+                              Math.max(Math.abs(speeds[2]), Math.abs(speeds[3])));
+    if (realMax > maxSpeedMeterPerSecond)
+    {
+      double scale = maxSpeedMeterPerSecond / realMax;
+      speeds[0] *= scale;
+      speeds[1] *= scale;
+      speeds[2] *= scale;
+      speeds[3] *= scale;
+    }
+  }
+
+  /**
+   * Minimize the change in module heading by reversing the drive direction when the target is more than 90 degrees
+   * away. Same behaviour as {@link edu.wpi.first.math.kinematics.SwerveModuleState#optimize}.
+   *
+   * @param speeds        Desired module speeds, modified in place.
+   * @param angles        Desired module angles in radians, modified in place.
+   * @param currentAngles Current module angles in radians.
+   */
+  public static void optimize(double[] speeds, double[] angles, double[] currentAngles)
+  {
+    for (int i = 0; i < MODULES; i++)
+    {
+      double delta = wrap(angles[i] - currentAngles[i]);
+      if (Math.abs(delta) > Math.PI / 2)
+      {
+        speeds[i] = -speeds[i];
+        angles[i] = wrap(angles[i] + Math.PI);
+      }
+    }
+  }
+
+  /**
+   * Wrap an angle to [-pi, pi].
+   *
+   * @param radians Angle in radians.
+   * @return Equivalent angle in [-pi, pi].
+   */
+  public static double wrap(double radians)
+  {
+    return Math.atan2(Math.sin(radians), Math.cos(radians));
+  }
+
+  /**
+   * Reset the remembered module headings, used when the modules are zeroed.
+   *
+   * @param angles Module angles in radians.
+   */
+  public void resetHeadings(double[] angles)
+  {
+    System.arraycopy(angles, 0, moduleHeadings, 0, MODULES);
+  }
+
+  /**
+   * Copy the remembered module headings.
+   *
+   * @param out Output module angles in radians, length 4.
+   */
+  public void getHeadings(double[] out)
+  {
+    System.arraycopy(moduleHeadings, 0, out, 0, MODULES);
+  }
+}
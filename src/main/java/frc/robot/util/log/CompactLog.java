@@ -0,0 +1,370 @@
+package frc.robot.util.log;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+/**
+ * Log sink for high rate numeric channels that is much smaller than a .wpilog of the same data. The robot loop copies one
+ * frame of every channel into a preallocated ring, and a background thread encodes the frames and writes them, so the
+ * loop never touches the disk.
+ *
+ * <p>Each value is quantized to its channel's resolution and stored as the zigzag varint of its difference from the
+ * previous frame, which is one byte for most slowly changing signals. Frames are grouped into blocks of about 64 KiB,
+ * deflated and written with their lengths. Delta state restarts with every block, so a file cut short by a power loss
+ * is readable up to its last whole block. Files are rotated by {@link #rotate(String)}, normally once per match, and the
+ * oldest files in the directory are deleted to keep the total under a cap. Use {@link CompactLogReader} or
+ * {@code ./gradlew convertCompactLogs} to read them back.
+ *
+ * <p>File layout: the magic {@code FRCCLOG1}, the channel count, then for each channel its name as a UTF string and its
+ * resolution as a double, followed by blocks of {@code int rawLength, int compressedLength, byte[compressedLength]}.
+ */
+public class CompactLog implements AutoCloseable
+{
+
+  public static final byte[] MAGIC         = "FRCCLOG1".getBytes(StandardCharsets.US_ASCII);
+  public static final String EXTENSION     = ".clog";
+  private static final int   BLOCK_BYTES   = 64 * 1024;
+  private static final long  FLUSH_MICROS  = 1_000_000;
+  private static final long  IDLE_NANOS    = 5_000_000;
+
+  private final File     directory;
+  private final long     maxDiskBytes;
+  private final String[] names;
+  private final double[] resolutions;
+
+  /**
+   * Ring of frames waiting for the writer. Only the robot loop advances {@link #head} and only the writer advances
+   * {@link #tail}.
+   */
+  private final long[]   ringTimestamps;
+  private final long[][] ringValues;
+  private volatile long  head, tail;
+  /**
+   * Counted by the robot loop when the ring is full and by the writer when it stops.
+   */
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final AtomicReference<String> pendingRotation = new AtomicReference<>();
+  private final Thread                  writer;
+  private volatile boolean              running         = true;
+
+  // Writer thread state.
+  private final byte[]           block;
+  private int                    blockLength;
+  private long                   blockStartMicros;
+  private final long[]           previous;
+  private long                   previousTimestamp;
+  private final Deflater         deflater   = new Deflater(Deflater.BEST_SPEED);
+  private byte[]                 compressed = new byte[BLOCK_BYTES];
+  private DataOutputStream       out;
+  private File                   file;
+  private String                 label;
+  private int                    part;
+  private volatile long          bytesWritten;
+
+  /**
+   * Start the writer thread. No file is created until the first frame or rotation.
+   *
+   * @param directory    Directory for the log files, created if missing.
+   * @param maxDiskBytes Cap on the total size of the log files in the directory.
+   * @param capacity     Number of frames the ring holds, at least a few seconds of loops.
+   * @param names        Channel names.
+   * @param resolutions  Quantization step of each channel, in the channel's units.
+   */
+  public CompactLog(File directory, long maxDiskBytes, int capacity, String[] names, double[] resolutions)
+  {
+    if (names.length != resolutions.length)
+    {
+      throw new IllegalArgumentException("Need one resolution per channel");
+    }
+    this.directory = directory;
+    this.maxDiskBytes = maxDiskBytes;
+    this.names = names.clone();
+    this.resolutions = resolutions.clone();
+    ringTimestamps = new long[capacity];
+    ringValues = new long[capacity][names.length];
+    previous = new long[names.length];
+    // Room for a whole frame past the block size, at most ten bytes per varint.
+    block = new byte[BLOCK_BYTES + 10 * (names.length + 1)];
+    writer = new Thread(this::run, "Compact Log Writer");
+    writer.setDaemon(true);
+    writer.setPriority(Thread.MIN_PRIORITY);
+    writer.start();
+  }
+
+  /**
+   * @return Number of channels in a frame.
+   */
+  public int getChannelCount()
+  {
+    return names.length;
+  }
+
+  /**
+   * Queue one frame. Does not allocate or block; the frame is dropped if the writer is behind.
+   *
+   * @param timestampMicros Frame timestamp in microseconds, normally the FPGA time.
+   * @param values          Value of every channel, in channel order.
+   * @return Whether the frame was queued.
+   */
+  public boolean append(long timestampMicros, double[] values)
+  {
+    long slot = head;
+    if (slot - tail >= ringTimestamps.length || !running)
+    {
+      dropped.incrementAndGet();
+      return false;
+    }
+    int index = (int) (slot % ringTimestamps.length);
+    ringTimestamps[index] = timestampMicros;
+    long[] quantized = ringValues[index];
+    for (int i = 0; i < quantized.length; i++)
+    {
+      quantized[i] = Math.round(values[i] / resolutions[i]);
+    }
+    head = slot + 1;
+    return true;
+  }
+
+  /**
+   * Start a new file with the frames queued after this call. The file name is the date and the label, with a part
+   * number when one label needs more than a quarter of the disk cap.
+   *
+   * @param label Label for the new file, such as the event and match.
+   */
+  public void rotate(String label)
+  {
+    pendingRotation.set(label);
+    LockSupport.unpark(writer);
+  }
+
+  /**
+   * @return Frames dropped because the ring was full or the disk could not be written.
+   */
+  public long getDroppedFrames()
+  {
+    return dropped.get();
+  }
+
+  /**
+   * @return Compressed bytes written to the current file.
+   */
+  public long getBytesWritten()
+  {
+    return bytesWritten;
+  }
+
+  /**
+   * Write the queued frames and close the current file.
+   */
+  @Override
+  public void close()
+  {
+    running = false;
+    LockSupport.unpark(writer);
+    try
+    {
+      writer.join(2000);
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run()
+  {
+    try
+    {
+      while (running || tail != head)
+      {
+        String rotation = pendingRotation.getAndSet(null);
+        if (rotation != null)
+        {
+          openFile(rotation);
+        }
+        if (tail == head)
+        {
+          if (blockLength > 0 && System.nanoTime() / 1000 - blockStartMicros > FLUSH_MICROS)
+          {
+            flushBlock();
+          }
+          LockSupport.parkNanos(IDLE_NANOS);
+          continue;
+        }
+        if (out == null)
+        {
+          openFile("boot");
+        }
+        int index = (int) (tail % ringTimestamps.length);
+        encodeFrame(ringTimestamps[index], ringValues[index]);
+        tail++;
+        if (blockLength >= BLOCK_BYTES)
+        {
+          flushBlock();
+        }
+      }
+      flushBlock();
+      closeFile();
+    } catch (IOException e)
+    {
+      DriverStation.reportError("Compact log stopped: " + e.getMessage(), false);
+      running = false;
+      dropped.addAndGet(head - tail);
+      closeFile();
+    }
+  }
+
+  private void encodeFrame(long timestamp, long[] values)
+  {
+    if (blockLength == 0)
+    {
+      // Every block starts from zero so it can be decoded on its own.
+      previousTimestamp = 0;
+      Arrays.fill(previous, 0);
+      blockStartMicros = System.nanoTime() / 1000;
+    }
+    putVarLong(timestamp - previousTimestamp);
+    previousTimestamp = timestamp;
+    for (int i = 0; i < values.length; i++)
+    {
+      putVarLong(values[i] - previous[i]);
+      previous[i] = values[i];
+    }
+  }
+
+  private void putVarLong(long value)
+  {
+    long zigzag = (value << 1) ^ (value >> 63);
+    while ((zigzag & ~0x7FL) != 0)
+    {
+      block[blockLength++] = (byte) ((zigzag & 0x7F) | 0x80);
+      zigzag >>>= 7;
+    }
+    block[blockLength++] = (byte) zigzag;
+  }
+
+  private void flushBlock() throws IOException
+  {
+    if (blockLength == 0 || out == null)
+    {
+      return;
+    }
+    deflater.reset();
+    deflater.setInput(block, 0, blockLength);
+    deflater.finish();
+    int length = 0;
+    while (!deflater.finished())
+    {
+      if (length == compressed.length)
+      {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      }
+      length += deflater.deflate(compressed, length, compressed.length - length);
+    }
+    out.writeInt(blockLength);
+    out.writeInt(length);
+    out.write(compressed, 0, length);
+    out.flush();
+    bytesWritten += 8 + length;
+    blockLength = 0;
+    if (bytesWritten > maxDiskBytes / 4)
+    {
+      // Continue in a new file so a single long session cannot outgrow the cap.
+      openFile(label);
+    } else
+    {
+      enforceDiskCap();
+    }
+  }
+
+  private void openFile(String newLabel) throws IOException
+  {
+    flushBlock();
+    closeFile();
+    part = newLabel.equals(label) ? part + 1 : 1;
+    label = newLabel;
+    if (!directory.isDirectory() && !directory.mkdirs())
+    {
+      throw new IOException("Cannot create " + directory);
+    }
+    String date = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+    String name = date + "_" + label.replaceAll("[^A-Za-z0-9_-]", "_") + (part > 1 ? "_" + part : "");
+    file = new File(directory, name + EXTENSION);
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BLOCK_BYTES));
+    out.write(MAGIC);
+    out.writeInt(names.length);
+    for (int i = 0; i < names.length; i++)
+    {
+      out.writeUTF(names[i]);
+      out.writeDouble(resolutions[i]);
+    }
+    out.flush();
+    bytesWritten = out.size();
+    enforceDiskCap();
+  }
+
+  private void closeFile()
+  {
+    if (out != null)
+    {
+      try
+      {
+        out.close();
+      } catch (IOException e)
+      {
+        DriverStation.reportWarning("Could not close " + file + ": " + e.getMessage(), false);
+      }
+      out = null;
+    }
+  }
+
+  /**
+   * Delete the oldest log files until the directory is under the cap. The current file is never deleted.
+   */
+  private void enforceDiskCap()
+  {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    if (files == null)
+    {
+      return;
+    }
+    long total = 0;
+    for (File f : files)
+    {
+      total += f.length();
+    }
+    if (total <= maxDiskBytes)
+    {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File f : files)
+    {
+      if (total <= maxDiskBytes)
+      {
+        break;
+      }
+      if (!f.equals(file))
+      {
+        long length = f.length();
+        if (f.delete())
+        {
+          total -= length;
+        }
+      }
+    }
+  }
+}
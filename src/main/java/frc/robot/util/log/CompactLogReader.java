@@ -0,0 +1,155 @@
+package frc.robot.util.log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads files written by {@link CompactLog}. Runs on a desktop as well as the robot; it has no WPILib dependencies.
+ */
+public class CompactLogReader implements AutoCloseable
+{
+
+  /**
+   * Receives decoded frames. The values array is reused between frames.
+   */
+  @FunctionalInterface
+  public interface FrameConsumer
+  {
+
+    void accept(long timestampMicros, double[] values) throws IOException;
+  }
+
+  private final DataInputStream in;
+  private final String[]        names;
+  private final double[]        resolutions;
+
+  /**
+   * Open a file and read its header.
+   *
+   * @param file The .clog file.
+   * @throws IOException If the file cannot be read or is not a compact log.
+   */
+  public CompactLogReader(File file) throws IOException
+  {
+    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    byte[] magic = new byte[CompactLog.MAGIC.length];
+    in.readFully(magic);
+    if (!Arrays.equals(magic, CompactLog.MAGIC))
+    {
+      in.close();
+      throw new IOException(file + " is not a compact log");
+    }
+    int channels = in.readInt();
+    names = new String[channels];
+    resolutions = new double[channels];
+    for (int i = 0; i < channels; i++)
+    {
+      names[i] = in.readUTF();
+      resolutions[i] = in.readDouble();
+    }
+  }
+
+  /**
+   * @return Channel names, in frame order.
+   */
+  public String[] getNames()
+  {
+    return names.clone();
+  }
+
+  /**
+   * Decode every frame in the file. A block cut short at the end of the file, as left by a power loss, ends the read
+   * without an error.
+   *
+   * @param consumer Receives each frame in order.
+   * @return Number of frames read.
+   * @throws IOException If the file cannot be read or a whole block is corrupt.
+   */
+  public long forEach(FrameConsumer consumer) throws IOException
+  {
+    Inflater inflater = new Inflater();
+    byte[] compressed = new byte[0];
+    byte[] raw = new byte[0];
+    long[] previous = new long[names.length];
+    double[] values = new double[names.length];
+    long frames = 0;
+    try
+    {
+      while (true)
+      {
+        int rawLength, compressedLength;
+        try
+        {
+          rawLength = in.readInt();
+          compressedLength = in.readInt();
+          if (compressed.length < compressedLength)
+          {
+            compressed = new byte[compressedLength];
+          }
+          in.readFully(compressed, 0, compressedLength);
+        } catch (EOFException e)
+        {
+          return frames;
+        }
+        if (raw.length < rawLength)
+        {
+          raw = new byte[rawLength];
+        }
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        if (inflater.inflate(raw, 0, rawLength) != rawLength)
+        {
+          throw new IOException("Block decompressed to the wrong length");
+        }
+
+        long timestamp = 0;
+        Arrays.fill(previous, 0);
+        int[] position = {0};
+        while (position[0] < rawLength)
+        {
+          timestamp += getVarLong(raw, position);
+          for (int i = 0; i < previous.length; i++)
+          {
+            previous[i] += getVarLong(raw, position);
+            values[i] = previous[i] * resolutions[i];
+          }
+          consumer.accept(timestamp, values);
+          frames++;
+        }
+      }
+    } catch (DataFormatException e)
+    {
+      throw new IOException("Corrupt block: " + e.getMessage(), e);
+    } finally
+    {
+      inflater.end();
+    }
+  }
+
+  private static long getVarLong(byte[] bytes, int[] position)
+  {
+    long zigzag = 0;
+    int shift = 0;
+    byte b;
+    do
+    {
+      b = bytes[position[0]++];
+      zigzag |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    in.close();
+  }
+}
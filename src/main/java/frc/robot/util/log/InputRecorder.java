@@ -0,0 +1,107 @@
+package frc.robot.util.log;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.GenericHID;
+import edu.wpi.first.wpilibj.RobotController;
+import java.io.File;
+
+/**
+ * Records a driver controller every loop to a {@link CompactLog}: its axes, buttons and POV, and whether the robot is
+ * enabled and in autonomous, so a driver complaint can be reproduced from their exact inputs with {@link InputReplay}.
+ * Driver station axes arrive as a signed byte scaled by 1/128 or 1/127, so {@link #AXIS_RESOLUTION} stores them without
+ * loss.
+ */
+public class InputRecorder implements AutoCloseable
+{
+
+  /**
+   * Axes recorded per controller, enough for an Xbox controller.
+   */
+  public static final int      AXES            = 6;
+  public static final double   AXIS_RESOLUTION = 1.0 / (127 * 128);
+  public static final String   BUTTONS         = "Buttons";
+  public static final String   POV             = "POV";
+  public static final String   ENABLED         = "Enabled";
+  public static final String   AUTONOMOUS      = "Autonomous";
+  private static final int     CHANNELS        = AXES + 4;
+
+  private final GenericHID hid;
+  private final CompactLog log;
+  private final double[]   frame = new double[CHANNELS];
+
+  /**
+   * @param hid          Controller to record.
+   * @param directory    Directory for the log files, created if missing.
+   * @param maxDiskBytes Cap on the total size of the log files in the directory.
+   * @param capacity     Number of frames the writer can fall behind by.
+   */
+  public InputRecorder(GenericHID hid, File directory, long maxDiskBytes, int capacity)
+  {
+    this.hid = hid;
+    String[] names = new String[CHANNELS];
+    double[] resolutions = new double[CHANNELS];
+    for (int i = 0; i < AXES; i++)
+    {
+      names[i] = axisName(i);
+      resolutions[i] = AXIS_RESOLUTION;
+    }
+    names[AXES] = BUTTONS;
+    names[AXES + 1] = POV;
+    names[AXES + 2] = ENABLED;
+    names[AXES + 3] = AUTONOMOUS;
+    for (int i = AXES; i < CHANNELS; i++)
+    {
+      resolutions[i] = 1;
+    }
+    log = new CompactLog(directory, maxDiskBytes, capacity, names, resolutions);
+  }
+
+  /**
+   * @param axis Axis index.
+   * @return Channel name of the axis.
+   */
+  public static String axisName(int axis)
+  {
+    return "Axis " + axis;
+  }
+
+  /**
+   * Record this loop's inputs. Call once per loop, before the command scheduler runs.
+   */
+  public void record()
+  {
+    for (int i = 0; i < AXES; i++)
+    {
+      frame[i] = hid.getRawAxis(i);
+    }
+    frame[AXES] = DriverStation.getStickButtons(hid.getPort());
+    frame[AXES + 1] = hid.getPOV();
+    frame[AXES + 2] = DriverStation.isEnabled() ? 1 : 0;
+    frame[AXES + 3] = DriverStation.isAutonomous() ? 1 : 0;
+    log.append(RobotController.getFPGATime(), frame);
+  }
+
+  /**
+   * Start a new file, see {@link CompactLog#rotate(String)}.
+   *
+   * @param label Label for the new file, such as the event and match.
+   */
+  public void rotate(String label)
+  {
+    log.rotate(label);
+  }
+
+  /**
+   * @return Frames dropped because the writer fell behind, each one a loop the replay will skip.
+   */
+  public long getDroppedFrames()
+  {
+    return log.getDroppedFrames();
+  }
+
+  @Override
+  public void close()
+  {
+    log.close();
+  }
+}
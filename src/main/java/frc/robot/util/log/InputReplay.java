@@ -0,0 +1,209 @@
+package frc.robot.util.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Driver inputs recorded by {@link InputRecorder}, played back one frame per robot loop through the same kind of
+ * suppliers the drive commands take from the controller. Whoever drives the replay moves it to a frame with
+ * {@link #seek(int)} before each loop, so playback follows loop count rather than time and is deterministic however
+ * fast the loops run. Axes come back as the same float values the driver station produced.
+ */
+public class InputReplay
+{
+
+  private final double[]   timestamps;
+  private final float[][]  axes;
+  private final int[]      buttons;
+  private final int[]      pov;
+  private final boolean[]  enabled;
+  private final boolean[]  autonomous;
+  private volatile int     frame;
+
+  private InputReplay(double[] timestamps, float[][] axes, int[] buttons, int[] pov, boolean[] enabled,
+                      boolean[] autonomous)
+  {
+    this.timestamps = timestamps;
+    this.axes = axes;
+    this.buttons = buttons;
+    this.pov = pov;
+    this.enabled = enabled;
+    this.autonomous = autonomous;
+  }
+
+  /**
+   * Read a whole recording.
+   *
+   * @param file Input log written by {@link InputRecorder}.
+   * @return The replay, at its first frame.
+   * @throws IOException If the file cannot be read or is not an input log.
+   */
+  public static InputReplay load(File file) throws IOException
+  {
+    try (CompactLogReader reader = new CompactLogReader(file))
+    {
+      Frames frames = new Frames(reader.getNames(), file);
+      reader.forEach(frames);
+      return frames.toReplay();
+    }
+  }
+
+  /**
+   * Collects the frames of an input log into arrays that grow as needed.
+   */
+  private static final class Frames implements CompactLogReader.FrameConsumer
+  {
+
+    private final int[]     axisChannels = new int[InputRecorder.AXES];
+    private final int       buttonChannel, povChannel, enabledChannel, autonomousChannel;
+    private       int       count;
+    private       double[]  timestamps   = new double[1024];
+    private final float[][] axes         = new float[InputRecorder.AXES][1024];
+    private       int[]     buttons      = new int[1024];
+    private       int[]     pov          = new int[1024];
+    private       boolean[] enabled      = new boolean[1024];
+    private       boolean[] autonomous   = new boolean[1024];
+
+    Frames(String[] names, File file) throws IOException
+    {
+      for (int i = 0; i < axisChannels.length; i++)
+      {
+        axisChannels[i] = channel(names, InputRecorder.axisName(i), file);
+      }
+      buttonChannel = channel(names, InputRecorder.BUTTONS, file);
+      povChannel = channel(names, InputRecorder.POV, file);
+      enabledChannel = channel(names, InputRecorder.ENABLED, file);
+      autonomousChannel = channel(names, InputRecorder.AUTONOMOUS, file);
+    }
+
+    @Override
+    public void accept(long timestampMicros, double[] values)
+    {
+      if (count == timestamps.length)
+      {
+        int grown = count * 2;
+        timestamps = Arrays.copyOf(timestamps, grown);
+        for (int i = 0; i < InputRecorder.AXES; i++)
+        {
+          axes[i] = Arrays.copyOf(axes[i], grown);
+        }
+        buttons = Arrays.copyOf(buttons, grown);
+        pov = Arrays.copyOf(pov, grown);
+        enabled = Arrays.copyOf(enabled, grown);
+        autonomous = Arrays.copyOf(autonomous, grown);
+      }
+      timestamps[count] = timestampMicros / 1e6;
+      for (int i = 0; i < InputRecorder.AXES; i++)
+      {
+        axes[i][count] = (float) values[axisChannels[i]];
+      }
+      buttons[count] = (int) Math.round(values[buttonChannel]);
+      pov[count] = (int) Math.round(values[povChannel]);
+      enabled[count] = values[enabledChannel] != 0;
+      autonomous[count] = values[autonomousChannel] != 0;
+      count++;
+    }
+
+    /**
+     * @return The replay of the frames read so far, arrays trimmed to the frame count.
+     */
+    InputReplay toReplay()
+    {
+      float[][] trimmedAxes = new float[InputRecorder.AXES][];
+      for (int i = 0; i < InputRecorder.AXES; i++)
+      {
+        trimmedAxes[i] = Arrays.copyOf(axes[i], count);
+      }
+      return new InputReplay(Arrays.copyOf(timestamps, count), trimmedAxes, Arrays.copyOf(buttons, count),
+                             Arrays.copyOf(pov, count), Arrays.copyOf(enabled, count),
+                             Arrays.copyOf(autonomous, count));
+    }
+  }
+
+  private static int channel(String[] names, String name, File file) throws IOException
+  {
+    for (int i = 0; i < names.length; i++)
+    {
+      if (names[i].equals(name))
+      {
+        return i;
+      }
+    }
+    throw new IOException(file + " has no " + name + " channel, it is not an input log");
+  }
+
+  /**
+   * @return Number of recorded loops.
+   */
+  public int size()
+  {
+    return timestamps.length;
+  }
+
+  /**
+   * Move to a frame, the inputs of the next robot loop.
+   *
+   * @param frame Frame index, from zero to {@link #size()} - 1.
+   */
+  public void seek(int frame)
+  {
+    this.frame = frame;
+  }
+
+  /**
+   * @param frame Frame index.
+   * @return Whether the robot was enabled in that frame.
+   */
+  public boolean isEnabled(int frame)
+  {
+    return enabled[frame];
+  }
+
+  /**
+   * @param frame Frame index.
+   * @return Whether the robot was in autonomous in that frame.
+   */
+  public boolean isAutonomous(int frame)
+  {
+    return autonomous[frame];
+  }
+
+  /**
+   * @return Time between the first and last frame of the recording in seconds.
+   */
+  public double getDuration()
+  {
+    return timestamps.length > 0 ? timestamps[timestamps.length - 1] - timestamps[0] : 0;
+  }
+
+  /**
+   * @param axis Axis index, as for {@link edu.wpi.first.wpilibj.GenericHID#getRawAxis(int)}.
+   * @return Supplier of the axis value in the current frame.
+   */
+  public DoubleSupplier axis(int axis)
+  {
+    float[] values = axes[axis];
+    return () -> values[frame];
+  }
+
+  /**
+   * @param button Button number starting at 1, as for {@link edu.wpi.first.wpilibj.GenericHID#getRawButton(int)}.
+   * @return Supplier of whether the button is pressed in the current frame.
+   */
+  public BooleanSupplier button(int button)
+  {
+    int mask = 1 << (button - 1);
+    return () -> (buttons[frame] & mask) != 0;
+  }
+
+  /**
+   * @return Supplier of the POV angle in the current frame, -1 when not pressed.
+   */
+  public DoubleSupplier pov()
+  {
+    return () -> pov[frame];
+  }
+}
@@ -0,0 +1,523 @@
+package frc.robot.util.odometry;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.sim.SimState;
+import java.nio.ByteBuffer;
+
+/**
+ * Swerve odometry and pose estimator that keeps all of its state in primitive fields. The math is the same as
+ * {@link edu.wpi.first.math.estimator.SwerveDrivePoseEstimator}: odometry integrates the module deltas with the SE(2)
+ * exponential map, vision measurements are fused against an interpolated history sample using the same steady state
+ * Kalman gain and the newer history is replayed on top of the correction. Nothing is allocated after construction;
+ * {@link Pose2d} is only created when {@link #getPose()} is called. The estimate, trust and history can be snapshotted
+ * as {@link SimState} for simulations.
+ */
+public class PrimitivePoseEstimator implements SimState
+{
+
+  /**
+   * How far back vision measurements can be applied, same as the WPILib estimator.
+   */
+  private static final double BUFFER_DURATION = 1.5;
+  /**
+   * Maximum number of samples held in the history, enough for odometry at 150 Hz over the buffer duration.
+   */
+  private static final int    CAPACITY        = 256;
+  private static final int    MODULES         = FourModuleKinematics.MODULES;
+  /**
+   * Doubles saved per history entry by {@link #saveState}: time, pose, gyro, then the module distances and angles.
+   */
+  private static final int    ENTRY_DOUBLES   = 5 + 2 * MODULES;
+
+  private final FourModuleKinematics kinematics;
+
+  /**
+   * Current estimate.
+   */
+  private double poseX, poseY, poseTheta;
+  /**
+   * Offset between the gyro and the estimated heading.
+   */
+  private double gyroOffset;
+  /**
+   * Gyro angle and module state of the previous odometry update.
+   */
+  private       double   previousAngle;
+  private final double[] previousDistances = new double[MODULES];
+
+  /**
+   * Per axis squared state and vision standard deviations and the resulting vision gain.
+   */
+  private final double[] q       = new double[3];
+  private final double[] visionR = new double[3];
+  private final double[] visionK = new double[3];
+
+  /**
+   * Pose history ring buffer in struct of arrays form. Entry i lives at (head + i) % CAPACITY.
+   */
+  private final double[] historyTime      = new double[CAPACITY];
+  private final double[] historyX         = new double[CAPACITY];
+  private final double[] historyY         = new double[CAPACITY];
+  private final double[] historyTheta     = new double[CAPACITY];
+  private final double[] historyGyro      = new double[CAPACITY];
+  private final double[] historyDistances = new double[CAPACITY * MODULES];
+  private final double[] historyAngles    = new double[CAPACITY * MODULES];
+  private       int      head;
+  private       int      size;
+  /**
+   * Ring buffer layout of the history before a vision correction reset it.
+   */
+  private       int      savedHead, savedSize;
+
+  /**
+   * Scratch space reused by every update.
+   */
+  private final double[] deltas       = new double[MODULES];
+  private final double[] twist        = new double[3];
+  private final double[] sampleDist   = new double[MODULES];
+  private final double[] sampleAngles = new double[MODULES];
+  private final double[] samplePose   = new double[4];
+  private final double[] replayDist   = new double[MODULES];
+  private final double[] replayAngles = new double[MODULES];
+
+  /**
+   * Create the estimator.
+   *
+   * @param kinematics    Kinematics of the drivetrain.
+   * @param gyroAngle     Current gyro angle in radians.
+   * @param distances     Current module distances in meters.
+   * @param angles        Current module angles in radians.
+   * @param initialPose   Starting pose.
+   * @param stateStdDevs  Standard deviations of the odometry, x and y in meters, theta in radians.
+   * @param visionStdDevs Standard deviations of vision measurements, x and y in meters, theta in radians.
+   */
+  public PrimitivePoseEstimator(FourModuleKinematics kinematics, double gyroAngle, double[] distances, double[] angles,
+                                Pose2d initialPose, double[] stateStdDevs, double[] visionStdDevs)
+  {
+    this.kinematics = kinematics;
+    for (int i = 0; i < 3; i++)
+    {
+      q[i] = stateStdDevs[i] * stateStdDevs[i];
+    }
+    setVisionMeasurementStdDevs(visionStdDevs[0], visionStdDevs[1], visionStdDevs[2]);
+    resetPosition(gyroAngle, distances, initialPose.getX(), initialPose.getY(),
+                  initialPose.getRotation().getRadians());
+  }
+
+  /**
+   * Set the trust placed in vision measurements. Same gain calculation as the WPILib estimator.
+   *
+   * @param x     Standard deviation in x, meters.
+   * @param y     Standard deviation in y, meters.
+   * @param theta Standard deviation in heading, radians.
+   */
+  public void setVisionMeasurementStdDevs(double x, double y, double theta)
+  {
+    visionR[0] = x * x;
+    visionR[1] = y * y;
+    visionR[2] = theta * theta;
+    updateVisionGain();
+  }
+
+  /**
+   * Set the trust placed in odometry, for example to trust it less while the wheels slip. Vision measurements are
+   * weighted against it, so raising these makes vision corrections stronger.
+   *
+   * @param x     Standard deviation in x, meters.
+   * @param y     Standard deviation in y, meters.
+   * @param theta Standard deviation in heading, radians.
+   */
+  public void setStateStdDevs(double x, double y, double theta)
+  {
+    q[0] = x * x;
+    q[1] = y * y;
+    q[2] = theta * theta;
+    updateVisionGain();
+  }
+
+  private void updateVisionGain()
+  {
+    for (int i = 0; i < 3; i++)
+    {
+      visionK[i] = gain(q[i], visionR[i]);
+    }
+  }
+
+  private static double gain(double q, double r)
+  {
+    return q == 0.0 ? 0.0 : q / (q + Math.sqrt(q * r));
+  }
+
+  /**
+   * Reset the estimate to a pose. The gyro and module positions do not need to be reset.
+   *
+   * @param gyroAngle Current gyro angle in radians.
+   * @param distances Current module distances in meters.
+   * @param x         X of the new pose in meters.
+   * @param y         Y of the new pose in meters.
+   * @param theta     Heading of the new pose in radians.
+   */
+  public void resetPosition(double gyroAngle, double[] distances, double x, double y, double theta)
+  {
+    poseX = x;
+    poseY = y;
+    poseTheta = theta;
+    gyroOffset = theta - gyroAngle;
+    previousAngle = theta;
+    System.arraycopy(distances, 0, previousDistances, 0, MODULES);
+    size = 0;
+    head = 0;
+  }
+
+  /**
+   * Update the estimate with new gyro and module readings.
+   *
+   * @param timestamp Time of the readings in seconds.
+   * @param gyroAngle Gyro angle in radians.
+   * @param distances Module distances in meters.
+   * @param angles    Module angles in radians.
+   */
+  public void updateWithTime(double timestamp, double gyroAngle, double[] distances, double[] angles)
+  {
+    integrate(gyroAngle, distances, angles);
+    record(timestamp, gyroAngle, distances, angles);
+  }
+
+  /**
+   * Odometry step, identical to {@link edu.wpi.first.math.kinematics.Odometry#update}.
+   */
+  private void integrate(double gyroAngle, double[] distances, double[] angles)
+  {
+    double angle = FourModuleKinematics.wrap(gyroAngle + gyroOffset);
+    for (int i = 0; i < MODULES; i++)
+    {
+      deltas[i] = distances[i] - previousDistances[i];
+      previousDistances[i] = distances[i];
+    }
+    kinematics.toTwist(deltas, angles, twist);
+    twist[2] = FourModuleKinematics.wrap(angle - previousAngle);
+    exp(poseX, poseY, poseTheta, twist[0], twist[1], twist[2], samplePose);
+    poseX = samplePose[0];
+    poseY = samplePose[1];
+    poseTheta = angle;
+    previousAngle = angle;
+  }
+
+  /**
+   * Append a sample to the history, dropping samples older than the buffer duration.
+   */
+  private void record(double timestamp, double gyroAngle, double[] distances, double[] angles)
+  {
+    if (size > 0 && historyTime[index(size - 1)] >= timestamp)
+    {
+      // Same timestamp as the last sample, replace it instead of creating a zero length interval.
+      write(index(size - 1), timestamp, poseX, poseY, poseTheta, gyroAngle, distances, angles);
+      return;
+    }
+    while (size > 0 && (historyTime[index(0)] < timestamp - BUFFER_DURATION || size == CAPACITY))
+    {
+      head = (head + 1) % CAPACITY;
+      size--;
+    }
+    int slot = index(size);
+    size++;
+    write(slot, timestamp, poseX, poseY, poseTheta, gyroAngle, distances, angles);
+  }
+
+  private void write(int slot, double timestamp, double x, double y, double theta, double gyroAngle,
+                     double[] distances, double[] angles)
+  {
+    historyTime[slot] = timestamp;
+    historyX[slot] = x;
+    historyY[slot] = y;
+    historyTheta[slot] = theta;
+    historyGyro[slot] = gyroAngle;
+    System.arraycopy(distances, 0, historyDistances, slot * MODULES, MODULES);
+    System.arraycopy(angles, 0, historyAngles, slot * MODULES, MODULES);
+  }
+
+  private int index(int i)
+  {
+    return (head + i) % CAPACITY;
+  }
+
+  /**
+   * Fuse a vision pose measurement taken at the given timestamp.
+   *
+   * @param x         Measured x in meters.
+   * @param y         Measured y in meters.
+   * @param theta     Measured heading in radians.
+   * @param timestamp Time the measurement was captured, same timebase as {@link #updateWithTime}.
+   */
+  public void addVisionMeasurement(double x, double y, double theta, double timestamp)
+  {
+    if (size == 0 || historyTime[index(size - 1)] - BUFFER_DURATION > timestamp)
+    {
+      return;
+    }
+    int after = sample(timestamp);
+
+    // Twist from the sampled pose to the vision pose, scaled by the Kalman gain.
+    log(samplePose[0], samplePose[1], samplePose[2], x, y, theta, twist);
+    twist[0] *= visionK[0];
+    twist[1] *= visionK[1];
+    twist[2] *= visionK[2];
+    exp(samplePose[0], samplePose[1], samplePose[2], twist[0], twist[1], twist[2], samplePose);
+    double sampleGyro = samplePose[3];
+    resetPosition(sampleGyro, sampleDist, samplePose[0], samplePose[1], samplePose[2]);
+
+    // resetPosition cleared the history, rebuild it from the stored samples without reallocating. Samples before the
+    // measurement are kept, the measurement becomes a sample and later samples are replayed on top of it.
+    restoreAndReplay(after, timestamp, sampleGyro);
+  }
+
+  /**
+   * Interpolate the history at the timestamp into {@link #samplePose}, {@link #sampleDist} and {@link #sampleAngles}.
+   *
+   * @return Index of the first history entry newer than the timestamp, or the history size if there is none.
+   */
+  private int sample(double timestamp)
+  {
+    savedHead = head;
+    savedSize = size;
+    int upper = 0;
+    while (upper < size && historyTime[index(upper)] <= timestamp)
+    {
+      upper++;
+    }
+    if (upper == 0 || upper == size)
+    {
+      int slot = index(upper == 0 ? 0 : size - 1);
+      samplePose[0] = historyX[slot];
+      samplePose[1] = historyY[slot];
+      samplePose[2] = historyTheta[slot];
+      samplePose[3] = historyGyro[slot];
+      System.arraycopy(historyDistances, slot * MODULES, sampleDist, 0, MODULES);
+      System.arraycopy(historyAngles, slot * MODULES, sampleAngles, 0, MODULES);
+      return upper == 0 ? 0 : size;
+    }
+
+    int lo = index(upper - 1);
+    int hi = index(upper);
+    double t = (timestamp - historyTime[lo]) / (historyTime[hi] - historyTime[lo]);
+    // Same interpolation as the WPILib estimator: lerp the wheels and gyro, then integrate from the lower sample.
+    for (int i = 0; i < MODULES; i++)
+    {
+      double d0 = historyDistances[lo * MODULES + i];
+      sampleDist[i] = d0 + (historyDistances[hi * MODULES + i] - d0) * t;
+      double a0 = historyAngles[lo * MODULES + i];
+      sampleAngles[i] = a0 + FourModuleKinematics.wrap(historyAngles[hi * MODULES + i] - a0) * t;
+      deltas[i] = sampleDist[i] - d0;
+    }
+    double g0 = historyGyro[lo];
+    double gyro = g0 + FourModuleKinematics.wrap(historyGyro[hi] - g0) * t;
+    kinematics.toTwist(deltas, sampleAngles, twist);
+    twist[2] = FourModuleKinematics.wrap(gyro - g0);
+    exp(historyX[lo], historyY[lo], historyTheta[lo], twist[0], twist[1], twist[2], samplePose);
+    samplePose[3] = gyro;
+    return upper;
+  }
+
+  /**
+   * Rebuild the history after a correction. The entries before {@code after} are unchanged, the correction is recorded
+   * at the measurement time and every newer entry is replayed through odometry.
+   */
+  private void restoreAndReplay(int after, double timestamp, double sampleGyro)
+  {
+    // Entries before the measurement stay where they are. Newer entries shift by one to make room for the correction
+    // sample; walk backwards so nothing is overwritten before it is read. The oldest entry is dropped when full.
+    int keepFrom = savedSize == CAPACITY ? 1 : 0;
+    head = (savedHead + keepFrom) % CAPACITY;
+    int before = Math.max(after - keepFrom, 0);
+    int newerStart = Math.max(after, keepFrom);
+    int newer = savedSize - newerStart;
+    for (int i = newer - 1; i >= 0; i--)
+    {
+      int from = (savedHead + newerStart + i) % CAPACITY;
+      int to = (head + before + 1 + i) % CAPACITY;
+      copySlot(from, to);
+    }
+    int correctionSlot = (head + before) % CAPACITY;
+    write(correctionSlot, timestamp, poseX, poseY, poseTheta, sampleGyro, sampleDist, sampleAngles);
+    size = before + 1;
+
+    for (int i = 0; i < newer; i++)
+    {
+      int slot = index(size);
+      System.arraycopy(historyDistances, slot * MODULES, replayDist, 0, MODULES);
+      System.arraycopy(historyAngles, slot * MODULES, replayAngles, 0, MODULES);
+      integrate(historyGyro[slot], replayDist, replayAngles);
+      historyX[slot] = poseX;
+      historyY[slot] = poseY;
+      historyTheta[slot] = poseTheta;
+      size++;
+    }
+  }
+
+  private void copySlot(int from, int to)
+  {
+    historyTime[to] = historyTime[from];
+    historyX[to] = historyX[from];
+    historyY[to] = historyY[from];
+    historyTheta[to] = historyTheta[from];
+    historyGyro[to] = historyGyro[from];
+    System.arraycopy(historyDistances, from * MODULES, historyDistances, to * MODULES, MODULES);
+    System.arraycopy(historyAngles, from * MODULES, historyAngles, to * MODULES, MODULES);
+  }
+
+  /**
+   * SE(2) exponential map, same as {@link Pose2d#exp}. Writes x, y and theta into out.
+   */
+  public static void exp(double x, double y, double theta, double dx, double dy, double dtheta, double[] out)
+  {
+    double sinTheta = Math.sin(dtheta);
+    double cosTheta = Math.cos(dtheta);
+    double s, c;
+    if (Math.abs(dtheta) < 1E-9)
+    {
+      s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+      c = 0.5 * dtheta;
+    } else
+    {
+      s = sinTheta / dtheta;
+      c = (1 - cosTheta) / dtheta;
+    }
+    double tx = dx * s - dy * c;
+    double ty = dx * c + dy * s;
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    out[0] = x + tx * cos - ty * sin;
+    out[1] = y + tx * sin + ty * cos;
+    out[2] = FourModuleKinematics.wrap(theta + Math.atan2(sinTheta, cosTheta));
+  }
+
+  /**
+   * SE(2) logarithm map, same as {@link Pose2d#log}. Writes dx, dy and dtheta into out.
+   */
+  public static void log(double x0, double y0, double theta0, double x1, double y1, double theta1, double[] out)
+  {
+    // end.relativeTo(start)
+    double cos = Math.cos(theta0);
+    double sin = Math.sin(theta0);
+    double rx = (x1 - x0) * cos + (y1 - y0) * sin;
+    double ry = -(x1 - x0) * sin + (y1 - y0) * cos;
+    double dtheta = FourModuleKinematics.wrap(theta1 - theta0);
+
+    double halfDtheta = dtheta / 2.0;
+    double cosMinusOne = Math.cos(dtheta) - 1;
+    double halfThetaByTanOfHalfDtheta;
+    if (Math.abs(cosMinusOne) < 1E-9)
+    {
+      halfThetaByTanOfHalfDtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
+    } else
+    {
+      halfThetaByTanOfHalfDtheta = -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+    }
+    out[0] = rx * halfThetaByTanOfHalfDtheta + ry * halfDtheta;
+    out[1] = -rx * halfDtheta + ry * halfThetaByTanOfHalfDtheta;
+    out[2] = dtheta;
+  }
+
+  /**
+   * @return Estimated x in meters.
+   */
+  public double getX()
+  {
+    return poseX;
+  }
+
+  /**
+   * @return Estimated y in meters.
+   */
+  public double getY()
+  {
+    return poseY;
+  }
+
+  /**
+   * @return Estimated heading in radians.
+   */
+  public double getHeadingRadians()
+  {
+    return poseTheta;
+  }
+
+  /**
+   * Materialise the estimate as a {@link Pose2d}. This is the only method that allocates.
+   *
+   * @return The estimated pose.
+   */
+  public Pose2d getPose()
+  {
+    return new Pose2d(poseX, poseY, new Rotation2d(poseTheta));
+  }
+
+  @Override
+  public int getStateBytes()
+  {
+    return (11 + MODULES + CAPACITY * ENTRY_DOUBLES) * Double.BYTES + Integer.BYTES;
+  }
+
+  @Override
+  public void saveState(ByteBuffer buffer)
+  {
+    buffer.putDouble(poseX).putDouble(poseY).putDouble(poseTheta).putDouble(gyroOffset).putDouble(previousAngle);
+    for (int i = 0; i < 3; i++)
+    {
+      buffer.putDouble(q[i]).putDouble(visionR[i]);
+    }
+    for (int i = 0; i < MODULES; i++)
+    {
+      buffer.putDouble(previousDistances[i]);
+    }
+    // Only the live history entries are written, oldest first, so a fresh estimator snapshots in a few hundred bytes.
+    buffer.putInt(size);
+    for (int i = 0; i < size; i++)
+    {
+      int slot = index(i);
+      buffer.putDouble(historyTime[slot]).putDouble(historyX[slot]).putDouble(historyY[slot])
+            .putDouble(historyTheta[slot]).putDouble(historyGyro[slot]);
+      for (int m = 0; m < MODULES; m++)
+      {
+        buffer.putDouble(historyDistances[slot * MODULES + m]).putDouble(historyAngles[slot * MODULES + m]);
+      }
+    }
+  }
+
+  @Override
+  public void restoreState(ByteBuffer buffer)
+  {
+    poseX = buffer.getDouble();
+    poseY = buffer.getDouble();
+    poseTheta = buffer.getDouble();
+    gyroOffset = buffer.getDouble();
+    previousAngle = buffer.getDouble();
+    for (int i = 0; i < 3; i++)
+    {
+      q[i] = buffer.getDouble();
+      visionR[i] = buffer.getDouble();
+    }
+    updateVisionGain();
+    for (int i = 0; i < MODULES; i++)
+    {
+      previousDistances[i] = buffer.getDouble();
+    }
+    head = 0;
+    size = buffer.getInt();
+    for (int slot = 0; slot < size; slot++)
+    {
+      historyTime[slot] = buffer.getDouble();
+      historyX[slot] = buffer.getDouble();
+      historyY[slot] = buffer.getDouble();
+      historyTheta[slot] = buffer.getDouble();
+      historyGyro[slot] = buffer.getDouble();
+      for (int m = 0; m < MODULES; m++)
+      {
+        historyDistances[slot * MODULES + m] = buffer.getDouble();
+        historyAngles[slot * MODULES + m] = buffer.getDouble();
+      }
+    }
+  }
+}
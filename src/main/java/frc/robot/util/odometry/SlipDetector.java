@@ -0,0 +1,202 @@
+package frc.robot.util.odometry;
+
+import frc.robot.util.kinematics.FourModuleKinematics;
+
+/**
+ * Flags wheel slip and collisions from one loop of module, gyro and accelerometer readings, and turns them into scales
+ * for the odometry and vision standard deviations. Three checks run every loop:
+ * <ul>
+ *   <li>the least squares residual of the four module velocities, which grows when one wheel slips or is dragged,</li>
+ *   <li>the yaw rate from the modules against the gyro yaw rate, which disagree when the wheels spin out together,</li>
+ *   <li>the accelerometer against the acceleration of the wheel velocity, which disagree when something pushes the
+ *   robot, and wheel acceleration beyond what the tire grip allows.</li>
+ * </ul>
+ * A flag raises the odometry scale at once, and the scale decays back to one over about half a second after the flag
+ * clears. Everything is primitive and preallocated.
+ */
+public class SlipDetector
+{
+
+  private static final double GRAVITY             = 9.80665;
+  /**
+   * Module velocity residual above which a wheel is slipping, m/s.
+   */
+  private static final double RESIDUAL_THRESHOLD  = 0.15;
+  /**
+   * Difference between the module and gyro yaw rates above which the wheels are slipping, rad/s.
+   */
+  private static final double YAW_RATE_THRESHOLD  = 0.3;
+  /**
+   * Difference between the measured and wheel accelerations above which the robot was hit, m/s^2.
+   */
+  private static final double COLLISION_THRESHOLD = 1.0 * GRAVITY;
+  /**
+   * Margin over the friction limit before wheel acceleration counts as slip.
+   */
+  private static final double GRIP_MARGIN         = 1.2;
+  /**
+   * Odometry standard deviation scales while slipping and after a collision.
+   */
+  private static final double SLIP_SCALE          = 10;
+  private static final double COLLISION_SCALE     = 30;
+  /**
+   * Time constant of the decay back to full odometry trust, seconds.
+   */
+  private static final double RECOVERY_TIME       = 0.15;
+
+  private final FourModuleKinematics kinematics;
+  private final double               maxAcceleration;
+  private final double[]             chassis      = new double[3];
+  private       double               previousVx, previousVy;
+  private       boolean              hasPrevious;
+  private       double               residual;
+  private       double               yawRateError;
+  private       double               accelerationError;
+  private       boolean              slipping, collided;
+  private       double               odometryScale = 1;
+  private       long                 slipLoops, collisionLoops;
+
+  /**
+   * @param kinematics          Kinematics of the drivetrain, only used for read only fits.
+   * @param frictionCoefficient Wheel grip coefficient of friction, as in physicalproperties.json.
+   */
+  public SlipDetector(FourModuleKinematics kinematics, double frictionCoefficient)
+  {
+    this.kinematics = kinematics;
+    this.maxAcceleration = frictionCoefficient * GRAVITY * GRIP_MARGIN;
+  }
+
+  /**
+   * Run the checks for one loop.
+   *
+   * @param speeds      Measured module speeds in m/s.
+   * @param angles      Measured module angles in radians.
+   * @param gyroYawRate Yaw rate from the gyro in rad/s.
+   * @param accelX      Measured robot relative acceleration along x in m/s^2.
+   * @param accelY      Measured robot relative acceleration along y in m/s^2.
+   * @param dt          Time since the last update in seconds.
+   */
+  public void update(double[] speeds, double[] angles, double gyroYawRate, double accelX, double accelY, double dt)
+  {
+    kinematics.toChassisSpeeds(speeds, angles, chassis);
+    residual = kinematics.residual(speeds, angles, chassis);
+    yawRateError = Math.abs(chassis[2] - gyroYawRate);
+
+    double wheelAccelX = 0, wheelAccelY = 0;
+    if (hasPrevious && dt > 0)
+    {
+      // Robot frame acceleration of the fitted velocity, including the turn of the frame itself.
+      wheelAccelX = (chassis[0] - previousVx) / dt - gyroYawRate * chassis[1];
+      wheelAccelY = (chassis[1] - previousVy) / dt + gyroYawRate * chassis[0];
+    }
+    previousVx = chassis[0];
+    previousVy = chassis[1];
+    hasPrevious = true;
+    accelerationError = Math.hypot(accelX - wheelAccelX, accelY - wheelAccelY);
+
+    slipping = residual > RESIDUAL_THRESHOLD || yawRateError > YAW_RATE_THRESHOLD
+               || Math.hypot(wheelAccelX, wheelAccelY) > maxAcceleration;
+    collided = accelerationError > COLLISION_THRESHOLD;
+
+    double target = collided ? COLLISION_SCALE : slipping ? SLIP_SCALE : 1;
+    if (target >= odometryScale)
+    {
+      odometryScale = target;
+    } else
+    {
+      odometryScale = 1 + (odometryScale - 1) * Math.exp(-dt / RECOVERY_TIME);
+    }
+    if (slipping)
+    {
+      slipLoops++;
+    }
+    if (collided)
+    {
+      collisionLoops++;
+    }
+  }
+
+  /**
+   * Forget the previous velocity, for example after the robot was disabled.
+   */
+  public void reset()
+  {
+    hasPrevious = false;
+    odometryScale = 1;
+  }
+
+  /**
+   * @return Multiplier for the odometry standard deviations, one when the wheels are trusted.
+   */
+  public double getOdometryScale()
+  {
+    return odometryScale;
+  }
+
+  /**
+   * Multiplier for the vision standard deviations. Vision is trusted more while odometry is not, but never more than
+   * twice the configured trust.
+   *
+   * @return The vision scale, one when the wheels are trusted.
+   */
+  public double getVisionScale()
+  {
+    return Math.max(0.5, 1 / Math.sqrt(odometryScale));
+  }
+
+  /**
+   * @return Whether the last update flagged slip.
+   */
+  public boolean isSlipping()
+  {
+    return slipping;
+  }
+
+  /**
+   * @return Whether the last update flagged a collision.
+   */
+  public boolean isCollided()
+  {
+    return collided;
+  }
+
+  /**
+   * @return Module velocity residual of the last update in m/s.
+   */
+  public double getResidual()
+  {
+    return residual;
+  }
+
+  /**
+   * @return Yaw rate disagreement of the last update in rad/s.
+   */
+  public double getYawRateError()
+  {
+    return yawRateError;
+  }
+
+  /**
+   * @return Acceleration disagreement of the last update in m/s^2.
+   */
+  public double getAccelerationError()
+  {
+    return accelerationError;
+  }
+
+  /**
+   * @return Number of updates flagged as slipping.
+   */
+  public long getSlipLoops()
+  {
+    return slipLoops;
+  }
+
+  /**
+   * @return Number of updates flagged as a collision.
+   */
+  public long getCollisionLoops()
+  {
+    return collisionLoops;
+  }
+}
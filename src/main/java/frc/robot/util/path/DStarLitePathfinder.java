@@ -0,0 +1,716 @@
+package frc.robot.util.path;
+
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.pathfinding.Pathfinder;
+import edu.wpi.first.math.Pair;
+import edu.wpi.first.math.geometry.Translation2d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PathPlanner {@link Pathfinder} running D* Lite on a bit packed {@link OccupancyGrid}. The search runs backwards from
+ * the goal, so when the robot moves or dynamic obstacles change only the affected part of the search is repaired instead
+ * of planning from scratch. Planning runs on a daemon thread in slices of a fixed time budget, and the finished cell
+ * path is shortened by line of sight and rounded into bezier curves before it is handed to PathPlanner.
+ */
+public class DStarLitePathfinder implements Pathfinder
+{
+
+  private static final double SQRT2 = Math.sqrt(2);
+  /**
+   * Checking the clock costs more than an expansion, only look every this many expansions.
+   */
+  private static final int    CLOCK_INTERVAL = 32;
+  /**
+   * Samples per rounded corner checked against the grid.
+   */
+  private static final int    CORNER_SAMPLES = 8;
+  private static final int[]  DX = {1, -1, 0, 0, 1, 1, -1, -1};
+  private static final int[]  DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+  private final OccupancyGrid staticGrid;
+  private final OccupancyGrid dynamicGrid;
+  private final OccupancyGrid nextDynamicGrid;
+  private final int           columns, rows;
+  private final long          sliceNanos;
+
+  // Search state, only touched by the planning thread.
+  private final double[] g, rhs, key1, key2;
+  private final int[]    heap, heapIndex;
+  private       int      heapSize;
+  private       double   km;
+  private       int      start = -1, goal = -1, lastStart = -1;
+  private final int[]    neighbours   = new int[8];
+  private final double[] costs        = new double[8];
+  private final int[]    predecessors = new int[8];
+
+  // Requests from the main thread, guarded by lock.
+  private final Object                                   lock = new Object();
+  private       Translation2d                            requestedStart, requestedGoal;
+  private       List<Pair<Translation2d, Translation2d>> requestedObstacles;
+  private       boolean                                  requestPending;
+
+  // Results for the main thread.
+  private volatile List<Translation2d> bezierPoints;
+  private volatile boolean             newPathAvailable;
+  private volatile double              lastReplanMillis;
+  private volatile long                lastExpansions;
+
+  /**
+   * Create the pathfinder and start its planning thread.
+   *
+   * @param staticGrid  Permanent field obstacles, already grown by the robot size.
+   * @param sliceBudget Maximum planning time before checking for new requests, in seconds.
+   */
+  public DStarLitePathfinder(OccupancyGrid staticGrid, double sliceBudget)
+  {
+    this.staticGrid = staticGrid;
+    this.dynamicGrid = new OccupancyGrid(staticGrid);
+    this.nextDynamicGrid = new OccupancyGrid(staticGrid);
+    this.columns = staticGrid.getColumns();
+    this.rows = staticGrid.getRows();
+    this.sliceNanos = (long) (sliceBudget * 1e9);
+    int n = staticGrid.size();
+    g = new double[n];
+    rhs = new double[n];
+    key1 = new double[n];
+    key2 = new double[n];
+    heap = new int[n];
+    heapIndex = new int[n];
+    Arrays.fill(heapIndex, -1);
+
+    Thread thread = new Thread(this::run, "Pathfinder");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public boolean isNewPathAvailable()
+  {
+    return newPathAvailable;
+  }
+
+  @Override
+  public PathPlannerPath getCurrentPath(PathConstraints constraints, GoalEndState goalEndState)
+  {
+    // Clear the flag before reading, a path published in between is then read here or flagged again for next time.
+    newPathAvailable = false;
+    List<Translation2d> points = bezierPoints;
+    if (points == null)
+    {
+      return null;
+    }
+    return new PathPlannerPath(points, constraints, goalEndState);
+  }
+
+  @Override
+  public void setStartPosition(Translation2d startPosition)
+  {
+    synchronized (lock)
+    {
+      requestedStart = startPosition;
+      requestPending = true;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public void setGoalPosition(Translation2d goalPosition)
+  {
+    synchronized (lock)
+    {
+      requestedGoal = goalPosition;
+      requestPending = true;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public void setDynamicObstacles(List<Pair<Translation2d, Translation2d>> obs, Translation2d currentRobotPos)
+  {
+    synchronized (lock)
+    {
+      requestedObstacles = new ArrayList<>(obs);
+      requestedStart = currentRobotPos;
+      requestPending = true;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * @return Wall time of the last completed replan in milliseconds, across all of its slices.
+   */
+  public double getLastReplanMillis()
+  {
+    return lastReplanMillis;
+  }
+
+  /**
+   * @return Cells expanded by the last completed replan.
+   */
+  public long getLastExpansions()
+  {
+    return lastExpansions;
+  }
+
+  private void run()
+  {
+    Translation2d startPosition = null;
+    Translation2d goalPosition = null;
+    boolean searching = false;
+    long replanStart = 0;
+    long expansions = 0;
+    try
+    {
+      while (true)
+      {
+        Translation2d newStart;
+        Translation2d newGoal;
+        List<Pair<Translation2d, Translation2d>> newObstacles;
+        synchronized (lock)
+        {
+          while (!requestPending && !searching)
+          {
+            lock.wait();
+          }
+          newStart = requestedStart;
+          newGoal = requestedGoal;
+          newObstacles = requestedObstacles;
+          requestedGoal = null;
+          requestedObstacles = null;
+          requestPending = false;
+        }
+
+        if (!searching)
+        {
+          replanStart = System.nanoTime();
+          expansions = 0;
+        }
+        if (newObstacles != null)
+        {
+          updateObstacles(newObstacles);
+        }
+        if (newStart != null)
+        {
+          startPosition = newStart;
+        }
+        if (newGoal != null)
+        {
+          goalPosition = newGoal;
+          goal = -1;
+        }
+        if (startPosition == null || goalPosition == null)
+        {
+          continue;
+        }
+        start = nearestFree(staticGrid.index(staticGrid.column(startPosition.getX()),
+                                             staticGrid.row(startPosition.getY())));
+        int goalCell = nearestFree(staticGrid.index(staticGrid.column(goalPosition.getX()),
+                                                    staticGrid.row(goalPosition.getY())));
+        if (start < 0 || goalCell < 0)
+        {
+          continue;
+        }
+        if (goal != goalCell)
+        {
+          initialize(goalCell);
+        } else if (start != lastStart)
+        {
+          km += heuristic(lastStart, start);
+        }
+        lastStart = start;
+
+        long deadline = System.nanoTime() + sliceNanos;
+        long sliceExpansions = computeShortestPath(deadline);
+        expansions += Math.abs(sliceExpansions);
+        searching = sliceExpansions < 0;
+        if (!searching)
+        {
+          publish(startPosition, goalPosition);
+          lastReplanMillis = (System.nanoTime() - replanStart) / 1e6;
+          lastExpansions = expansions;
+        }
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean blocked(int cell)
+  {
+    return staticGrid.get(cell) || dynamicGrid.get(cell);
+  }
+
+  /**
+   * Rebuild the dynamic layer and repair the search around every cell whose occupancy changed.
+   */
+  private void updateObstacles(List<Pair<Translation2d, Translation2d>> obstacles)
+  {
+    nextDynamicGrid.clear();
+    for (Pair<Translation2d, Translation2d> box : obstacles)
+    {
+      nextDynamicGrid.fillBox(box.getFirst().getX(), box.getFirst().getY(), box.getSecond().getX(),
+                              box.getSecond().getY());
+    }
+    int changedCount = 0;
+    int[] changed = new int[64];
+    for (int word = 0; word < dynamicGrid.wordCount(); word++)
+    {
+      long bits = dynamicGrid.changed(nextDynamicGrid, word);
+      while (bits != 0)
+      {
+        int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        if (changedCount == changed.length)
+        {
+          changed = Arrays.copyOf(changed, changed.length * 2);
+        }
+        changed[changedCount++] = cell;
+      }
+    }
+    dynamicGrid.copyFrom(nextDynamicGrid);
+    if (goal < 0)
+    {
+      return;
+    }
+    for (int i = 0; i < changedCount; i++)
+    {
+      int cell = changed[i];
+      updateVertex(cell);
+      int count = neighbours(cell, false);
+      for (int j = 0; j < count; j++)
+      {
+        updateVertex(neighbours[j]);
+      }
+    }
+  }
+
+  private void initialize(int goalCell)
+  {
+    goal = goalCell;
+    km = 0;
+    Arrays.fill(g, Double.POSITIVE_INFINITY);
+    Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+    for (int i = 0; i < heapSize; i++)
+    {
+      heapIndex[heap[i]] = -1;
+    }
+    heapSize = 0;
+    rhs[goal] = 0;
+    push(goal);
+  }
+
+  private double heuristic(int a, int b)
+  {
+    int dx = Math.abs(a % columns - b % columns);
+    int dy = Math.abs(a / columns - b / columns);
+    return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+  }
+
+  /**
+   * Fill {@link #neighbours} with the cells reachable from a cell, and {@link #costs} with the move costs. Diagonal
+   * moves may not cut the corner of a blocked cell.
+   *
+   * @param cell    The cell.
+   * @param passable Only list moves between free cells, otherwise list every neighbour in the grid.
+   * @return Number of neighbours.
+   */
+  private int neighbours(int cell, boolean passable)
+  {
+    int x = cell % columns;
+    int y = cell / columns;
+    boolean free = !blocked(cell);
+    int count = 0;
+    for (int i = 0; i < 8; i++)
+    {
+      int nx = x + DX[i];
+      int ny = y + DY[i];
+      if (nx < 0 || ny < 0 || nx >= columns || ny >= rows)
+      {
+        continue;
+      }
+      int neighbour = ny * columns + nx;
+      double cost = i < 4 ? 1 : SQRT2;
+      if (!free || blocked(neighbour)
+          || (i >= 4 && (blocked(y * columns + nx) || blocked(ny * columns + x))))
+      {
+        if (passable)
+        {
+          continue;
+        }
+        cost = Double.POSITIVE_INFINITY;
+      }
+      neighbours[count] = neighbour;
+      costs[count] = cost;
+      count++;
+    }
+    return count;
+  }
+
+  private void updateVertex(int cell)
+  {
+    if (cell != goal)
+    {
+      double best = Double.POSITIVE_INFINITY;
+      int count = neighbours(cell, true);
+      for (int i = 0; i < count; i++)
+      {
+        best = Math.min(best, costs[i] + g[neighbours[i]]);
+      }
+      rhs[cell] = best;
+    }
+    if (heapIndex[cell] >= 0)
+    {
+      remove(cell);
+    }
+    if (g[cell] != rhs[cell])
+    {
+      push(cell);
+    }
+  }
+
+  /**
+   * Expand cells until the path from the start is consistent or the deadline passes.
+   *
+   * @param deadline {@link System#nanoTime()} to stop at.
+   * @return Cells expanded, negated if the deadline stopped the search.
+   */
+  private long computeShortestPath(long deadline)
+  {
+    long expansions = 0;
+    while (heapSize > 0)
+    {
+      double startKey1 = Math.min(g[start], rhs[start]) + km;
+      double startKey2 = Math.min(g[start], rhs[start]);
+      int top = heap[0];
+      if (!(less(key1[top], key2[top], startKey1, startKey2) || rhs[start] != g[start]))
+      {
+        break;
+      }
+      if (++expansions % CLOCK_INTERVAL == 0 && System.nanoTime() > deadline)
+      {
+        return -expansions;
+      }
+      double oldKey1 = key1[top];
+      double oldKey2 = key2[top];
+      computeKey(top);
+      if (less(oldKey1, oldKey2, key1[top], key2[top]))
+      {
+        siftDown(0);
+        continue;
+      }
+      remove(top);
+      int count;
+      if (g[top] > rhs[top])
+      {
+        g[top] = rhs[top];
+        count = neighbours(top, true);
+      } else
+      {
+        g[top] = Double.POSITIVE_INFINITY;
+        updateVertex(top);
+        count = neighbours(top, true);
+      }
+      // neighbours is overwritten by updateVertex, copy before walking the predecessors.
+      System.arraycopy(neighbours, 0, predecessors, 0, count);
+      for (int i = 0; i < count; i++)
+      {
+        updateVertex(predecessors[i]);
+      }
+    }
+    return expansions;
+  }
+
+  /**
+   * Follow the cheapest moves from the start to the goal, shorten the cell path by line of sight and turn it into
+   * PathPlanner bezier points.
+   */
+  private void publish(Translation2d startPosition, Translation2d goalPosition)
+  {
+    if (Double.isInfinite(g[start]))
+    {
+      bezierPoints = null;
+      newPathAvailable = true;
+      return;
+    }
+    List<Integer> cells = new ArrayList<>();
+    int cell = start;
+    cells.add(cell);
+    while (cell != goal && cells.size() < g.length)
+    {
+      int count = neighbours(cell, true);
+      int next = -1;
+      double best = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < count; i++)
+      {
+        double cost = costs[i] + g[neighbours[i]];
+        if (cost < best)
+        {
+          best = cost;
+          next = neighbours[i];
+        }
+      }
+      if (next < 0)
+      {
+        break;
+      }
+      cell = next;
+      cells.add(cell);
+    }
+
+    // String pulling, keep only the cells where the line of sight breaks.
+    List<Translation2d> waypoints = new ArrayList<>();
+    waypoints.add(startPosition);
+    int anchor = 0;
+    for (int i = 2; i < cells.size(); i++)
+    {
+      if (!lineOfSight(cells.get(anchor), cells.get(i)))
+      {
+        anchor = i - 1;
+        waypoints.add(new Translation2d(staticGrid.centerX(cells.get(anchor)), staticGrid.centerY(cells.get(anchor))));
+      }
+    }
+    waypoints.add(goalPosition);
+    bezierPoints = Collections.unmodifiableList(toBezier(waypoints));
+    newPathAvailable = true;
+  }
+
+  /**
+   * Anchors at the ends and at the middle of every interior segment, with each corner rounded by a curve between the
+   * two neighbouring midpoints. A corner that would clip an obstacle when rounded is kept sharp instead.
+   */
+  private List<Translation2d> toBezier(List<Translation2d> waypoints)
+  {
+    List<Translation2d> points = new ArrayList<>();
+    int n = waypoints.size();
+    Translation2d first = waypoints.get(0);
+    Translation2d second = waypoints.get(1);
+    if (n == 2)
+    {
+      points.add(first);
+      points.add(first.interpolate(second, 1.0 / 3));
+      points.add(first.interpolate(second, 2.0 / 3));
+      points.add(second);
+      return points;
+    }
+    points.add(first);
+    Translation2d anchor = first.interpolate(second, 0.5);
+    points.add(first.interpolate(anchor, 1.0 / 3));
+    points.add(first.interpolate(anchor, 2.0 / 3));
+    points.add(anchor);
+    for (int i = 1; i < n - 1; i++)
+    {
+      Translation2d corner = waypoints.get(i);
+      Translation2d next = waypoints.get(i + 1);
+      Translation2d nextAnchor = i == n - 2 ? next : corner.interpolate(next, 0.5);
+      Translation2d control1 = anchor.interpolate(corner, 2.0 / 3);
+      Translation2d control2 = i == n - 2 ? corner.interpolate(next, 2.0 / 3) : nextAnchor.interpolate(corner, 2.0 / 3);
+      if (curveClear(anchor, control1, control2, nextAnchor))
+      {
+        points.add(control1);
+        points.add(control2);
+      } else
+      {
+        // Sharp corner: straight into the corner, then straight out of it.
+        points.add(anchor.interpolate(corner, 1.0 / 3));
+        points.add(anchor.interpolate(corner, 2.0 / 3));
+        points.add(corner);
+        points.add(corner.interpolate(nextAnchor, 1.0 / 3));
+        points.add(corner.interpolate(nextAnchor, 2.0 / 3));
+      }
+      points.add(nextAnchor);
+      anchor = nextAnchor;
+    }
+    return points;
+  }
+
+  private boolean curveClear(Translation2d p0, Translation2d p1, Translation2d p2, Translation2d p3)
+  {
+    for (int i = 1; i < CORNER_SAMPLES; i++)
+    {
+      double t = (double) i / CORNER_SAMPLES;
+      double u = 1 - t;
+      double x = u * u * u * p0.getX() + 3 * u * u * t * p1.getX() + 3 * u * t * t * p2.getX() + t * t * t * p3.getX();
+      double y = u * u * u * p0.getY() + 3 * u * u * t * p1.getY() + 3 * u * t * t * p2.getY() + t * t * t * p3.getY();
+      if (blocked(staticGrid.index(staticGrid.column(x), staticGrid.row(y))))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the straight line between two cell centers crosses only free cells, counting every cell the line touches.
+   */
+  private boolean lineOfSight(int from, int to)
+  {
+    int x0 = from % columns;
+    int y0 = from / columns;
+    int x1 = to % columns;
+    int y1 = to / columns;
+    int dx = Math.abs(x1 - x0);
+    int dy = Math.abs(y1 - y0);
+    int sx = Integer.signum(x1 - x0);
+    int sy = Integer.signum(y1 - y0);
+    int x = x0;
+    int y = y0;
+    // Walk the cells in order of where the line crosses their boundaries, scaled by 2 to stay in integers.
+    int error = dx - dy;
+    for (int steps = dx + dy; steps > 0; steps--)
+    {
+      int e2 = 2 * error;
+      if (e2 > 0)
+      {
+        x += sx;
+        error -= 2 * dy;
+      } else if (e2 < 0)
+      {
+        y += sy;
+        error += 2 * dx;
+      } else
+      {
+        // Through a corner exactly, both side cells are touched.
+        if (blocked(y * columns + x + sx) || blocked((y + sy) * columns + x))
+        {
+          return false;
+        }
+        x += sx;
+        y += sy;
+        error += 2 * (dx - dy);
+        steps--;
+      }
+      if (blocked(y * columns + x))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int nearestFree(int cell)
+  {
+    if (!blocked(cell))
+    {
+      return cell;
+    }
+    int x = cell % columns;
+    int y = cell / columns;
+    for (int radius = 1; radius < Math.max(columns, rows); radius++)
+    {
+      int best = -1;
+      double bestDistance = Double.POSITIVE_INFINITY;
+      for (int ny = Math.max(0, y - radius); ny <= Math.min(rows - 1, y + radius); ny++)
+      {
+        for (int nx = Math.max(0, x - radius); nx <= Math.min(columns - 1, x + radius); nx++)
+        {
+          int candidate = ny * columns + nx;
+          double distance = Math.hypot(nx - x, ny - y);
+          if (!blocked(candidate) && distance < bestDistance)
+          {
+            best = candidate;
+            bestDistance = distance;
+          }
+        }
+      }
+      if (best >= 0)
+      {
+        return best;
+      }
+    }
+    return -1;
+  }
+
+  // Binary heap of cells ordered by their two part key, with the position of each cell for removal.
+
+  private void computeKey(int cell)
+  {
+    double min = Math.min(g[cell], rhs[cell]);
+    key1[cell] = min + heuristic(start, cell) + km;
+    key2[cell] = min;
+  }
+
+  private static boolean less(double a1, double a2, double b1, double b2)
+  {
+    return a1 < b1 || (a1 == b1 && a2 < b2);
+  }
+
+  private boolean less(int a, int b)
+  {
+    return less(key1[a], key2[a], key1[b], key2[b]);
+  }
+
+  private void push(int cell)
+  {
+    computeKey(cell);
+    heap[heapSize] = cell;
+    heapIndex[cell] = heapSize;
+    heapSize++;
+    siftUp(heapSize - 1);
+  }
+
+  private void remove(int cell)
+  {
+    int index = heapIndex[cell];
+    heapIndex[cell] = -1;
+    heapSize--;
+    if (index == heapSize)
+    {
+      return;
+    }
+    int last = heap[heapSize];
+    heap[index] = last;
+    heapIndex[last] = index;
+    siftUp(index);
+    siftDown(heapIndex[last]);
+  }
+
+  private void siftUp(int index)
+  {
+    int cell = heap[index];
+    while (index > 0)
+    {
+      int parent = (index - 1) >> 1;
+      if (!less(cell, heap[parent]))
+      {
+        break;
+      }
+      heap[index] = heap[parent];
+      heapIndex[heap[index]] = index;
+      index = parent;
+    }
+    heap[index] = cell;
+    heapIndex[cell] = index;
+  }
+
+  private void siftDown(int index)
+  {
+    int cell = heap[index];
+    while (true)
+    {
+      int child = 2 * index + 1;
+      if (child >= heapSize)
+      {
+        break;
+      }
+      if (child + 1 < heapSize && less(heap[child + 1], heap[child]))
+      {
+        child++;
+      }
+      if (!less(heap[child], cell))
+      {
+        break;
+      }
+      heap[index] = heap[child];
+      heapIndex[heap[index]] = index;
+      index = child;
+    }
+    heap[index] = cell;
+    heapIndex[cell] = index;
+  }
+}
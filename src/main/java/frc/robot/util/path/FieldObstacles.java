@@ -0,0 +1,510 @@
+package frc.robot.util.path;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Convex field obstacles indexed by a uniform grid, with collision queries for the robot's rectangular footprint. A
+ * query only tests the obstacles registered in the grid cells under the footprint's bounding box, using the separating
+ * axis theorem, and allocates nothing, so a pose check takes a few microseconds. Moves between two poses are checked
+ * against the convex hull of the footprints at both ends, split into steps small enough that the rotation in between
+ * stays inside a small margin.
+ *
+ * <p>Obstacles are loaded from deploy/fieldobstacles.json, a list of named convex polygons in blue origin field
+ * coordinates. Obstacles marked {@code "mirror": true} are added a second time mirrored to the red half of the field.
+ */
+public class FieldObstacles
+{
+
+  /**
+   * Query result when the footprint is clear.
+   */
+  public static final int     FREE              = -1;
+  /**
+   * Query result when the footprint leaves the field.
+   */
+  public static final int     FIELD_BOUNDARY    = -2;
+  /**
+   * Largest heading change checked in one swept step.
+   */
+  private static final double MAX_STEP_ROTATION = 0.1;
+  /**
+   * Distance between candidate poses when pulling an unsafe goal back toward the robot.
+   */
+  private static final double CLAMP_STEP        = 0.05;
+  /**
+   * Overlap allowed before a contact counts as a collision, for bumpers pushed against the subwoofer or a wall and for
+   * the tolerance of the obstacle drawings.
+   */
+  private static final double CONTACT_TOLERANCE = 0.02;
+
+  private final double   fieldLength, fieldWidth, cellSize;
+  private final String[] names;
+  // Polygon vertices, flattened, with each polygon's first vertex and count.
+  private final double[] vertexX, vertexY;
+  private final int[]    start, count;
+  private final double[] minX, minY, maxX, maxY;
+  // Grid cells in compressed rows: the obstacles of cell c are cellItems[cellStart[c] .. cellStart[c + 1]).
+  private final int      columns, rows;
+  private final int[]    cellStart, cellItems;
+
+  // Query scratch, so queries do not allocate. Queries are not thread safe.
+  private final int[]    stamp;
+  private       int      query;
+  private final double[] footprintX = new double[8], footprintY = new double[8];
+  private final double[] hullX      = new double[16], hullY = new double[16];
+  private final int[]    order      = new int[8];
+  private       int      hullCount;
+  private       double   halfLength, halfWidth;
+
+  /**
+   * Build the index.
+   *
+   * @param fieldLength Field length along x in meters.
+   * @param fieldWidth  Field width along y in meters.
+   * @param cellSize    Grid cell size in meters, around the size of the robot works well.
+   * @param names       Obstacle names, for reporting.
+   * @param polygons    Convex obstacles as {x0, y0, x1, y1, ...} in either winding order.
+   */
+  public FieldObstacles(double fieldLength, double fieldWidth, double cellSize, List<String> names,
+                        List<double[]> polygons)
+  {
+    this.fieldLength = fieldLength;
+    this.fieldWidth = fieldWidth;
+    this.cellSize = cellSize;
+    this.names = names.toArray(new String[0]);
+    int n = polygons.size();
+    start = new int[n];
+    count = new int[n];
+    minX = new double[n];
+    minY = new double[n];
+    maxX = new double[n];
+    maxY = new double[n];
+    stamp = new int[n];
+    int vertices = 0;
+    for (double[] polygon : polygons)
+    {
+      vertices += polygon.length / 2;
+    }
+    vertexX = new double[vertices];
+    vertexY = new double[vertices];
+    int v = 0;
+    for (int i = 0; i < n; i++)
+    {
+      double[] polygon = polygons.get(i);
+      start[i] = v;
+      count[i] = polygon.length / 2;
+      minX[i] = minY[i] = Double.POSITIVE_INFINITY;
+      maxX[i] = maxY[i] = Double.NEGATIVE_INFINITY;
+      for (int k = 0; k < count[i]; k++, v++)
+      {
+        vertexX[v] = polygon[2 * k];
+        vertexY[v] = polygon[2 * k + 1];
+        minX[i] = Math.min(minX[i], vertexX[v]);
+        minY[i] = Math.min(minY[i], vertexY[v]);
+        maxX[i] = Math.max(maxX[i], vertexX[v]);
+        maxY[i] = Math.max(maxY[i], vertexY[v]);
+      }
+    }
+
+    columns = (int) Math.ceil(fieldLength / cellSize);
+    rows = (int) Math.ceil(fieldWidth / cellSize);
+    cellStart = new int[columns * rows + 1];
+    // Count the obstacles per cell, turn the counts into offsets, then fill.
+    for (int i = 0; i < n; i++)
+    {
+      for (int row = row(minY[i]); row <= row(maxY[i]); row++)
+      {
+        for (int column = column(minX[i]); column <= column(maxX[i]); column++)
+        {
+          cellStart[row * columns + column + 1]++;
+        }
+      }
+    }
+    for (int c = 0; c < columns * rows; c++)
+    {
+      cellStart[c + 1] += cellStart[c];
+    }
+    cellItems = new int[cellStart[columns * rows]];
+    int[] fill = Arrays.copyOf(cellStart, columns * rows);
+    for (int i = 0; i < n; i++)
+    {
+      for (int row = row(minY[i]); row <= row(maxY[i]); row++)
+      {
+        for (int column = column(minX[i]); column <= column(maxX[i]); column++)
+        {
+          cellItems[fill[row * columns + column]++] = i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Load deploy/fieldobstacles.json.
+   *
+   * @param file The obstacle file.
+   * @return The indexed obstacles.
+   * @throws IOException If the file cannot be read or is malformed.
+   */
+  public static FieldObstacles load(File file) throws IOException
+  {
+    JsonNode json = new ObjectMapper().readTree(file);
+    double length = json.get("fieldLength").asDouble();
+    double width = json.get("fieldWidth").asDouble();
+    List<String> names = new ArrayList<>();
+    List<double[]> polygons = new ArrayList<>();
+    for (JsonNode obstacle : json.get("obstacles"))
+    {
+      JsonNode vertices = obstacle.get("vertices");
+      if (vertices == null || vertices.size() < 3)
+      {
+        throw new IOException(file + ": obstacle " + obstacle.path("name").asText() + " needs at least 3 vertices");
+      }
+      double[] polygon = new double[2 * vertices.size()];
+      double[] mirrored = new double[polygon.length];
+      for (int k = 0; k < vertices.size(); k++)
+      {
+        polygon[2 * k] = vertices.get(k).get(0).asDouble();
+        polygon[2 * k + 1] = vertices.get(k).get(1).asDouble();
+        mirrored[2 * k] = length - polygon[2 * k];
+        mirrored[2 * k + 1] = polygon[2 * k + 1];
+      }
+      String name = obstacle.path("name").asText("obstacle " + names.size());
+      names.add(name);
+      polygons.add(polygon);
+      if (obstacle.path("mirror").asBoolean())
+      {
+        names.add(name + " (mirrored)");
+        polygons.add(mirrored);
+      }
+    }
+    return new FieldObstacles(length, width, json.path("cellSize").asDouble(1.0), names, polygons);
+  }
+
+  /**
+   * Set the robot footprint, a rectangle centered on the robot.
+   *
+   * @param halfLength Half the length along the robot's x axis in meters, bumpers included.
+   * @param halfWidth  Half the width along the robot's y axis in meters, bumpers included.
+   */
+  public void setFootprint(double halfLength, double halfWidth)
+  {
+    this.halfLength = halfLength;
+    this.halfWidth = halfWidth;
+  }
+
+  /**
+   * @return Number of obstacles.
+   */
+  public int size()
+  {
+    return names.length;
+  }
+
+  /**
+   * @param result A query result.
+   * @return What the result collided with.
+   */
+  public String describe(int result)
+  {
+    return result == FREE ? "nothing" : result == FIELD_BOUNDARY ? "the field boundary" : names[result];
+  }
+
+  /**
+   * Check the footprint at one pose.
+   *
+   * @param x       Robot x in meters.
+   * @param y       Robot y in meters.
+   * @param heading Robot heading in radians.
+   * @return {@link #FREE}, {@link #FIELD_BOUNDARY} or the index of an obstacle the footprint overlaps.
+   */
+  public int check(double x, double y, double heading)
+  {
+    corners(x, y, heading, 0);
+    System.arraycopy(footprintX, 0, hullX, 0, 4);
+    System.arraycopy(footprintY, 0, hullY, 0, 4);
+    hullCount = 4;
+    return checkHull(0);
+  }
+
+  /**
+   * Check the area swept by the footprint moving in a straight line between two poses while turning the short way.
+   *
+   * @param x0       Start x in meters.
+   * @param y0       Start y in meters.
+   * @param heading0 Start heading in radians.
+   * @param x1       End x in meters.
+   * @param y1       End y in meters.
+   * @param heading1 End heading in radians.
+   * @return {@link #FREE}, {@link #FIELD_BOUNDARY} or the index of an obstacle the swept footprint overlaps.
+   */
+  public int checkSweep(double x0, double y0, double heading0, double x1, double y1, double heading1)
+  {
+    double turn = Math.IEEEremainder(heading1 - heading0, 2 * Math.PI);
+    int steps = Math.max(1, (int) Math.ceil(Math.abs(turn) / MAX_STEP_ROTATION));
+    double step = turn / steps;
+    // Between the two ends of a step a corner strays from the straight line by at most this much.
+    double margin = Math.hypot(halfLength, halfWidth) * (1 - Math.cos(step / 2));
+    for (int s = 0; s < steps; s++)
+    {
+      double a = (double) s / steps;
+      double b = (double) (s + 1) / steps;
+      corners(x0 + (x1 - x0) * a, y0 + (y1 - y0) * a, heading0 + step * s, 0);
+      corners(x0 + (x1 - x0) * b, y0 + (y1 - y0) * b, heading0 + step * (s + 1), 4);
+      buildHull();
+      int result = checkHull(margin);
+      if (result != FREE)
+      {
+        return result;
+      }
+    }
+    return FREE;
+  }
+
+  /**
+   * Check a sampled path by sweeping the footprint between consecutive samples.
+   *
+   * @param x       Sample x in meters.
+   * @param y       Sample y in meters.
+   * @param heading Sample heading in radians.
+   * @param samples Number of samples to check.
+   * @return Index of the first sample starting an unsafe move, or -1 if the path is clear.
+   */
+  public int firstCollision(double[] x, double[] y, double[] heading, int samples)
+  {
+    if (samples == 1)
+    {
+      return check(x[0], y[0], heading[0]) == FREE ? -1 : 0;
+    }
+    for (int i = 0; i + 1 < samples; i++)
+    {
+      if (checkSweep(x[i], y[i], heading[i], x[i + 1], y[i + 1], heading[i + 1]) != FREE)
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Block every cell of a pathfinding grid whose center the robot cannot drive over with its footprint at either axis
+   * aligned heading. This grows the obstacles and the field boundary by the footprint, for a planner that treats the
+   * robot as a point. Set the footprint first.
+   *
+   * @param grid Grid to fill, cells already blocked stay blocked.
+   */
+  public void fill(OccupancyGrid grid)
+  {
+    for (int cell = 0; cell < grid.size(); cell++)
+    {
+      double x = grid.centerX(cell);
+      double y = grid.centerY(cell);
+      if (check(x, y, 0) != FREE || check(x, y, Math.PI / 2) != FREE)
+      {
+        grid.set(cell, true);
+      }
+    }
+  }
+
+  /**
+   * Find the closest safe pose to a goal, first by moving it inside the field and then by pulling it back in a straight
+   * line toward a reference point such as the robot's position.
+   *
+   * @param x       Goal x in meters.
+   * @param y       Goal y in meters.
+   * @param heading Goal heading in radians, kept unchanged.
+   * @param towardX Reference x in meters.
+   * @param towardY Reference y in meters.
+   * @param out     Output of length 2 for the safe x and y.
+   * @return Whether a safe pose was found.
+   */
+  public boolean clampGoal(double x, double y, double heading, double towardX, double towardY, double[] out)
+  {
+    double reach = Math.hypot(halfLength, halfWidth);
+    x = Math.max(reach, Math.min(fieldLength - reach, x));
+    y = Math.max(reach, Math.min(fieldWidth - reach, y));
+    double distance = Math.hypot(towardX - x, towardY - y);
+    int steps = (int) Math.ceil(distance / CLAMP_STEP);
+    for (int s = 0; s <= steps; s++)
+    {
+      double t = steps == 0 ? 0 : (double) s / steps;
+      double candidateX = x + (towardX - x) * t;
+      double candidateY = y + (towardY - y) * t;
+      if (check(candidateX, candidateY, heading) == FREE)
+      {
+        out[0] = candidateX;
+        out[1] = candidateY;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Fill four footprint corners counter clockwise starting at an offset in the footprint scratch arrays.
+   */
+  private void corners(double x, double y, double heading, int offset)
+  {
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    for (int k = 0; k < 4; k++)
+    {
+      double cx = k == 0 || k == 3 ? halfLength : -halfLength;
+      double cy = k < 2 ? halfWidth : -halfWidth;
+      footprintX[offset + k] = x + cx * cos - cy * sin;
+      footprintY[offset + k] = y + cx * sin + cy * cos;
+    }
+  }
+
+  /**
+   * Convex hull of the eight footprint points by the monotone chain, counter clockwise into the hull scratch arrays.
+   */
+  private void buildHull()
+  {
+    for (int i = 0; i < 8; i++)
+    {
+      int j = i;
+      order[i] = i;
+      while (j > 0 && (footprintX[order[j - 1]] > footprintX[i]
+                       || footprintX[order[j - 1]] == footprintX[i] && footprintY[order[j - 1]] > footprintY[i]))
+      {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = i;
+    }
+    hullCount = 0;
+    for (int pass = 0; pass < 2; pass++)
+    {
+      int lower = hullCount;
+      for (int k = 0; k < 8; k++)
+      {
+        int p = order[pass == 0 ? k : 7 - k];
+        while (hullCount >= lower + 2 && cross(hullX[hullCount - 2], hullY[hullCount - 2], hullX[hullCount - 1],
+                                               hullY[hullCount - 1], footprintX[p], footprintY[p]) <= 0)
+        {
+          hullCount--;
+        }
+        hullX[hullCount] = footprintX[p];
+        hullY[hullCount] = footprintY[p];
+        hullCount++;
+      }
+      // The last point of each chain is the first point of the other.
+      hullCount--;
+    }
+  }
+
+  private static double cross(double ox, double oy, double ax, double ay, double bx, double by)
+  {
+    return (ax - ox) * (by - oy) - (ay - oy) * (bx - ox);
+  }
+
+  /**
+   * Check the hull in the scratch arrays against the field boundary and the obstacles in the cells it covers.
+   */
+  private int checkHull(double margin)
+  {
+    double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+    double highX = Double.NEGATIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+    for (int k = 0; k < hullCount; k++)
+    {
+      lowX = Math.min(lowX, hullX[k]);
+      lowY = Math.min(lowY, hullY[k]);
+      highX = Math.max(highX, hullX[k]);
+      highY = Math.max(highY, hullY[k]);
+    }
+    double limit = margin - CONTACT_TOLERANCE;
+    if (lowX < limit || lowY < limit || highX > fieldLength - limit || highY > fieldWidth - limit)
+    {
+      return FIELD_BOUNDARY;
+    }
+
+    query++;
+    for (int row = row(lowY - margin); row <= row(highY + margin); row++)
+    {
+      for (int column = column(lowX - margin); column <= column(highX + margin); column++)
+      {
+        int cell = row * columns + column;
+        for (int item = cellStart[cell]; item < cellStart[cell + 1]; item++)
+        {
+          int obstacle = cellItems[item];
+          if (stamp[obstacle] == query)
+          {
+            continue;
+          }
+          stamp[obstacle] = query;
+          if (maxX[obstacle] + margin < lowX || minX[obstacle] - margin > highX
+              || maxY[obstacle] + margin < lowY || minY[obstacle] - margin > highY)
+          {
+            continue;
+          }
+          if (overlaps(obstacle, margin))
+          {
+            return obstacle;
+          }
+        }
+      }
+    }
+    return FREE;
+  }
+
+  /**
+   * Separating axis test between the hull and an obstacle, with the hull grown by a margin.
+   */
+  private boolean overlaps(int obstacle, double margin)
+  {
+    return !separatedAlongEdges(hullX, hullY, 0, hullCount, obstacle, margin)
+           && !separatedAlongEdges(vertexX, vertexY, start[obstacle], count[obstacle], obstacle, margin);
+  }
+
+  private boolean separatedAlongEdges(double[] xs, double[] ys, int first, int n, int obstacle, double margin)
+  {
+    for (int k = 0; k < n; k++)
+    {
+      int next = first + (k + 1) % n;
+      double axisX = ys[next] - ys[first + k];
+      double axisY = xs[first + k] - xs[next];
+      double norm = Math.hypot(axisX, axisY);
+      if (norm == 0)
+      {
+        continue;
+      }
+      axisX /= norm;
+      axisY /= norm;
+      double hullMin = Double.POSITIVE_INFINITY, hullMax = Double.NEGATIVE_INFINITY;
+      for (int h = 0; h < hullCount; h++)
+      {
+        double p = hullX[h] * axisX + hullY[h] * axisY;
+        hullMin = Math.min(hullMin, p);
+        hullMax = Math.max(hullMax, p);
+      }
+      double obstacleMin = Double.POSITIVE_INFINITY, obstacleMax = Double.NEGATIVE_INFINITY;
+      for (int v = start[obstacle]; v < start[obstacle] + count[obstacle]; v++)
+      {
+        double p = vertexX[v] * axisX + vertexY[v] * axisY;
+        obstacleMin = Math.min(obstacleMin, p);
+        obstacleMax = Math.max(obstacleMax, p);
+      }
+      if (obstacleMin - hullMax > margin - CONTACT_TOLERANCE || hullMin - obstacleMax > margin - CONTACT_TOLERANCE)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int column(double x)
+  {
+    return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+  }
+
+  private int row(double y)
+  {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+  }
+}
@@ -0,0 +1,253 @@
+package frc.robot.util.path;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Field occupancy grid packed one bit per cell into longs, so a whole 2024 field at 0.2 m fits in under 500 bytes and
+ * two grids can be compared 64 cells at a time. Cells are indexed row major with x along the columns.
+ */
+public class OccupancyGrid
+{
+
+  private final double nodeSize;
+  private final int    columns, rows;
+  private final long[] words;
+
+  /**
+   * Create an empty grid.
+   *
+   * @param fieldLength Field length along x in meters.
+   * @param fieldWidth  Field width along y in meters.
+   * @param nodeSize    Cell size in meters.
+   */
+  public OccupancyGrid(double fieldLength, double fieldWidth, double nodeSize)
+  {
+    this((int) Math.ceil(fieldLength / nodeSize), (int) Math.ceil(fieldWidth / nodeSize), nodeSize);
+  }
+
+  private OccupancyGrid(int columns, int rows, double nodeSize)
+  {
+    this.nodeSize = nodeSize;
+    this.columns = columns;
+    this.rows = rows;
+    words = new long[(columns * rows + 63) >>> 6];
+  }
+
+  /**
+   * Create an empty grid with the same size as another.
+   *
+   * @param other Grid to match.
+   */
+  public OccupancyGrid(OccupancyGrid other)
+  {
+    this(other.columns, other.rows, other.nodeSize);
+  }
+
+  /**
+   * Load a PathPlanner navgrid.json.
+   *
+   * @param file The navgrid file.
+   * @return The grid.
+   * @throws IOException If the file cannot be read or is malformed.
+   */
+  public static OccupancyGrid load(File file) throws IOException
+  {
+    JsonNode json = new ObjectMapper().readTree(file);
+    JsonNode grid = json.get("grid");
+    if (grid == null || grid.size() == 0)
+    {
+      throw new IOException(file + " has no grid");
+    }
+    OccupancyGrid occupancy = new OccupancyGrid(grid.get(0).size(), grid.size(),
+                                                json.get("nodeSizeMeters").asDouble());
+    for (int row = 0; row < occupancy.rows; row++)
+    {
+      for (int column = 0; column < occupancy.columns; column++)
+      {
+        occupancy.set(occupancy.index(column, row), grid.get(row).get(column).asBoolean());
+      }
+    }
+    return occupancy;
+  }
+
+  /**
+   * @return Number of columns, along x.
+   */
+  public int getColumns()
+  {
+    return columns;
+  }
+
+  /**
+   * @return Number of rows, along y.
+   */
+  public int getRows()
+  {
+    return rows;
+  }
+
+  /**
+   * @return Number of cells.
+   */
+  public int size()
+  {
+    return columns * rows;
+  }
+
+  /**
+   * @return Cell size in meters.
+   */
+  public double getNodeSize()
+  {
+    return nodeSize;
+  }
+
+  /**
+   * @param column Column.
+   * @param row    Row.
+   * @return Cell index.
+   */
+  public int index(int column, int row)
+  {
+    return row * columns + column;
+  }
+
+  /**
+   * @param x X in meters.
+   * @return Column containing x, clamped to the grid.
+   */
+  public int column(double x)
+  {
+    return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / nodeSize)));
+  }
+
+  /**
+   * @param y Y in meters.
+   * @return Row containing y, clamped to the grid.
+   */
+  public int row(double y)
+  {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / nodeSize)));
+  }
+
+  /**
+   * @param cell Cell index.
+   * @return X of the cell center in meters.
+   */
+  public double centerX(int cell)
+  {
+    return (cell % columns + 0.5) * nodeSize;
+  }
+
+  /**
+   * @param cell Cell index.
+   * @return Y of the cell center in meters.
+   */
+  public double centerY(int cell)
+  {
+    return (cell / columns + 0.5) * nodeSize;
+  }
+
+  /**
+   * @param cell Cell index.
+   * @return Whether the cell is blocked.
+   */
+  public boolean get(int cell)
+  {
+    return (words[cell >>> 6] & (1L << cell)) != 0;
+  }
+
+  /**
+   * @param cell    Cell index.
+   * @param blocked Whether the cell is blocked.
+   */
+  public void set(int cell, boolean blocked)
+  {
+    if (blocked)
+    {
+      words[cell >>> 6] |= 1L << cell;
+    } else
+    {
+      words[cell >>> 6] &= ~(1L << cell);
+    }
+  }
+
+  /**
+   * Clear every cell.
+   */
+  public void clear()
+  {
+    Arrays.fill(words, 0);
+  }
+
+  /**
+   * Block every cell overlapping an axis aligned box.
+   *
+   * @param x0 One corner x in meters.
+   * @param y0 One corner y in meters.
+   * @param x1 Opposite corner x in meters.
+   * @param y1 Opposite corner y in meters.
+   */
+  public void fillBox(double x0, double y0, double x1, double y1)
+  {
+    if (Math.max(x0, x1) < 0 || Math.min(x0, x1) >= columns * nodeSize
+        || Math.max(y0, y1) < 0 || Math.min(y0, y1) >= rows * nodeSize)
+    {
+      return;
+    }
+    int c0 = column(Math.min(x0, x1));
+    int c1 = column(Math.max(x0, x1));
+    int r0 = row(Math.min(y0, y1));
+    int r1 = row(Math.max(y0, y1));
+    for (int row = r0; row <= r1; row++)
+    {
+      for (int column = c0; column <= c1; column++)
+      {
+        set(index(column, row), true);
+      }
+    }
+  }
+
+  /**
+   * Word of the bitwise difference between this grid and another of the same size, for finding changed cells 64 at a
+   * time. Bit {@code b} of word {@code w} is cell {@code w * 64 + b}.
+   *
+   * @param other Grid to compare with.
+   * @param word  Word index.
+   * @return The changed bits.
+   */
+  public long changed(OccupancyGrid other, int word)
+  {
+    return words[word] ^ other.words[word];
+  }
+
+  /**
+   * @return Number of words in the packed representation.
+   */
+  public int wordCount()
+  {
+    return words.length;
+  }
+
+  /**
+   * Copy the cells of another grid of the same size.
+   *
+   * @param other Grid to copy.
+   */
+  public void copyFrom(OccupancyGrid other)
+  {
+    System.arraycopy(other.words, 0, words, 0, words.length);
+  }
+
+  /**
+   * @return Memory used by the cells in bytes.
+   */
+  public long getSizeBytes()
+  {
+    return (long) words.length * Long.BYTES;
+  }
+}
@@ -0,0 +1,291 @@
+package frc.robot.util.path;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A PathPlanner .path file sampled into primitive arrays. This reads the bezier waypoints, rotation targets and global
+ * constraints straight from the JSON without going through {@link com.pathplanner.lib.path.PathPlannerPath}, so it can
+ * be used by desktop tools and build tasks that do not load the HAL. Rotation targets are interpolated linearly along
+ * the waypoint relative position, which is close to, but not exactly, what the PathPlanner follower does.
+ */
+public class PathFile
+{
+
+  /**
+   * Bezier parameter step used when sampling each segment.
+   */
+  private static final double STEP = 0.01;
+
+  public final String   name;
+  /**
+   * Samples along the path: position, holonomic rotation in radians, arc length in meters, signed curvature in 1/m and
+   * the waypoint relative position of the sample.
+   */
+  public final double[] x, y, rotation, distance, curvature, waypointPosition;
+  public final double   maxVelocity, maxAcceleration, maxAngularVelocity, maxAngularAcceleration;
+  public final double   goalEndVelocity;
+
+  private PathFile(String name, List<double[]> samples, double maxVelocity, double maxAcceleration,
+                   double maxAngularVelocity, double maxAngularAcceleration, double goalEndVelocity)
+  {
+    this.name = name;
+    int n = samples.size();
+    x = new double[n];
+    y = new double[n];
+    rotation = new double[n];
+    distance = new double[n];
+    curvature = new double[n];
+    waypointPosition = new double[n];
+    for (int i = 0; i < n; i++)
+    {
+      double[] sample = samples.get(i);
+      x[i] = sample[0];
+      y[i] = sample[1];
+      rotation[i] = sample[2];
+      curvature[i] = sample[3];
+      waypointPosition[i] = sample[4];
+      distance[i] = i == 0 ? 0 : distance[i - 1] + Math.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+    }
+    this.maxVelocity = maxVelocity;
+    this.maxAcceleration = maxAcceleration;
+    this.maxAngularVelocity = maxAngularVelocity;
+    this.maxAngularAcceleration = maxAngularAcceleration;
+    this.goalEndVelocity = goalEndVelocity;
+  }
+
+  /**
+   * @return Number of samples.
+   */
+  public int size()
+  {
+    return x.length;
+  }
+
+  /**
+   * @return Total path length in meters.
+   */
+  public double length()
+  {
+    return distance[distance.length - 1];
+  }
+
+  /**
+   * Load every .path file in a directory.
+   *
+   * @param directory Directory holding the path files, usually deploy/pathplanner/paths.
+   * @return The loaded paths, empty if the directory does not exist.
+   * @throws IOException If a file cannot be read.
+   */
+  public static List<PathFile> loadAll(File directory) throws IOException
+  {
+    List<PathFile> paths = new ArrayList<>();
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".path"));
+    if (files == null)
+    {
+      return paths;
+    }
+    for (File file : files)
+    {
+      paths.add(load(file));
+    }
+    return paths;
+  }
+
+  /**
+   * Load a PathPlanner .path file.
+   *
+   * @param file The file.
+   * @return The sampled path.
+   * @throws IOException If the file cannot be read or is not a valid path.
+   */
+  public static PathFile load(File file) throws IOException
+  {
+    JsonNode json = new ObjectMapper().readTree(file);
+    JsonNode waypoints = json.get("waypoints");
+    if (waypoints == null || waypoints.size() < 2)
+    {
+      throw new IOException(file + " needs at least two waypoints");
+    }
+    int count = waypoints.size();
+    double[][] anchors = new double[count][];
+    double[][] prevControls = new double[count][];
+    double[][] nextControls = new double[count][];
+    for (int i = 0; i < count; i++)
+    {
+      JsonNode waypoint = waypoints.get(i);
+      anchors[i] = point(waypoint.get("anchor"));
+      prevControls[i] = point(waypoint.get("prevControl"));
+      nextControls[i] = point(waypoint.get("nextControl"));
+    }
+
+    // Rotation targets keyed by waypoint relative position, with the start and goal rotations at the ends.
+    List<double[]> rotations = new ArrayList<>();
+    JsonNode start = json.get("previewStartingState");
+    double startRotation = start != null && !start.isNull() ? Math.toRadians(start.get("rotation").asDouble()) : 0;
+    rotations.add(new double[]{0, startRotation});
+    JsonNode targets = json.get("rotationTargets");
+    if (targets != null)
+    {
+      for (JsonNode target : targets)
+      {
+        rotations.add(new double[]{target.get("waypointRelativePos").asDouble(),
+                                   Math.toRadians(target.get("rotationDegrees").asDouble())});
+      }
+    }
+    JsonNode goal = json.get("goalEndState");
+    rotations.add(new double[]{count - 1, Math.toRadians(goal.get("rotation").asDouble())});
+    rotations.sort((a, b) -> Double.compare(a[0], b[0]));
+
+    JsonNode constraints = json.get("globalConstraints");
+    String name = file.getName().replace(".path", "");
+    return sample(name, anchors, prevControls, nextControls, rotations,
+                  constraints.get("maxVelocity").asDouble(),
+                  constraints.get("maxAcceleration").asDouble(),
+                  Math.toRadians(constraints.get("maxAngularVelocity").asDouble()),
+                  Math.toRadians(constraints.get("maxAngularAcceleration").asDouble()),
+                  goal.get("velocity").asDouble());
+  }
+
+  /**
+   * Build a path through the given points with straight line control points, for scripted scenarios.
+   *
+   * @param name            Name of the path.
+   * @param points          Anchor points as {x, y}.
+   * @param startRotation   Holonomic rotation at the start in radians.
+   * @param endRotation     Holonomic rotation at the end in radians.
+   * @param maxVelocity     Maximum velocity in m/s.
+   * @param maxAcceleration Maximum acceleration in m/s^2.
+   * @return The sampled path.
+   */
+  public static PathFile fromPoints(String name, double[][] points, double startRotation, double endRotation,
+                                    double maxVelocity, double maxAcceleration)
+  {
+    int count = points.length;
+    double[][] prevControls = new double[count][];
+    double[][] nextControls = new double[count][];
+    for (int i = 0; i < count; i++)
+    {
+      // Control points a third of the way towards the neighbours, averaged through each interior anchor.
+      double[] before = points[Math.max(i - 1, 0)];
+      double[] after = points[Math.min(i + 1, count - 1)];
+      double tx = (after[0] - before[0]) / 6.0;
+      double ty = (after[1] - before[1]) / 6.0;
+      prevControls[i] = new double[]{points[i][0] - tx, points[i][1] - ty};
+      nextControls[i] = new double[]{points[i][0] + tx, points[i][1] + ty};
+    }
+    List<double[]> rotations = new ArrayList<>();
+    rotations.add(new double[]{0, startRotation});
+    rotations.add(new double[]{count - 1, endRotation});
+    return sample(name, points, prevControls, nextControls, rotations, maxVelocity, maxAcceleration,
+                  4 * Math.PI, 8 * Math.PI, 0);
+  }
+
+  private static double[] point(JsonNode node)
+  {
+    if (node == null || node.isNull())
+    {
+      return null;
+    }
+    return new double[]{node.get("x").asDouble(), node.get("y").asDouble()};
+  }
+
+  private static PathFile sample(String name, double[][] anchors, double[][] prevControls, double[][] nextControls,
+                                 List<double[]> rotations, double maxVelocity, double maxAcceleration,
+                                 double maxAngularVelocity, double maxAngularAcceleration, double goalEndVelocity)
+  {
+    List<double[]> samples = new ArrayList<>();
+    for (int segment = 0; segment < anchors.length - 1; segment++)
+    {
+      double[] p0 = anchors[segment];
+      double[] p1 = nextControls[segment] != null ? nextControls[segment] : p0;
+      double[] p3 = anchors[segment + 1];
+      double[] p2 = prevControls[segment + 1] != null ? prevControls[segment + 1] : p3;
+      int steps = (int) Math.round(1.0 / STEP);
+      for (int step = segment == 0 ? 0 : 1; step <= steps; step++)
+      {
+        double t = step * STEP;
+        double u = 1 - t;
+        double px = u * u * u * p0[0] + 3 * u * u * t * p1[0] + 3 * u * t * t * p2[0] + t * t * t * p3[0];
+        double py = u * u * u * p0[1] + 3 * u * u * t * p1[1] + 3 * u * t * t * p2[1] + t * t * t * p3[1];
+        double dx = 3 * u * u * (p1[0] - p0[0]) + 6 * u * t * (p2[0] - p1[0]) + 3 * t * t * (p3[0] - p2[0]);
+        double dy = 3 * u * u * (p1[1] - p0[1]) + 6 * u * t * (p2[1] - p1[1]) + 3 * t * t * (p3[1] - p2[1]);
+        double ddx = 6 * u * (p2[0] - 2 * p1[0] + p0[0]) + 6 * t * (p3[0] - 2 * p2[0] + p1[0]);
+        double ddy = 6 * u * (p2[1] - 2 * p1[1] + p0[1]) + 6 * t * (p3[1] - 2 * p2[1] + p1[1]);
+        double speed = Math.hypot(dx, dy);
+        double kappa = speed < 1e-9 ? 0 : (dx * ddy - dy * ddx) / (speed * speed * speed);
+        double position = segment + t;
+        samples.add(new double[]{px, py, interpolateRotation(rotations, position), kappa, position});
+      }
+    }
+    return new PathFile(name, samples, maxVelocity, maxAcceleration, maxAngularVelocity, maxAngularAcceleration,
+                        goalEndVelocity);
+  }
+
+  private static double interpolateRotation(List<double[]> rotations, double position)
+  {
+    for (int i = 1; i < rotations.size(); i++)
+    {
+      double[] lo = rotations.get(i - 1);
+      double[] hi = rotations.get(i);
+      if (position <= hi[0])
+      {
+        double span = hi[0] - lo[0];
+        double t = span <= 0 ? 1 : (position - lo[0]) / span;
+        double delta = Math.atan2(Math.sin(hi[1] - lo[1]), Math.cos(hi[1] - lo[1]));
+        return lo[1] + delta * t;
+      }
+    }
+    return rotations.get(rotations.size() - 1)[1];
+  }
+
+  /**
+   * Time parameterise the path with a velocity profile limited by the maximum velocity and acceleration, and by an
+   * optional lateral acceleration limit on curves. The robot starts at rest and ends at the goal end velocity.
+   *
+   * @param maxVelocity     Maximum velocity in m/s.
+   * @param maxAcceleration Maximum acceleration in m/s^2.
+   * @param maxLateralAccel Maximum centripetal acceleration in m/s^2, infinity to ignore curvature.
+   * @param velocities      Output velocity at each sample in m/s.
+   * @param times           Output time of each sample in seconds.
+   */
+  public void profile(double maxVelocity, double maxAcceleration, double maxLateralAccel, double[] velocities,
+                      double[] times)
+  {
+    int n = size();
+    for (int i = 0; i < n; i++)
+    {
+      double limit = maxVelocity;
+      if (Math.abs(curvature[i]) > 1e-9)
+      {
+        limit = Math.min(limit, Math.sqrt(maxLateralAccel / Math.abs(curvature[i])));
+      }
+      velocities[i] = limit;
+    }
+    velocities[0] = 0;
+    velocities[n - 1] = Math.min(velocities[n - 1], goalEndVelocity);
+    for (int i = 1; i < n; i++)
+    {
+      double ds = distance[i] - distance[i - 1];
+      velocities[i] = Math.min(velocities[i],
+                               Math.sqrt(velocities[i - 1] * velocities[i - 1] + 2 * maxAcceleration * ds));
+    }
+    for (int i = n - 2; i >= 0; i--)
+    {
+      double ds = distance[i + 1] - distance[i];
+      velocities[i] = Math.min(velocities[i],
+                               Math.sqrt(velocities[i + 1] * velocities[i + 1] + 2 * maxAcceleration * ds));
+    }
+    times[0] = 0;
+    for (int i = 1; i < n; i++)
+    {
+      double ds = distance[i] - distance[i - 1];
+      double average = (velocities[i] + velocities[i - 1]) / 2;
+      times[i] = times[i - 1] + (average > 1e-9 ? ds / average : 0);
+    }
+  }
+}
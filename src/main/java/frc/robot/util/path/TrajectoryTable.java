@@ -0,0 +1,136 @@
+package frc.robot.util.path;
+
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.path.PathPlannerTrajectory.State;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.util.kinematics.FourModuleKinematics;
+
+/**
+ * A PathPlanner trajectory sampled once at a fixed time step into primitive arrays, one array per quantity. Following
+ * the trajectory is then an index computation and a few array reads each loop instead of a binary search and state
+ * object interpolation. Velocities are field relative, module states are the feedforward for the sampled chassis speeds.
+ */
+public class TrajectoryTable
+{
+
+  private static final int MODULES = FourModuleKinematics.MODULES;
+
+  public final String     name;
+  /**
+   * Time step between samples in seconds.
+   */
+  public final double     dt;
+  /**
+   * Samples: time in seconds, position in meters, holonomic heading in radians, field relative velocity in m/s and
+   * angular velocity in rad/s.
+   */
+  public final double[]   time, x, y, heading, vx, vy, omega;
+  /**
+   * Feedforward module speeds in m/s and angles in radians, indexed [module][sample] in swervedrive.json order.
+   */
+  public final double[][] moduleSpeeds, moduleAngles;
+
+  private TrajectoryTable(String name, double dt, int samples)
+  {
+    this.name = name;
+    this.dt = dt;
+    time = new double[samples];
+    x = new double[samples];
+    y = new double[samples];
+    heading = new double[samples];
+    vx = new double[samples];
+    vy = new double[samples];
+    omega = new double[samples];
+    moduleSpeeds = new double[MODULES][samples];
+    moduleAngles = new double[MODULES][samples];
+  }
+
+  /**
+   * Generate the trajectory of a path, starting at rest, and sample it.
+   *
+   * @param name       Name for reporting.
+   * @param path       The path.
+   * @param kinematics Kinematics used for the module feedforward. Its module headings are changed.
+   * @param dt         Time step in seconds.
+   * @return The table.
+   */
+  public static TrajectoryTable fromPath(String name, PathPlannerPath path, FourModuleKinematics kinematics, double dt)
+  {
+    PathPlannerTrajectory trajectory = path.getTrajectory(new ChassisSpeeds(),
+                                                          path.getPreviewStartingHolonomicPose().getRotation());
+    int samples = (int) Math.ceil(trajectory.getTotalTimeSeconds() / dt) + 1;
+    TrajectoryTable table = new TrajectoryTable(name, dt, samples);
+    for (int i = 0; i < samples; i++)
+    {
+      double t = Math.min(i * dt, trajectory.getTotalTimeSeconds());
+      State state = trajectory.sample(t);
+      table.time[i] = t;
+      table.x[i] = state.positionMeters.getX();
+      table.y[i] = state.positionMeters.getY();
+      table.heading[i] = state.targetHolonomicRotation.getRadians();
+      table.vx[i] = state.velocityMps * state.heading.getCos();
+      table.vy[i] = state.velocityMps * state.heading.getSin();
+    }
+
+    // Angular velocity from the sampled headings, central differences inside and one sided at the ends.
+    for (int i = 0; i < samples; i++)
+    {
+      int before = Math.max(i - 1, 0);
+      int after = Math.min(i + 1, samples - 1);
+      double span = table.time[after] - table.time[before];
+      table.omega[i] = span > 0 ? FourModuleKinematics.wrap(table.heading[after] - table.heading[before]) / span : 0;
+    }
+
+    double[] speeds = new double[MODULES];
+    double[] angles = new double[MODULES];
+    for (int i = 0; i < samples; i++)
+    {
+      double cos = Math.cos(table.heading[i]);
+      double sin = Math.sin(table.heading[i]);
+      kinematics.toModuleStates(table.vx[i] * cos + table.vy[i] * sin, -table.vx[i] * sin + table.vy[i] * cos,
+                                table.omega[i], speeds, angles);
+      for (int m = 0; m < MODULES; m++)
+      {
+        table.moduleSpeeds[m][i] = speeds[m];
+        table.moduleAngles[m][i] = angles[m];
+      }
+    }
+    return table;
+  }
+
+  /**
+   * @return Number of samples.
+   */
+  public int size()
+  {
+    return time.length;
+  }
+
+  /**
+   * @return Duration of the trajectory in seconds.
+   */
+  public double getTotalTime()
+  {
+    return time[time.length - 1];
+  }
+
+  /**
+   * Index of the sample at or before a time, clamped to the table.
+   *
+   * @param t Time since the start in seconds.
+   * @return The sample index.
+   */
+  public int indexAt(double t)
+  {
+    return Math.max(0, Math.min(time.length - 1, (int) (t / dt)));
+  }
+
+  /**
+   * @return Memory used by the sample arrays in bytes.
+   */
+  public long getSizeBytes()
+  {
+    return (7L + 2L * MODULES) * time.length * Double.BYTES;
+  }
+}
@@ -0,0 +1,321 @@
+package frc.robot.util.sim;
+
+import com.pathplanner.lib.util.PIDConstants;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.odometry.PrimitivePoseEstimator;
+import frc.robot.util.path.TrajectoryTable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Headless copy of the drivetrain loop for what-if evaluation: a {@link HeadlessSwerveSim} for the modules and chassis,
+ * a gyro reading the simulated heading plus an offset, a {@link PrimitivePoseEstimator} fed from them, and the
+ * trajectory table follower of {@link frc.robot.commands.FollowTrajectoryTable} with {@link SimPid} controllers. The
+ * routine being followed and its start time are the command state. All of it is a {@link SimState}, so a snapshot of
+ * the whole loop takes a few microseconds and can be restored or forked into independent continuations.
+ */
+public class HeadlessDrivetrain implements SimState
+{
+
+  private static final int      MODULES            = FourModuleKinematics.MODULES;
+  private static final double[] STATE_STD_DEVS     = {0.1, 0.1, 0.1};
+  private static final double[] VISION_STD_DEVS    = {0.9, 0.9, 0.9};
+  /**
+   * Distance and heading from the end of a routine at which it counts as finished.
+   */
+  private static final double   FINISH_TOLERANCE   = 0.05; // meters
+  private static final double   HEADING_TOLERANCE  = Math.toRadians(2);
+  private static final int      IDLE               = -1;
+
+  private final Translation2d[]        moduleLocations;
+  private final double                 driveTimeConstant;
+  private final double                 steerRate;
+  private final PIDConstants           translation, rotation;
+  private final double                 dt;
+  private final TrajectoryTable[]      routines;
+
+  private final HeadlessSwerveSim      sim;
+  private final PrimitivePoseEstimator estimator;
+  private final SimPid                 xPid, yPid, headingPid;
+  /**
+   * Integrated module distances fed to the estimator.
+   */
+  private final double[]               distances = new double[MODULES];
+  private       double                 gyroOffset;
+  private       double                 time;
+  private       int                    routine   = IDLE;
+  private       double                 routineStart;
+
+  /**
+   * @param moduleLocations   Module locations in meters, same order as swervedrive.json.
+   * @param maxModuleSpeed    Maximum module speed in m/s.
+   * @param driveTimeConstant Time constant of the wheel speed response in seconds.
+   * @param steerRate         Maximum module steering rate in rad/s.
+   * @param translation       Translation gains of the follower.
+   * @param rotation          Heading gains of the follower.
+   * @param dt                Loop period in seconds.
+   * @param routines          Tables the follower can run, referred to by index.
+   */
+  public HeadlessDrivetrain(Translation2d[] moduleLocations, double maxModuleSpeed, double driveTimeConstant,
+                            double steerRate, PIDConstants translation, PIDConstants rotation, double dt,
+                            TrajectoryTable... routines)
+  {
+    this.moduleLocations = moduleLocations;
+    this.driveTimeConstant = driveTimeConstant;
+    this.steerRate = steerRate;
+    this.translation = translation;
+    this.rotation = rotation;
+    this.dt = dt;
+    this.routines = routines;
+    sim = new HeadlessSwerveSim(moduleLocations, maxModuleSpeed, driveTimeConstant, steerRate);
+    // The estimator gets its own kinematics, the simulation's remember module headings of their own.
+    estimator = new PrimitivePoseEstimator(new FourModuleKinematics(moduleLocations), 0, distances, distances,
+                                           new Pose2d(), STATE_STD_DEVS, VISION_STD_DEVS);
+    xPid = new SimPid(translation.kP, translation.kI, translation.kD, dt, false);
+    yPid = new SimPid(translation.kP, translation.kI, translation.kD, dt, false);
+    headingPid = new SimPid(rotation.kP, rotation.kI, rotation.kD, dt, true);
+  }
+
+  /**
+   * Create an empty drivetrain with the same configuration, for forks to restore into.
+   */
+  private HeadlessDrivetrain(HeadlessDrivetrain other)
+  {
+    this(other.moduleLocations, other.sim.getMaxModuleSpeed(), other.driveTimeConstant, other.steerRate,
+         other.translation, other.rotation, other.dt, other.routines);
+  }
+
+  /**
+   * Put the robot at rest at a pose with the estimator agreeing, and stop following.
+   *
+   * @param x     X in meters.
+   * @param y     Y in meters.
+   * @param theta Heading in radians.
+   */
+  public void reset(double x, double y, double theta)
+  {
+    sim.reset(x, y, theta);
+    Arrays.fill(distances, 0);
+    gyroOffset = 0;
+    time = 0;
+    estimator.resetPosition(theta, distances, x, y, theta);
+    stop();
+  }
+
+  /**
+   * Start from the state of the running robot or robot simulation. The chassis is placed at the estimated pose, so the
+   * headless estimator starts out agreeing with it.
+   *
+   * @param timestamp     Current time in seconds, same timebase as the estimator.
+   * @param gyroYaw       Current gyro yaw in radians.
+   * @param moduleSpeeds  Measured module speeds in m/s.
+   * @param moduleAngles  Measured module angles in radians.
+   * @param distances     Measured module distances in meters.
+   * @param poseEstimator Estimator of the robot, its state is copied.
+   */
+  public void seed(double timestamp, double gyroYaw, double[] moduleSpeeds, double[] moduleAngles,
+                   double[] distances, PrimitivePoseEstimator poseEstimator)
+  {
+    SimSnapshot snapshot = new SimSnapshot(poseEstimator);
+    snapshot.capture();
+    snapshot.restoreInto(estimator);
+
+    double x = estimator.getX();
+    double y = estimator.getY();
+    double theta = estimator.getHeadingRadians();
+    sim.reset(x, y, theta);
+    sim.setModuleStates(moduleSpeeds, moduleAngles);
+    System.arraycopy(distances, 0, this.distances, 0, MODULES);
+    gyroOffset = gyroYaw - theta;
+    time = timestamp;
+    stop();
+  }
+
+  /**
+   * Start following a routine from the current state.
+   *
+   * @param index Index of the routine in the constructor arguments.
+   */
+  public void follow(int index)
+  {
+    routine = index;
+    routineStart = time;
+    xPid.reset();
+    yPid.reset();
+    headingPid.reset();
+  }
+
+  /**
+   * Stop following, the drivetrain is commanded to stand still.
+   */
+  public void stop()
+  {
+    routine = IDLE;
+  }
+
+  /**
+   * Run one loop: the follower, the drivetrain model and the estimator.
+   */
+  public void step()
+  {
+    double theta = estimator.getHeadingRadians();
+    double fieldVx = 0, fieldVy = 0, omega = 0;
+    if (routine != IDLE)
+    {
+      TrajectoryTable table = routines[routine];
+      double t = time - routineStart;
+      int i = table.indexAt(t);
+      int j = Math.min(i + 1, table.size() - 1);
+      double f = j > i ? Math.min(1, (t - table.time[i]) / table.dt) : 0;
+      double targetHeading = table.heading[i] + FourModuleKinematics.wrap(table.heading[j] - table.heading[i]) * f;
+      fieldVx = lerp(table.vx, i, j, f) + xPid.calculate(estimator.getX(), lerp(table.x, i, j, f));
+      fieldVy = lerp(table.vy, i, j, f) + yPid.calculate(estimator.getY(), lerp(table.y, i, j, f));
+      omega = lerp(table.omega, i, j, f) + headingPid.calculate(theta, targetHeading);
+    }
+    // Same conversion as the command, from the estimated heading rather than the true one.
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    sim.step(fieldVx * cos + fieldVy * sin, -fieldVx * sin + fieldVy * cos, omega, dt);
+
+    for (int m = 0; m < MODULES; m++)
+    {
+      distances[m] += sim.moduleSpeeds[m] * dt;
+    }
+    time += dt;
+    estimator.updateWithTime(time, sim.theta + gyroOffset, distances, sim.moduleAngles);
+  }
+
+  private static double lerp(double[] values, int i, int j, double f)
+  {
+    return values[i] + (values[j] - values[i]) * f;
+  }
+
+  /**
+   * @return Whether the routine being followed has run its full time and the robot is at its end pose.
+   */
+  public boolean isFinished()
+  {
+    if (routine == IDLE)
+    {
+      return false;
+    }
+    TrajectoryTable table = routines[routine];
+    int last = table.size() - 1;
+    return time - routineStart >= table.getTotalTime()
+           && Math.hypot(sim.x - table.x[last], sim.y - table.y[last]) < FINISH_TOLERANCE
+           && Math.abs(FourModuleKinematics.wrap(sim.theta - table.heading[last])) < HEADING_TOLERANCE;
+  }
+
+  /**
+   * Copy the current state into independent drivetrains with the same configuration.
+   *
+   * @param count Number of forks.
+   * @return The forks.
+   */
+  public HeadlessDrivetrain[] fork(int count)
+  {
+    SimSnapshot snapshot = new SimSnapshot(this);
+    snapshot.capture();
+    HeadlessDrivetrain[] forks = new HeadlessDrivetrain[count];
+    for (int k = 0; k < count; k++)
+    {
+      forks[k] = new HeadlessDrivetrain(this);
+      snapshot.restoreInto(forks[k]);
+    }
+    return forks;
+  }
+
+  /**
+   * Fork once per routine and run every routine from the current state in parallel.
+   *
+   * @param timeout Longest time to run each routine, in seconds.
+   * @return Time each routine took to finish in seconds, infinite when it did not finish before the timeout.
+   */
+  public double[] raceRoutines(double timeout)
+  {
+    HeadlessDrivetrain[] forks = fork(routines.length);
+    double[] finishTimes = new double[routines.length];
+    IntStream.range(0, routines.length).parallel().forEach(k -> {
+      HeadlessDrivetrain fork = forks[k];
+      fork.follow(k);
+      finishTimes[k] = Double.POSITIVE_INFINITY;
+      while (fork.time - fork.routineStart < timeout)
+      {
+        fork.step();
+        if (fork.isFinished())
+        {
+          finishTimes[k] = fork.time - fork.routineStart;
+          break;
+        }
+      }
+    });
+    return finishTimes;
+  }
+
+  /**
+   * @return The simulated drivetrain, the ground truth pose.
+   */
+  public HeadlessSwerveSim getSim()
+  {
+    return sim;
+  }
+
+  /**
+   * @return The estimator fed from the simulated gyro and modules.
+   */
+  public PrimitivePoseEstimator getEstimator()
+  {
+    return estimator;
+  }
+
+  /**
+   * @return Simulated time in seconds.
+   */
+  public double getTime()
+  {
+    return time;
+  }
+
+  @Override
+  public int getStateBytes()
+  {
+    return sim.getStateBytes() + estimator.getStateBytes() + xPid.getStateBytes() + yPid.getStateBytes()
+           + headingPid.getStateBytes() + (MODULES + 3) * Double.BYTES + Integer.BYTES;
+  }
+
+  @Override
+  public void saveState(ByteBuffer buffer)
+  {
+    sim.saveState(buffer);
+    estimator.saveState(buffer);
+    xPid.saveState(buffer);
+    yPid.saveState(buffer);
+    headingPid.saveState(buffer);
+    for (int m = 0; m < MODULES; m++)
+    {
+      buffer.putDouble(distances[m]);
+    }
+    buffer.putDouble(gyroOffset).putDouble(time).putInt(routine).putDouble(routineStart);
+  }
+
+  @Override
+  public void restoreState(ByteBuffer buffer)
+  {
+    sim.restoreState(buffer);
+    estimator.restoreState(buffer);
+    xPid.restoreState(buffer);
+    yPid.restoreState(buffer);
+    headingPid.restoreState(buffer);
+    for (int m = 0; m < MODULES; m++)
+    {
+      distances[m] = buffer.getDouble();
+    }
+    gyroOffset = buffer.getDouble();
+    time = buffer.getDouble();
+    routine = buffer.getInt();
+    routineStart = buffer.getDouble();
+  }
+}
@@ -0,0 +1,202 @@
+package frc.robot.util.sim;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import java.nio.ByteBuffer;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.odometry.PrimitivePoseEstimator;
+
+/**
+ * Lightweight swerve drivetrain model that runs without the HAL, NetworkTables or vendor libraries. Modules steer at a
+ * limited rate and their wheel speed follows the command with a first order lag, which is enough to compare controller
+ * gains. Every piece of state is a primitive field so many instances can run in parallel and be copied or snapshotted
+ * cheaply.
+ */
+public class HeadlessSwerveSim implements SimState
+{
+
+  private static final int MODULES = FourModuleKinematics.MODULES;
+
+  private final FourModuleKinematics kinematics;
+  private final double               maxModuleSpeed;
+  private final double               driveTimeConstant;
+  private final double               steerRate;
+
+  /**
+   * Field relative pose and robot relative velocity.
+   */
+  public double x, y, theta;
+  public double vx, vy, omega;
+  /**
+   * Actual module speeds and angles.
+   */
+  public final double[] moduleSpeeds = new double[MODULES];
+  public final double[] moduleAngles = new double[MODULES];
+
+  private final double[] desiredSpeeds = new double[MODULES];
+  private final double[] desiredAngles = new double[MODULES];
+  private final double[] scratch       = new double[3];
+
+  /**
+   * @param moduleLocations   Module locations in meters, same order as swervedrive.json.
+   * @param maxModuleSpeed    Maximum module speed in m/s.
+   * @param driveTimeConstant Time constant of the wheel speed response in seconds.
+   * @param steerRate         Maximum module steering rate in rad/s.
+   */
+  public HeadlessSwerveSim(Translation2d[] moduleLocations, double maxModuleSpeed, double driveTimeConstant,
+                           double steerRate)
+  {
+    // Each simulation needs its own kinematics, they remember the last module headings.
+    this.kinematics = new FourModuleKinematics(moduleLocations);
+    this.maxModuleSpeed = maxModuleSpeed;
+    this.driveTimeConstant = driveTimeConstant;
+    this.steerRate = steerRate;
+  }
+
+  /**
+   * @return Maximum module speed in m/s.
+   */
+  public double getMaxModuleSpeed()
+  {
+    return maxModuleSpeed;
+  }
+
+  /**
+   * Put the robot at rest at a pose.
+   *
+   * @param x     X in meters.
+   * @param y     Y in meters.
+   * @param theta Heading in radians.
+   */
+  public void reset(double x, double y, double theta)
+  {
+    this.x = x;
+    this.y = y;
+    this.theta = theta;
+    vx = 0;
+    vy = 0;
+    omega = 0;
+    for (int i = 0; i < MODULES; i++)
+    {
+      moduleSpeeds[i] = 0;
+      moduleAngles[i] = 0;
+    }
+    kinematics.resetHeadings(moduleAngles);
+  }
+
+  /**
+   * Set the module states, for example to start from measured ones.
+   *
+   * @param speeds Module speeds in m/s.
+   * @param angles Module angles in radians.
+   */
+  public void setModuleStates(double[] speeds, double[] angles)
+  {
+    System.arraycopy(speeds, 0, moduleSpeeds, 0, MODULES);
+    System.arraycopy(angles, 0, moduleAngles, 0, MODULES);
+    kinematics.resetHeadings(moduleAngles);
+  }
+
+  /**
+   * Advance the model by one step, commanding field relative chassis speeds.
+   *
+   * @param fieldVx Field relative x velocity in m/s.
+   * @param fieldVy Field relative y velocity in m/s.
+   * @param omega   Angular velocity in rad/s.
+   * @param dt      Step length in seconds.
+   */
+  public void stepFieldRelative(double fieldVx, double fieldVy, double omega, double dt)
+  {
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    step(fieldVx * cos + fieldVy * sin, -fieldVx * sin + fieldVy * cos, omega, dt);
+  }
+
+  /**
+   * Advance the model by one step, commanding robot relative chassis speeds.
+   *
+   * @param commandVx    Robot relative x velocity in m/s.
+   * @param commandVy    Robot relative y velocity in m/s.
+   * @param commandOmega Angular velocity in rad/s.
+   * @param dt           Step length in seconds.
+   */
+  public void step(double commandVx, double commandVy, double commandOmega, double dt)
+  {
+    kinematics.toModuleStates(commandVx, commandVy, commandOmega, desiredSpeeds, desiredAngles);
+    FourModuleKinematics.desaturate(desiredSpeeds, maxModuleSpeed);
+    FourModuleKinematics.optimize(desiredSpeeds, desiredAngles, moduleAngles);
+
+    double maxSteer = steerRate * dt;
+    double alpha = driveTimeConstant > 0 ? 1 - Math.exp(-dt / driveTimeConstant) : 1;
+    for (int i = 0; i < MODULES; i++)
+    {
+      double error = FourModuleKinematics.wrap(desiredAngles[i] - moduleAngles[i]);
+      moduleAngles[i] = FourModuleKinematics.wrap(moduleAngles[i] + Math.max(-maxSteer, Math.min(maxSteer, error)));
+      // Wheels only push along the direction they point, so a module that is still turning delivers less speed.
+      double target = desiredSpeeds[i] * Math.cos(FourModuleKinematics.wrap(desiredAngles[i] - moduleAngles[i]));
+      moduleSpeeds[i] += (target - moduleSpeeds[i]) * alpha;
+    }
+
+    kinematics.toChassisSpeeds(moduleSpeeds, moduleAngles, scratch);
+    vx = scratch[0];
+    vy = scratch[1];
+    omega = scratch[2];
+    PrimitivePoseEstimator.exp(x, y, theta, vx * dt, vy * dt, omega * dt, scratch);
+    x = scratch[0];
+    y = scratch[1];
+    theta = scratch[2];
+  }
+
+  /**
+   * Copy the full state of another simulation into this one. Both must share the same configuration.
+   *
+   * @param other Simulation to copy.
+   */
+  public void copyFrom(HeadlessSwerveSim other)
+  {
+    x = other.x;
+    y = other.y;
+    theta = other.theta;
+    vx = other.vx;
+    vy = other.vy;
+    omega = other.omega;
+    System.arraycopy(other.moduleSpeeds, 0, moduleSpeeds, 0, MODULES);
+    System.arraycopy(other.moduleAngles, 0, moduleAngles, 0, MODULES);
+    other.kinematics.getHeadings(desiredAngles);
+    kinematics.resetHeadings(desiredAngles);
+  }
+
+  @Override
+  public int getStateBytes()
+  {
+    return (6 + 3 * MODULES) * Double.BYTES;
+  }
+
+  @Override
+  public void saveState(ByteBuffer buffer)
+  {
+    buffer.putDouble(x).putDouble(y).putDouble(theta).putDouble(vx).putDouble(vy).putDouble(omega);
+    kinematics.getHeadings(desiredAngles);
+    for (int i = 0; i < MODULES; i++)
+    {
+      buffer.putDouble(moduleSpeeds[i]).putDouble(moduleAngles[i]).putDouble(desiredAngles[i]);
+    }
+  }
+
+  @Override
+  public void restoreState(ByteBuffer buffer)
+  {
+    x = buffer.getDouble();
+    y = buffer.getDouble();
+    theta = buffer.getDouble();
+    vx = buffer.getDouble();
+    vy = buffer.getDouble();
+    omega = buffer.getDouble();
+    for (int i = 0; i < MODULES; i++)
+    {
+      moduleSpeeds[i] = buffer.getDouble();
+      moduleAngles[i] = buffer.getDouble();
+      desiredAngles[i] = buffer.getDouble();
+    }
+    kinematics.resetHeadings(desiredAngles);
+  }
+}
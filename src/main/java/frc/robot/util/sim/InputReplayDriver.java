@@ -0,0 +1,65 @@
+package frc.robot.util.sim;
+
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import frc.robot.util.log.InputReplay;
+
+/**
+ * Runs an {@link InputReplay} through the robot simulation as fast as the robot code allows. Before each loop it moves
+ * the replay to the next frame and sets the simulated driver station to the recorded enabled and autonomous state, then
+ * steps the {@link LockstepClock}. When the recording ends the robot is disabled and simulated time follows the wall
+ * clock again.
+ */
+public class InputReplayDriver
+{
+
+  private final InputReplay   replay;
+  private final LockstepClock clock;
+
+  /**
+   * @param replay Recording to play back, the same one the robot's input suppliers read.
+   * @param clock  Clock of the robot simulation.
+   */
+  public InputReplayDriver(InputReplay replay, LockstepClock clock)
+  {
+    this.replay = replay;
+    this.clock = clock;
+  }
+
+  /**
+   * Pause simulated time and start the replay. Call before the first robot loop, from simulationInit.
+   */
+  public void start()
+  {
+    clock.pause();
+    Thread thread = new Thread(this::run, "Input Replay");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void run()
+  {
+    long start = System.nanoTime();
+    DriverStationSim.setDsAttached(true);
+    try
+    {
+      for (int i = 0; i < replay.size(); i++)
+      {
+        replay.seek(i);
+        DriverStationSim.setAutonomous(replay.isAutonomous(i));
+        DriverStationSim.setEnabled(replay.isEnabled(i));
+        DriverStationSim.notifyNewData();
+        clock.step();
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    DriverStationSim.setEnabled(false);
+    DriverStationSim.notifyNewData();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("Replayed %d loops, %.1f s of driving, in %.2f s (%.0fx real time)%n", replay.size(),
+                      replay.getDuration(), seconds, replay.getDuration() / seconds);
+    clock.resume();
+  }
+}
@@ -0,0 +1,115 @@
+package frc.robot.util.sim;
+
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Steps the robot simulation one loop at a time from another thread. Simulated time is paused, and each
+ * {@link #step()} advances it by one loop period and waits until the robot thread reports the loop finished with
+ * {@link #loopDone()}. The robot thread then waits inside {@link #loopDone()} for the next step, and before returning to
+ * its loop runs the step boundary action, see {@link #setStepBoundary(Runnable)}. Changes the stepping thread wants in
+ * the next loop go through that action, so they land on the robot thread at the same point of every step.
+ */
+public class LockstepClock
+{
+
+  private final    double    period;
+  private final    Semaphore loopDone = new Semaphore(0);
+  private final    Semaphore nextStep = new Semaphore(0);
+  private volatile boolean   paused;
+  private volatile Runnable  boundary;
+  /**
+   * Whether a loop has run since the clock was paused, so the robot thread is waiting for the next step. Only used by
+   * the stepping thread.
+   */
+  private          boolean   stepped;
+
+  /**
+   * @param period Robot loop period in seconds.
+   */
+  public LockstepClock(double period)
+  {
+    this.period = period;
+  }
+
+  /**
+   * Set the action the robot thread runs at every step boundary, after the last loop and before the next one. Before
+   * the first loop it runs on the stepping thread, while the robot thread waits for simulated time.
+   *
+   * @param boundary Action to run on the robot thread, null for none.
+   */
+  public void setStepBoundary(Runnable boundary)
+  {
+    this.boundary = boundary;
+  }
+
+  /**
+   * Pause simulated time. Call before the first robot loop, from simulationInit.
+   */
+  public void pause()
+  {
+    loopDone.drainPermits();
+    nextStep.drainPermits();
+    stepped = false;
+    paused = true;
+    SimHooks.pauseTiming();
+  }
+
+  /**
+   * Let simulated time follow the wall clock again, releasing the robot thread if it is waiting for a step.
+   */
+  public void resume()
+  {
+    paused = false;
+    nextStep.release();
+    SimHooks.resumeTiming();
+  }
+
+  /**
+   * Run one robot loop and wait for it to finish.
+   *
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public void step() throws InterruptedException
+  {
+    if (stepped)
+    {
+      nextStep.release();
+    }
+    else
+    {
+      // First step, the robot thread is still waiting for simulated time to start its first loop
+      runBoundary();
+    }
+    stepped = true;
+    SimHooks.stepTiming(period);
+    loopDone.acquire();
+  }
+
+  /**
+   * Signal that a robot loop finished, then wait for the next step and run the step boundary action. Call at the end
+   * of every loop, from simulationPeriodic.
+   */
+  public void loopDone()
+  {
+    loopDone.release();
+    if (!paused)
+    {
+      return;
+    }
+    nextStep.acquireUninterruptibly();
+    if (paused)
+    {
+      runBoundary();
+    }
+  }
+
+  private void runBoundary()
+  {
+    Runnable action = boundary;
+    if (action != null)
+    {
+      action.run();
+    }
+  }
+}
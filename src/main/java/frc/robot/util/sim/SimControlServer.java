@@ -0,0 +1,379 @@
+package frc.robot.util.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.subsystems.SwerveDrivetrain;
+import frc.robot.util.DriveSetpointMailbox;
+import frc.robot.util.DriveSetpointMailbox.Mode;
+import frc.robot.util.DriveSetpointMailbox.Setpoint;
+import frc.robot.util.DriveStateSeqlock.Snapshot;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lockstep control of the robot simulation over a local TCP socket, so optimisers and learning experiments can use the
+ * real robot code as their environment. Simulated time is paused when the server starts and only moves when a client
+ * steps it through the {@link LockstepClock}, one whole robot loop per step, so runs are deterministic. Requests that
+ * change the robot, a pose reset, the driver station mode and joysticks, are queued and applied by the robot thread at
+ * the next step boundary, see {@link #applyPending()}.
+ *
+ * <p>The protocol is binary and little endian. Each request is a one byte opcode followed by its arguments; every
+ * request gets a response, so a client may pipeline requests and read the responses afterwards.
+ * <ul>
+ *   <li>{@code 'R'} x, y, theta as doubles: reset the pose at the start of the next step. Responds with one zero
+ *   byte.</li>
+ *   <li>{@code 'M'} mode byte, 0 disabled, 1 teleop, 2 autonomous, 3 test: set the driver station mode from the next
+ *   step. Responds with one zero byte.</li>
+ *   <li>{@code 'J'} port byte, axis count byte, that many axes as doubles, buttons as an int: set a joystick from the
+ *   next step. Responds with one zero byte.</li>
+ *   <li>{@code 'C'} vx, vy, omega as doubles: drive at robot relative chassis speeds, overriding the default command,
+ *   until released. Responds with one zero byte.</li>
+ *   <li>{@code 'X'}: release the drivetrain back to the default command. Responds with one zero byte.</li>
+ *   <li>{@code 'S'} loop count as an int, record byte: step the robot loop. Responds with a record count as an int
+ *   and that many state records, one per loop when the record byte is non-zero, otherwise only the last.</li>
+ *   <li>{@code 'G'}: responds with a record count of one and the current state record.</li>
+ * </ul>
+ * A state record is {@value #RECORD_DOUBLES} doubles: timestamp, x, y, theta, robot relative vx, vy, omega, then the
+ * module speeds, angles and distances in swervedrive.json order. Records are the drivetrain state published at the end
+ * of the last loop, so after a reset step once before reading.
+ */
+public class SimControlServer
+{
+
+  public static final byte   RESET          = 'R';
+  public static final byte   MODE           = 'M';
+  public static final byte   JOYSTICK       = 'J';
+  public static final byte   CHASSIS_SPEEDS = 'C';
+  public static final byte   RELEASE        = 'X';
+  public static final byte   STEP           = 'S';
+  public static final byte   READ           = 'G';
+  private static final int   MODULES        = FourModuleKinematics.MODULES;
+  public static final int    RECORD_DOUBLES = 7 + 3 * MODULES;
+  private static final int   RECORD_BYTES   = RECORD_DOUBLES * Double.BYTES;
+  /**
+   * Records buffered before the response is flushed to the socket.
+   */
+  private static final int   BATCH          = 512;
+  /**
+   * Most axes a driver station joystick reports.
+   */
+  private static final int   MAX_AXES       = 12;
+
+  /**
+   * Joystick state a client asked for, applied at the next step boundary.
+   */
+  private static final class JoystickFrame
+  {
+
+    final double[] axes;
+    final int      buttons;
+
+    JoystickFrame(double[] axes, int buttons)
+    {
+      this.axes = axes;
+      this.buttons = buttons;
+    }
+  }
+
+  private final SwerveDrivetrain        drivebase;
+  private final LockstepClock           clock;
+  private final DriveSetpointMailbox    mailbox      = new DriveSetpointMailbox();
+  private final Snapshot                snapshot     = new Snapshot();
+  /**
+   * Pose to reset to at the next step, null if none. A later reset before the step replaces it.
+   */
+  private final AtomicReference<Pose2d> pendingReset = new AtomicReference<>();
+  /**
+   * Driver station mode and joysticks for the next step, -1 and null if unchanged. Later requests replace them.
+   */
+  private final AtomicInteger           pendingMode  = new AtomicInteger(-1);
+  private final AtomicReferenceArray<JoystickFrame> pendingJoysticks =
+      new AtomicReferenceArray<>(DriverStation.kJoystickPorts);
+  private final ByteBuffer              request      = ByteBuffer.allocateDirect(MAX_AXES * Double.BYTES
+                                                                                 + Integer.BYTES)
+                                                                 .order(ByteOrder.LITTLE_ENDIAN);
+  private final ByteBuffer              response     = ByteBuffer.allocateDirect(Integer.BYTES + BATCH * RECORD_BYTES)
+                                                                 .order(ByteOrder.LITTLE_ENDIAN);
+
+  /**
+   * Create the server and bind its drive override to the drivetrain. Call from the robot thread.
+   *
+   * @param drivebase The drivetrain to control and read back.
+   * @param clock     Clock of the robot simulation.
+   */
+  public SimControlServer(SwerveDrivetrain drivebase, LockstepClock clock)
+  {
+    this.drivebase = drivebase;
+    this.clock = clock;
+    clock.setStepBoundary(this::applyPending);
+    new Trigger(() -> mailbox.peek().mode == Mode.CHASSIS_SPEEDS).whileTrue(drivebase.run(() -> {
+      Setpoint setpoint = mailbox.peek();
+      drivebase.drive(new ChassisSpeeds(setpoint.vxMetersPerSecond, setpoint.vyMetersPerSecond,
+                                        setpoint.omegaRadiansPerSecond));
+    }));
+  }
+
+  /**
+   * Pause simulated time and start accepting clients on the loopback interface. Call before the first robot loop,
+   * from simulationInit.
+   *
+   * @param port TCP port to listen on.
+   */
+  public void start(int port)
+  {
+    clock.pause();
+    Thread thread = new Thread(() -> serve(port), "Sim Control");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Apply the driver station mode, joysticks and pose reset clients asked for since the last loop. Run by the robot
+   * thread at the step boundary, so the next loop reads them from its first driver station refresh.
+   */
+  private void applyPending()
+  {
+    boolean changed = false;
+    int mode = pendingMode.getAndSet(-1);
+    if (mode >= 0)
+    {
+      DriverStationSim.setDsAttached(true);
+      DriverStationSim.setAutonomous(mode == 2);
+      DriverStationSim.setTest(mode == 3);
+      DriverStationSim.setEnabled(mode != 0);
+      changed = true;
+    }
+    for (int port = 0; port < DriverStation.kJoystickPorts; port++)
+    {
+      JoystickFrame frame = pendingJoysticks.getAndSet(port, null);
+      if (frame == null)
+      {
+        continue;
+      }
+      DriverStationSim.setJoystickAxisCount(port, frame.axes.length);
+      for (int i = 0; i < frame.axes.length; i++)
+      {
+        DriverStationSim.setJoystickAxis(port, i, frame.axes[i]);
+      }
+      DriverStationSim.setJoystickButtonCount(port, Integer.SIZE);
+      DriverStationSim.setJoystickButtons(port, frame.buttons);
+      changed = true;
+    }
+    if (changed)
+    {
+      DriverStationSim.notifyNewData();
+    }
+    Pose2d pose = pendingReset.getAndSet(null);
+    if (pose != null)
+    {
+      drivebase.resetOdometry(pose);
+    }
+  }
+
+  private void serve(int port)
+  {
+    try (ServerSocketChannel server = ServerSocketChannel.open())
+    {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      System.out.println("Sim control listening on port " + port + ", simulated time is paused until stepped");
+      while (true)
+      {
+        try (SocketChannel client = server.accept())
+        {
+          client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+          boolean open = true;
+          while (open)
+          {
+            open = handle(client);
+          }
+        } catch (EOFException e)
+        {
+          // Client disconnected, wait for the next one with time still paused.
+        } catch (IOException e)
+        {
+          DriverStation.reportWarning("Sim control client failed: " + e.getMessage(), false);
+        }
+      }
+    } catch (IOException e)
+    {
+      DriverStation.reportError("Sim control server could not listen on port " + port + ": " + e.getMessage(),
+                                false);
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Handle one request.
+   *
+   * @return False if the request was not understood and the client should be dropped.
+   */
+  private boolean handle(SocketChannel client) throws IOException, InterruptedException
+  {
+    read(client, 1);
+    byte opcode = request.get();
+    response.clear();
+    switch (opcode)
+    {
+      case RESET:
+      {
+        read(client, 3 * Double.BYTES);
+        pendingReset.set(new Pose2d(request.getDouble(), request.getDouble(), new Rotation2d(request.getDouble())));
+        response.put((byte) 0);
+        break;
+      }
+      case MODE:
+      {
+        read(client, 1);
+        pendingMode.set(Byte.toUnsignedInt(request.get()));
+        response.put((byte) 0);
+        break;
+      }
+      case JOYSTICK:
+      {
+        read(client, 2);
+        int port = request.get();
+        int axes = request.get();
+        if (port < 0 || port >= DriverStation.kJoystickPorts || axes < 0 || axes > MAX_AXES)
+        {
+          DriverStation.reportWarning("Sim control dropped a client after joystick " + port + " with " + axes
+                                      + " axes", false);
+          return false;
+        }
+        read(client, axes * Double.BYTES + Integer.BYTES);
+        double[] values = new double[axes];
+        for (int i = 0; i < axes; i++)
+        {
+          values[i] = request.getDouble();
+        }
+        pendingJoysticks.set(port, new JoystickFrame(values, request.getInt()));
+        response.put((byte) 0);
+        break;
+      }
+      case CHASSIS_SPEEDS:
+      {
+        read(client, 3 * Double.BYTES);
+        mailbox.post(new Setpoint(Mode.CHASSIS_SPEEDS, request.getDouble(), request.getDouble(), request.getDouble(),
+                                  Timer.getFPGATimestamp()));
+        response.put((byte) 0);
+        break;
+      }
+      case RELEASE:
+      {
+        mailbox.idle();
+        response.put((byte) 0);
+        break;
+      }
+      case STEP:
+      {
+        read(client, Integer.BYTES + 1);
+        int loops = request.getInt();
+        boolean record = request.get() != 0;
+        step(client, loops, record);
+        return true;
+      }
+      case READ:
+      {
+        response.putInt(1);
+        putRecord();
+        break;
+      }
+      default:
+      {
+        DriverStation.reportWarning("Sim control dropped a client after unknown opcode " + opcode, false);
+        return false;
+      }
+    }
+    write(client);
+    return true;
+  }
+
+  private void step(SocketChannel client, int loops, boolean record) throws IOException, InterruptedException
+  {
+    response.putInt(record ? Math.max(loops, 0) : 1);
+    for (int i = 0; i < loops; i++)
+    {
+      clock.step();
+      if (record)
+      {
+        putRecord();
+        if (response.remaining() < RECORD_BYTES)
+        {
+          write(client);
+          response.clear();
+        }
+      }
+    }
+    if (!record)
+    {
+      putRecord();
+    }
+    write(client);
+  }
+
+  private void putRecord()
+  {
+    drivebase.getState(snapshot);
+    response.putDouble(snapshot.timestamp)
+            .putDouble(snapshot.x)
+            .putDouble(snapshot.y)
+            .putDouble(snapshot.theta)
+            .putDouble(snapshot.vx)
+            .putDouble(snapshot.vy)
+            .putDouble(snapshot.omega);
+    for (int m = 0; m < MODULES; m++)
+    {
+      response.putDouble(snapshot.moduleSpeeds[m]);
+    }
+    for (int m = 0; m < MODULES; m++)
+    {
+      response.putDouble(snapshot.moduleAngles[m]);
+    }
+    for (int m = 0; m < MODULES; m++)
+    {
+      response.putDouble(snapshot.moduleDistances[m]);
+    }
+  }
+
+  /**
+   * Read exactly {@code bytes} bytes of the request into {@link #request}, ready to get.
+   */
+  private void read(SocketChannel client, int bytes) throws IOException
+  {
+    request.clear().limit(bytes);
+    while (request.hasRemaining())
+    {
+      if (client.read(request) < 0)
+      {
+        throw new EOFException();
+      }
+    }
+    request.flip();
+  }
+
+  private void write(SocketChannel client) throws IOException
+  {
+    response.flip();
+    while (response.hasRemaining())
+    {
+      client.write(response);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package frc.robot.util.sim;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Minimal PID controller with the same math as {@link edu.wpi.first.math.controller.PIDController}, but without
+ * registering with the SendableRegistry, so thousands can be created by headless simulations on any thread.
+ */
+public class SimPid implements SimState
+{
+
+  public double  p, i, d;
+  private final double  period;
+  private final boolean continuous;
+  /**
+   * Controller state, public so simulations can snapshot and restore it.
+   */
+  public double  totalError, previousError;
+  public boolean hasPrevious;
+
+  /**
+   * @param p          Proportional gain.
+   * @param i          Integral gain.
+   * @param d          Derivative gain.
+   * @param period     Loop period in seconds.
+   * @param continuous True to wrap the error to [-pi, pi] for angles.
+   */
+  public SimPid(double p, double i, double d, double period, boolean continuous)
+  {
+    this.p = p;
+    this.i = i;
+    this.d = d;
+    this.period = period;
+    this.continuous = continuous;
+  }
+
+  /**
+   * @param measurement Current measurement.
+   * @param setpoint    Desired value.
+   * @return Controller output.
+   */
+  public double calculate(double measurement, double setpoint)
+  {
+    double error = setpoint - measurement;
+    if (continuous)
+    {
+      error = Math.atan2(Math.sin(error), Math.cos(error));
+    }
+    double derivative = hasPrevious ? (error - previousError) / period : 0;
+    if (i != 0)
+    {
+      totalError += error * period;
+    }
+    previousError = error;
+    hasPrevious = true;
+    return p * error + i * totalError + d * derivative;
+  }
+
+  /**
+   * Clear the integrator and derivative history.
+   */
+  public void reset()
+  {
+    totalError = 0;
+    previousError = 0;
+    hasPrevious = false;
+  }
+
+  @Override
+  public int getStateBytes()
+  {
+    return 2 * Double.BYTES + 1;
+  }
+
+  @Override
+  public void saveState(ByteBuffer buffer)
+  {
+    buffer.putDouble(totalError).putDouble(previousError).put((byte) (hasPrevious ? 1 : 0));
+  }
+
+  @Override
+  public void restoreState(ByteBuffer buffer)
+  {
+    totalError = buffer.getDouble();
+    previousError = buffer.getDouble();
+    hasPrevious = buffer.get() != 0;
+  }
+}
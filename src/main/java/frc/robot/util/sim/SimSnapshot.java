@@ -0,0 +1,110 @@
+package frc.robot.util.sim;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Snapshot of a group of {@link SimState}s in one preallocated buffer. Capturing and restoring copy primitives straight
+ * into and out of the buffer, so a snapshot can be taken and rolled back every step of a search without allocating.
+ * The same snapshot can also be restored into a different group of the same configuration to fork a simulation.
+ */
+public class SimSnapshot
+{
+
+  private final SimState[] parts;
+  private final ByteBuffer buffer;
+  private       boolean    captured;
+
+  /**
+   * @param parts State to snapshot, restored in the same order.
+   */
+  public SimSnapshot(SimState... parts)
+  {
+    this.parts = parts.clone();
+    int bytes = 0;
+    for (SimState part : parts)
+    {
+      bytes += part.getStateBytes();
+    }
+    buffer = ByteBuffer.allocate(bytes);
+  }
+
+  /**
+   * Save the current state of the parts, replacing the previous snapshot.
+   */
+  public void capture()
+  {
+    buffer.clear();
+    for (SimState part : parts)
+    {
+      part.saveState(buffer);
+    }
+    buffer.flip();
+    captured = true;
+  }
+
+  /**
+   * Roll the parts back to the snapshot.
+   */
+  public void restore()
+  {
+    restoreInto(parts);
+  }
+
+  /**
+   * Load the snapshot into another group of state, for example the parts of a forked simulation.
+   *
+   * @param targets State with the same configuration and order as the snapshotted parts.
+   */
+  public void restoreInto(SimState... targets)
+  {
+    if (!captured)
+    {
+      throw new IllegalStateException("Nothing has been captured");
+    }
+    if (targets.length != parts.length)
+    {
+      throw new IllegalArgumentException("Expected " + parts.length + " parts, got " + targets.length);
+    }
+    buffer.rewind();
+    for (SimState target : targets)
+    {
+      target.restoreState(buffer);
+    }
+  }
+
+  /**
+   * @return Size of the last captured snapshot in bytes.
+   */
+  public int size()
+  {
+    return buffer.limit();
+  }
+
+  /**
+   * @return Copy of the last captured snapshot, to store or send elsewhere.
+   */
+  public byte[] toByteArray()
+  {
+    byte[] bytes = new byte[buffer.limit()];
+    buffer.get(0, bytes);
+    return bytes;
+  }
+
+  /**
+   * Replace the snapshot with bytes from {@link #toByteArray()} of a snapshot of the same parts.
+   *
+   * @param bytes Snapshot bytes.
+   */
+  public void fromByteArray(byte[] bytes)
+  {
+    if (bytes.length > buffer.capacity())
+    {
+      throw new IllegalArgumentException("Snapshot of " + bytes.length + " bytes does not fit in "
+                                         + buffer.capacity());
+    }
+    buffer.clear();
+    buffer.put(bytes);
+    buffer.flip();
+    captured = true;
+  }
+}
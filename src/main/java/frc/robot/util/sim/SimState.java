@@ -0,0 +1,30 @@
+package frc.robot.util.sim;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Simulation state that can be written to and read back from a byte buffer. Only the changing state is written, the
+ * configuration is expected to match between the object that saved the state and the one restoring it.
+ */
+public interface SimState
+{
+
+  /**
+   * @return Largest number of bytes {@link #saveState(ByteBuffer)} writes.
+   */
+  int getStateBytes();
+
+  /**
+   * Write the state at the buffer position.
+   *
+   * @param buffer Buffer to write to, advanced past the state.
+   */
+  void saveState(ByteBuffer buffer);
+
+  /**
+   * Read back state written by {@link #saveState(ByteBuffer)}.
+   *
+   * @param buffer Buffer to read from, advanced past the state.
+   */
+  void restoreState(ByteBuffer buffer);
+}
@@ -0,0 +1,136 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.util.DriveStateSeqlock.Snapshot;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stresses {@link DriveStateSeqlock} with one writer publishing as fast as it can while several readers copy snapshots
+ * in a loop. Every field of publish {@code k} is derived from {@code k}, so a reader can tell a snapshot that mixes two
+ * publishes from a consistent one. Readers also check that the version they see never goes backwards.
+ */
+class DriveStateSeqlockTest
+{
+
+  private static final int    MODULES = FourModuleKinematics.MODULES;
+  private static final int    READERS = 4;
+  private static final double SECONDS = 2;
+
+  /**
+   * Counts of one reader thread.
+   */
+  private static final class Reader extends Thread
+  {
+
+    private final DriveStateSeqlock state;
+    private final AtomicBoolean     running;
+    private final Snapshot          snapshot = new Snapshot();
+    private       long              reads, torn, backwards;
+
+    Reader(DriveStateSeqlock state, AtomicBoolean running, int index)
+    {
+      super("Seqlock Reader " + index);
+      this.state = state;
+      this.running = running;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+      long lastVersion = 0;
+      while (running.get())
+      {
+        state.read(snapshot);
+        reads++;
+        if (!consistent(snapshot))
+        {
+          torn++;
+        }
+        if (snapshot.version < lastVersion)
+        {
+          backwards++;
+        }
+        lastVersion = snapshot.version;
+      }
+    }
+  }
+
+  @Test
+  void readersNeverSeeTornSnapshots() throws InterruptedException
+  {
+    DriveStateSeqlock state = new DriveStateSeqlock();
+    AtomicBoolean running = new AtomicBoolean(true);
+    Reader[] readers = new Reader[READERS];
+    for (int i = 0; i < READERS; i++)
+    {
+      readers[i] = new Reader(state, running, i);
+      readers[i].start();
+    }
+
+    double[] speeds = new double[MODULES];
+    double[] angles = new double[MODULES];
+    double[] distances = new double[MODULES];
+    long k = 0;
+    long end = System.nanoTime() + (long) (SECONDS * 1e9);
+    while (System.nanoTime() < end)
+    {
+      publish(state, ++k, speeds, angles, distances);
+    }
+    running.set(false);
+
+    long reads = 0, torn = 0, backwards = 0;
+    for (Reader reader : readers)
+    {
+      reader.join();
+      reads += reader.reads;
+      torn += reader.torn;
+      backwards += reader.backwards;
+    }
+    assertTrue(reads > 0, "no reads");
+    assertEquals(0, torn, "torn snapshots in " + reads + " reads of " + k + " publishes");
+    assertEquals(0, backwards, "version regressions in " + reads + " reads");
+  }
+
+  /**
+   * Publish number {@code k}, every field a function of it.
+   */
+  private static void publish(DriveStateSeqlock state, long k, double[] speeds, double[] angles, double[] distances)
+  {
+    for (int m = 0; m < MODULES; m++)
+    {
+      speeds[m] = k + m;
+      angles[m] = k - m;
+      distances[m] = k * (m + 1);
+    }
+    state.publish(k, k, -k, k * 0.5, 2 * k, -2 * k, 3 * k, speeds, angles, distances);
+  }
+
+  private static boolean consistent(Snapshot s)
+  {
+    double k = s.timestamp;
+    if (s.version != (long) k)
+    {
+      return false;
+    }
+    if (s.version == 0)
+    {
+      // Nothing published yet, the record is still all zeros.
+      return s.x == 0 && s.moduleSpeeds[MODULES - 1] == 0 && s.moduleDistances[MODULES - 1] == 0;
+    }
+    boolean ok = s.x == k && s.y == -k && s.theta == k * 0.5 && s.vx == 2 * k && s.vy == -2 * k && s.omega == 3 * k
+                 && s.fieldOmega == 3 * k;
+    // Same arithmetic as the publisher, so the field velocity must match exactly.
+    double cos = Math.cos(s.theta), sin = Math.sin(s.theta);
+    ok &= s.fieldVx == s.vx * cos - s.vy * sin && s.fieldVy == s.vx * sin + s.vy * cos;
+    for (int m = 0; m < MODULES; m++)
+    {
+      ok &= s.moduleSpeeds[m] == k + m && s.moduleAngles[m] == k - m && s.moduleDistances[m] == k * (m + 1);
+    }
+    return ok;
+  }
+}
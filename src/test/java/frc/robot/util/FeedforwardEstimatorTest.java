@@ -0,0 +1,96 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the SysId drive routine on a simulated drive motor the way the drivetrain's feedforward sampler does, saves the
+ * fit, loads it back and checks the loaded feedforward drives the simulated motor to its setpoint.
+ */
+class FeedforwardEstimatorTest
+{
+
+  // Simulated drive motor, volts per m/s and m/s^2
+  private static final double KS          = 0.18;
+  private static final double KV          = 2.4;
+  private static final double KA          = 0.35;
+  private static final double LOOP_PERIOD = 0.02; // seconds
+  private static final double SIM_STEP    = 0.001; // seconds
+  private static final double NOISE       = 0.01; // m/s
+
+  private final Random random   = new Random(31);
+  private       double velocity;
+  private       double lastVelocity;
+
+  @Test
+  void fitsSysIdRoutineAndDrivesToSetpoint() throws IOException
+  {
+    FeedforwardEstimator estimator = new FeedforwardEstimator(0.05);
+    // Same order and timeouts as SwerveDrivetrain.sysIdDriveMotorCommand: quasistatic at 1 V/s, then 7 V steps.
+    runRoutine(estimator, 1, 0, 5);
+    runRoutine(estimator, -1, 0, 5);
+    runRoutine(estimator, 0, 7, 3);
+    runRoutine(estimator, 0, -7, 3);
+
+    assertEquals(KS, estimator.getKs(), 0.05, "kS");
+    assertEquals(KV, estimator.getKv(), KV * 0.03, "kV");
+    // The sampler's backward difference lags the acceleration by half a loop, which biases kA low. YAGSL's drive
+    // feedforward is calculated at constant velocity, so only kS and kV need to be accurate.
+    assertEquals(KA, estimator.getKa(), KA * 0.3, "kA");
+
+    File file = Files.createTempFile("drivefeedforward", ".json").toFile();
+    file.deleteOnExit();
+    estimator.save(file);
+    SimpleMotorFeedforward feedforward = FeedforwardEstimator.load(file);
+    assertEquals(estimator.getKs(), feedforward.ks, "saved kS");
+    assertEquals(estimator.getKv(), feedforward.kv, "saved kV");
+    assertEquals(estimator.getKa(), feedforward.ka, "saved kA");
+
+    // Open loop on the feedforward alone, the way the drive motors follow a velocity before feedback acts.
+    velocity = 0;
+    double setpoint = 2.0;
+    double voltage = feedforward.calculate(setpoint);
+    for (double t = 0; t < 2; t += SIM_STEP)
+    {
+      step(voltage);
+    }
+    assertEquals(setpoint, velocity, setpoint * 0.03, "steady state velocity");
+  }
+
+  /**
+   * Run one SysId test, sampling every robot loop like SwerveDrivetrain's feedforward sampler.
+   */
+  private void runRoutine(FeedforwardEstimator estimator, double rampRate, double stepVoltage, double duration)
+  {
+    velocity = 0;
+    lastVelocity = 0;
+    for (int loop = 0; loop * LOOP_PERIOD < duration; loop++)
+    {
+      double voltage = stepVoltage + rampRate * loop * LOOP_PERIOD;
+      for (int i = 0; i < Math.round(LOOP_PERIOD / SIM_STEP); i++)
+      {
+        step(voltage);
+      }
+      double measured = velocity + random.nextGaussian() * NOISE;
+      estimator.addSample(voltage, measured, (measured - lastVelocity) / LOOP_PERIOD);
+      lastVelocity = measured;
+    }
+  }
+
+  private void step(double voltage)
+  {
+    // Static friction holds the wheel until the voltage overcomes it.
+    if (velocity == 0 && Math.abs(voltage) <= KS)
+    {
+      return;
+    }
+    double friction = KS * Math.signum(velocity != 0 ? velocity : voltage);
+    velocity += (voltage - friction - KV * velocity) / KA * SIM_STEP;
+  }
+}
@@ -0,0 +1,177 @@
+package frc.robot.util.kinematics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.odometry.PrimitivePoseEstimator;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link BatchKinematics} against {@link FourModuleKinematics} run sample by sample, and its odometry against
+ * {@link PrimitivePoseEstimator}, on random inputs with stopped samples mixed in.
+ */
+class BatchKinematicsTest
+{
+
+  private static final int             SAMPLES   = 10000;
+  private static final int             MODULES   = FourModuleKinematics.MODULES;
+  private static final double          TOLERANCE = 1e-9;
+  private static final double          MAX_SPEED = 4.0;
+  private static final Translation2d[] LOCATIONS = {new Translation2d(0.35, 0.28), new Translation2d(0.31, -0.25),
+                                                    new Translation2d(-0.27, 0.3), new Translation2d(-0.33, -0.22)};
+
+  private final double[] vx    = new double[SAMPLES];
+  private final double[] vy    = new double[SAMPLES];
+  private final double[] omega = new double[SAMPLES];
+
+  BatchKinematicsTest()
+  {
+    Random random = new Random(3);
+    for (int i = 0; i < SAMPLES; i++)
+    {
+      // Every tenth sample stops the robot so the held module headings are checked too.
+      if (i % 10 == 9)
+      {
+        continue;
+      }
+      // Up to 1.5 times the maximum speed so desaturation has work to do.
+      vx[i] = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      vy[i] = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      omega[i] = (random.nextDouble() * 2 - 1) * 4 * Math.PI;
+    }
+  }
+
+  @Test
+  void matchesPerSampleKinematics()
+  {
+    BatchKinematics batch = new BatchKinematics(LOCATIONS);
+    double[][] speeds = new double[MODULES][SAMPLES];
+    double[][] angles = new double[MODULES][SAMPLES];
+    double[] outVx = new double[SAMPLES];
+    double[] outVy = new double[SAMPLES];
+    double[] outOmega = new double[SAMPLES];
+    batch.toModuleStates(vx, vy, omega, SAMPLES, speeds, angles);
+    double[][] inverseAngles = new double[MODULES][];
+    for (int m = 0; m < MODULES; m++)
+    {
+      inverseAngles[m] = angles[m].clone();
+    }
+    BatchKinematics.desaturate(speeds, SAMPLES, MAX_SPEED);
+    batch.toChassisSpeeds(speeds, angles, SAMPLES, outVx, outVy, outOmega);
+
+    FourModuleKinematics expected = new FourModuleKinematics(LOCATIONS);
+    double[] sampleSpeeds = new double[MODULES];
+    double[] sampleAngles = new double[MODULES];
+    double[] chassis = new double[3];
+    for (int i = 0; i < SAMPLES; i++)
+    {
+      expected.toModuleStates(vx[i], vy[i], omega[i], sampleSpeeds, sampleAngles);
+      for (int m = 0; m < MODULES; m++)
+      {
+        assertAngle(sampleAngles[m], inverseAngles[m][i], "angle of module " + m + ", sample " + i);
+      }
+      FourModuleKinematics.desaturate(sampleSpeeds, MAX_SPEED);
+      for (int m = 0; m < MODULES; m++)
+      {
+        assertEquals(sampleSpeeds[m], speeds[m][i], TOLERANCE, "speed of module " + m + ", sample " + i);
+      }
+      expected.toChassisSpeeds(sampleSpeeds, sampleAngles, chassis);
+      assertEquals(chassis[0], outVx[i], TOLERANCE, "forward vx, sample " + i);
+      assertEquals(chassis[1], outVy[i], TOLERANCE, "forward vy, sample " + i);
+      assertEquals(chassis[2], outOmega[i], TOLERANCE, "forward omega, sample " + i);
+    }
+  }
+
+  @Test
+  void velocityVectorsMatchPerSampleKinematics()
+  {
+    BatchKinematics batch = new BatchKinematics(LOCATIONS);
+    double[][] moduleVx = new double[MODULES][SAMPLES];
+    double[][] moduleVy = new double[MODULES][SAMPLES];
+    double[] outVx = new double[SAMPLES];
+    double[] outVy = new double[SAMPLES];
+    double[] outOmega = new double[SAMPLES];
+    batch.toModuleVelocities(vx, vy, omega, SAMPLES, moduleVx, moduleVy);
+    BatchKinematics.desaturateVelocities(moduleVx, moduleVy, SAMPLES, MAX_SPEED);
+    batch.fromModuleVelocities(moduleVx, moduleVy, SAMPLES, outVx, outVy, outOmega);
+
+    FourModuleKinematics expected = new FourModuleKinematics(LOCATIONS);
+    double[] speeds = new double[MODULES];
+    double[] angles = new double[MODULES];
+    double[] chassis = new double[3];
+    for (int i = 0; i < SAMPLES; i++)
+    {
+      expected.toModuleStates(vx[i], vy[i], omega[i], speeds, angles);
+      FourModuleKinematics.desaturate(speeds, MAX_SPEED);
+      for (int m = 0; m < MODULES; m++)
+      {
+        String message = "module " + m + ", sample " + i;
+        assertEquals(speeds[m] * Math.cos(angles[m]), moduleVx[m][i], TOLERANCE, "vx of " + message);
+        assertEquals(speeds[m] * Math.sin(angles[m]), moduleVy[m][i], TOLERANCE, "vy of " + message);
+      }
+      expected.toChassisSpeeds(speeds, angles, chassis);
+      assertEquals(chassis[0], outVx[i], TOLERANCE, "forward vx, sample " + i);
+      assertEquals(chassis[1], outVy[i], TOLERANCE, "forward vy, sample " + i);
+      assertEquals(chassis[2], outOmega[i], TOLERANCE, "forward omega, sample " + i);
+    }
+  }
+
+  @Test
+  void integrateMatchesPoseEstimatorOdometry()
+  {
+    BatchKinematics batch = new BatchKinematics(LOCATIONS);
+    FourModuleKinematics kinematics = new FourModuleKinematics(LOCATIONS);
+    double dt = 0.02;
+    double[][] distances = new double[MODULES][SAMPLES];
+    double[][] angles = new double[MODULES][SAMPLES];
+    double[] gyro = new double[SAMPLES];
+    double[] speeds = new double[MODULES];
+    double[] sampleAngles = new double[MODULES];
+    for (int i = 1; i < SAMPLES; i++)
+    {
+      // Slowed down to a drive rather than a random jump every loop.
+      kinematics.toModuleStates(vx[i] / 4, vy[i] / 4, omega[i] / 4, speeds, sampleAngles);
+      for (int m = 0; m < MODULES; m++)
+      {
+        distances[m][i] = distances[m][i - 1] + speeds[m] * dt;
+        angles[m][i] = sampleAngles[m];
+      }
+      gyro[i] = FourModuleKinematics.wrap(gyro[i - 1] + omega[i] / 4 * dt);
+    }
+    double[] x = new double[SAMPLES];
+    double[] y = new double[SAMPLES];
+    double[] theta = new double[SAMPLES];
+    batch.integrate(distances, angles, gyro, SAMPLES, 1, 2, 0.5, x, y, theta);
+
+    double[] sampleDistances = new double[MODULES];
+    PrimitivePoseEstimator estimator = new PrimitivePoseEstimator(new FourModuleKinematics(LOCATIONS), gyro[0],
+                                                                  sampleDistances, sampleAngles,
+                                                                  new Pose2d(1, 2, new Rotation2d(0.5)),
+                                                                  new double[]{0.1, 0.1, 0.1},
+                                                                  new double[]{0.9, 0.9, 0.9});
+    for (int i = 1; i < SAMPLES; i++)
+    {
+      for (int m = 0; m < MODULES; m++)
+      {
+        sampleDistances[m] = distances[m][i];
+        sampleAngles[m] = angles[m][i];
+      }
+      estimator.updateWithTime(i * dt, gyro[i], sampleDistances, sampleAngles);
+      assertEquals(estimator.getX(), x[i], TOLERANCE, "x, sample " + i);
+      assertEquals(estimator.getY(), y[i], TOLERANCE, "y, sample " + i);
+      assertAngle(estimator.getHeadingRadians(), theta[i], "heading, sample " + i);
+    }
+  }
+
+  /**
+   * Compare angles by their sine and cosine, so equivalent angles either side of the wrap agree.
+   */
+  private static void assertAngle(double expected, double actual, String message)
+  {
+    assertEquals(Math.cos(expected), Math.cos(actual), TOLERANCE, message);
+    assertEquals(Math.sin(expected), Math.sin(actual), TOLERANCE, message);
+  }
+}
@@ -0,0 +1,130 @@
+package frc.robot.util.kinematics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.tools.DeployConfig;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link FourModuleKinematics} against {@link SwerveDriveKinematics} and {@link SwerveModuleState#optimize} over
+ * random inputs, on the deploy folder geometry and on an asymmetric layout that exercises the full least squares solve.
+ */
+class FourModuleKinematicsTest
+{
+
+  private static final int    SAMPLES   = 10000;
+  private static final int    MODULES   = FourModuleKinematics.MODULES;
+  private static final double TOLERANCE = 1e-9;
+  private static final double MAX_SPEED = 4.0;
+
+  private static Translation2d[] deployLocations() throws IOException
+  {
+    return DeployConfig.readModuleLocations(new File("src/main/deploy/swerve"));
+  }
+
+  private static Translation2d[] asymmetricLocations()
+  {
+    return new Translation2d[]{new Translation2d(0.35, 0.28), new Translation2d(0.31, -0.25),
+                               new Translation2d(-0.27, 0.3), new Translation2d(-0.33, -0.22)};
+  }
+
+  @Test
+  void matchesWpilibOnDeployGeometry() throws IOException
+  {
+    compare(deployLocations(), new Random(1));
+  }
+
+  @Test
+  void matchesWpilibOnAsymmetricGeometry()
+  {
+    compare(asymmetricLocations(), new Random(2));
+  }
+
+  @Test
+  void holdsHeadingsWhenStopped()
+  {
+    Translation2d[] locations = asymmetricLocations();
+    SwerveDriveKinematics expected = new SwerveDriveKinematics(locations);
+    FourModuleKinematics actual = new FourModuleKinematics(locations);
+    double[] speeds = new double[MODULES];
+    double[] angles = new double[MODULES];
+
+    expected.toSwerveModuleStates(new ChassisSpeeds(0.4, -1.2, 2.0));
+    actual.toModuleStates(0.4, -1.2, 2.0, speeds, angles);
+    SwerveModuleState[] states = expected.toSwerveModuleStates(new ChassisSpeeds());
+    actual.toModuleStates(0, 0, 0, speeds, angles);
+    for (int m = 0; m < MODULES; m++)
+    {
+      assertEquals(0, speeds[m]);
+      assertAngle(states[m].angle, angles[m], "held heading of module " + m);
+    }
+  }
+
+  private static void compare(Translation2d[] locations, Random random)
+  {
+    SwerveDriveKinematics expected = new SwerveDriveKinematics(locations);
+    FourModuleKinematics actual = new FourModuleKinematics(locations);
+    double[] speeds = new double[MODULES];
+    double[] angles = new double[MODULES];
+    double[] current = new double[MODULES];
+    double[] chassis = new double[3];
+
+    for (int i = 0; i < SAMPLES; i++)
+    {
+      // Up to 1.5 times the maximum speed so desaturation has work to do.
+      double vx = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      double vy = (random.nextDouble() * 2 - 1) * MAX_SPEED * 1.5;
+      double omega = (random.nextDouble() * 2 - 1) * 4 * Math.PI;
+
+      SwerveModuleState[] states = expected.toSwerveModuleStates(new ChassisSpeeds(vx, vy, omega));
+      actual.toModuleStates(vx, vy, omega, speeds, angles);
+      assertStates(states, speeds, angles, "inverse kinematics", i);
+
+      SwerveDriveKinematics.desaturateWheelSpeeds(states, MAX_SPEED);
+      FourModuleKinematics.desaturate(speeds, MAX_SPEED);
+      assertStates(states, speeds, angles, "desaturate", i);
+
+      for (int m = 0; m < MODULES; m++)
+      {
+        current[m] = (random.nextDouble() * 2 - 1) * Math.PI;
+        states[m] = SwerveModuleState.optimize(states[m], new Rotation2d(current[m]));
+      }
+      FourModuleKinematics.optimize(speeds, angles, current);
+      assertStates(states, speeds, angles, "optimize", i);
+
+      ChassisSpeeds fitted = expected.toChassisSpeeds(states);
+      actual.toChassisSpeeds(speeds, angles, chassis);
+      assertEquals(fitted.vxMetersPerSecond, chassis[0], TOLERANCE, "forward vx, sample " + i);
+      assertEquals(fitted.vyMetersPerSecond, chassis[1], TOLERANCE, "forward vy, sample " + i);
+      assertEquals(fitted.omegaRadiansPerSecond, chassis[2], TOLERANCE, "forward omega, sample " + i);
+    }
+  }
+
+  private static void assertStates(SwerveModuleState[] states, double[] speeds, double[] angles, String stage,
+                                   int sample)
+  {
+    for (int m = 0; m < MODULES; m++)
+    {
+      String message = stage + ", module " + m + ", sample " + sample;
+      assertEquals(states[m].speedMetersPerSecond, speeds[m], TOLERANCE, message);
+      assertAngle(states[m].angle, angles[m], message);
+    }
+  }
+
+  /**
+   * Compare angles by their sine and cosine, so equivalent angles either side of the wrap agree.
+   */
+  private static void assertAngle(Rotation2d expected, double actual, String message)
+  {
+    assertEquals(expected.getCos(), Math.cos(actual), TOLERANCE, message);
+    assertEquals(expected.getSin(), Math.sin(actual), TOLERANCE, message);
+  }
+}
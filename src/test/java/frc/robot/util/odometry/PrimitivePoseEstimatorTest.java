@@ -0,0 +1,192 @@
+package frc.robot.util.odometry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.management.ThreadMXBean;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Replays drive logs through {@link PrimitivePoseEstimator} and the WPILib {@link SwerveDrivePoseEstimator} and checks
+ * the estimates agree after every row. Every CSV in src/test/resources/odometry is replayed, one row per line in the
+ * order the robot received it:
+ * <ul>
+ *   <li>{@code modules,x0,y0,...,x3,y3}, module locations in meters, first;</li>
+ *   <li>{@code odometry,time,gyro,distance0..3,angle0..3}, seconds, radians and meters;</li>
+ *   <li>{@code vision,capture time,x,y,heading,x std dev,y std dev,heading std dev};</li>
+ *   <li>{@code reset,x,y,heading}, at the last odometry readings.</li>
+ * </ul>
+ */
+class PrimitivePoseEstimatorTest
+{
+
+  private static final File   LOG_DIRECTORY  = new File("src/test/resources/odometry");
+  private static final int    MODULES        = FourModuleKinematics.MODULES;
+  private static final double TOLERANCE      = 1e-9;
+  private static final double STATE_STD_DEV  = 0.1;
+  private static final double VISION_STD_DEV = 0.9;
+
+  @Test
+  void matchesWpilibOnLoggedDrives() throws IOException
+  {
+    File[] logs = LOG_DIRECTORY.listFiles((dir, name) -> name.endsWith(".csv"));
+    assertNotNull(logs, "missing " + LOG_DIRECTORY);
+    assertTrue(logs.length > 0, "no logs in " + LOG_DIRECTORY);
+    for (File log : logs)
+    {
+      replay(log);
+    }
+  }
+
+  @Test
+  void updatesWithoutAllocating()
+  {
+    Translation2d[] locations = {new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3),
+                                 new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3)};
+    double[] distances = new double[MODULES];
+    double[] angles = new double[MODULES];
+    PrimitivePoseEstimator estimator = new PrimitivePoseEstimator(new FourModuleKinematics(locations), 0, distances,
+                                                                  angles, new Pose2d(),
+                                                                  new double[]{STATE_STD_DEV, STATE_STD_DEV,
+                                                                               STATE_STD_DEV},
+                                                                  new double[]{VISION_STD_DEV, VISION_STD_DEV,
+                                                                               VISION_STD_DEV});
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // First pass fills the history, the second is measured once the estimator has reached steady state.
+    long allocated = 0;
+    for (int pass = 0; pass < 2; pass++)
+    {
+      long before = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < 1000; i++)
+      {
+        int loop = pass * 1000 + i;
+        for (int m = 0; m < MODULES; m++)
+        {
+          distances[m] += 0.02;
+          angles[m] = 0.001 * loop;
+        }
+        estimator.updateWithTime(0.02 * loop, 0.002 * loop, distances, angles);
+        if (loop % 5 == 0)
+        {
+          estimator.addVisionMeasurement(estimator.getX() + 0.01, estimator.getY(), estimator.getHeadingRadians(),
+                                         0.02 * loop - 0.05);
+        }
+      }
+      allocated = threads.getCurrentThreadAllocatedBytes() - before;
+    }
+    assertEquals(0, allocated, "bytes allocated by 1000 steady state updates");
+  }
+
+  private static void replay(File log) throws IOException
+  {
+    SwerveDrivePoseEstimator expected = null;
+    PrimitivePoseEstimator actual = null;
+    double[] distances = new double[MODULES];
+    double[] angles = new double[MODULES];
+    double gyro = 0;
+    Translation2d[] locations = null;
+
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(log.toPath()))
+    {
+      lineNumber++;
+      if (line.isBlank() || line.startsWith("#"))
+      {
+        continue;
+      }
+      String[] fields = line.split(",");
+      switch (fields[0])
+      {
+        case "modules":
+          locations = new Translation2d[MODULES];
+          for (int m = 0; m < MODULES; m++)
+          {
+            locations[m] = new Translation2d(parse(fields, 1 + 2 * m), parse(fields, 2 + 2 * m));
+          }
+          continue;
+        case "odometry":
+        {
+          double time = parse(fields, 1);
+          gyro = parse(fields, 2);
+          for (int m = 0; m < MODULES; m++)
+          {
+            distances[m] = parse(fields, 3 + m);
+            angles[m] = parse(fields, 3 + MODULES + m);
+          }
+          if (expected == null)
+          {
+            assertNotNull(locations, log.getName() + ": modules row must come first");
+            expected = new SwerveDrivePoseEstimator(new SwerveDriveKinematics(locations), new Rotation2d(gyro),
+                                                    positions(distances, angles), new Pose2d(),
+                                                    VecBuilder.fill(STATE_STD_DEV, STATE_STD_DEV, STATE_STD_DEV),
+                                                    VecBuilder.fill(VISION_STD_DEV, VISION_STD_DEV, VISION_STD_DEV));
+            actual = new PrimitivePoseEstimator(new FourModuleKinematics(locations), gyro, distances, angles,
+                                                new Pose2d(),
+                                                new double[]{STATE_STD_DEV, STATE_STD_DEV, STATE_STD_DEV},
+                                                new double[]{VISION_STD_DEV, VISION_STD_DEV, VISION_STD_DEV});
+          }
+          expected.updateWithTime(time, new Rotation2d(gyro), positions(distances, angles));
+          actual.updateWithTime(time, gyro, distances, angles);
+          break;
+        }
+        case "vision":
+        {
+          double time = parse(fields, 1);
+          double x = parse(fields, 2);
+          double y = parse(fields, 3);
+          double heading = parse(fields, 4);
+          expected.addVisionMeasurement(new Pose2d(x, y, new Rotation2d(heading)), time,
+                                        VecBuilder.fill(parse(fields, 5), parse(fields, 6), parse(fields, 7)));
+          actual.setVisionMeasurementStdDevs(parse(fields, 5), parse(fields, 6), parse(fields, 7));
+          actual.addVisionMeasurement(x, y, heading, time);
+          break;
+        }
+        case "reset":
+        {
+          Pose2d pose = new Pose2d(parse(fields, 1), parse(fields, 2), new Rotation2d(parse(fields, 3)));
+          expected.resetPosition(new Rotation2d(gyro), positions(distances, angles), pose);
+          actual.resetPosition(gyro, distances, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+          break;
+        }
+        default:
+          throw new IllegalArgumentException(log.getName() + ":" + lineNumber + ": unknown row " + fields[0]);
+      }
+
+      String message = log.getName() + ":" + lineNumber;
+      Pose2d pose = expected.getEstimatedPosition();
+      assertEquals(pose.getX(), actual.getX(), TOLERANCE, message + " x");
+      assertEquals(pose.getY(), actual.getY(), TOLERANCE, message + " y");
+      assertEquals(pose.getRotation().getCos(), Math.cos(actual.getHeadingRadians()), TOLERANCE, message + " heading");
+      assertEquals(pose.getRotation().getSin(), Math.sin(actual.getHeadingRadians()), TOLERANCE, message + " heading");
+    }
+    assertNotNull(expected, log.getName() + ": no odometry rows");
+  }
+
+  private static SwerveModulePosition[] positions(double[] distances, double[] angles)
+  {
+    SwerveModulePosition[] positions = new SwerveModulePosition[MODULES];
+    for (int m = 0; m < MODULES; m++)
+    {
+      positions[m] = new SwerveModulePosition(distances[m], new Rotation2d(angles[m]));
+    }
+    return positions;
+  }
+
+  private static double parse(String[] fields, int index)
+  {
+    return Double.parseDouble(fields[index]);
+  }
+}
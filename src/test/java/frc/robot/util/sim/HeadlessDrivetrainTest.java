@@ -0,0 +1,104 @@
+package frc.robot.util.sim;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.util.PIDConstants;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.kinematics.FourModuleKinematics;
+import frc.robot.util.path.TrajectoryTable;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link SimSnapshot} of a {@link HeadlessDrivetrain} following a path holds its whole state: stepping on
+ * from a restored snapshot, or from a fork of it, must give bit for bit the same result as the original run.
+ */
+class HeadlessDrivetrainTest
+{
+
+  private static final double          DT        = 0.02; // seconds
+  private static final int             MODULES   = FourModuleKinematics.MODULES;
+  private static final Translation2d[] LOCATIONS = {new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3),
+                                                    new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3)};
+
+  @Test
+  void restoredAndForkedRunsMatchTheOriginal()
+  {
+    HeadlessDrivetrain drivetrain = followingPath();
+    step(drivetrain, 50);
+    SimSnapshot snapshot = new SimSnapshot(drivetrain);
+    snapshot.capture();
+    double[] captured = state(drivetrain);
+
+    step(drivetrain, 100);
+    double[] expected = state(drivetrain);
+    assertTrue(expected[0] != captured[0], "the robot should have moved after the snapshot");
+
+    snapshot.restore();
+    assertArrayEquals(captured, state(drivetrain), "restored state");
+    step(drivetrain, 100);
+    assertArrayEquals(expected, state(drivetrain), "restored run");
+
+    snapshot.restore();
+    for (HeadlessDrivetrain fork : drivetrain.fork(2))
+    {
+      step(fork, 100);
+      assertArrayEquals(expected, state(fork), "forked run");
+    }
+  }
+
+  /**
+   * A drivetrain at rest at the start of a curved path, following it. The translation controller has an integral gain
+   * so its accumulated error is part of the state.
+   */
+  private static HeadlessDrivetrain followingPath()
+  {
+    PathPlannerPath path = new PathPlannerPath(
+        PathPlannerPath.bezierFromPoses(new Pose2d(1, 1, new Rotation2d()), new Pose2d(4, 2, new Rotation2d())),
+        new PathConstraints(3, 3, 2 * Math.PI, 4 * Math.PI), new GoalEndState(0, Rotation2d.fromDegrees(90)));
+    TrajectoryTable table = TrajectoryTable.fromPath("test", path, new FourModuleKinematics(LOCATIONS), DT);
+    HeadlessDrivetrain drivetrain = new HeadlessDrivetrain(LOCATIONS, 4.5, 0.05, 20, new PIDConstants(0.7, 0.1, 0),
+                                                           new PIDConstants(0.4, 0, 0.01), DT, table);
+    drivetrain.reset(table.x[0], table.y[0], table.heading[0]);
+    drivetrain.follow(0);
+    return drivetrain;
+  }
+
+  private static void step(HeadlessDrivetrain drivetrain, int loops)
+  {
+    for (int i = 0; i < loops; i++)
+    {
+      drivetrain.step();
+    }
+  }
+
+  /**
+   * Everything observable about the drivetrain: true pose and velocity, module states, estimated pose and time.
+   */
+  private static double[] state(HeadlessDrivetrain drivetrain)
+  {
+    HeadlessSwerveSim sim = drivetrain.getSim();
+    double[] state = new double[10 + 2 * MODULES];
+    state[0] = sim.x;
+    state[1] = sim.y;
+    state[2] = sim.theta;
+    state[3] = sim.vx;
+    state[4] = sim.vy;
+    state[5] = sim.omega;
+    state[6] = drivetrain.getEstimator().getX();
+    state[7] = drivetrain.getEstimator().getY();
+    state[8] = drivetrain.getEstimator().getHeadingRadians();
+    state[9] = drivetrain.getTime();
+    for (int m = 0; m < MODULES; m++)
+    {
+      state[10 + m] = sim.moduleSpeeds[m];
+      state[10 + MODULES + m] = sim.moduleAngles[m];
+    }
+    return state;
+  }
+}